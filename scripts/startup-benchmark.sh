@@ -0,0 +1,28 @@
+#!/usr/bin/env bash
+# Время от запуска JVM до первого ответа getSalesReport:
+# обычный fat jar против AOT + AppCDS (профиль cds в pom.xml).
+# Использование: scripts/startup-benchmark.sh [число запусков, по умолчанию 5]
+set -euo pipefail
+cd "$(dirname "$0")/.."
+
+RUNS=${1:-5}
+JAR=target/streamapi-0.0.1-SNAPSHOT.jar
+APP_ARGS=(--spring.datasource.url=jdbc:h2:mem:bench --server.port=0 --app.startup.probe=true)
+
+mvn -q -B -Pcds -DskipTests package
+
+measure() {
+	local label=$1
+	shift
+	local total=0
+	for ((i = 1; i <= RUNS; i++)); do
+		local ms
+		ms=$(java "$@" "${APP_ARGS[@]}" | grep -o 'first getSalesReport response - [0-9]*' | grep -o '[0-9]*$')
+		total=$((total + ms))
+		echo "$label run $i: $ms ms"
+	done
+	echo "$label average: $((total / RUNS)) ms"
+}
+
+measure "plain jar " -jar "${JAR%.jar}-exec.jar"
+measure "AOT + CDS " -XX:SharedArchiveFile=target/app.jsa -Dspring.aot.enabled=true -jar "$JAR"
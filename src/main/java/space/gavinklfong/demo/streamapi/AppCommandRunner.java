@@ -4,7 +4,11 @@ package space.gavinklfong.demo.streamapi;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 import space.gavinklfong.demo.streamapi.repos.CustomerRepo;
@@ -26,19 +30,29 @@ public class AppCommandRunner implements CommandLineRunner {
 	@Autowired
 	private ProductRepo productRepos;
 
-	@Transactional
+	@Value("${app.startup.sample-size:5}")
+	private int sampleSize;
+
+	/**
+	 * Вывести в лог количество записей и первые несколько записей каждой таблицы,
+	 * не загружая таблицы целиком
+	 */
+	@Transactional(readOnly = true)
 	@Override
 	public void run(String... args) throws Exception {
-		log.info("Customers:");
-		customerRepos.findAll()
-				.forEach(c -> log.info(c.toString()));
+		long startTime = System.currentTimeMillis();
+		PageRequest sample = PageRequest.of(0, sampleSize, Sort.by("id"));
+
+		logSample("Customers", customerRepos.count(), customerRepos.findAll(sample));
+		logSample("Orders", orderRepos.count(), orderRepos.findAll(sample));
+		logSample("Products", productRepos.count(), productRepos.findAll(sample));
 
-		log.info("Orders:");
-		orderRepos.findAll()
-				.forEach(o -> log.info(o.toString()));
+		long endTime = System.currentTimeMillis();
+		log.info(String.format("startup summary - execution time: %1$d ms", (endTime - startTime)));
+	}
 
-		log.info("Products:");
-		productRepos.findAll()
-				.forEach(p -> log.info(p.toString()));
+	private void logSample(String title, long total, Page<?> sample) {
+		log.info("{}: {} total, first {}:", title, total, sample.getNumberOfElements());
+		sample.forEach(entity -> log.info(entity.toString()));
 	}
 }
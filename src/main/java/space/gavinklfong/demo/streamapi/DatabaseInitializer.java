@@ -0,0 +1,159 @@
+package space.gavinklfong.demo.streamapi;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Создает схему и загружает начальные данные вместо spring.sql.init.
+ * <p>
+ * В режиме app.init.mode=version БД пересоздается, только если версия в таблице schema_version
+ * отличается от app.init.schema-version, иначе старт не зависит от объема данных.
+ * Начальные данные лежат в CSV (seed/*.csv) и вставляются JDBC batch'ами.
+ * <p>
+ * Затем при каждом старте выполняется migrations.sql: идемпотентные изменения схемы, которые не должны
+ * пересоздавать БД с данными (новые служебные таблицы).
+ */
+@Component
+public class DatabaseInitializer implements InitializingBean {
+
+	private static final Logger log = LoggerFactory.getLogger(DatabaseInitializer.class);
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Value("${app.init.mode:version}")
+	private String mode;
+
+	@Value("${app.init.schema-version:1}")
+	private int schemaVersion;
+
+	@Override
+	public void afterPropertiesSet() throws IOException {
+		if ("never".equalsIgnoreCase(mode)) {
+			log.info("Database initialization disabled");
+			return;
+		}
+
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		if ("version".equalsIgnoreCase(mode) && Integer.valueOf(schemaVersion).equals(currentVersion(jdbcTemplate))) {
+			log.info("Schema version {} is up to date, skipping initialization", schemaVersion);
+		} else {
+			recreate(jdbcTemplate);
+		}
+		new ResourceDatabasePopulator(new ClassPathResource("migrations.sql")).execute(dataSource);
+	}
+
+	private void recreate(JdbcTemplate jdbcTemplate) throws IOException {
+		long startTime = System.currentTimeMillis();
+		new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+		long schemaTime = System.currentTimeMillis();
+
+		int rows = loadSeed(jdbcTemplate, "seed/customers.csv",
+				"INSERT INTO customers (id, name, tier) VALUES (?, ?, ?)")
+				+ loadSeed(jdbcTemplate, "seed/products.csv",
+				"INSERT INTO products (id, name, category, price) VALUES (?, ?, ?, ?)")
+				+ loadSeed(jdbcTemplate, "seed/product_orders.csv",
+				"INSERT INTO product_orders (id, order_date, delivery_date, status, customer_id) VALUES (?, ?, ?, ?, ?)")
+				+ loadSeed(jdbcTemplate, "seed/order_product_relationship.csv",
+				"INSERT INTO order_product_relationship (order_id, product_id) VALUES (?, ?)");
+		restartSequence(jdbcTemplate, "customers_seq", "customers");
+		restartSequence(jdbcTemplate, "products_seq", "products");
+		restartSequence(jdbcTemplate, "product_orders_seq", "product_orders");
+		jdbcTemplate.update("INSERT INTO schema_version (version) VALUES (?)", schemaVersion);
+		long endTime = System.currentTimeMillis();
+
+		log.info(String.format("database initialized to version %1$d - schema: %2$d ms, seed: %3$d rows in %4$d ms",
+				schemaVersion, (schemaTime - startTime), rows, (endTime - schemaTime)));
+	}
+
+	private Integer currentVersion(JdbcTemplate jdbcTemplate) {
+		try {
+			return jdbcTemplate.queryForObject("SELECT MAX(version) FROM schema_version", Integer.class);
+		} catch (DataAccessException e) {
+			// таблицы версий еще нет - БД создается впервые
+			return null;
+		}
+	}
+
+	// id из seed заданы явно, sequence продолжает после них
+	private void restartSequence(JdbcTemplate jdbcTemplate, String sequence, String table) {
+		Long next = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) + 1 FROM " + table, Long.class);
+		jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " RESTART WITH " + next);
+	}
+
+	private int loadSeed(JdbcTemplate jdbcTemplate, String resource, String sql) throws IOException {
+		List<Object[]> rows = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new ClassPathResource(resource).getInputStream(), StandardCharsets.UTF_8))) {
+			int columns = parseCsvLine(reader.readLine()).size(); // заголовок
+			String line;
+			int lineNumber = 1;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (line.isEmpty()) {
+					continue;
+				}
+				List<String> values = parseCsvLine(line);
+				if (values.size() != columns) {
+					throw new IllegalStateException(String.format("%1$s:%2$d - expected %3$d columns, found %4$d",
+							resource, lineNumber, columns, values.size()));
+				}
+				rows.add(values.toArray());
+			}
+		}
+		jdbcTemplate.batchUpdate(sql, rows);
+		return rows.size();
+	}
+
+	/**
+	 * Разбирает строку CSV (RFC 4180): значение в кавычках может содержать запятые и "" вместо кавычки.
+	 * Переводы строк внутри значений не поддерживаются.
+	 */
+	static List<String> parseCsvLine(String line) {
+		List<String> values = new ArrayList<>();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c != '"') {
+					value.append(c);
+				} else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					value.append('"');
+					i++;
+				} else {
+					quoted = false;
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				values.add(value.toString());
+				value.setLength(0);
+			} else {
+				value.append(c);
+			}
+		}
+		if (quoted) {
+			throw new IllegalStateException("Unterminated quoted value: " + line);
+		}
+		values.add(value.toString());
+		return values;
+	}
+}
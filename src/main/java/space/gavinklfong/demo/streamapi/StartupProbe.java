@@ -0,0 +1,48 @@
+package space.gavinklfong.demo.streamapi;
+
+import java.lang.management.ManagementFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import space.gavinklfong.demo.streamapi.service.BusinessAnalyticsService;
+
+/**
+ * Замер времени от запуска JVM до первого ответа getSalesReport (см. scripts/startup-benchmark.sh).
+ * <p>
+ * Включается свойством app.startup.probe=true и после замера завершает приложение.
+ * Свойство проверяется в рантайме, а не через @ConditionalOnProperty, чтобы бин попадал
+ * в AOT-сборку независимо от настроек на момент сборки.
+ */
+@Component
+public class StartupProbe implements ApplicationRunner {
+
+	private static final Logger log = LoggerFactory.getLogger(StartupProbe.class);
+
+	@Autowired
+	private BusinessAnalyticsService businessAnalyticsService;
+
+	@Autowired
+	private ApplicationContext applicationContext;
+
+	@Value("${app.startup.probe:false}")
+	private boolean enabled;
+
+	@Override
+	public void run(ApplicationArguments args) {
+		if (!enabled) {
+			return;
+		}
+		businessAnalyticsService.getSalesReport();
+		long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+		log.info(String.format("first getSalesReport response - %1$d ms since JVM start", uptime));
+		System.exit(SpringApplication.exit(applicationContext));
+	}
+}
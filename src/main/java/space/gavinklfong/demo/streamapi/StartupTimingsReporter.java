@@ -0,0 +1,43 @@
+package space.gavinklfong.demo.streamapi;
+
+import java.util.Comparator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Выводит в лог время старта и самые долгие шаги инициализации контекста
+ * (если приложение запущено с {@link BufferingApplicationStartup}, см. {@link DemoApplication})
+ */
+@Component
+public class StartupTimingsReporter {
+
+	private static final Logger log = LoggerFactory.getLogger(StartupTimingsReporter.class);
+
+	private static final int SLOWEST_STEPS = 10;
+
+	@EventListener
+	public void onReady(ApplicationReadyEvent event) {
+		log.info(String.format("application ready in %1$d ms", event.getTimeTaken().toMillis()));
+
+		if (event.getApplicationContext().getApplicationStartup() instanceof BufferingApplicationStartup startup) {
+			startup.getBufferedTimeline().getEvents().stream()
+					.sorted(Comparator.comparing(StartupTimeline.TimelineEvent::getDuration).reversed())
+					.limit(SLOWEST_STEPS)
+					.forEach(step -> log.info(String.format("  %1$6d ms  %2$s",
+							step.getDuration().toMillis(), describe(step))));
+		}
+	}
+
+	private static String describe(StartupTimeline.TimelineEvent step) {
+		StringBuilder description = new StringBuilder(step.getStartupStep().getName());
+		step.getStartupStep().getTags().forEach(tag ->
+				description.append(' ').append(tag.getKey()).append('=').append(tag.getValue()));
+		return description.toString();
+	}
+}
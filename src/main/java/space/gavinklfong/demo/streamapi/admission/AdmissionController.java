@@ -0,0 +1,314 @@
+package space.gavinklfong.demo.streamapi.admission;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Контроль допуска: тяжелая аналитика не занимает все соединения и CPU, и точечные запросы
+ * не стоят за ней в очереди.
+ * <p>
+ * Всего одновременно выполняется не больше admission.max-concurrency вызовов, и у каждого класса
+ * нагрузки свой лимит (bulkhead). Вызов сверх лимита ждет в очереди не дольше admission.max-wait-millis;
+ * очередь общая на admission.max-queue вызовов и упорядочена по приоритету класса ({@link WorkloadClass}),
+ * внутри класса - по времени прихода. При переполнении или по таймауту - {@link AdmissionRejectedException}.
+ * <p>
+ * Лимит ANALYTICS адаптивный, в пределах admission.analytics.min/max-concurrency: по окнам из
+ * {@value #LATENCY_WINDOW} вызовов LOOKUP считается 90-й процентиль задержки (с ожиданием в очереди).
+ * Если он больше базового в admission.latency-tolerance раз, лимит уменьшается на четверть и больше
+ * не поднимается до значения, на котором была перегрузка; иначе, если аналитика упирается в лимит,
+ * он растет на 1 после нескольких спокойных окон. Без точечных запросов лимит возвращается к максимуму.
+ * <p>
+ * Ожидание - на {@link ReentrantLock}, без synchronized, поэтому виртуальные потоки не закрепляются
+ * за потоком-носителем. Вложенные вызовы в том же потоке выполняются по уже полученному допуску.
+ * Метрики (если есть MeterRegistry): admission.limit, admission.in-flight, admission.waiting,
+ * admission.admitted, admission.queued, admission.rejected с тегом workload.
+ */
+@Component
+public class AdmissionController {
+    private static final int LATENCY_WINDOW = 20;
+    private static final int HEALTHY_WINDOWS_TO_GROW = 5;
+    private static final int HEALTHY_WINDOWS_TO_RESET_CEILING = 100;
+    // разброс задержки меньше этого - шум, а не перегрузка
+    private static final long LATENCY_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long LOOKUP_IDLE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int maxConcurrency;
+    private final int analyticsMinConcurrency;
+    private final int analyticsMaxConcurrency;
+    private final int maxQueue;
+    private final long maxWaitNanos;
+    private final double latencyTolerance;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<WorkloadClass, ClassState> classes = new EnumMap<>(WorkloadClass.class);
+    private final TreeSet<Waiter> waiters = new TreeSet<>(Comparator.comparing((Waiter waiter) -> waiter.workloadClass)
+            .thenComparingLong(waiter -> waiter.sequence));
+    private final ThreadLocal<WorkloadClass> admitted = new ThreadLocal<>();
+    private long sequence;
+    private int inFlight;
+
+    // задержки LOOKUP для адаптивного лимита ANALYTICS, все под lock
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private int latencySamples;
+    private long baselineNanos;
+    private long lastLookupNanos;
+    private int healthyWindows;
+    private int analyticsCeiling;
+
+    @Autowired
+    public AdmissionController(ObjectProvider<MeterRegistry> meterRegistry,
+                               @Value("${admission.max-concurrency:15}") int maxConcurrency,
+                               @Value("${admission.lookup.max-concurrency:15}") int lookupMaxConcurrency,
+                               @Value("${admission.analytics.min-concurrency:1}") int analyticsMinConcurrency,
+                               @Value("${admission.analytics.max-concurrency:4}") int analyticsMaxConcurrency,
+                               @Value("${admission.max-queue:64}") int maxQueue,
+                               @Value("${admission.max-wait-millis:5000}") long maxWaitMillis,
+                               @Value("${admission.latency-tolerance:2.0}") double latencyTolerance) {
+        this(meterRegistry.getIfAvailable(), maxConcurrency, lookupMaxConcurrency, analyticsMinConcurrency,
+                analyticsMaxConcurrency, maxQueue, maxWaitMillis, latencyTolerance);
+    }
+
+    /**
+     * @param meterRegistry может быть null - тогда метрики доступны только через {@link #stats()}
+     */
+    public AdmissionController(MeterRegistry meterRegistry, int maxConcurrency, int lookupMaxConcurrency,
+                               int analyticsMinConcurrency, int analyticsMaxConcurrency, int maxQueue,
+                               long maxWaitMillis, double latencyTolerance) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.analyticsMinConcurrency = Math.max(1, analyticsMinConcurrency);
+        this.analyticsMaxConcurrency = Math.max(this.analyticsMinConcurrency, analyticsMaxConcurrency);
+        this.maxQueue = Math.max(0, maxQueue);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+        this.latencyTolerance = Math.max(1.0, latencyTolerance);
+        this.analyticsCeiling = this.analyticsMaxConcurrency;
+        classes.put(WorkloadClass.LOOKUP, new ClassState(Math.max(1, lookupMaxConcurrency)));
+        classes.put(WorkloadClass.ANALYTICS, new ClassState(this.analyticsMaxConcurrency));
+
+        if (meterRegistry != null) {
+            classes.forEach((workloadClass, state) -> register(meterRegistry, workloadClass, state));
+        }
+    }
+
+    /**
+     * Выполнить call, когда класс нагрузки и общий лимит позволяют
+     *
+     * @throws AdmissionRejectedException если очередь заполнена или ожидание превысило таймаут
+     */
+    public <T> T call(WorkloadClass workloadClass, Supplier<T> call) {
+        if (admitted.get() != null) {
+            return call.get();
+        }
+        long arrivedAt = System.nanoTime();
+        acquire(workloadClass);
+        admitted.set(workloadClass);
+        try {
+            return call.get();
+        } finally {
+            admitted.remove();
+            release(workloadClass, System.nanoTime() - arrivedAt);
+        }
+    }
+
+    public Map<WorkloadClass, AdmissionStats> stats() {
+        Map<WorkloadClass, AdmissionStats> result = new EnumMap<>(WorkloadClass.class);
+        classes.forEach((workloadClass, state) -> result.put(workloadClass, new AdmissionStats(workloadClass,
+                state.limit, state.inFlight, state.waiting,
+                state.admitted.sum(), state.queued.sum(), state.rejected.sum())));
+        return result;
+    }
+
+    private void acquire(WorkloadClass workloadClass) {
+        ClassState state = classes.get(workloadClass);
+        lock.lock();
+        try {
+            // ждущие в очереди сейчас не проходят по лимитам, иначе их бы уже допустил dispatch
+            if (canAdmit(state)) {
+                grant(state);
+                return;
+            }
+            if (waiters.size() >= maxQueue) {
+                state.rejected.increment();
+                throw new AdmissionRejectedException(workloadClass,
+                        "Admission queue is full: " + waiters.size() + " calls waiting");
+            }
+
+            Waiter waiter = new Waiter(workloadClass, sequence++, lock.newCondition());
+            waiters.add(waiter);
+            state.waiting++;
+            state.queued.increment();
+            long remainingNanos = maxWaitNanos;
+            try {
+                while (!waiter.granted) {
+                    if (remainingNanos <= 0) {
+                        waiters.remove(waiter);
+                        state.waiting--;
+                        state.rejected.increment();
+                        throw new AdmissionRejectedException(workloadClass, "No " + workloadClass
+                                + " capacity within " + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + " ms");
+                    }
+                    remainingNanos = waiter.condition.awaitNanos(remainingNanos);
+                }
+            } catch (InterruptedException e) {
+                if (waiter.granted) {
+                    revoke(state);
+                } else {
+                    waiters.remove(waiter);
+                    state.waiting--;
+                }
+                Thread.currentThread().interrupt();
+                throw new AdmissionRejectedException(workloadClass, "Interrupted while waiting for admission");
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(WorkloadClass workloadClass, long latencyNanos) {
+        lock.lock();
+        try {
+            ClassState state = classes.get(workloadClass);
+            state.inFlight--;
+            inFlight--;
+            adaptAnalyticsLimit(workloadClass, latencyNanos);
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // допуск выдан, но ждавший поток прерван - вернуть место
+    private void revoke(ClassState state) {
+        state.inFlight--;
+        inFlight--;
+        dispatch();
+    }
+
+    private boolean canAdmit(ClassState state) {
+        return inFlight < maxConcurrency && state.inFlight < state.limit;
+    }
+
+    private void grant(ClassState state) {
+        state.inFlight++;
+        inFlight++;
+        state.admitted.increment();
+    }
+
+    // ждущие - по приоритету класса, пропуская тех, чей класс уперся в свой лимит
+    private void dispatch() {
+        Iterator<Waiter> iterator = waiters.iterator();
+        while (inFlight < maxConcurrency && iterator.hasNext()) {
+            Waiter waiter = iterator.next();
+            ClassState state = classes.get(waiter.workloadClass);
+            if (state.inFlight < state.limit) {
+                iterator.remove();
+                state.waiting--;
+                grant(state);
+                waiter.granted = true;
+                waiter.condition.signal();
+            }
+        }
+    }
+
+    private void adaptAnalyticsLimit(WorkloadClass workloadClass, long latencyNanos) {
+        ClassState analytics = classes.get(WorkloadClass.ANALYTICS);
+        long now = System.nanoTime();
+        if (workloadClass == WorkloadClass.ANALYTICS) {
+            // точечных запросов нет - защищать некого
+            if (lastLookupNanos == 0 || now - lastLookupNanos > LOOKUP_IDLE_NANOS) {
+                analyticsCeiling = analyticsMaxConcurrency;
+                analytics.limit = Math.min(analyticsMaxConcurrency, analytics.limit + 1);
+            }
+            return;
+        }
+
+        lastLookupNanos = now;
+        latencies[latencySamples++] = latencyNanos;
+        if (latencySamples < LATENCY_WINDOW) {
+            return;
+        }
+        latencySamples = 0;
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        long p90 = sorted[LATENCY_WINDOW * 9 / 10];
+        if (baselineNanos == 0 || p90 < baselineNanos) {
+            baselineNanos = p90;
+        } else {
+            // базовая задержка медленно догоняет устойчивое изменение
+            baselineNanos += (p90 - baselineNanos) / 100;
+        }
+
+        if (p90 > baselineNanos * latencyTolerance && p90 - baselineNanos > LATENCY_SLACK_NANOS) {
+            analyticsCeiling = Math.max(analyticsMinConcurrency, analytics.limit - 1);
+            analytics.limit = Math.max(analyticsMinConcurrency, analytics.limit * 3 / 4);
+            healthyWindows = 0;
+            return;
+        }
+        healthyWindows++;
+        if (healthyWindows % HEALTHY_WINDOWS_TO_RESET_CEILING == 0) {
+            analyticsCeiling = analyticsMaxConcurrency;
+        }
+        if (healthyWindows % HEALTHY_WINDOWS_TO_GROW == 0 && analytics.inFlight + analytics.waiting > analytics.limit) {
+            analytics.limit = Math.min(analyticsCeiling, analytics.limit + 1);
+        }
+    }
+
+    private void register(MeterRegistry meterRegistry, WorkloadClass workloadClass, ClassState state) {
+        String workload = workloadClass.name().toLowerCase();
+        Gauge.builder("admission.limit", state, s -> s.limit).tag("workload", workload).register(meterRegistry);
+        Gauge.builder("admission.in-flight", state, s -> s.inFlight).tag("workload", workload).register(meterRegistry);
+        Gauge.builder("admission.waiting", state, s -> s.waiting).tag("workload", workload).register(meterRegistry);
+        FunctionCounter.builder("admission.admitted", state.admitted, LongAdder::sum)
+                .tag("workload", workload)
+                .register(meterRegistry);
+        FunctionCounter.builder("admission.queued", state.queued, LongAdder::sum)
+                .tag("workload", workload)
+                .register(meterRegistry);
+        FunctionCounter.builder("admission.rejected", state.rejected, LongAdder::sum)
+                .tag("workload", workload)
+                .register(meterRegistry);
+    }
+
+    // поля меняются под lock, volatile - для чтения метриками без него
+    private static final class ClassState {
+        private volatile int limit;
+        private volatile int inFlight;
+        private volatile int waiting;
+        private final LongAdder admitted = new LongAdder();
+        private final LongAdder queued = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+
+        ClassState(int limit) {
+            this.limit = limit;
+        }
+    }
+
+    private static final class Waiter {
+        private final WorkloadClass workloadClass;
+        private final long sequence;
+        private final Condition condition;
+        private boolean granted;
+
+        Waiter(WorkloadClass workloadClass, long sequence, Condition condition) {
+            this.workloadClass = workloadClass;
+            this.sequence = sequence;
+            this.condition = condition;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package space.gavinklfong.demo.streamapi.admission;
+
+/**
+ * Вызов не допущен {@link AdmissionController}: очередь заполнена или ожидание превысило admission.max-wait-millis
+ */
+public class AdmissionRejectedException extends IllegalStateException {
+    private static final long serialVersionUID = 1L;
+
+    private final WorkloadClass workloadClass;
+
+    public AdmissionRejectedException(WorkloadClass workloadClass, String message) {
+        super(message);
+        this.workloadClass = workloadClass;
+    }
+
+    public WorkloadClass getWorkloadClass() {
+        return workloadClass;
+    }
+}
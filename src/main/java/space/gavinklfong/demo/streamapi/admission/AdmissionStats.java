@@ -0,0 +1,9 @@
+package space.gavinklfong.demo.streamapi.admission;
+
+/**
+ * Состояние класса нагрузки в {@link AdmissionController}: текущий лимит, выполняющиеся и ждущие вызовы,
+ * счетчики допущенных (в том числе после ожидания) и отклоненных вызовов
+ */
+public record AdmissionStats(WorkloadClass workloadClass, int limit, int inFlight, int waiting,
+                             long admitted, long queued, long rejected) {
+}
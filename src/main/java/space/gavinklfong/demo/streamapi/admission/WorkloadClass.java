@@ -0,0 +1,15 @@
+package space.gavinklfong.demo.streamapi.admission;
+
+/**
+ * Класс нагрузки для {@link AdmissionController}; порядок объявления - приоритет в очереди
+ */
+public enum WorkloadClass {
+    /**
+     * Дешевые точечные запросы, например заказы одного клиента
+     */
+    LOOKUP,
+    /**
+     * Тяжелая аналитика: отчеты и выборки с полным проходом по данным
+     */
+    ANALYTICS
+}
@@ -0,0 +1,16 @@
+package space.gavinklfong.demo.streamapi.aggregate;
+
+/**
+ * Ссылка на агрегат, добавленный в {@link Aggregates}: по ней берется его результат из {@link AggregateResults}
+ *
+ * @param <R> тип результата агрегата
+ */
+public final class Aggregate<R> {
+    final Aggregates<?> owner;
+    final int index;
+
+    Aggregate(Aggregates<?> owner, int index) {
+        this.owner = owner;
+        this.index = index;
+    }
+}
@@ -0,0 +1,22 @@
+package space.gavinklfong.demo.streamapi.aggregate;
+
+/**
+ * Результаты всех агрегатов одного прохода {@link Aggregates#collector()}
+ */
+public final class AggregateResults {
+    private final Aggregates<?> owner;
+    private final Object[] results;
+
+    AggregateResults(Aggregates<?> owner, Object[] results) {
+        this.owner = owner;
+        this.results = results;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <R> R get(Aggregate<R> aggregate) {
+        if (aggregate.owner != owner) {
+            throw new IllegalArgumentException("Aggregate belongs to another Aggregates instance");
+        }
+        return (R) results[aggregate.index];
+    }
+}
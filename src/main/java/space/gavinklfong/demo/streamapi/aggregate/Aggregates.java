@@ -0,0 +1,401 @@
+package space.gavinklfong.demo.streamapi.aggregate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.DoubleSummaryStatistics;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.LongSummaryStatistics;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
+
+/**
+ * Набор агрегатов, которые считаются за один проход по элементам:
+ * <pre>{@code
+ * Aggregates<Order> aggregates = Aggregates.over(Order.class);
+ * Aggregate<DoubleSummaryStatistics> totals = aggregates.summarizingDouble(order -> total(order));
+ * Aggregate<Map<String, Long>> byStatus = aggregates.countBy(Order::getStatus);
+ * AggregateResults results = orders.stream().collect(aggregates.collector());
+ * results.get(totals).getAverage();
+ * }</pre>
+ * Аккумуляторы на примитивах (счетчики - long, суммы - double с компенсацией, как в
+ * {@link DoubleSummaryStatistics}), частичные результаты объединяются combiner'ом, поэтому коллектор
+ * подходит для параллельных стримов и {@link space.gavinklfong.demo.streamapi.scan.PartitionedOrderScanner}.
+ * Агрегаты добавляются до первого вызова {@link #collector()}.
+ *
+ * @param <T> тип элементов
+ */
+public final class Aggregates<T> {
+    private final List<Supplier<Accumulator<T>>> accumulators = new ArrayList<>();
+    private boolean sealed;
+
+    private Aggregates() {
+    }
+
+    public static <T> Aggregates<T> over(Class<T> elementType) {
+        return new Aggregates<>();
+    }
+
+    /**
+     * Число элементов
+     */
+    public Aggregate<Long> count() {
+        return countIf(element -> true);
+    }
+
+    /**
+     * Число элементов, подходящих под условие
+     */
+    public Aggregate<Long> countIf(Predicate<? super T> predicate) {
+        return add(() -> new CountAccumulator<>(predicate));
+    }
+
+    /**
+     * Сумма, число, среднее, минимум и максимум значений
+     */
+    public Aggregate<DoubleSummaryStatistics> summarizingDouble(ToDoubleFunction<? super T> value) {
+        return add(() -> new DoubleStatsAccumulator<>(value));
+    }
+
+    /**
+     * Сумма, число, среднее, минимум и максимум значений
+     */
+    public Aggregate<LongSummaryStatistics> summarizingLong(ToLongFunction<? super T> value) {
+        return add(() -> new LongStatsAccumulator<>(value));
+    }
+
+    /**
+     * Число элементов по ключу
+     */
+    public <K> Aggregate<Map<K, Long>> countBy(Function<? super T, ? extends K> key) {
+        return add(() -> new CountByAccumulator<T, K>(key, null, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Число элементов по каждому из ключей элемента (например, категориям товаров заказа)
+     */
+    public <K> Aggregate<Map<K, Long>> countByEach(Function<? super T, ? extends Iterable<? extends K>> keys) {
+        return add(() -> new CountByAccumulator<T, K>(null, keys, Integer.MAX_VALUE));
+    }
+
+    /**
+     * limit самых частых ключей с числом элементов, по убыванию
+     */
+    public <K> Aggregate<Map<K, Long>> mostFrequent(Function<? super T, ? extends K> key, int limit) {
+        return add(() -> new CountByAccumulator<T, K>(key, null, limit));
+    }
+
+    /**
+     * limit самых частых ключей по каждому из ключей элемента, по убыванию
+     */
+    public <K> Aggregate<Map<K, Long>> mostFrequentOfEach(Function<? super T, ? extends Iterable<? extends K>> keys,
+                                                           int limit) {
+        return add(() -> new CountByAccumulator<T, K>(null, keys, limit));
+    }
+
+    /**
+     * limit наибольших элементов по comparator, по убыванию
+     */
+    public Aggregate<List<T>> top(int limit, Comparator<? super T> comparator) {
+        return add(() -> new TopAccumulator<>(limit, comparator));
+    }
+
+    /**
+     * Число различных значений (точное)
+     */
+    public Aggregate<Long> distinctCount(ToLongFunction<? super T> value) {
+        return add(() -> new DistinctAccumulator<>(value));
+    }
+
+    /**
+     * Коллектор, считающий все добавленные агрегаты за один проход
+     */
+    public Collector<T, ?, AggregateResults> collector() {
+        sealed = true;
+        List<Supplier<Accumulator<T>>> suppliers = List.copyOf(accumulators);
+        return Collector.<T, List<Accumulator<T>>, AggregateResults>of(
+                () -> {
+                    List<Accumulator<T>> container = new ArrayList<>(suppliers.size());
+                    suppliers.forEach(supplier -> container.add(supplier.get()));
+                    return container;
+                },
+                (container, element) -> {
+                    for (int i = 0; i < container.size(); i++) {
+                        container.get(i).accept(element);
+                    }
+                },
+                (left, right) -> {
+                    for (int i = 0; i < left.size(); i++) {
+                        left.get(i).merge(right.get(i));
+                    }
+                    return left;
+                },
+                container -> {
+                    Object[] results = new Object[container.size()];
+                    for (int i = 0; i < results.length; i++) {
+                        results[i] = container.get(i).result();
+                    }
+                    return new AggregateResults(this, results);
+                },
+                Collector.Characteristics.UNORDERED);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> Aggregate<R> add(Supplier<? extends Accumulator<T>> accumulator) {
+        if (sealed) {
+            throw new IllegalStateException("Aggregates cannot be added after collector() was called");
+        }
+        accumulators.add((Supplier<Accumulator<T>>) accumulator);
+        return new Aggregate<>(this, accumulators.size() - 1);
+    }
+
+    private interface Accumulator<T> {
+        void accept(T element);
+
+        // other - аккумулятор того же агрегата
+        void merge(Accumulator<T> other);
+
+        Object result();
+    }
+
+    private static final class CountAccumulator<T> implements Accumulator<T> {
+        private final Predicate<? super T> predicate;
+        private long count;
+
+        CountAccumulator(Predicate<? super T> predicate) {
+            this.predicate = predicate;
+        }
+
+        @Override
+        public void accept(T element) {
+            if (predicate.test(element)) {
+                count++;
+            }
+        }
+
+        @Override
+        public void merge(Accumulator<T> other) {
+            count += ((CountAccumulator<T>) other).count;
+        }
+
+        @Override
+        public Object result() {
+            return count;
+        }
+    }
+
+    private static final class DoubleStatsAccumulator<T> implements Accumulator<T> {
+        private final ToDoubleFunction<? super T> value;
+        private long count;
+        private double sum;
+        private double compensation;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        DoubleStatsAccumulator(ToDoubleFunction<? super T> value) {
+            this.value = value;
+        }
+
+        @Override
+        public void accept(T element) {
+            double v = value.applyAsDouble(element);
+            count++;
+            add(v);
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+
+        @Override
+        public void merge(Accumulator<T> other) {
+            DoubleStatsAccumulator<T> stats = (DoubleStatsAccumulator<T>) other;
+            count += stats.count;
+            add(stats.sum);
+            add(-stats.compensation);
+            min = Math.min(min, stats.min);
+            max = Math.max(max, stats.max);
+        }
+
+        // суммирование Кэхэна
+        private void add(double v) {
+            double y = v - compensation;
+            double t = sum + y;
+            compensation = (t - sum) - y;
+            sum = t;
+        }
+
+        @Override
+        public Object result() {
+            return new DoubleSummaryStatistics(count, min, max, sum - compensation);
+        }
+    }
+
+    private static final class LongStatsAccumulator<T> implements Accumulator<T> {
+        private final ToLongFunction<? super T> value;
+        private long count;
+        private long sum;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+
+        LongStatsAccumulator(ToLongFunction<? super T> value) {
+            this.value = value;
+        }
+
+        @Override
+        public void accept(T element) {
+            long v = value.applyAsLong(element);
+            count++;
+            sum += v;
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+
+        @Override
+        public void merge(Accumulator<T> other) {
+            LongStatsAccumulator<T> stats = (LongStatsAccumulator<T>) other;
+            count += stats.count;
+            sum += stats.sum;
+            min = Math.min(min, stats.min);
+            max = Math.max(max, stats.max);
+        }
+
+        @Override
+        public Object result() {
+            return new LongSummaryStatistics(count, min, max, sum);
+        }
+    }
+
+    // ключ элемента задается key или keys (второй - null)
+    private static final class CountByAccumulator<T, K> implements Accumulator<T> {
+        private final Function<? super T, ? extends K> key;
+        private final Function<? super T, ? extends Iterable<? extends K>> keys;
+        private final int limit;
+        // long[1] на ключ - счет без боксинга на каждый элемент
+        private final Map<K, long[]> counts = new HashMap<>();
+
+        CountByAccumulator(Function<? super T, ? extends K> key,
+                           Function<? super T, ? extends Iterable<? extends K>> keys, int limit) {
+            this.key = key;
+            this.keys = keys;
+            this.limit = limit;
+        }
+
+        @Override
+        public void accept(T element) {
+            if (key != null) {
+                increment(key.apply(element));
+                return;
+            }
+            for (K elementKey : keys.apply(element)) {
+                increment(elementKey);
+            }
+        }
+
+        private void increment(K elementKey) {
+            counts.computeIfAbsent(elementKey, k -> new long[1])[0]++;
+        }
+
+        // other создан той же фабрикой агрегата, поэтому K у него тот же
+        @Override
+        @SuppressWarnings("unchecked")
+        public void merge(Accumulator<T> other) {
+            ((CountByAccumulator<T, K>) other).counts.forEach((key, count) ->
+                    counts.computeIfAbsent(key, k -> new long[1])[0] += count[0]);
+        }
+
+        @Override
+        public Object result() {
+            if (limit == Integer.MAX_VALUE) {
+                Map<K, Long> result = new HashMap<>();
+                counts.forEach((elementKey, count) -> result.put(elementKey, count[0]));
+                return result;
+            }
+            // limit самых частых - в куче размера limit, без сортировки всех ключей
+            PriorityQueue<Map.Entry<K, long[]>> heap = new PriorityQueue<>(Math.min(limit, counts.size()) + 1,
+                    byCountDescending().reversed());
+            for (Map.Entry<K, long[]> entry : counts.entrySet()) {
+                heap.add(entry);
+                if (heap.size() > limit) {
+                    heap.poll();
+                }
+            }
+            Map<K, Long> result = new LinkedHashMap<>();
+            heap.stream()
+                    .sorted(byCountDescending())
+                    .forEach(entry -> result.put(entry.getKey(), entry.getValue()[0]));
+            return result;
+        }
+
+        private Comparator<Map.Entry<K, long[]>> byCountDescending() {
+            return (e1, e2) -> Long.compare(e2.getValue()[0], e1.getValue()[0]);
+        }
+    }
+
+    private static final class TopAccumulator<T> implements Accumulator<T> {
+        private final int limit;
+        private final Comparator<? super T> comparator;
+        // наименьший из отобранных - в голове, вытесняется следующим большим
+        private final PriorityQueue<T> heap;
+
+        TopAccumulator(int limit, Comparator<? super T> comparator) {
+            this.limit = limit;
+            this.comparator = comparator;
+            this.heap = new PriorityQueue<>(Math.max(1, Math.min(limit, 1024) + 1), comparator);
+        }
+
+        @Override
+        public void accept(T element) {
+            if (limit <= 0) {
+                return;
+            }
+            if (heap.size() < limit) {
+                heap.add(element);
+            } else if (comparator.compare(element, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(element);
+            }
+        }
+
+        @Override
+        public void merge(Accumulator<T> other) {
+            ((TopAccumulator<T>) other).heap.forEach(this::accept);
+        }
+
+        @Override
+        public Object result() {
+            List<T> result = new ArrayList<>(heap);
+            result.sort(comparator.reversed());
+            return result;
+        }
+    }
+
+    private static final class DistinctAccumulator<T> implements Accumulator<T> {
+        private final ToLongFunction<? super T> value;
+        private final LongHashSet values = new LongHashSet();
+
+        DistinctAccumulator(ToLongFunction<? super T> value) {
+            this.value = value;
+        }
+
+        @Override
+        public void accept(T element) {
+            values.add(value.applyAsLong(element));
+        }
+
+        @Override
+        public void merge(Accumulator<T> other) {
+            values.addAll(((DistinctAccumulator<T>) other).values);
+        }
+
+        @Override
+        public Object result() {
+            return (long) values.size();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package space.gavinklfong.demo.streamapi.aggregate;
+
+import space.gavinklfong.demo.streamapi.sketch.Hashing;
+
+/**
+ * Множество long в открытой адресации, без боксинга; 0 хранится отдельным флагом
+ */
+final class LongHashSet {
+    private static final long EMPTY = 0;
+
+    private long[] keys = new long[16];
+    private boolean containsEmpty;
+    private int size;
+
+    void add(long value) {
+        if (value == EMPTY) {
+            if (!containsEmpty) {
+                containsEmpty = true;
+                size++;
+            }
+            return;
+        }
+        if ((size + 1) * 2 > keys.length) {
+            resize();
+        }
+        if (insert(keys, value)) {
+            size++;
+        }
+    }
+
+    void addAll(LongHashSet other) {
+        if (other.containsEmpty) {
+            add(EMPTY);
+        }
+        for (long key : other.keys) {
+            if (key != EMPTY) {
+                add(key);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private static boolean insert(long[] table, long value) {
+        int mask = table.length - 1;
+        int slot = (int) Hashing.hash(value) & mask;
+        while (table[slot] != EMPTY) {
+            if (table[slot] == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = value;
+        return true;
+    }
+
+    private void resize() {
+        long[] resized = new long[keys.length * 2];
+        for (long key : keys) {
+            if (key != EMPTY) {
+                insert(resized, key);
+            }
+        }
+        keys = resized;
+    }
+}
@@ -0,0 +1,14 @@
+package space.gavinklfong.demo.streamapi.coalesce;
+
+/**
+ * Счетчики операции {@link SingleFlight}: вызовы и реальные вычисления
+ */
+public record CoalescingStats(String operation, long calls, long executions) {
+
+    /**
+     * Доля вызовов, получивших чужой результат
+     */
+    public double coalescingRatio() {
+        return calls > 0 ? 1 - (double) executions / calls : 0;
+    }
+}
@@ -0,0 +1,166 @@
+package space.gavinklfong.demo.streamapi.coalesce;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Объединение одинаковых одновременных вызовов (single flight): пока вычисление операции с теми же
+ * аргументами идет, остальные вызовы не запускают свое, а ждут его результат (или исключение).
+ * <p>
+ * Вычисления в полете лежат в {@link ConcurrentHashMap} и занимаются через putIfAbsent, без общей
+ * блокировки. После завершения результат не хранится, если не задан coalesce.retain-millis:
+ * тогда в течение этого времени он отдается совпадающим вызовам без пересчета.
+ * Результат общий для всех объединенных вызовов и не должен изменяться ими; вычисление
+ * не должно вызывать ту же операцию с теми же аргументами. Общим результатом не могут быть
+ * управляемые JPA-сущности: они привязаны к контексту персистентности вызова, который их загрузил.
+ * Внутри транзакции на запись вызов не объединяется - он должен видеть свои незакоммиченные изменения.
+ * <p>
+ * Метрики (если есть MeterRegistry): coalesce.calls и coalesce.executions с тегом operation,
+ * coalesce.in-flight.
+ */
+@Component
+public class SingleFlight {
+    private final long retainNanos;
+    private final MeterRegistry meterRegistry;
+    private final Map<Key, Flight> flights = new ConcurrentHashMap<>();
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SingleFlight(ObjectProvider<MeterRegistry> meterRegistry,
+                        @Value("${coalesce.retain-millis:0}") long retainMillis) {
+        this(meterRegistry.getIfAvailable(), retainMillis);
+    }
+
+    /**
+     * @param meterRegistry может быть null - тогда метрики доступны только через {@link #stats()}
+     */
+    public SingleFlight(MeterRegistry meterRegistry, long retainMillis) {
+        this.meterRegistry = meterRegistry;
+        this.retainNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, retainMillis));
+        if (meterRegistry != null) {
+            Gauge.builder("coalesce.in-flight", flights, Map::size).register(meterRegistry);
+        }
+    }
+
+    /**
+     * Выполнить computation или дождаться уже идущего вычисления operation с равными аргументами
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String operation, Supplier<T> computation, Object... arguments) {
+        Counters operationCounters = counters(operation);
+        operationCounters.calls.increment();
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            operationCounters.executions.increment();
+            return computation.get();
+        }
+        Key key = new Key(operation, Arrays.asList(arguments));
+        while (true) {
+            Flight flight = flights.get(key);
+            if (flight == null) {
+                Flight own = new Flight();
+                if (flights.putIfAbsent(key, own) == null) {
+                    operationCounters.executions.increment();
+                    return lead(key, own, computation);
+                }
+            } else if (flight.expired(retainNanos)) {
+                flights.remove(key, flight);
+            } else {
+                return (T) follow(flight);
+            }
+        }
+    }
+
+    /**
+     * Счетчики по операциям, по имени операции
+     */
+    public Map<String, CoalescingStats> stats() {
+        Map<String, CoalescingStats> result = new TreeMap<>();
+        counters.forEach((operation, operationCounters) -> result.put(operation, new CoalescingStats(operation,
+                operationCounters.calls.sum(), operationCounters.executions.sum())));
+        return result;
+    }
+
+    private <T> T lead(Key key, Flight flight, Supplier<T> computation) {
+        try {
+            T result = computation.get();
+            flight.completedAt = System.nanoTime();
+            flight.result.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flight.completedAt = System.nanoTime();
+            flight.result.completeExceptionally(e);
+            flights.remove(key, flight);
+            throw e;
+        } finally {
+            if (retainNanos == 0) {
+                flights.remove(key, flight);
+            }
+        }
+    }
+
+    private static Object follow(Flight flight) {
+        try {
+            return flight.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    private Counters counters(String operation) {
+        return counters.computeIfAbsent(operation, name -> {
+            Counters operationCounters = new Counters();
+            if (meterRegistry != null) {
+                FunctionCounter.builder("coalesce.calls", operationCounters.calls, LongAdder::sum)
+                        .tag("operation", name)
+                        .register(meterRegistry);
+                FunctionCounter.builder("coalesce.executions", operationCounters.executions, LongAdder::sum)
+                        .tag("operation", name)
+                        .register(meterRegistry);
+            }
+            return operationCounters;
+        });
+    }
+
+    private record Key(String operation, List<Object> arguments) {
+    }
+
+    private static final class Counters {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder executions = new LongAdder();
+    }
+
+    private static final class Flight {
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+        private volatile long completedAt;
+
+        // завершенный результат больше не отдается: сразу без retain-millis, после него - по истечении
+        boolean expired(long retainNanos) {
+            return result.isDone() && (retainNanos == 0 || result.isCompletedExceptionally()
+                    || System.nanoTime() - completedAt >= retainNanos);
+        }
+    }
+}
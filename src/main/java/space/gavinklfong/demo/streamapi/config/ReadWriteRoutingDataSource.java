@@ -0,0 +1,24 @@
+package space.gavinklfong.demo.streamapi.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Направляет соединения транзакций {@code @Transactional(readOnly = true)} в пул для чтения,
+ * все остальные - в пул для записи.
+ * <p>
+ * Должен использоваться через {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}:
+ * признак read-only выставляется уже после начала транзакции, поэтому реальное соединение
+ * нужно брать не раньше первого запроса.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    public enum Route {
+        READ, WRITE
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly() ? Route.READ : Route.WRITE;
+    }
+}
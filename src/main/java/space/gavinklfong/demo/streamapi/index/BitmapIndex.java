@@ -0,0 +1,55 @@
+package space.gavinklfong.demo.streamapi.index;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bitmap-индекс: значение ключа -> множество ordinal'ов строк с этим значением.
+ * <p>
+ * Наружу отдаются только копии, поэтому результаты можно свободно комбинировать
+ * через {@link BitSet#and}, {@link BitSet#or} и {@link BitSet#andNot}.
+ */
+public class BitmapIndex<K> {
+    private final Map<K, BitSet> bitmaps = new HashMap<>();
+
+    public void add(K key, int ordinal) {
+        bitmaps.computeIfAbsent(key, k -> new BitSet()).set(ordinal);
+    }
+
+    /**
+     * Убрать строку из всех значений ключа
+     */
+    public void remove(int ordinal) {
+        bitmaps.values().removeIf(bits -> {
+            bits.clear(ordinal);
+            return bits.isEmpty();
+        });
+    }
+
+    public BitSet get(K key) {
+        BitSet bits = bitmaps.get(key);
+        return bits != null ? (BitSet) bits.clone() : new BitSet();
+    }
+
+    public BitSet any(Collection<K> keys) {
+        BitSet result = new BitSet();
+        for (K key : keys) {
+            BitSet bits = bitmaps.get(key);
+            if (bits != null) {
+                result.or(bits);
+            }
+        }
+        return result;
+    }
+
+    public Set<K> keys() {
+        return bitmaps.keySet();
+    }
+
+    public void clear() {
+        bitmaps.clear();
+    }
+}
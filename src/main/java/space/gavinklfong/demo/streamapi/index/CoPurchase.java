@@ -0,0 +1,13 @@
+package space.gavinklfong.demo.streamapi.index;
+
+/**
+ * Совместные покупки с item относительно исходного товара (категории):
+ * together - число заказов, где есть оба, support - их доля среди всех заказов с товарами,
+ * confidence - доля среди заказов исходного, lift - во сколько раз чаще, чем при независимых покупках
+ */
+public record CoPurchase<K>(K item, long together, double support, double confidence, double lift) {
+
+    public <T> CoPurchase<T> withItem(T item) {
+        return new CoPurchase<>(item, together, support, confidence, lift);
+    }
+}
@@ -0,0 +1,407 @@
+package space.gavinklfong.demo.streamapi.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Матрица совместных покупок товаров и категорий: сколько заказов содержат каждую пару.
+ * <p>
+ * Матрица разреженная: на каждый товар (категорию) - счетчики по ordinal'ам тех,
+ * с кем его покупали, в {@link IntCounts}. При перестройке корзины заказов делятся на части,
+ * которые считаются параллельно и затем складываются; новые и измененные заказы
+ * вычитают старую корзину и добавляют новую, без пересчета остальных. Смена категории товара
+ * так же пересчитывает пары категорий только для корзин с этим товаром.
+ * <p>
+ * Категории сравниваются без учета регистра.
+ */
+@Component
+@Transactional(readOnly = true)
+public class CoPurchaseIndex extends IncrementalIndex {
+    private static final Logger log = LoggerFactory.getLogger(CoPurchaseIndex.class);
+
+    // категория приходит вместе со связью: товар, появившийся после загрузки товаров, не требует отдельного запроса
+    private static final String BASKETS_SQL = "SELECT r.order_id, r.product_id, p.category"
+            + " FROM order_product_relationship r JOIN products p ON p.id = r.product_id";
+
+    // меньше корзин на одну параллельную часть - накладные расходы больше выигрыша
+    private static final int MIN_BASKETS_PER_TASK = 1_024;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final IdOrdinals products = new IdOrdinals();
+    private int[] productCategories = new int[64];
+    private final List<String> categoryNames = new ArrayList<>();
+    private final Map<String, Integer> categoryOrdinals = new HashMap<>();
+    private final Map<Long, int[]> baskets = new HashMap<>();
+
+    private CoOccurrence productPairs = new CoOccurrence(0);
+    private CoOccurrence categoryPairs = new CoOccurrence(0);
+
+    public CoPurchaseIndex(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Количество заказов, в которых есть хотя бы один товар
+     */
+    public synchronized int basketCount() {
+        ensureCurrent();
+        return baskets.size();
+    }
+
+    /**
+     * Доля заказов с товаром среди всех заказов с товарами
+     */
+    public synchronized double productSupport(long productId) {
+        ensureCurrent();
+        int product = products.ordinalOf(productId);
+        return product >= 0 ? support(productPairs.occurrences(product)) : 0.0;
+    }
+
+    /**
+     * Доля заказов с товарами категории среди всех заказов с товарами
+     */
+    public synchronized double categorySupport(String category) {
+        ensureCurrent();
+        int ordinal = categoryOrdinal(category);
+        return ordinal >= 0 ? support(categoryPairs.occurrences(ordinal)) : 0.0;
+    }
+
+    /**
+     * Товары, которые чаще всего покупают вместе с productId, по убыванию числа общих заказов, не больше limit
+     */
+    public synchronized List<CoPurchase<Long>> topCompanions(long productId, int limit) {
+        ensureCurrent();
+        int product = products.ordinalOf(productId);
+        if (product < 0) {
+            return List.of();
+        }
+        List<CoPurchase<Long>> result = new ArrayList<>();
+        for (int companion : productPairs.top(product, limit)) {
+            result.add(stats(productPairs, product, companion, products.idAt(companion)));
+        }
+        return result;
+    }
+
+    /**
+     * Совместные покупки пары товаров; пусто, если productId не покупали
+     */
+    public synchronized Optional<CoPurchase<Long>> productPair(long productId, long otherProductId) {
+        ensureCurrent();
+        int product = products.ordinalOf(productId);
+        int other = products.ordinalOf(otherProductId);
+        if (product < 0 || other < 0 || productPairs.occurrences(product) == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(stats(productPairs, product, other, otherProductId));
+    }
+
+    /**
+     * Категории, товары которых чаще всего покупают вместе с товарами category, не больше limit
+     */
+    public synchronized List<CoPurchase<String>> topCategoryCompanions(String category, int limit) {
+        ensureCurrent();
+        int ordinal = categoryOrdinal(category);
+        if (ordinal < 0) {
+            return List.of();
+        }
+        List<CoPurchase<String>> result = new ArrayList<>();
+        for (int companion : categoryPairs.top(ordinal, limit)) {
+            result.add(stats(categoryPairs, ordinal, companion, categoryNames.get(companion)));
+        }
+        return result;
+    }
+
+    /**
+     * Совместные покупки пары категорий; пусто, если товары category не покупали
+     */
+    public synchronized Optional<CoPurchase<String>> categoryPair(String category, String otherCategory) {
+        ensureCurrent();
+        int ordinal = categoryOrdinal(category);
+        int other = categoryOrdinal(otherCategory);
+        if (ordinal < 0 || other < 0 || categoryPairs.occurrences(ordinal) == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(stats(categoryPairs, ordinal, other, categoryNames.get(other)));
+    }
+
+    @Override
+    protected void rebuild() {
+        long startTime = System.currentTimeMillis();
+        products.clear();
+        categoryNames.clear();
+        categoryOrdinals.clear();
+        baskets.clear();
+        Arrays.fill(productCategories, -1);
+
+        jdbcTemplate.query("SELECT id, category FROM products ORDER BY id",
+                (ResultSet rs) -> setCategory(products.assign(rs.getLong(1)), rs.getString(2)));
+        readBaskets(BASKETS_SQL + " ORDER BY r.order_id", baskets::put);
+
+        List<int[]> all = new ArrayList<>(baskets.values());
+        productPairs = count(all, products.size(), UnaryOperator.identity());
+        categoryPairs = count(all, categoryNames.size(), this::categoriesOf);
+        log.info("Co-purchase index built: {} baskets, {} products, {} categories in {} ms",
+                all.size(), products.size(), categoryNames.size(), System.currentTimeMillis() - startTime);
+    }
+
+    @Override
+    protected void applyOrderChanges(Set<Long> orderIds) {
+        for (Long orderId : orderIds) {
+            int[] basket = baskets.remove(orderId);
+            if (basket != null) {
+                productPairs.add(basket, -1);
+                categoryPairs.add(categoriesOf(basket), -1);
+            }
+            readBaskets(BASKETS_SQL + " WHERE r.order_id = ?", this::addBasket, orderId);
+        }
+    }
+
+    @Override
+    protected void applyCustomerChanges(Set<Long> customerIds) {
+        // корзины от клиента не зависят
+    }
+
+    @Override
+    protected void applyProductChanges(Set<Long> productIds) {
+        Map<Integer, String> recategorized = new HashMap<>();
+        for (Long productId : productIds) {
+            List<String> categories = jdbcTemplate.queryForList(
+                    "SELECT category FROM products WHERE id = ?", String.class, productId);
+            if (categories.isEmpty()) {
+                // вместе с товаром удалены и его связи с заказами
+                rebuild();
+                return;
+            }
+            String category = categories.get(0);
+            int product = products.ordinalOf(productId);
+            int ordinal = categoryOrdinal(category);
+            if (product < 0) {
+                setCategory(products.assign(productId), category);
+            } else if (ordinal != productCategories[product] || (category != null && ordinal < 0)) {
+                // у новой категории еще нет ordinal'а
+                recategorized.put(product, category);
+            }
+        }
+        if (recategorized.isEmpty()) {
+            return;
+        }
+        // пары категорий пересчитываются только для корзин с перемещенными товарами
+        List<int[]> affected = baskets.values().stream()
+                .filter(basket -> recategorized.keySet().stream()
+                        .anyMatch(product -> Arrays.binarySearch(basket, product) >= 0))
+                .toList();
+        affected.forEach(basket -> categoryPairs.add(categoriesOf(basket), -1));
+        recategorized.forEach(this::setCategory);
+        categoryPairs.ensureSize(categoryNames.size());
+        affected.forEach(basket -> categoryPairs.add(categoriesOf(basket), 1));
+    }
+
+    private void addBasket(long orderId, int[] basket) {
+        baskets.put(orderId, basket);
+        productPairs.ensureSize(products.size());
+        productPairs.add(basket, 1);
+        categoryPairs.ensureSize(categoryNames.size());
+        categoryPairs.add(categoriesOf(basket), 1);
+    }
+
+    private void readBaskets(String sql, BiConsumer<Long, int[]> consumer, Object... args) {
+        BasketReader reader = new BasketReader(consumer);
+        jdbcTemplate.query(sql, reader, args);
+        reader.flush();
+    }
+
+    private int productOrdinal(long productId, String category) {
+        int product = products.ordinalOf(productId);
+        if (product < 0) {
+            product = products.assign(productId);
+            setCategory(product, category);
+        }
+        return product;
+    }
+
+    private void setCategory(int product, String category) {
+        if (product >= productCategories.length) {
+            int size = productCategories.length;
+            productCategories = Arrays.copyOf(productCategories, Math.max(product + 1, size * 2));
+            Arrays.fill(productCategories, size, productCategories.length, -1);
+        }
+        productCategories[product] = category == null ? -1
+                : categoryOrdinals.computeIfAbsent(normalize(category), key -> {
+                    categoryNames.add(category);
+                    return categoryNames.size() - 1;
+                });
+    }
+
+    private int categoryOrdinal(String category) {
+        Integer ordinal = category != null ? categoryOrdinals.get(normalize(category)) : null;
+        return ordinal != null ? ordinal : -1;
+    }
+
+    // различные категории товаров корзины по возрастанию
+    private int[] categoriesOf(int[] basket) {
+        return Arrays.stream(basket)
+                .map(product -> productCategories[product])
+                .filter(category -> category >= 0)
+                .sorted()
+                .distinct()
+                .toArray();
+    }
+
+    private double support(long count) {
+        return baskets.isEmpty() ? 0.0 : (double) count / baskets.size();
+    }
+
+    private <K> CoPurchase<K> stats(CoOccurrence pairs, int item, int companion, K key) {
+        long together = pairs.together(item, companion);
+        long itemCount = pairs.occurrences(item);
+        long companionCount = pairs.occurrences(companion);
+        double confidence = itemCount > 0 ? (double) together / itemCount : 0.0;
+        double lift = companionCount > 0 ? confidence * baskets.size() / companionCount : 0.0;
+        return new CoPurchase<>(key, together, support(together), confidence, lift);
+    }
+
+    private static CoOccurrence count(List<int[]> baskets, int size, UnaryOperator<int[]> items) {
+        int tasks = Math.max(1, Math.min(baskets.size() / MIN_BASKETS_PER_TASK,
+                4 * ForkJoinPool.getCommonPoolParallelism()));
+        return IntStream.range(0, tasks)
+                .parallel()
+                .mapToObj(task -> {
+                    CoOccurrence partial = new CoOccurrence(size);
+                    int from = (int) ((long) baskets.size() * task / tasks);
+                    int to = (int) ((long) baskets.size() * (task + 1) / tasks);
+                    for (int i = from; i < to; i++) {
+                        partial.add(items.apply(baskets.get(i)), 1);
+                    }
+                    return partial;
+                })
+                .reduce(CoOccurrence::merge)
+                .orElseGet(() -> new CoOccurrence(size));
+    }
+
+    private static String normalize(String category) {
+        return category.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Собирает корзины из строк (order_id, product_id, category), где строки одного заказа идут подряд.
+     * Корзина - отсортированные ordinal'ы товаров; последнюю закрывает {@link #flush()} после запроса.
+     */
+    private final class BasketReader implements RowCallbackHandler {
+        private final BiConsumer<Long, int[]> consumer;
+        private long orderId;
+        private int[] items = new int[8];
+        private int size;
+
+        BasketReader(BiConsumer<Long, int[]> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            long id = rs.getLong(1);
+            if (size > 0 && id != orderId) {
+                flush();
+            }
+            orderId = id;
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = productOrdinal(rs.getLong(2), rs.getString(3));
+        }
+
+        void flush() {
+            if (size == 0) {
+                return;
+            }
+            int[] basket = Arrays.copyOf(items, size);
+            Arrays.sort(basket);
+            consumer.accept(orderId, basket);
+            size = 0;
+        }
+    }
+
+    /**
+     * Число заказов с каждым элементом и разреженная симметричная матрица пар
+     */
+    private static final class CoOccurrence {
+        private int[] occurrences;
+        private IntCounts[] pairs;
+
+        CoOccurrence(int size) {
+            occurrences = new int[size];
+            pairs = new IntCounts[size];
+        }
+
+        void ensureSize(int size) {
+            if (size > occurrences.length) {
+                int capacity = Math.max(size, occurrences.length * 2);
+                occurrences = Arrays.copyOf(occurrences, capacity);
+                pairs = Arrays.copyOf(pairs, capacity);
+            }
+        }
+
+        // items - различные элементы одной корзины
+        void add(int[] items, int delta) {
+            for (int a : items) {
+                occurrences[a] += delta;
+                if (items.length > 1 && pairs[a] == null) {
+                    pairs[a] = new IntCounts();
+                }
+                for (int b : items) {
+                    if (a != b) {
+                        pairs[a].add(b, delta);
+                    }
+                }
+            }
+        }
+
+        // части считаются на одном наборе элементов, строки второй части после слияния не используются
+        CoOccurrence merge(CoOccurrence other) {
+            for (int a = 0; a < other.occurrences.length; a++) {
+                occurrences[a] += other.occurrences[a];
+                if (other.pairs[a] == null) {
+                    continue;
+                }
+                if (pairs[a] == null) {
+                    pairs[a] = other.pairs[a];
+                } else {
+                    pairs[a].addAll(other.pairs[a]);
+                }
+            }
+            return this;
+        }
+
+        int occurrences(int item) {
+            return item < occurrences.length ? occurrences[item] : 0;
+        }
+
+        int together(int item, int other) {
+            return item < pairs.length && pairs[item] != null ? pairs[item].get(other) : 0;
+        }
+
+        int[] top(int item, int limit) {
+            return item < pairs.length && pairs[item] != null ? pairs[item].top(limit) : new int[0];
+        }
+    }
+}
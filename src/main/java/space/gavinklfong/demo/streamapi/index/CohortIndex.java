@@ -0,0 +1,276 @@
+package space.gavinklfong.demo.streamapi.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Когорты клиентов по месяцу первого заказа.
+ * <p>
+ * Строки (customer_id, order_date) читаются одним проходом через JDBC: у каждого клиента есть битовая маска
+ * месяцев с заказами (месяцы нумеруются от первого месяца с заказами) и сумма покупок. Когорта клиента -
+ * младший бит маски, поэтому сортировка не нужна. Отчет собирается по маскам и кэшируется до следующего изменения.
+ * <p>
+ * Изменения применяются дельтами. Для этого хранятся вклад каждого заказа (клиент, месяц, сумма) в примитивных
+ * массивах по id, 24 байта на заказ, и число заказов клиента в месяце - бит маски снимается, когда оно
+ * падает до нуля. Измененный или удаленный заказ вычитает прежний вклад и добавляет новый, новая цена товара
+ * меняет суммы только заказов с этим товаром. Перестройку вызывает лишь заказ вне месяцев индекса.
+ */
+@Component
+@Transactional(readOnly = true)
+public class CohortIndex extends IncrementalIndex {
+    private static final Logger log = LoggerFactory.getLogger(CohortIndex.class);
+
+    private static final String ORDERS_SQL = "SELECT id, customer_id, order_date FROM product_orders";
+
+    private final OrderProductAdjacency adjacency;
+    private final JdbcTemplate jdbcTemplate;
+
+    private final IdOrdinals customers = new IdOrdinals();
+    private int firstMonth;
+    private int lastOffset;
+    private int words = 1;
+    private long[] activity = new long[0];
+    private double[] spent = new double[0];
+    // заказов клиента в месяце, ключ - customer * 64 * words + месяц
+    private IntCounts monthOrders = new IntCounts();
+    private boolean outOfRange;
+
+    // вклад заказов по возрастанию id; клиент -1 - заказ ни на что не влияет
+    private int orderCount;
+    private long[] orderIds = new long[64];
+    private int[] orderCustomers = new int[64];
+    private int[] orderMonths = new int[64];
+    private double[] orderTotals = new double[64];
+
+    private List<CohortRetention> report;
+
+    public CohortIndex(OrderProductAdjacency adjacency, DataSource dataSource) {
+        this.adjacency = adjacency;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Когорты по возрастанию месяца первого заказа; удержание считается по текущий месяц включительно
+     */
+    public synchronized List<CohortRetention> cohorts() {
+        ensureCurrent();
+        if (report == null) {
+            report = buildReport();
+        }
+        return report;
+    }
+
+    @Override
+    protected void rebuild() {
+        long startTime = System.currentTimeMillis();
+        customers.clear();
+        monthOrders = new IntCounts();
+        orderCount = 0;
+        outOfRange = false;
+        report = null;
+
+        int currentMonth = monthOf(LocalDate.now());
+        int[] range = jdbcTemplate.queryForObject("SELECT MIN(order_date), MAX(order_date) FROM product_orders",
+                (rs, row) -> {
+                    LocalDate min = rs.getObject(1, LocalDate.class);
+                    LocalDate max = rs.getObject(2, LocalDate.class);
+                    return min != null
+                            ? new int[]{monthOf(min), Math.max(monthOf(max), currentMonth)}
+                            : new int[]{currentMonth, currentMonth};
+                });
+        firstMonth = range[0];
+        lastOffset = range[1] - firstMonth;
+        words = lastOffset / 64 + 1;
+        activity = new long[64 * words];
+        spent = new double[64];
+
+        // заказ вне месяцев, добавленный после подсчета диапазона, придет событием и вызовет перестройку
+        jdbcTemplate.query(ORDERS_SQL + " ORDER BY id",
+                (ResultSet rs) -> addOrder(insertOrder(orderCount, rs.getLong(1)), rs));
+        log.info("Cohort index built: {} customers over {} months in {} ms",
+                customers.size(), lastOffset + 1, System.currentTimeMillis() - startTime);
+    }
+
+    @Override
+    protected void applyOrderChanges(Set<Long> changedIds) {
+        outOfRange = false;
+        for (Long orderId : new TreeSet<>(changedIds)) {
+            int order = Arrays.binarySearch(orderIds, 0, orderCount, orderId);
+            if (order >= 0) {
+                removeOrder(order);
+            } else {
+                order = insertOrder(-order - 1, orderId);
+            }
+            int row = order;
+            boolean exists = !jdbcTemplate.query(ORDERS_SQL + " WHERE id = ?", (rs, rowNum) -> {
+                addOrder(row, rs);
+                return orderId;
+            }, orderId).isEmpty();
+            if (!exists) {
+                deleteOrder(row);
+            }
+        }
+        if (outOfRange) {
+            rebuild();
+        }
+    }
+
+    @Override
+    protected void applyCustomerChanges(Set<Long> customerIds) {
+        // когорты зависят только от заказов
+    }
+
+    @Override
+    protected void applyProductChanges(Set<Long> productIds) {
+        // удаленный товар уже снят с заказов, и эти заказы пришли своими событиями
+        for (Long productId : productIds) {
+            for (long orderId : adjacency.ordersOf(productId)) {
+                int order = Arrays.binarySearch(orderIds, 0, orderCount, orderId);
+                int customer = order >= 0 ? orderCustomers[order] : -1;
+                if (customer >= 0) {
+                    double total = adjacency.orderTotal(orderId);
+                    spent[customer] += total - orderTotals[order];
+                    orderTotals[order] = total;
+                    report = null;
+                }
+            }
+        }
+    }
+
+    // вклад строки (id, customer_id, order_date) в слот order
+    private void addOrder(int order, ResultSet rs) throws SQLException {
+        orderCustomers[order] = -1;
+        long customerId = rs.getLong(2);
+        if (rs.wasNull()) {
+            return;
+        }
+        LocalDate orderDate = rs.getObject(3, LocalDate.class);
+        if (orderDate == null) {
+            return;
+        }
+        int offset = monthOf(orderDate) - firstMonth;
+        if (offset < 0 || offset >= 64 * words) {
+            outOfRange = true;
+            return;
+        }
+        int customer = customers.assign(customerId);
+        if (customer >= spent.length) {
+            spent = Arrays.copyOf(spent, Math.max(customer + 1, spent.length * 2));
+            activity = Arrays.copyOf(activity, spent.length * words);
+        }
+        double total = adjacency.orderTotal(orderIds[order]);
+        orderCustomers[order] = customer;
+        orderMonths[order] = offset;
+        orderTotals[order] = total;
+        countMonth(customer, offset, 1);
+        spent[customer] += total;
+        lastOffset = Math.max(lastOffset, offset);
+        report = null;
+    }
+
+    // снять вклад заказа, оставив слот
+    private void removeOrder(int order) {
+        int customer = orderCustomers[order];
+        if (customer < 0) {
+            return;
+        }
+        spent[customer] -= orderTotals[order];
+        countMonth(customer, orderMonths[order], -1);
+        orderCustomers[order] = -1;
+        report = null;
+    }
+
+    private void countMonth(int customer, int offset, int delta) {
+        int key = customer * 64 * words + offset;
+        monthOrders.add(key, delta);
+        int word = customer * words + (offset >>> 6);
+        if (monthOrders.get(key) > 0) {
+            activity[word] |= 1L << offset;
+        } else {
+            activity[word] &= ~(1L << offset);
+        }
+    }
+
+    // пустой слот для id на позиции at; при перестройке id идут по возрастанию и слоты добавляются в конец
+    private int insertOrder(int at, long orderId) {
+        if (orderCount == orderIds.length) {
+            int capacity = orderCount * 2;
+            orderIds = Arrays.copyOf(orderIds, capacity);
+            orderCustomers = Arrays.copyOf(orderCustomers, capacity);
+            orderMonths = Arrays.copyOf(orderMonths, capacity);
+            orderTotals = Arrays.copyOf(orderTotals, capacity);
+        }
+        int tail = orderCount - at;
+        System.arraycopy(orderIds, at, orderIds, at + 1, tail);
+        System.arraycopy(orderCustomers, at, orderCustomers, at + 1, tail);
+        System.arraycopy(orderMonths, at, orderMonths, at + 1, tail);
+        System.arraycopy(orderTotals, at, orderTotals, at + 1, tail);
+        orderIds[at] = orderId;
+        orderCustomers[at] = -1;
+        orderCount++;
+        return at;
+    }
+
+    private void deleteOrder(int at) {
+        int tail = orderCount - at - 1;
+        System.arraycopy(orderIds, at + 1, orderIds, at, tail);
+        System.arraycopy(orderCustomers, at + 1, orderCustomers, at, tail);
+        System.arraycopy(orderMonths, at + 1, orderMonths, at, tail);
+        System.arraycopy(orderTotals, at + 1, orderTotals, at, tail);
+        orderCount--;
+    }
+
+    private List<CohortRetention> buildReport() {
+        int months = lastOffset + 1;
+        int[][] active = new int[months][];
+        double[] revenue = new double[months];
+        for (int customer = 0; customer < customers.size(); customer++) {
+            int cohort = -1;
+            for (int word = 0; word < words; word++) {
+                for (long bits = activity[customer * words + word]; bits != 0; bits &= bits - 1) {
+                    int month = 64 * word + Long.numberOfTrailingZeros(bits);
+                    if (cohort < 0) {
+                        cohort = month;
+                        if (active[cohort] == null) {
+                            active[cohort] = new int[months - cohort];
+                        }
+                        revenue[cohort] += spent[customer];
+                    }
+                    active[cohort][month - cohort]++;
+                }
+            }
+        }
+
+        List<CohortRetention> result = new ArrayList<>();
+        for (int cohort = 0; cohort < months; cohort++) {
+            if (active[cohort] == null) {
+                continue;
+            }
+            List<Integer> counts = Arrays.stream(active[cohort]).boxed().toList();
+            result.add(new CohortRetention(yearMonthOf(firstMonth + cohort), active[cohort][0], counts, revenue[cohort]));
+        }
+        return List.copyOf(result);
+    }
+
+    private static int monthOf(LocalDate date) {
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    private static YearMonth yearMonthOf(int month) {
+        return YearMonth.of(month / 12, month % 12 + 1);
+    }
+}
@@ -0,0 +1,20 @@
+package space.gavinklfong.demo.streamapi.index;
+
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * Когорта клиентов с первым заказом в месяце cohort: activeCustomers.get(k) - сколько из них
+ * делали заказы через k месяцев после первого (k = 0 - размер когорты), revenue - сумма всех их заказов
+ */
+public record CohortRetention(YearMonth cohort, int customers, List<Integer> activeCustomers, double revenue) {
+
+    /**
+     * Доля клиентов когорты, делавших заказы через monthsAfter месяцев после первого
+     */
+    public double retention(int monthsAfter) {
+        return monthsAfter < activeCustomers.size() && customers > 0
+                ? (double) activeCustomers.get(monthsAfter) / customers
+                : 0.0;
+    }
+}
@@ -0,0 +1,10 @@
+package space.gavinklfong.demo.streamapi.index;
+
+import java.time.LocalDate;
+
+/**
+ * Сводка по заказам клиента: количество, сумма покупок, даты первого и последнего заказа
+ */
+public record CustomerProfile(long customerId, int orderCount, double totalSpent,
+                              LocalDate firstOrderDate, LocalDate lastOrderDate) {
+}
@@ -0,0 +1,218 @@
+package space.gavinklfong.demo.streamapi.index;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.repos.OrderRepo;
+import space.gavinklfong.demo.streamapi.repos.ProductRepo;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Поддерживаемые сводки {@link CustomerProfile} по клиентам с заказами и рейтинги клиентов
+ * по количеству заказов, сумме покупок и дате последнего заказа.
+ * <p>
+ * Рейтинги - отсортированные множества сводок, поэтому первые K клиентов читаются за O(K),
+ * а изменение заказа пересчитывает только сводку его клиента. При равенстве выше клиент
+ * с меньшим id.
+ */
+@Component
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+public class CustomerProfileIndex extends IncrementalIndex {
+    private final OrderRepo orderRepo;
+    private final ProductRepo productRepo;
+    private final OrderProductAdjacency adjacency;
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerProfileIndex.class);
+
+    private static final Comparator<CustomerProfile> BY_CUSTOMER_ID =
+            Comparator.comparingLong(CustomerProfile::customerId);
+
+    private final Map<Long, OrderEntry> orders = new HashMap<>();
+    private final Map<Long, ProfileBuilder> builders = new HashMap<>();
+    private final Map<Long, CustomerProfile> profiles = new HashMap<>();
+
+    private final NavigableSet<CustomerProfile> byOrderCount = new TreeSet<>(
+            Comparator.comparingInt(CustomerProfile::orderCount).reversed().thenComparing(BY_CUSTOMER_ID));
+    private final NavigableSet<CustomerProfile> bySpend = new TreeSet<>(
+            Comparator.comparingDouble(CustomerProfile::totalSpent).reversed().thenComparing(BY_CUSTOMER_ID));
+    private final NavigableSet<CustomerProfile> byLastOrder = new TreeSet<>(
+            Comparator.comparing(CustomerProfile::lastOrderDate, Comparator.nullsLast(Comparator.reverseOrder()))
+                    .thenComparing(BY_CUSTOMER_ID));
+
+    public synchronized Optional<CustomerProfile> profileOf(Long customerId) {
+        ensureCurrent();
+        return Optional.ofNullable(profiles.get(customerId));
+    }
+
+    /**
+     * Клиенты с наибольшим количеством заказов, не больше limit
+     */
+    public synchronized List<CustomerProfile> topByOrderCount(int limit) {
+        ensureCurrent();
+        return byOrderCount.stream().limit(limit).toList();
+    }
+
+    /**
+     * Клиенты с наибольшей суммой покупок, не больше limit
+     */
+    public synchronized List<CustomerProfile> topBySpend(int limit) {
+        ensureCurrent();
+        return bySpend.stream().limit(limit).toList();
+    }
+
+    /**
+     * Клиенты с самыми поздними заказами, не больше limit
+     */
+    public synchronized List<CustomerProfile> mostRecentlyActive(int limit) {
+        ensureCurrent();
+        return byLastOrder.stream().limit(limit).toList();
+    }
+
+    /**
+     * Сумма покупок каждого клиента с заказами
+     */
+    public synchronized Map<Long, Double> totalSpentByCustomer() {
+        ensureCurrent();
+        Map<Long, Double> result = new LinkedHashMap<>();
+        bySpend.forEach(profile -> result.put(profile.customerId(), profile.totalSpent()));
+        return result;
+    }
+
+    @Override
+    protected void rebuild() {
+        orders.clear();
+        builders.clear();
+        profiles.clear();
+        byOrderCount.clear();
+        bySpend.clear();
+        byLastOrder.clear();
+        orderRepo.findAll().forEach(this::addOrder);
+        List.copyOf(builders.keySet()).forEach(this::publish);
+        log.info("Customer profile index built: {} customers with orders", profiles.size());
+    }
+
+    @Override
+    protected void applyOrderChanges(Set<Long> orderIds) {
+        Set<Long> affectedCustomers = new HashSet<>();
+        for (Long orderId : orderIds) {
+            OrderEntry removed = removeOrder(orderId);
+            if (removed != null) {
+                affectedCustomers.add(removed.customerId());
+            }
+            orderRepo.findById(orderId).ifPresent(order -> {
+                if (addOrder(order)) {
+                    affectedCustomers.add(order.getCustomer().getId());
+                }
+            });
+        }
+        affectedCustomers.forEach(this::publish);
+    }
+
+    @Override
+    protected void applyCustomerChanges(Set<Long> customerIds) {
+        // имя и tier клиента в сводку не входят, заказы удаленного клиента придут отдельными событиями
+    }
+
+    @Override
+    protected void applyProductChanges(Set<Long> productIds) {
+        Set<Long> affectedOrders = new HashSet<>();
+        for (Long productId : productIds) {
+            Optional<Product> product = productRepo.findById(productId);
+            if (product.isEmpty()) {
+                rebuild();
+                return;
+            }
+            product.get().getOrders().forEach(order -> affectedOrders.add(order.getId()));
+        }
+        applyOrderChanges(affectedOrders);
+    }
+
+    private boolean addOrder(Order order) {
+        if (order.getCustomer() == null) {
+            return false;
+        }
+        double total = adjacency.orderTotal(order.getId());
+        OrderEntry entry = new OrderEntry(order.getCustomer().getId(), total, order.getOrderDate());
+        orders.put(order.getId(), entry);
+        builders.computeIfAbsent(entry.customerId(), id -> new ProfileBuilder()).add(entry);
+        return true;
+    }
+
+    private OrderEntry removeOrder(Long orderId) {
+        OrderEntry entry = orders.remove(orderId);
+        if (entry != null) {
+            builders.get(entry.customerId()).remove(entry);
+        }
+        return entry;
+    }
+
+    // заменить опубликованную сводку клиента во всех рейтингах
+    private void publish(Long customerId) {
+        CustomerProfile previous = profiles.remove(customerId);
+        if (previous != null) {
+            byOrderCount.remove(previous);
+            bySpend.remove(previous);
+            byLastOrder.remove(previous);
+        }
+
+        ProfileBuilder builder = builders.get(customerId);
+        if (builder == null || builder.orderCount == 0) {
+            builders.remove(customerId);
+            return;
+        }
+        CustomerProfile profile = builder.build(customerId);
+        profiles.put(customerId, profile);
+        byOrderCount.add(profile);
+        bySpend.add(profile);
+        byLastOrder.add(profile);
+    }
+
+    private static final class ProfileBuilder {
+        private int orderCount;
+        private double totalSpent;
+        // даты заказов с кратностью - чтобы первая и последняя дата пересчитывались при удалении
+        private final TreeMap<LocalDate, Integer> orderDates = new TreeMap<>();
+
+        void add(OrderEntry entry) {
+            orderCount++;
+            totalSpent += entry.total();
+            if (entry.orderDate() != null) {
+                orderDates.merge(entry.orderDate(), 1, Integer::sum);
+            }
+        }
+
+        void remove(OrderEntry entry) {
+            orderCount--;
+            totalSpent -= entry.total();
+            if (entry.orderDate() != null) {
+                orderDates.computeIfPresent(entry.orderDate(), (date, count) -> count > 1 ? count - 1 : null);
+            }
+        }
+
+        CustomerProfile build(long customerId) {
+            return new CustomerProfile(customerId, orderCount, totalSpent,
+                    orderDates.isEmpty() ? null : orderDates.firstKey(),
+                    orderDates.isEmpty() ? null : orderDates.lastKey());
+        }
+    }
+
+    private record OrderEntry(long customerId, double total, LocalDate orderDate) {
+    }
+}
@@ -0,0 +1,260 @@
+package space.gavinklfong.demo.streamapi.index;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import space.gavinklfong.demo.streamapi.models.Customer;
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.repos.CustomerRepo;
+import space.gavinklfong.demo.streamapi.repos.OrderRepo;
+import space.gavinklfong.demo.streamapi.repos.ProductRepo;
+
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Bitmap-индексы по заказам (статус, категория товара, месяц) и клиентам (tier).
+ * <p>
+ * Строки нумеруются плотными ordinal'ами, каждое значение хранится как {@link BitSet}.
+ * Составные условия вида "клиенты tier 2, заказавшие Books в феврале 2021 со статусом DELIVERED"
+ * считаются побитовыми операциями над результатами методов {@link View} внутри {@link #query(Function)}.
+ */
+@Component
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+public class EntityBitmapIndex extends IncrementalIndex {
+    private final OrderRepo orderRepo;
+    private final CustomerRepo customerRepo;
+    private final ProductRepo productRepo;
+
+    private static final Logger log = LoggerFactory.getLogger(EntityBitmapIndex.class);
+
+    private final IdOrdinals orderOrdinals = new IdOrdinals();
+    private final IdOrdinals customerOrdinals = new IdOrdinals();
+    private final BitSet liveOrders = new BitSet();
+    private final BitSet liveCustomers = new BitSet();
+    private int[] orderCustomer = new int[64];
+
+    private final BitmapIndex<String> ordersByStatus = new BitmapIndex<>();
+    private final BitmapIndex<String> ordersByCategory = new BitmapIndex<>();
+    private final BitmapIndex<YearMonth> ordersByMonth = new BitmapIndex<>();
+    private final BitmapIndex<Integer> customersByTier = new BitmapIndex<>();
+
+    private final View view = new View();
+
+    /**
+     * Выполнить запрос над индексом.
+     * <p>
+     * Комбинирование BitSet'ов и перевод ordinal'ов обратно в id идут под одной блокировкой:
+     * перестройка индекса между ними перенумеровала бы строки и подменила результат.
+     * Поэтому {@link View} можно использовать только внутри query.
+     */
+    public synchronized <T> T query(Function<View, T> query) {
+        ensureCurrent();
+        return query.apply(view);
+    }
+
+    /**
+     * Операции над индексом, доступные внутри {@link #query(Function)}
+     */
+    public class View {
+
+        private View() {
+        }
+
+        /**
+         * Все существующие заказы
+         */
+        public BitSet allOrders() {
+            checkLocked();
+            return (BitSet) liveOrders.clone();
+        }
+
+        /**
+         * Заказы со статусом (без учёта регистра)
+         */
+        public BitSet ordersWithStatus(String status) {
+            checkLocked();
+            return ordersByStatus.get(normalize(status));
+        }
+
+        /**
+         * Заказы, содержащие хотя бы один товар категории (без учёта регистра)
+         */
+        public BitSet ordersWithCategory(String category) {
+            checkLocked();
+            return ordersByCategory.get(normalize(category));
+        }
+
+        /**
+         * Заказы, сделанные в указанном месяце
+         */
+        public BitSet ordersInMonth(YearMonth month) {
+            checkLocked();
+            return ordersByMonth.get(month);
+        }
+
+        /**
+         * Все существующие клиенты
+         */
+        public BitSet allCustomers() {
+            checkLocked();
+            return (BitSet) liveCustomers.clone();
+        }
+
+        /**
+         * Клиенты определенного tier
+         */
+        public BitSet customersWithTier(Integer tier) {
+            checkLocked();
+            return customersByTier.get(tier);
+        }
+
+        /**
+         * Клиенты, которым принадлежат заказы
+         */
+        public BitSet customersOf(BitSet orders) {
+            checkLocked();
+            BitSet customers = new BitSet();
+            for (int o = orders.nextSetBit(0); o >= 0 && o < orderOrdinals.size(); o = orders.nextSetBit(o + 1)) {
+                if (orderCustomer[o] >= 0) {
+                    customers.set(orderCustomer[o]);
+                }
+            }
+            return customers;
+        }
+
+        /**
+         * Заказы, принадлежащие клиентам
+         */
+        public BitSet ordersOf(BitSet customers) {
+            checkLocked();
+            BitSet orders = new BitSet();
+            for (int o = liveOrders.nextSetBit(0); o >= 0; o = liveOrders.nextSetBit(o + 1)) {
+                if (orderCustomer[o] >= 0 && customers.get(orderCustomer[o])) {
+                    orders.set(o);
+                }
+            }
+            return orders;
+        }
+
+        public List<Long> orderIds(BitSet orders) {
+            checkLocked();
+            return orderOrdinals.idsOf(orders);
+        }
+
+        public List<Long> customerIds(BitSet customers) {
+            checkLocked();
+            return customerOrdinals.idsOf(customers);
+        }
+
+        private void checkLocked() {
+            if (!Thread.holdsLock(EntityBitmapIndex.this)) {
+                throw new IllegalStateException("EntityBitmapIndex.View is only valid inside query()");
+            }
+        }
+    }
+
+    @Override
+    protected void rebuild() {
+        orderOrdinals.clear();
+        customerOrdinals.clear();
+        liveOrders.clear();
+        liveCustomers.clear();
+        ordersByStatus.clear();
+        ordersByCategory.clear();
+        ordersByMonth.clear();
+        customersByTier.clear();
+
+        customerRepo.findAll().forEach(this::indexCustomer);
+        orderRepo.findAll().forEach(this::indexOrder);
+
+        log.info("Bitmap index built: {} orders, {} customers", liveOrders.cardinality(), liveCustomers.cardinality());
+    }
+
+    @Override
+    protected void applyOrderChanges(Set<Long> orderIds) {
+        for (Long orderId : orderIds) {
+            unindexOrder(orderOrdinals.assign(orderId));
+            orderRepo.findById(orderId).ifPresent(this::indexOrder);
+        }
+    }
+
+    @Override
+    protected void applyCustomerChanges(Set<Long> customerIds) {
+        for (Long customerId : customerIds) {
+            int ordinal = customerOrdinals.assign(customerId);
+            liveCustomers.clear(ordinal);
+            customersByTier.remove(ordinal);
+            customerRepo.findById(customerId).ifPresent(this::indexCustomer);
+        }
+    }
+
+    @Override
+    protected void applyProductChanges(Set<Long> productIds) {
+        Set<Long> affectedOrders = new HashSet<>();
+        for (Long productId : productIds) {
+            Optional<Product> product = productRepo.findById(productId);
+            if (product.isEmpty()) {
+                // неизвестно, в каких заказах был удалённый товар
+                rebuild();
+                return;
+            }
+            product.get().getOrders().forEach(order -> affectedOrders.add(order.getId()));
+        }
+        applyOrderChanges(affectedOrders);
+    }
+
+    private void indexCustomer(Customer customer) {
+        int ordinal = customerOrdinals.assign(customer.getId());
+        liveCustomers.set(ordinal);
+        customersByTier.add(customer.getTier(), ordinal);
+    }
+
+    private void indexOrder(Order order) {
+        int ordinal = orderOrdinals.assign(order.getId());
+        ensureOrderCapacity(ordinal);
+        liveOrders.set(ordinal);
+        orderCustomer[ordinal] = order.getCustomer() != null
+                ? customerOrdinals.assign(order.getCustomer().getId())
+                : -1;
+        ordersByStatus.add(normalize(order.getStatus()), ordinal);
+        if (order.getOrderDate() != null) {
+            ordersByMonth.add(YearMonth.from(order.getOrderDate()), ordinal);
+        }
+        for (Product product : order.getProducts()) {
+            ordersByCategory.add(normalize(product.getCategory()), ordinal);
+        }
+    }
+
+    private void unindexOrder(int ordinal) {
+        ensureOrderCapacity(ordinal);
+        liveOrders.clear(ordinal);
+        orderCustomer[ordinal] = -1;
+        ordersByStatus.remove(ordinal);
+        ordersByCategory.remove(ordinal);
+        ordersByMonth.remove(ordinal);
+    }
+
+    private void ensureOrderCapacity(int ordinal) {
+        if (ordinal >= orderCustomer.length) {
+            int oldLength = orderCustomer.length;
+            orderCustomer = Arrays.copyOf(orderCustomer, Math.max(ordinal + 1, oldLength * 2));
+            Arrays.fill(orderCustomer, oldLength, orderCustomer.length, -1);
+        }
+    }
+
+    private static String normalize(String value) {
+        return value != null ? value.toLowerCase(Locale.ROOT) : null;
+    }
+}
@@ -0,0 +1,19 @@
+package space.gavinklfong.demo.streamapi.index;
+
+/**
+ * Получатель уведомлений об изменении сущностей (создание, изменение, удаление).
+ * <p>
+ * Уведомление несёт только идентификатор: получатель сам перечитывает сущность,
+ * когда ему понадобятся актуальные данные.
+ */
+public interface EntityChangeHandler {
+
+    default void orderChanged(Long orderId) {
+    }
+
+    default void customerChanged(Long customerId) {
+    }
+
+    default void productChanged(Long productId) {
+    }
+}
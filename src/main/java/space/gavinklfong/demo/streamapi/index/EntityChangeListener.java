@@ -0,0 +1,94 @@
+package space.gavinklfong.demo.streamapi.index;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import space.gavinklfong.demo.streamapi.models.Customer;
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.models.Product;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * JPA entity listener, пересылающий изменения сущностей всем {@link EntityChangeHandler}.
+ * <p>
+ * Hibernate создаёт его через Spring bean container, поэтому обработчики достаются лениво
+ * через {@link ObjectProvider} - иначе получится цикл с EntityManagerFactory.
+ * <p>
+ * Post-события приходят при flush, до коммита: другие транзакции ещё не видят эти строки,
+ * а после отката их не будет вовсе. Поэтому внутри транзакции идентификаторы копятся
+ * и рассылаются только после коммита, при откате - отбрасываются.
+ * <p>
+ * Изменение только товаров заказа entity-событий не дает - его передает {@link OrderProductsChangeIntegrator}.
+ */
+@Component
+@RequiredArgsConstructor
+public class EntityChangeListener {
+    private final ObjectProvider<EntityChangeHandler> handlers;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onEntityChange(Object entity) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            dispatch(entity);
+            return;
+        }
+        PendingChanges pending = (PendingChanges) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new PendingChanges();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(pending);
+        }
+        pending.add(entity);
+    }
+
+    private void dispatch(Object entity) {
+        if (entity instanceof Order order) {
+            handlers.forEach(handler -> handler.orderChanged(order.getId()));
+        } else if (entity instanceof Customer customer) {
+            handlers.forEach(handler -> handler.customerChanged(customer.getId()));
+        } else if (entity instanceof Product product) {
+            handlers.forEach(handler -> handler.productChanged(product.getId()));
+        }
+    }
+
+    /**
+     * Изменения одной транзакции, ждущие её коммита
+     */
+    private class PendingChanges implements TransactionSynchronization {
+        private final Set<Long> orders = new LinkedHashSet<>();
+        private final Set<Long> customers = new LinkedHashSet<>();
+        private final Set<Long> products = new LinkedHashSet<>();
+
+        void add(Object entity) {
+            if (entity instanceof Order order) {
+                orders.add(order.getId());
+            } else if (entity instanceof Customer customer) {
+                customers.add(customer.getId());
+            } else if (entity instanceof Product product) {
+                products.add(product.getId());
+            }
+        }
+
+        @Override
+        public void afterCommit() {
+            handlers.forEach(handler -> {
+                products.forEach(handler::productChanged);
+                customers.forEach(handler::customerChanged);
+                orders.forEach(handler::orderChanged);
+            });
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(EntityChangeListener.this);
+        }
+    }
+}
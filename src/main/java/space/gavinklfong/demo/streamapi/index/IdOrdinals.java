@@ -0,0 +1,63 @@
+package space.gavinklfong.demo.streamapi.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Плотная нумерация идентификаторов сущностей: id -> ordinal (0, 1, 2, ...) и обратно.
+ * Ordinal, однажды выданный id, не переиспользуется.
+ */
+public class IdOrdinals {
+    private final Map<Long, Integer> ordinals = new HashMap<>();
+    private long[] ids = new long[64];
+    private int size;
+
+    /**
+     * Получить ordinal для id, выдав новый при первом обращении
+     */
+    public int assign(Long id) {
+        Integer ordinal = ordinals.get(id);
+        if (ordinal != null) {
+            return ordinal;
+        }
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        ids[size] = id;
+        ordinals.put(id, size);
+        return size++;
+    }
+
+    /**
+     * Получить ordinal для id или -1, если id ещё не встречался
+     */
+    public int ordinalOf(Long id) {
+        Integer ordinal = ordinals.get(id);
+        return ordinal != null ? ordinal : -1;
+    }
+
+    public long idAt(int ordinal) {
+        return ids[ordinal];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public List<Long> idsOf(BitSet bits) {
+        List<Long> result = new ArrayList<>(bits.cardinality());
+        for (int i = bits.nextSetBit(0); i >= 0 && i < size; i = bits.nextSetBit(i + 1)) {
+            result.add(ids[i]);
+        }
+        return result;
+    }
+
+    public void clear() {
+        ordinals.clear();
+        size = 0;
+    }
+}
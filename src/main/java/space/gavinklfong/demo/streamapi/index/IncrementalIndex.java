@@ -0,0 +1,92 @@
+package space.gavinklfong.demo.streamapi.index;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Базовый класс для in-memory индексов, которые строятся лениво при первом обращении
+ * и затем догоняют изменения сущностей по накопленным идентификаторам.
+ * <p>
+ * Наследники вызывают {@link #ensureCurrent()} из своих synchronized методов чтения
+ * внутри транзакции, чтобы можно было перечитать изменённые сущности.
+ * По умолчанию любое изменение приводит к полной перестройке.
+ */
+public abstract class IncrementalIndex implements EntityChangeHandler {
+    private final Set<Long> changedOrders = ConcurrentHashMap.newKeySet();
+    private final Set<Long> changedCustomers = ConcurrentHashMap.newKeySet();
+    private final Set<Long> changedProducts = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean built;
+
+    @Override
+    public void orderChanged(Long orderId) {
+        changedOrders.add(orderId);
+    }
+
+    @Override
+    public void customerChanged(Long customerId) {
+        changedCustomers.add(customerId);
+    }
+
+    @Override
+    public void productChanged(Long productId) {
+        changedProducts.add(productId);
+    }
+
+    /**
+     * Сбросить индекс: он будет полностью перестроен при следующем обращении
+     */
+    public void invalidate() {
+        built = false;
+    }
+
+    protected synchronized void ensureCurrent() {
+        if (!built) {
+            changedOrders.clear();
+            changedCustomers.clear();
+            changedProducts.clear();
+            rebuild();
+            built = true;
+            return;
+        }
+
+        Set<Long> products = drain(changedProducts);
+        Set<Long> customers = drain(changedCustomers);
+        Set<Long> orders = drain(changedOrders);
+
+        if (!products.isEmpty()) {
+            applyProductChanges(products);
+        }
+        if (!customers.isEmpty()) {
+            applyCustomerChanges(customers);
+        }
+        if (!orders.isEmpty()) {
+            applyOrderChanges(orders);
+        }
+    }
+
+    protected abstract void rebuild();
+
+    protected void applyOrderChanges(Set<Long> orderIds) {
+        rebuild();
+    }
+
+    protected void applyCustomerChanges(Set<Long> customerIds) {
+        rebuild();
+    }
+
+    protected void applyProductChanges(Set<Long> productIds) {
+        rebuild();
+    }
+
+    private static Set<Long> drain(Set<Long> source) {
+        Set<Long> drained = new HashSet<>();
+        for (Iterator<Long> it = source.iterator(); it.hasNext(); ) {
+            drained.add(it.next());
+            it.remove();
+        }
+        return drained;
+    }
+}
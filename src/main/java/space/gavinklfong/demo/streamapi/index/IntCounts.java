@@ -0,0 +1,159 @@
+package space.gavinklfong.demo.streamapi.index;
+
+import java.util.Arrays;
+
+/**
+ * Счетчики по int-ключам в открытой адресации: два параллельных массива без боксинга.
+ * <p>
+ * Ключи, чей счетчик опустился до нуля, остаются в таблице и выбрасываются
+ * при следующем расширении.
+ */
+public class IntCounts {
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private int[] counts;
+    private int used;
+
+    public IntCounts() {
+        this(8);
+    }
+
+    public IntCounts(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+        keys = new int[capacity];
+        counts = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Прибавить delta к счетчику ключа (ключ - неотрицательный)
+     */
+    public void add(int key, int delta) {
+        int slot = slot(key);
+        if (keys[slot] == EMPTY) {
+            if (delta == 0) {
+                return;
+            }
+            keys[slot] = key;
+            if (++used * 4 > keys.length * 3) {
+                counts[slot] = delta;
+                grow();
+                return;
+            }
+        }
+        counts[slot] += delta;
+    }
+
+    public int get(int key) {
+        int slot = slot(key);
+        return keys[slot] == EMPTY ? 0 : counts[slot];
+    }
+
+    public void addAll(IntCounts other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != EMPTY && other.counts[i] != 0) {
+                add(other.keys[i], other.counts[i]);
+            }
+        }
+    }
+
+    /**
+     * Ключи с наибольшими счетчиками, по убыванию счетчика, при равенстве - по возрастанию ключа
+     */
+    public int[] top(int limit) {
+        // куча из limit упакованных пар (счетчик, ключ), в корне - худшая из отобранных
+        long[] heap = new long[Math.max(0, limit)];
+        int size = 0;
+        for (int i = 0; i < keys.length && limit > 0; i++) {
+            if (keys[i] == EMPTY || counts[i] <= 0) {
+                continue;
+            }
+            long packed = ((long) counts[i] << 32) | (Integer.MAX_VALUE - keys[i]);
+            if (size < limit) {
+                heap[size] = packed;
+                siftUp(heap, size++);
+            } else if (packed > heap[0]) {
+                heap[0] = packed;
+                siftDown(heap, size);
+            }
+        }
+        Arrays.sort(heap, 0, size);
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = Integer.MAX_VALUE - (int) heap[size - 1 - i];
+        }
+        return result;
+    }
+
+    private int slot(int key) {
+        int mask = keys.length - 1;
+        int hash = key * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldCounts = counts;
+        int live = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY && oldCounts[i] != 0) {
+                live++;
+            }
+        }
+        int capacity = live * 2 > oldKeys.length ? oldKeys.length * 2 : oldKeys.length;
+        keys = new int[capacity];
+        counts = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        used = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY && oldCounts[i] != 0) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+                used++;
+            }
+        }
+    }
+
+    private static void siftUp(long[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= heap[i]) {
+                return;
+            }
+            swap(heap, i, parent);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        int i = 0;
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && heap[left] < heap[smallest]) {
+                smallest = left;
+            }
+            if (right < size && heap[right] < heap[smallest]) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(heap, i, smallest);
+            i = smallest;
+        }
+    }
+
+    private static void swap(long[] heap, int a, int b) {
+        long tmp = heap[a];
+        heap[a] = heap[b];
+        heap[b] = tmp;
+    }
+}
@@ -0,0 +1,317 @@
+package space.gavinklfong.demo.streamapi.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.repos.CustomerRepo;
+import space.gavinklfong.demo.streamapi.repos.OrderRepo;
+import space.gavinklfong.demo.streamapi.repos.ProductRepo;
+import space.gavinklfong.demo.streamapi.scan.PartitionedOrderScanner;
+import space.gavinklfong.demo.streamapi.sketch.QuantileHistogram;
+
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+/**
+ * Сроки доставки (deliveryDate - orderDate, в днях) в гистограммах {@link QuantileHistogram}:
+ * по всем заказам, по категориям товаров, tier клиента, статусу и месяцу заказа.
+ * <p>
+ * Память гистограмм не зависит от числа заказов. Чтобы вычитать прежний срок измененного заказа, для каждого
+ * учтенного заказа хранятся id и упакованные срок и номер сочетания групп (категории, tier, статус, месяц) -
+ * 16 байт в примитивных массивах; различных сочетаний намного меньше, чем заказов, и они не удаляются.
+ * <p>
+ * Перестройка идет параллельно по диапазонам id через {@link PartitionedOrderScanner}, частичные результаты
+ * складываются. Сканер видит только закоммиченные строки, поэтому и изменения перечитываются в отдельной
+ * read-only транзакции: индекс не учитывает незакоммиченные строки вызывающего, а после коммита они придут
+ * событиями. Заказы без дат и с доставкой раньше заказа не учитываются. Категории сравниваются без учета
+ * регистра, имя категории - последнее встреченное написание.
+ */
+@Component
+@Transactional(readOnly = true)
+public class LeadTimeIndex extends IncrementalIndex {
+    private static final Logger log = LoggerFactory.getLogger(LeadTimeIndex.class);
+
+    private final PartitionedOrderScanner orderScanner;
+    private final OrderRepo orderRepo;
+    private final CustomerRepo customerRepo;
+    private final ProductRepo productRepo;
+    private final TransactionTemplate committedReads;
+
+    private LeadTimes leadTimes = new LeadTimes();
+
+    public LeadTimeIndex(PartitionedOrderScanner orderScanner, OrderRepo orderRepo, CustomerRepo customerRepo,
+                         ProductRepo productRepo, PlatformTransactionManager transactionManager) {
+        this.orderScanner = orderScanner;
+        this.orderRepo = orderRepo;
+        this.customerRepo = customerRepo;
+        this.productRepo = productRepo;
+        this.committedReads = new TransactionTemplate(transactionManager);
+        this.committedReads.setReadOnly(true);
+        this.committedReads.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public synchronized LeadTimePercentiles overall() {
+        ensureCurrent();
+        return LeadTimePercentiles.of(leadTimes.all);
+    }
+
+    /**
+     * Перцентили по категориям (в написании, как в данных); заказ входит в группу каждой своей категории
+     */
+    public synchronized Map<String, LeadTimePercentiles> byCategory() {
+        ensureCurrent();
+        Map<String, LeadTimePercentiles> result = new LinkedHashMap<>();
+        percentiles(leadTimes.byCategory).forEach((key, percentiles) ->
+                result.put(leadTimes.categoryNames.get(key), percentiles));
+        return result;
+    }
+
+    public synchronized Map<Integer, LeadTimePercentiles> byCustomerTier() {
+        ensureCurrent();
+        return percentiles(leadTimes.byTier);
+    }
+
+    public synchronized Map<String, LeadTimePercentiles> byStatus() {
+        ensureCurrent();
+        return percentiles(leadTimes.byStatus);
+    }
+
+    /**
+     * Перцентили по месяцу заказа, по возрастанию месяца
+     */
+    public synchronized Map<YearMonth, LeadTimePercentiles> byMonth() {
+        ensureCurrent();
+        return percentiles(leadTimes.byMonth);
+    }
+
+    @Override
+    protected void rebuild() {
+        long startTime = System.currentTimeMillis();
+        leadTimes = orderScanner.scan(
+                Collector.of(LeadTimes::new, LeadTimes::append, LeadTimes::merge, LeadTimes::sortById));
+        log.info("Lead time index built: {} orders, {} group combinations in {} ms",
+                leadTimes.orderCount, leadTimes.groups.size(), System.currentTimeMillis() - startTime);
+    }
+
+    @Override
+    protected void applyOrderChanges(Set<Long> orderIds) {
+        committedReads.executeWithoutResult(status -> reapply(orderIds));
+    }
+
+    @Override
+    protected void applyCustomerChanges(Set<Long> customerIds) {
+        // tier мог измениться у клиентов с заказами; удаленные клиенты уходят вместе с заказами
+        committedReads.executeWithoutResult(status -> {
+            Set<Long> affectedOrders = new HashSet<>();
+            customerRepo.findAllById(customerIds).forEach(customer ->
+                    customer.getOrders().forEach(order -> affectedOrders.add(order.getId())));
+            reapply(affectedOrders);
+        });
+    }
+
+    @Override
+    protected void applyProductChanges(Set<Long> productIds) {
+        boolean removed = Boolean.TRUE.equals(committedReads.execute(status -> {
+            List<Product> products = productRepo.findAllById(productIds);
+            if (products.size() < productIds.size()) {
+                return true;
+            }
+            Set<Long> affectedOrders = new HashSet<>();
+            products.forEach(product -> product.getOrders().forEach(order -> affectedOrders.add(order.getId())));
+            reapply(affectedOrders);
+            // у заказа могут быть и другие товары категории в старом написании - побеждает измененный товар
+            products.forEach(leadTimes::nameCategory);
+            return false;
+        }));
+        if (removed) {
+            rebuild();
+        }
+    }
+
+    private void reapply(Set<Long> orderIds) {
+        for (Long orderId : orderIds) {
+            leadTimes.remove(orderId);
+            orderRepo.findById(orderId).ifPresent(leadTimes::add);
+        }
+    }
+
+    private static <K> Map<K, LeadTimePercentiles> percentiles(Map<K, QuantileHistogram> histograms) {
+        return histograms.entrySet().stream()
+                .filter(entry -> entry.getValue().totalCount() > 0)
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> LeadTimePercentiles.of(entry.getValue()),
+                        (a, b) -> a, LinkedHashMap::new));
+    }
+
+    /**
+     * Гистограммы по группам и вклад каждого учтенного заказа (чтобы его можно было вычесть)
+     */
+    private static final class LeadTimes {
+        // учтенные заказы: срок в старших 32 битах вклада, номер сочетания групп - в младших;
+        // по возрастанию id, кроме как во время сканирования
+        private long[] orderIds = new long[64];
+        private long[] contributions = new long[64];
+        private int orderCount;
+        private final List<Groups> groups = new ArrayList<>();
+        private final Map<Groups, Integer> groupOrdinals = new HashMap<>();
+
+        private final QuantileHistogram all = new QuantileHistogram();
+        private final Map<String, QuantileHistogram> byCategory = new HashMap<>();
+        private final Map<String, String> categoryNames = new HashMap<>();
+        private final Map<Integer, QuantileHistogram> byTier = new TreeMap<>();
+        private final Map<String, QuantileHistogram> byStatus = new HashMap<>();
+        private final Map<YearMonth, QuantileHistogram> byMonth = new TreeMap<>();
+
+        /**
+         * Учесть заказ, сохранив порядок id
+         */
+        void add(Order order) {
+            long contribution = contributionOf(order);
+            if (contribution >= 0) {
+                int at = -Arrays.binarySearch(orderIds, 0, orderCount, order.getId()) - 1;
+                insert(at, order.getId(), contribution);
+            }
+        }
+
+        /**
+         * Учесть заказ при сканировании: порядок id восстанавливает {@link #sortById()}
+         */
+        void append(Order order) {
+            long contribution = contributionOf(order);
+            if (contribution >= 0) {
+                insert(orderCount, order.getId(), contribution);
+            }
+        }
+
+        void remove(Long orderId) {
+            int at = Arrays.binarySearch(orderIds, 0, orderCount, orderId);
+            if (at < 0) {
+                return;
+            }
+            long contribution = contributions[at];
+            record((int) (contribution >>> 32), groups.get((int) contribution), -1);
+            System.arraycopy(orderIds, at + 1, orderIds, at, orderCount - at - 1);
+            System.arraycopy(contributions, at + 1, contributions, at, orderCount - at - 1);
+            orderCount--;
+        }
+
+        void nameCategory(Product product) {
+            if (product.getCategory() != null) {
+                categoryNames.put(product.getCategory().toLowerCase(Locale.ROOT), product.getCategory());
+            }
+        }
+
+        LeadTimes merge(LeadTimes other) {
+            // номера сочетаний у частичных результатов свои
+            int[] ordinals = new int[other.groups.size()];
+            for (int i = 0; i < ordinals.length; i++) {
+                ordinals[i] = ordinalOf(other.groups.get(i));
+            }
+            for (int i = 0; i < other.orderCount; i++) {
+                long contribution = other.contributions[i];
+                insert(orderCount, other.orderIds[i], (contribution & ~0xFFFFFFFFL) | ordinals[(int) contribution]);
+            }
+            all.merge(other.all);
+            mergeGroups(byCategory, other.byCategory);
+            categoryNames.putAll(other.categoryNames);
+            mergeGroups(byTier, other.byTier);
+            mergeGroups(byStatus, other.byStatus);
+            mergeGroups(byMonth, other.byMonth);
+            return this;
+        }
+
+        LeadTimes sortById() {
+            long[] sortedIds = Arrays.copyOf(orderIds, orderCount);
+            Arrays.sort(sortedIds);
+            long[] sortedContributions = new long[sortedIds.length];
+            for (int i = 0; i < orderCount; i++) {
+                sortedContributions[Arrays.binarySearch(sortedIds, orderIds[i])] = contributions[i];
+            }
+            orderIds = sortedIds;
+            contributions = sortedContributions;
+            return this;
+        }
+
+        // учесть срок заказа в группах и вернуть его вклад; -1 - заказ не учитывается
+        private long contributionOf(Order order) {
+            if (order.getOrderDate() == null || order.getDeliveryDate() == null) {
+                return -1;
+            }
+            int days = Math.toIntExact(ChronoUnit.DAYS.between(order.getOrderDate(), order.getDeliveryDate()));
+            if (days < 0) {
+                return -1;
+            }
+            Set<String> categories = new HashSet<>();
+            for (Product product : order.getProducts()) {
+                if (product.getCategory() != null) {
+                    categories.add(product.getCategory().toLowerCase(Locale.ROOT));
+                    nameCategory(product);
+                }
+            }
+            Integer tier = order.getCustomer() != null ? order.getCustomer().getTier() : null;
+            Groups orderGroups = new Groups(Set.copyOf(categories), tier, order.getStatus(),
+                    YearMonth.from(order.getOrderDate()));
+            record(days, orderGroups, 1);
+            return ((long) days << 32) | ordinalOf(orderGroups);
+        }
+
+        private int ordinalOf(Groups orderGroups) {
+            return groupOrdinals.computeIfAbsent(orderGroups, key -> {
+                groups.add(key);
+                return groups.size() - 1;
+            });
+        }
+
+        private void insert(int at, long orderId, long contribution) {
+            if (orderCount == orderIds.length) {
+                orderIds = Arrays.copyOf(orderIds, orderCount * 2);
+                contributions = Arrays.copyOf(contributions, orderCount * 2);
+            }
+            System.arraycopy(orderIds, at, orderIds, at + 1, orderCount - at);
+            System.arraycopy(contributions, at, contributions, at + 1, orderCount - at);
+            orderIds[at] = orderId;
+            contributions[at] = contribution;
+            orderCount++;
+        }
+
+        private void record(long days, Groups orderGroups, long count) {
+            all.add(days, count);
+            orderGroups.categories().forEach(category -> group(byCategory, category).add(days, count));
+            if (orderGroups.tier() != null) {
+                group(byTier, orderGroups.tier()).add(days, count);
+            }
+            if (orderGroups.status() != null) {
+                group(byStatus, orderGroups.status()).add(days, count);
+            }
+            group(byMonth, orderGroups.month()).add(days, count);
+        }
+
+        private static <K> QuantileHistogram group(Map<K, QuantileHistogram> groups, K key) {
+            return groups.computeIfAbsent(key, k -> new QuantileHistogram());
+        }
+
+        private static <K> void mergeGroups(Map<K, QuantileHistogram> target, Map<K, QuantileHistogram> source) {
+            source.forEach((key, histogram) -> target.merge(key, histogram, QuantileHistogram::merge));
+        }
+    }
+
+    private record Groups(Set<String> categories, Integer tier, String status, YearMonth month) {
+    }
+}
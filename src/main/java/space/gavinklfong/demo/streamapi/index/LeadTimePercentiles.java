@@ -0,0 +1,14 @@
+package space.gavinklfong.demo.streamapi.index;
+
+import space.gavinklfong.demo.streamapi.sketch.QuantileHistogram;
+
+/**
+ * Перцентили срока доставки (deliveryDate - orderDate) в днях по orders заказам
+ */
+public record LeadTimePercentiles(long orders, long p50, long p90, long p99, long max) {
+
+    static LeadTimePercentiles of(QuantileHistogram histogram) {
+        return new LeadTimePercentiles(histogram.totalCount(),
+                histogram.quantile(0.5), histogram.quantile(0.9), histogram.quantile(0.99), histogram.max());
+    }
+}
@@ -0,0 +1,80 @@
+package space.gavinklfong.demo.streamapi.index;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import space.gavinklfong.demo.streamapi.repos.CustomerRepo;
+import space.gavinklfong.demo.streamapi.repos.ProductRepo;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Поиск товаров и клиентов по имени через {@link TrigramIndex}
+ */
+@Component
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+public class NameSearchIndex extends IncrementalIndex {
+    private final ProductRepo productRepo;
+    private final CustomerRepo customerRepo;
+
+    private static final Logger log = LoggerFactory.getLogger(NameSearchIndex.class);
+
+    private final TrigramIndex productNames = new TrigramIndex();
+    private final TrigramIndex customerNames = new TrigramIndex();
+
+    public synchronized List<Long> searchProducts(String query, int limit) {
+        ensureCurrent();
+        return productNames.search(query, limit);
+    }
+
+    public synchronized List<Long> searchProductsByPrefix(String prefix, int limit) {
+        ensureCurrent();
+        return productNames.searchPrefix(prefix, limit);
+    }
+
+    public synchronized List<Long> searchCustomers(String query, int limit) {
+        ensureCurrent();
+        return customerNames.search(query, limit);
+    }
+
+    public synchronized List<Long> searchCustomersByPrefix(String prefix, int limit) {
+        ensureCurrent();
+        return customerNames.searchPrefix(prefix, limit);
+    }
+
+    @Override
+    protected void rebuild() {
+        productNames.clear();
+        customerNames.clear();
+        productRepo.findAll().forEach(product -> productNames.put(product.getId(), product.getName()));
+        customerRepo.findAll().forEach(customer -> customerNames.put(customer.getId(), customer.getName()));
+        log.info("Name search index built");
+    }
+
+    @Override
+    protected void applyOrderChanges(Set<Long> orderIds) {
+        // заказы на имена не влияют
+    }
+
+    @Override
+    protected void applyCustomerChanges(Set<Long> customerIds) {
+        for (Long customerId : customerIds) {
+            customerNames.remove(customerId);
+            customerRepo.findById(customerId)
+                    .ifPresent(customer -> customerNames.put(customer.getId(), customer.getName()));
+        }
+    }
+
+    @Override
+    protected void applyProductChanges(Set<Long> productIds) {
+        for (Long productId : productIds) {
+            productNames.remove(productId);
+            productRepo.findById(productId)
+                    .ifPresent(product -> productNames.put(product.getId(), product.getName()));
+        }
+    }
+}
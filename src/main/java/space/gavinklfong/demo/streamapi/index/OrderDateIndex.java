@@ -0,0 +1,232 @@
+package space.gavinklfong.demo.streamapi.index;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.repos.OrderRepo;
+import space.gavinklfong.demo.streamapi.repos.ProductRepo;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Индекс заказов, разбитый по дням (epoch day).
+ * <p>
+ * Для каждого дня хранятся id заказов и суммарная выручка, поверх дней - массивы префиксных сумм,
+ * поэтому выручка и количество заказов за любой диапазон дат считаются двумя бинарными поисками.
+ * Префиксные суммы пересчитываются лениво после изменений (O(число дней)).
+ */
+@Component
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+public class OrderDateIndex extends IncrementalIndex {
+    private final OrderRepo orderRepo;
+    private final ProductRepo productRepo;
+    private final OrderProductAdjacency adjacency;
+
+    private static final Logger log = LoggerFactory.getLogger(OrderDateIndex.class);
+
+    private final NavigableMap<Long, DayBucket> days = new TreeMap<>();
+    private final Map<Long, OrderEntry> orders = new HashMap<>();
+
+    private long[] dayKeys = new long[0];
+    private double[] revenuePrefix = new double[1];
+    private long[] countPrefix = new long[1];
+    private boolean prefixStale = true;
+
+    /**
+     * Выручка за период [from, to] включительно
+     */
+    public synchronized double revenueBetween(LocalDate from, LocalDate to) {
+        ensurePrefix();
+        int lo = lowerBound(from.toEpochDay());
+        int hi = upperBound(to.toEpochDay());
+        return lo < hi ? revenuePrefix[hi] - revenuePrefix[lo] : 0.0;
+    }
+
+    /**
+     * Количество заказов за период [from, to] включительно
+     */
+    public synchronized long countBetween(LocalDate from, LocalDate to) {
+        ensurePrefix();
+        int lo = lowerBound(from.toEpochDay());
+        int hi = upperBound(to.toEpochDay());
+        return lo < hi ? countPrefix[hi] - countPrefix[lo] : 0L;
+    }
+
+    /**
+     * Id заказов за период [from, to] включительно, по возрастанию даты
+     */
+    public synchronized List<Long> orderIdsBetween(LocalDate from, LocalDate to) {
+        ensureCurrent();
+        List<Long> result = new ArrayList<>();
+        if (from.isAfter(to)) {
+            return result;
+        }
+        days.subMap(from.toEpochDay(), true, to.toEpochDay(), true)
+                .values()
+                .forEach(bucket -> result.addAll(bucket.orderIds));
+        return result;
+    }
+
+    /**
+     * Выручка по дням, в которые были заказы
+     */
+    public synchronized Map<LocalDate, Double> revenueByDay() {
+        ensureCurrent();
+        Map<LocalDate, Double> result = new LinkedHashMap<>();
+        days.forEach((day, bucket) -> result.put(LocalDate.ofEpochDay(day), bucket.revenue));
+        return result;
+    }
+
+    /**
+     * Количество заказов по дням, в которые были заказы
+     */
+    public synchronized Map<LocalDate, Long> countByDay() {
+        ensureCurrent();
+        Map<LocalDate, Long> result = new LinkedHashMap<>();
+        days.forEach((day, bucket) -> result.put(LocalDate.ofEpochDay(day), (long) bucket.orderIds.size()));
+        return result;
+    }
+
+    /**
+     * Выручка и количество заказов за период [from, to], разбитые на срезы заданной гранулярности.
+     * Крайние срезы обрезаются по границам периода, пустой период (from позже to) - пустой список.
+     */
+    public synchronized List<RevenueRollup> rollup(LocalDate from, LocalDate to, TimeBucket bucket) {
+        List<RevenueRollup> result = new ArrayList<>();
+        if (from.isAfter(to)) {
+            return result;
+        }
+        for (LocalDate start = bucket.startOf(from); !start.isAfter(to); start = bucket.next(start)) {
+            LocalDate end = bucket.next(start).minusDays(1);
+            LocalDate rangeStart = start.isBefore(from) ? from : start;
+            LocalDate rangeEnd = end.isAfter(to) ? to : end;
+            result.add(new RevenueRollup(rangeStart, rangeEnd,
+                    countBetween(rangeStart, rangeEnd), revenueBetween(rangeStart, rangeEnd)));
+        }
+        return result;
+    }
+
+    @Override
+    protected void rebuild() {
+        days.clear();
+        orders.clear();
+        orderRepo.findAll().forEach(this::addOrder);
+        prefixStale = true;
+        log.info("Order date index built: {} orders over {} days", orders.size(), days.size());
+    }
+
+    @Override
+    protected void applyOrderChanges(Set<Long> orderIds) {
+        for (Long orderId : orderIds) {
+            removeOrder(orderId);
+            orderRepo.findById(orderId).ifPresent(this::addOrder);
+        }
+        prefixStale = true;
+    }
+
+    @Override
+    protected void applyCustomerChanges(Set<Long> customerIds) {
+        // дата и сумма заказа от клиента не зависят
+    }
+
+    @Override
+    protected void applyProductChanges(Set<Long> productIds) {
+        Set<Long> affectedOrders = new HashSet<>();
+        for (Long productId : productIds) {
+            Optional<Product> product = productRepo.findById(productId);
+            if (product.isEmpty()) {
+                rebuild();
+                return;
+            }
+            product.get().getOrders().forEach(order -> affectedOrders.add(order.getId()));
+        }
+        applyOrderChanges(affectedOrders);
+    }
+
+    private void addOrder(Order order) {
+        if (order.getOrderDate() == null) {
+            return;
+        }
+        long day = order.getOrderDate().toEpochDay();
+        double total = adjacency.orderTotal(order.getId());
+        orders.put(order.getId(), new OrderEntry(day, total));
+
+        DayBucket bucket = days.computeIfAbsent(day, d -> new DayBucket());
+        bucket.orderIds.add(order.getId());
+        bucket.revenue += total;
+    }
+
+    private void removeOrder(Long orderId) {
+        OrderEntry entry = orders.remove(orderId);
+        if (entry == null) {
+            return;
+        }
+        DayBucket bucket = days.get(entry.epochDay());
+        bucket.orderIds.remove(orderId);
+        if (bucket.orderIds.isEmpty()) {
+            days.remove(entry.epochDay());
+            return;
+        }
+        // пересчет вместо вычитания: после многих изменений вычитание накопило бы ошибку округления
+        double revenue = 0;
+        for (Long id : bucket.orderIds) {
+            revenue += orders.get(id).total();
+        }
+        bucket.revenue = revenue;
+    }
+
+    private void ensurePrefix() {
+        ensureCurrent();
+        if (!prefixStale) {
+            return;
+        }
+        int size = days.size();
+        dayKeys = new long[size];
+        revenuePrefix = new double[size + 1];
+        countPrefix = new long[size + 1];
+        int i = 0;
+        for (Map.Entry<Long, DayBucket> entry : days.entrySet()) {
+            dayKeys[i] = entry.getKey();
+            revenuePrefix[i + 1] = revenuePrefix[i] + entry.getValue().revenue;
+            countPrefix[i + 1] = countPrefix[i] + entry.getValue().orderIds.size();
+            i++;
+        }
+        prefixStale = false;
+    }
+
+    // индекс первого дня >= day
+    private int lowerBound(long day) {
+        int idx = Arrays.binarySearch(dayKeys, day);
+        return idx >= 0 ? idx : -idx - 1;
+    }
+
+    // индекс первого дня > day
+    private int upperBound(long day) {
+        int idx = Arrays.binarySearch(dayKeys, day);
+        return idx >= 0 ? idx + 1 : -idx - 1;
+    }
+
+    private static final class DayBucket {
+        private final Set<Long> orderIds = new HashSet<>();
+        private double revenue;
+    }
+
+    private record OrderEntry(long epochDay, double total) {
+    }
+}
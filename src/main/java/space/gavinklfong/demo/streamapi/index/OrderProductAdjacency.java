@@ -0,0 +1,602 @@
+package space.gavinklfong.demo.streamapi.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.DoubleSummaryStatistics;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Связи заказ-товар и нужные для расчетов атрибуты (цена и категория товара, клиент заказа)
+ * вне heap, в direct-буферах.
+ * <p>
+ * Заказы и товары хранятся отсортированными по id колонками; связи в обе стороны - в формате
+ * CSR: для строки i ее соседи - номера строк другой стороны в [offsets[i], offsets[i + 1]),
+ * по возрастанию. Связь занимает 4 байта в каждом направлении вместо записей HashSet'ов
+ * Order.products / Product.orders, и сборщик мусора эти данные не обходит.
+ * <p>
+ * Индекс читает таблицы напрямую через JDBC, без сущностей. Заказы со связями читаются одним запросом,
+ * количество строк служит только оценкой размера буферов. Изменения применяются на месте:
+ * перечитываются только измененные строки, колонки сдвигаются внутри тех же буферов, сторона
+ * товар-заказы пересчитывается из стороны заказ-товары без обращения к БД. Буферы заменяются
+ * только при росте (с запасом в половину), большие пачки изменений перечитываются целиком.
+ */
+@Component
+@Transactional(readOnly = true)
+public class OrderProductAdjacency extends IncrementalIndex {
+    private static final Logger log = LoggerFactory.getLogger(OrderProductAdjacency.class);
+
+    private static final long NO_CUSTOMER = Long.MIN_VALUE;
+    // больше измененных строк - дешевле перечитать таблицы, чем строить длинный IN
+    private static final int MAX_PATCHED_ROWS = 1_000;
+    // заказ без товаров - одна строка с product_id NULL
+    private static final String ORDERS_WITH_LINKS = "SELECT o.id, o.customer_id, r.product_id FROM product_orders o"
+            + " LEFT JOIN order_product_relationship r ON r.order_id = o.id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private int orderCount;
+    private int linkCount;
+    private LongBuffer orderIds = longs(0);
+    private LongBuffer orderCustomers = longs(0);
+    private IntBuffer orderOffsets = ints(1);
+    private IntBuffer orderProducts = ints(0);
+
+    private int productCount;
+    private LongBuffer productIds = longs(0);
+    private DoubleBuffer productPrices = doubles(0);
+    private IntBuffer productCategories = ints(0);
+    private IntBuffer productOffsets = ints(1);
+    private IntBuffer productOrders = ints(0);
+
+    private final List<String> categories = new ArrayList<>();
+    private final Map<String, Integer> categoryCodes = new HashMap<>();
+
+    public OrderProductAdjacency(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Id товаров заказа по возрастанию
+     */
+    public synchronized long[] productsOf(long orderId) {
+        ensureCurrent();
+        int order = search(orderIds, orderCount, orderId);
+        return order >= 0 ? ids(orderOffsets, orderProducts, order, productIds) : new long[0];
+    }
+
+    /**
+     * Id заказов с товаром по возрастанию
+     */
+    public synchronized long[] ordersOf(long productId) {
+        ensureCurrent();
+        int product = search(productIds, productCount, productId);
+        return product >= 0 ? ids(productOffsets, productOrders, product, orderIds) : new long[0];
+    }
+
+    /**
+     * Сумма цен товаров заказа, 0 для неизвестного заказа
+     */
+    public synchronized double orderTotal(long orderId) {
+        ensureCurrent();
+        int order = search(orderIds, orderCount, orderId);
+        return order >= 0 ? total(order) : 0.0;
+    }
+
+    /**
+     * Статистика сумм всех заказов
+     */
+    public synchronized DoubleSummaryStatistics orderTotals() {
+        ensureCurrent();
+        DoubleSummaryStatistics statistics = new DoubleSummaryStatistics();
+        for (int order = 0; order < orderCount; order++) {
+            statistics.accept(total(order));
+        }
+        return statistics;
+    }
+
+    /**
+     * Id первых limit заказов по сумме (при равенстве - по возрастанию id)
+     *
+     * @param mostExpensive сначала самые дорогие, иначе самые дешевые
+     */
+    public synchronized long[] orderIdsByTotal(boolean mostExpensive, int limit) {
+        ensureCurrent();
+        if (limit <= 0) {
+            return new long[0];
+        }
+        double[] totals = new double[orderCount];
+        for (int order = 0; order < orderCount; order++) {
+            totals[order] = total(order);
+        }
+        // вставками в отсортированный массив: limit мал, а заказы идут по возрастанию id,
+        // поэтому заказ с той же суммой не обгоняет уже отобранные
+        int[] top = new int[Math.min(limit, orderCount)];
+        int size = 0;
+        for (int order = 0; order < orderCount; order++) {
+            if (size == top.length && !before(totals, order, top[size - 1], mostExpensive)) {
+                continue;
+            }
+            int at = size == top.length ? size - 1 : size++;
+            while (at > 0 && before(totals, order, top[at - 1], mostExpensive)) {
+                top[at] = top[at - 1];
+                at--;
+            }
+            top[at] = order;
+        }
+        long[] result = new long[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = orderIds.get(top[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Id заказа с наибольшей суммой (при равенстве - с меньшим id)
+     */
+    public synchronized OptionalLong mostExpensiveOrderId() {
+        ensureCurrent();
+        int best = -1;
+        double bestTotal = 0;
+        for (int order = 0; order < orderCount; order++) {
+            double total = total(order);
+            if (best < 0 || total > bestTotal) {
+                best = order;
+                bestTotal = total;
+            }
+        }
+        return best >= 0 ? OptionalLong.of(orderIds.get(best)) : OptionalLong.empty();
+    }
+
+    /**
+     * Сумма покупок по id клиента, для клиентов с заказами
+     */
+    public synchronized Map<Long, Double> spendByCustomer() {
+        ensureCurrent();
+        Map<Long, Double> result = new HashMap<>();
+        for (int order = 0; order < orderCount; order++) {
+            long customerId = orderCustomers.get(order);
+            if (customerId != NO_CUSTOMER) {
+                result.merge(customerId, total(order), Double::sum);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Количество позиций заказов по категории товара
+     */
+    public synchronized Map<String, Long> orderLinesByCategory() {
+        ensureCurrent();
+        long[] counts = new long[categories.size()];
+        for (int product = 0; product < productCount; product++) {
+            int category = productCategories.get(product);
+            if (category >= 0) {
+                counts[category] += productOffsets.get(product + 1) - productOffsets.get(product);
+            }
+        }
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int category = 0; category < counts.length; category++) {
+            if (counts[category] > 0) {
+                result.put(categories.get(category), counts[category]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Занятая буферами память вне heap, байт
+     */
+    public synchronized long offHeapBytes() {
+        return 8L * (orderIds.capacity() + orderCustomers.capacity() + productIds.capacity() + productPrices.capacity())
+                + 4L * (orderOffsets.capacity() + orderProducts.capacity() + productCategories.capacity()
+                + productOffsets.capacity() + productOrders.capacity());
+    }
+
+    @Override
+    protected void rebuild() {
+        categories.clear();
+        categoryCodes.clear();
+
+        productCount = 0;
+        ensureProductCapacity(count("products"));
+        jdbcTemplate.query("SELECT id, price, category FROM products ORDER BY id", (ResultSet rs) -> {
+            ensureProductCapacity(productCount + 1);
+            productIds.put(productCount, rs.getLong(1));
+            productPrices.put(productCount, rs.getDouble(2));
+            productCategories.put(productCount, categoryCode(rs.getString(3)));
+            productCount++;
+        });
+
+        orderCount = 0;
+        linkCount = 0;
+        ensureOrderCapacity(count("product_orders"), count("order_product_relationship"));
+        orderOffsets.put(0, 0);
+        jdbcTemplate.query(ORDERS_WITH_LINKS + " ORDER BY o.id, r.product_id", (ResultSet rs) -> {
+            long orderId = rs.getLong(1);
+            if (orderCount == 0 || orderIds.get(orderCount - 1) != orderId) {
+                ensureOrderCapacity(orderCount + 1, linkCount);
+                orderIds.put(orderCount, orderId);
+                long customerId = rs.getLong(2);
+                orderCustomers.put(orderCount, rs.wasNull() ? NO_CUSTOMER : customerId);
+                orderCount++;
+            }
+            long productId = rs.getLong(3);
+            // товар, добавленный после чтения товаров, придет своим событием вместе с заказом
+            int product = rs.wasNull() ? -1 : search(productIds, productCount, productId);
+            if (product >= 0) {
+                ensureOrderCapacity(orderCount, linkCount + 1);
+                orderProducts.put(linkCount++, product);
+            }
+            orderOffsets.put(orderCount, linkCount);
+        });
+        transpose();
+
+        log.info("Order-product adjacency built: {} orders, {} products, {} links, {} KB off-heap",
+                orderCount, productCount, linkCount, offHeapBytes() / 1024);
+    }
+
+    @Override
+    protected void applyOrderChanges(Set<Long> changedIds) {
+        if (changedIds.size() > MAX_PATCHED_ROWS) {
+            rebuild();
+            return;
+        }
+        List<OrderRow> rows = new ArrayList<>();
+        jdbcTemplate.query(ORDERS_WITH_LINKS + " WHERE o.id IN (" + placeholders(changedIds.size()) + ")"
+                + " ORDER BY o.id, r.product_id", (ResultSet rs) -> {
+            long orderId = rs.getLong(1);
+            if (rows.isEmpty() || rows.get(rows.size() - 1).id != orderId) {
+                long customerId = rs.getLong(2);
+                rows.add(new OrderRow(orderId, rs.wasNull() ? NO_CUSTOMER : customerId));
+            }
+            long productId = rs.getLong(3);
+            int product = rs.wasNull() ? -1 : search(productIds, productCount, productId);
+            if (product >= 0) {
+                rows.get(rows.size() - 1).add(product);
+            }
+        }, changedIds.toArray());
+
+        removeOrders(changedIds.stream().mapToLong(Long::longValue).sorted().toArray());
+        insertOrders(rows);
+        transpose();
+    }
+
+    @Override
+    protected void applyCustomerChanges(Set<Long> customerIds) {
+        // хранится только id клиента заказа, перенос заказа к другому клиенту придет событием заказа
+    }
+
+    @Override
+    protected void applyProductChanges(Set<Long> changedIds) {
+        if (changedIds.size() > MAX_PATCHED_ROWS) {
+            rebuild();
+            return;
+        }
+        Map<Long, ProductRow> rows = new TreeMap<>();
+        jdbcTemplate.query("SELECT id, price, category FROM products WHERE id IN ("
+                        + placeholders(changedIds.size()) + ")",
+                (ResultSet rs) -> {
+                    rows.put(rs.getLong(1), new ProductRow(rs.getDouble(2), rs.getString(3)));
+                }, changedIds.toArray());
+
+        // цена и категория известного товара меняются на месте
+        List<Long> removed = new ArrayList<>();
+        for (Long productId : changedIds) {
+            int product = search(productIds, productCount, productId);
+            if (product < 0) {
+                continue;
+            }
+            ProductRow row = rows.remove(productId);
+            if (row != null) {
+                productPrices.put(product, row.price());
+                productCategories.put(product, categoryCode(row.category()));
+            } else {
+                if (productOffsets.get(product + 1) > productOffsets.get(product)) {
+                    // связи удаленного товара еще не сняты событиями заказов
+                    rebuild();
+                    return;
+                }
+                removed.add(productId);
+            }
+        }
+        if (!removed.isEmpty() || !rows.isEmpty()) {
+            // в rows остались только новые товары
+            mergeProducts(removed.stream().mapToLong(Long::longValue).sorted().toArray(), rows);
+        }
+    }
+
+    // убрать заказы с id из removedIds (по возрастанию), сдвигая остальные к началу
+    private void removeOrders(long[] removedIds) {
+        int from = lowerBound(orderIds, orderCount, removedIds[0]);
+        int kept = from;
+        int keptLinks = orderOffsets.get(from);
+        int start = keptLinks;
+        int next = 0;
+        for (int order = from; order < orderCount; order++) {
+            int end = orderOffsets.get(order + 1);
+            long orderId = orderIds.get(order);
+            while (next < removedIds.length && removedIds[next] < orderId) {
+                next++;
+            }
+            if (next == removedIds.length || removedIds[next] != orderId) {
+                orderIds.put(kept, orderId);
+                orderCustomers.put(kept, orderCustomers.get(order));
+                for (int link = start; link < end; link++) {
+                    orderProducts.put(keptLinks++, orderProducts.get(link));
+                }
+                // kept <= order + 1: конец текущего заказа уже прочитан
+                orderOffsets.put(++kept, keptLinks);
+            }
+            start = end;
+        }
+        orderCount = kept;
+        linkCount = keptLinks;
+    }
+
+    // вставить заказы (по возрастанию id, без совпадений с имеющимися), сдвигая имеющиеся с конца
+    private void insertOrders(List<OrderRow> rows) {
+        int addedLinks = rows.stream().mapToInt(row -> row.size).sum();
+        ensureOrderCapacity(orderCount + rows.size(), linkCount + addedLinks);
+        int order = orderCount - 1;
+        int end = linkCount;
+        int written = orderCount + rows.size();
+        int writtenLinks = linkCount + addedLinks;
+        orderOffsets.put(written, writtenLinks);
+        for (int i = rows.size() - 1; i >= 0; i--) {
+            OrderRow row = rows.get(i);
+            while (order >= 0 && orderIds.get(order) > row.id) {
+                int start = orderOffsets.get(order);
+                for (int link = end - 1; link >= start; link--) {
+                    orderProducts.put(--writtenLinks, orderProducts.get(link));
+                }
+                written--;
+                orderIds.put(written, orderIds.get(order));
+                orderCustomers.put(written, orderCustomers.get(order));
+                // written > order: начало следующего сдвигаемого заказа еще не перезаписано
+                orderOffsets.put(written, writtenLinks);
+                end = start;
+                order--;
+            }
+            for (int link = row.size - 1; link >= 0; link--) {
+                orderProducts.put(--writtenLinks, row.products[link]);
+            }
+            written--;
+            orderIds.put(written, row.id);
+            orderCustomers.put(written, row.customerId);
+            orderOffsets.put(written, writtenLinks);
+        }
+        orderCount += rows.size();
+        linkCount += addedLinks;
+    }
+
+    // убрать товары без связей и вставить новые, перенумеровав товары в связях заказов
+    private void mergeProducts(long[] removedIds, Map<Long, ProductRow> added) {
+        long[] addedIds = added.keySet().stream().mapToLong(Long::longValue).toArray();
+        int[] renumbered = new int[productCount];
+        int kept = 0;
+        int next = 0;
+        for (int product = 0; product < productCount; product++) {
+            long productId = productIds.get(product);
+            while (next < removedIds.length && removedIds[next] < productId) {
+                next++;
+            }
+            if (next < removedIds.length && removedIds[next] == productId) {
+                renumbered[product] = -1;
+                continue;
+            }
+            // номер после вставки новых товаров с меньшими id
+            int insertedBefore = -Arrays.binarySearch(addedIds, productId) - 1;
+            renumbered[product] = kept + insertedBefore;
+            productIds.put(kept, productId);
+            productPrices.put(kept, productPrices.get(product));
+            productCategories.put(kept, productCategories.get(product));
+            kept++;
+        }
+
+        ensureProductCapacity(kept + addedIds.length);
+        int product = kept - 1;
+        int written = kept + addedIds.length;
+        for (int i = addedIds.length - 1; i >= 0; i--) {
+            while (product >= 0 && productIds.get(product) > addedIds[i]) {
+                written--;
+                productIds.put(written, productIds.get(product));
+                productPrices.put(written, productPrices.get(product));
+                productCategories.put(written, productCategories.get(product));
+                product--;
+            }
+            ProductRow row = added.get(addedIds[i]);
+            written--;
+            productIds.put(written, addedIds[i]);
+            productPrices.put(written, row.price());
+            productCategories.put(written, categoryCode(row.category()));
+        }
+        productCount = kept + addedIds.length;
+
+        for (int link = 0; link < linkCount; link++) {
+            orderProducts.put(link, renumbered[orderProducts.get(link)]);
+        }
+        transpose();
+    }
+
+    // сторона товар-заказы по стороне заказ-товары: подсчет связей товаров и раскладка по заказам
+    private void transpose() {
+        productOffsets = grow(productOffsets, productCount + 1);
+        productOrders = grow(productOrders, linkCount);
+        for (int product = 0; product <= productCount; product++) {
+            productOffsets.put(product, 0);
+        }
+        for (int link = 0; link < linkCount; link++) {
+            int next = orderProducts.get(link) + 1;
+            productOffsets.put(next, productOffsets.get(next) + 1);
+        }
+        for (int product = 0; product < productCount; product++) {
+            productOffsets.put(product + 1, productOffsets.get(product + 1) + productOffsets.get(product));
+        }
+        // offsets[product] служит курсором и после раскладки указывает на начало следующего товара
+        for (int order = 0; order < orderCount; order++) {
+            for (int link = orderOffsets.get(order), end = orderOffsets.get(order + 1); link < end; link++) {
+                int product = orderProducts.get(link);
+                int at = productOffsets.get(product);
+                productOrders.put(at, order);
+                productOffsets.put(product, at + 1);
+            }
+        }
+        for (int product = productCount; product > 0; product--) {
+            productOffsets.put(product, productOffsets.get(product - 1));
+        }
+        productOffsets.put(0, 0);
+    }
+
+    private void ensureOrderCapacity(int orders, int links) {
+        orderIds = grow(orderIds, orders);
+        orderCustomers = grow(orderCustomers, orders);
+        orderOffsets = grow(orderOffsets, orders + 1);
+        orderProducts = grow(orderProducts, links);
+    }
+
+    private void ensureProductCapacity(int products) {
+        productIds = grow(productIds, products);
+        productPrices = grow(productPrices, products);
+        productCategories = grow(productCategories, products);
+    }
+
+    private int categoryCode(String category) {
+        return category == null ? -1 : categoryCodes.computeIfAbsent(category, key -> {
+            categories.add(key);
+            return categories.size() - 1;
+        });
+    }
+
+    private double total(int order) {
+        double total = 0;
+        for (int link = orderOffsets.get(order), end = orderOffsets.get(order + 1); link < end; link++) {
+            total += productPrices.get(orderProducts.get(link));
+        }
+        return total;
+    }
+
+    private int count(String table) {
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+        return count != null ? count : 0;
+    }
+
+    // заказ a встает раньше заказа b
+    private static boolean before(double[] totals, int a, int b, boolean mostExpensive) {
+        return mostExpensive ? totals[a] > totals[b] : totals[a] < totals[b];
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static long[] ids(IntBuffer offsets, IntBuffer neighbours, int row, LongBuffer ids) {
+        int from = offsets.get(row);
+        long[] result = new long[offsets.get(row + 1) - from];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids.get(neighbours.get(from + i));
+        }
+        return result;
+    }
+
+    // бинарный поиск по отсортированной колонке id
+    private static int search(LongBuffer ids, int size, long id) {
+        int index = lowerBound(ids, size, id);
+        return index < size && ids.get(index) == id ? index : -1;
+    }
+
+    // первая строка с id не меньше заданного
+    private static int lowerBound(LongBuffer ids, int size, long id) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ids.get(mid) < id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static LongBuffer grow(LongBuffer buffer, int size) {
+        if (size <= buffer.capacity()) {
+            return buffer;
+        }
+        return longs(capacity(buffer.capacity(), size)).put(0, buffer, 0, buffer.capacity());
+    }
+
+    private static IntBuffer grow(IntBuffer buffer, int size) {
+        if (size <= buffer.capacity()) {
+            return buffer;
+        }
+        return ints(capacity(buffer.capacity(), size)).put(0, buffer, 0, buffer.capacity());
+    }
+
+    private static DoubleBuffer grow(DoubleBuffer buffer, int size) {
+        if (size <= buffer.capacity()) {
+            return buffer;
+        }
+        return doubles(capacity(buffer.capacity(), size)).put(0, buffer, 0, buffer.capacity());
+    }
+
+    // первое выделение - точно по размеру, рост - с запасом, чтобы добавления не копировали буферы каждый раз
+    private static int capacity(int current, int needed) {
+        return current == 0 ? needed : Math.max(needed, current + current / 2);
+    }
+
+    private static LongBuffer longs(int size) {
+        return ByteBuffer.allocateDirect(8 * size).order(ByteOrder.nativeOrder()).asLongBuffer();
+    }
+
+    private static IntBuffer ints(int size) {
+        return ByteBuffer.allocateDirect(4 * size).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    private static DoubleBuffer doubles(int size) {
+        return ByteBuffer.allocateDirect(8 * size).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+    }
+
+    private record ProductRow(double price, String category) {
+    }
+
+    // новое состояние измененного заказа: клиент и номера товаров по возрастанию
+    private static final class OrderRow {
+        private final long id;
+        private final long customerId;
+        private int[] products = new int[4];
+        private int size;
+
+        OrderRow(long id, long customerId) {
+            this.id = id;
+            this.customerId = customerId;
+        }
+
+        void add(int product) {
+            if (size == products.length) {
+                products = Arrays.copyOf(products, size * 2);
+            }
+            products[size++] = product;
+        }
+    }
+}
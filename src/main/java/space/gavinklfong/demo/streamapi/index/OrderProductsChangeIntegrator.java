@@ -0,0 +1,91 @@
+package space.gavinklfong.demo.streamapi.index;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionRemoveEvent;
+import org.hibernate.event.spi.PostCollectionRemoveEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.resource.beans.spi.ManagedBeanRegistry;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import space.gavinklfong.demo.streamapi.models.Order;
+
+/**
+ * Изменения товаров заказа (order_product_relationship) для {@link EntityChangeListener}.
+ * <p>
+ * Order не версионирован, поэтому изменение одного только набора товаров не делает заказ dirty
+ * и @PostUpdate не приходит. Hibernate сообщает о нем событиями коллекций - они пересылаются
+ * как изменение заказа-владельца. Обратные стороны связи (Product.orders, Customer.orders) пропускаются:
+ * их строки меняются только через заказ.
+ * <p>
+ * Подключается через META-INF/services, поэтому действует в любом EntityManagerFactory, включая срезы
+ * {@code @DataJpaTest}. Слушатель берется из реестра бинов Hibernate лениво - тот же экземпляр,
+ * что получают callback'и сущностей.
+ */
+public class OrderProductsChangeIntegrator implements Integrator {
+
+    @Override
+    public void integrate(Metadata metadata, BootstrapContext bootstrapContext,
+                          SessionFactoryImplementor sessionFactory) {
+        CollectionListener listener = new CollectionListener(
+                sessionFactory.getServiceRegistry().requireService(ManagedBeanRegistry.class));
+        EventListenerRegistry registry = sessionFactory.getServiceRegistry()
+                .requireService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COLLECTION_RECREATE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_UPDATE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_REMOVE, listener);
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+        // слушатели живут вместе с SessionFactory
+    }
+
+    private static final class CollectionListener implements PostCollectionRecreateEventListener,
+            PostCollectionUpdateEventListener, PostCollectionRemoveEventListener {
+        private final ManagedBeanRegistry beans;
+        private volatile EntityChangeListener changeListener;
+
+        CollectionListener(ManagedBeanRegistry beans) {
+            this.beans = beans;
+        }
+
+        @Override
+        public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+            orderChanged(event);
+        }
+
+        @Override
+        public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+            orderChanged(event);
+        }
+
+        @Override
+        public void onPostRemoveCollection(PostCollectionRemoveEvent event) {
+            orderChanged(event);
+        }
+
+        private void orderChanged(AbstractCollectionEvent event) {
+            if (event.getAffectedOwnerOrNull() instanceof Order order) {
+                changeListener().onEntityChange(order);
+            }
+        }
+
+        // при создании SessionFactory Spring-контейнер бинов Hibernate еще может быть не готов
+        private EntityChangeListener changeListener() {
+            EntityChangeListener listener = changeListener;
+            if (listener == null) {
+                listener = beans.getBean(EntityChangeListener.class).getBeanInstance();
+                changeListener = listener;
+            }
+            return listener;
+        }
+    }
+}
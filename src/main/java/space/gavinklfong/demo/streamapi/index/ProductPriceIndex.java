@@ -0,0 +1,157 @@
+package space.gavinklfong.demo.streamapi.index;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.repos.ProductRepo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Индекс цен товаров: общий отсортированный список и отдельный список на каждую категорию.
+ * <p>
+ * Диапазон цен - O(log n + k), самый дешевый и самый дорогой товар категории - O(1).
+ * Категории сравниваются без учета регистра, в том числе при группировке самых дорогих товаров
+ * по категориям: написания одной категории объединяются под последним встреченным.
+ */
+@Component
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+public class ProductPriceIndex extends IncrementalIndex {
+    private final ProductRepo productRepo;
+
+    private static final Logger log = LoggerFactory.getLogger(ProductPriceIndex.class);
+
+    private final SortedPriceList allProducts = new SortedPriceList();
+    private final Map<String, SortedPriceList> byCategory = new HashMap<>();
+    private final Map<String, String> categoryNames = new HashMap<>();
+    private final Map<Long, Entry> entries = new HashMap<>();
+
+    /**
+     * Id товаров с ценой в [min, max], по возрастанию цены
+     */
+    public synchronized List<Long> idsBetween(double min, double max) {
+        ensureCurrent();
+        return boxed(allProducts.idsBetween(min, max));
+    }
+
+    /**
+     * Id товаров категории с ценой в [min, max], по возрастанию цены
+     */
+    public synchronized List<Long> idsBetween(String category, double min, double max) {
+        ensureCurrent();
+        SortedPriceList prices = byCategory.get(normalize(category));
+        return prices != null ? boxed(prices.idsBetween(min, max)) : List.of();
+    }
+
+    /**
+     * Id товаров категории с ценой строго больше price, по возрастанию цены
+     */
+    public synchronized List<Long> idsAbove(String category, double price) {
+        ensureCurrent();
+        SortedPriceList prices = byCategory.get(normalize(category));
+        return prices != null ? boxed(prices.idsAbove(price)) : List.of();
+    }
+
+    public synchronized Optional<Long> cheapestId(String category) {
+        ensureCurrent();
+        SortedPriceList prices = byCategory.get(normalize(category));
+        return prices != null ? Optional.of(prices.cheapestId()) : Optional.empty();
+    }
+
+    public synchronized Optional<Long> mostExpensiveId(String category) {
+        ensureCurrent();
+        SortedPriceList prices = byCategory.get(normalize(category));
+        return prices != null ? Optional.of(prices.mostExpensiveId()) : Optional.empty();
+    }
+
+    /**
+     * Id самого дорогого товара по каждой категории (в написании, как в данных)
+     */
+    public synchronized Map<String, Long> mostExpensiveIdByCategory() {
+        ensureCurrent();
+        Map<String, Long> result = new LinkedHashMap<>();
+        byCategory.forEach((key, prices) -> result.put(categoryNames.get(key), prices.mostExpensiveId()));
+        return result;
+    }
+
+    @Override
+    protected void rebuild() {
+        allProducts.clear();
+        byCategory.clear();
+        categoryNames.clear();
+        entries.clear();
+        productRepo.findAll().forEach(this::add);
+        log.info("Price index built: {} products in {} categories", entries.size(), byCategory.size());
+    }
+
+    @Override
+    protected void applyOrderChanges(Set<Long> orderIds) {
+        // заказы на цены товаров не влияют
+    }
+
+    @Override
+    protected void applyCustomerChanges(Set<Long> customerIds) {
+        // клиенты на цены товаров не влияют
+    }
+
+    @Override
+    protected void applyProductChanges(Set<Long> productIds) {
+        for (Long productId : productIds) {
+            remove(productId);
+            productRepo.findById(productId).ifPresent(this::add);
+        }
+    }
+
+    private void add(Product product) {
+        if (product.getPrice() == null) {
+            return;
+        }
+        String key = normalize(product.getCategory());
+        double price = product.getPrice();
+        allProducts.insert(price, product.getId());
+        byCategory.computeIfAbsent(key, k -> new SortedPriceList()).insert(price, product.getId());
+        // последнее добавленное написание: после переименования категории не остается старое
+        categoryNames.put(key, product.getCategory());
+        entries.put(product.getId(), new Entry(key, product.getCategory(), price));
+    }
+
+    private void remove(Long productId) {
+        Entry entry = entries.remove(productId);
+        if (entry == null) {
+            return;
+        }
+        allProducts.remove(entry.price(), productId);
+        SortedPriceList prices = byCategory.get(entry.category());
+        prices.remove(entry.price(), productId);
+        if (prices.isEmpty()) {
+            byCategory.remove(entry.category());
+            categoryNames.remove(entry.category());
+        } else if (Objects.equals(entry.categoryName(), categoryNames.get(entry.category()))) {
+            // написание удаленного товара могло больше не встречаться - берем его у оставшегося
+            categoryNames.put(entry.category(), entries.get(prices.cheapestId()).categoryName());
+        }
+    }
+
+    private static List<Long> boxed(long[] ids) {
+        return Arrays.stream(ids).boxed().toList();
+    }
+
+    private static String normalize(String category) {
+        return category != null ? category.toLowerCase(Locale.ROOT) : null;
+    }
+
+    private record Entry(String category, String categoryName, double price) {
+    }
+}
@@ -0,0 +1,9 @@
+package space.gavinklfong.demo.streamapi.index;
+
+import java.time.LocalDate;
+
+/**
+ * Выручка и количество заказов за период [start, end] включительно
+ */
+public record RevenueRollup(LocalDate start, LocalDate end, long orderCount, double revenue) {
+}
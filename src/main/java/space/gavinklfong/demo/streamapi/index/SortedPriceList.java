@@ -0,0 +1,100 @@
+package space.gavinklfong.demo.streamapi.index;
+
+import java.util.Arrays;
+
+/**
+ * Товары, отсортированные по цене: параллельные примитивные массивы цен и id.
+ * Поиск по диапазону - бинарный поиск, вставка и удаление - сдвиг хвоста массива.
+ */
+public class SortedPriceList {
+    private double[] prices = new double[16];
+    private long[] ids = new long[16];
+    private int size;
+
+    public void insert(double price, long id) {
+        if (size == prices.length) {
+            prices = Arrays.copyOf(prices, size * 2);
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        int pos = upperBound(price);
+        System.arraycopy(prices, pos, prices, pos + 1, size - pos);
+        System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+        prices[pos] = price;
+        ids[pos] = id;
+        size++;
+    }
+
+    public boolean remove(double price, long id) {
+        for (int i = lowerBound(price); i < size && prices[i] == price; i++) {
+            if (ids[i] == id) {
+                System.arraycopy(prices, i + 1, prices, i, size - i - 1);
+                System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long cheapestId() {
+        return ids[0];
+    }
+
+    public long mostExpensiveId() {
+        return ids[size - 1];
+    }
+
+    /**
+     * Id товаров с ценой в [min, max], по возрастанию цены
+     */
+    public long[] idsBetween(double min, double max) {
+        int from = lowerBound(min);
+        int to = upperBound(max);
+        return from < to ? Arrays.copyOfRange(ids, from, to) : new long[0];
+    }
+
+    /**
+     * Id товаров с ценой строго больше price, по возрастанию цены
+     */
+    public long[] idsAbove(double price) {
+        return Arrays.copyOfRange(ids, upperBound(price), size);
+    }
+
+    // первая позиция с ценой >= price
+    private int lowerBound(double price) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (prices[mid] < price) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // первая позиция с ценой > price
+    private int upperBound(double price) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (prices[mid] <= price) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,134 @@
+package space.gavinklfong.demo.streamapi.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Триграммный индекс строк для поиска по подстроке и по префиксу без учета регистра.
+ * <p>
+ * Строки приводятся к нижнему регистру один раз - при индексации. Поиск по подстроке
+ * пересекает списки строк для всех триграмм запроса и проверяет только оставшихся кандидатов;
+ * поиск по префиксу идет по отсортированному словарю строк.
+ */
+public class TrigramIndex {
+    private final IdOrdinals ordinals = new IdOrdinals();
+    private final BitSet live = new BitSet();
+    private final Map<Long, BitSet> postings = new HashMap<>();
+    private final NavigableMap<String, BitSet> sortedNames = new TreeMap<>();
+    private String[] folded = new String[64];
+
+    public void put(long id, String text) {
+        remove(id);
+        if (text == null) {
+            return;
+        }
+        int ordinal = ordinals.assign(id);
+        if (ordinal >= folded.length) {
+            folded = Arrays.copyOf(folded, Math.max(ordinal + 1, folded.length * 2));
+        }
+        String value = fold(text);
+        folded[ordinal] = value;
+        live.set(ordinal);
+        for (int i = 0; i + 3 <= value.length(); i++) {
+            postings.computeIfAbsent(trigram(value, i), k -> new BitSet()).set(ordinal);
+        }
+        sortedNames.computeIfAbsent(value, k -> new BitSet()).set(ordinal);
+    }
+
+    public void remove(long id) {
+        int ordinal = ordinals.ordinalOf(id);
+        if (ordinal < 0 || !live.get(ordinal)) {
+            return;
+        }
+        String value = folded[ordinal];
+        for (int i = 0; i + 3 <= value.length(); i++) {
+            long key = trigram(value, i);
+            BitSet bits = postings.get(key);
+            // повторная триграмма строки ("ana" в "banana") могла уже опустошить и убрать список
+            if (bits == null) {
+                continue;
+            }
+            bits.clear(ordinal);
+            if (bits.isEmpty()) {
+                postings.remove(key);
+            }
+        }
+        BitSet sameName = sortedNames.get(value);
+        sameName.clear(ordinal);
+        if (sameName.isEmpty()) {
+            sortedNames.remove(value);
+        }
+        folded[ordinal] = null;
+        live.clear(ordinal);
+    }
+
+    public void clear() {
+        ordinals.clear();
+        live.clear();
+        postings.clear();
+        sortedNames.clear();
+        Arrays.fill(folded, null);
+    }
+
+    /**
+     * Id строк, содержащих query (без учета регистра), не больше limit
+     */
+    public List<Long> search(String query, int limit) {
+        String value = fold(query);
+        BitSet candidates = (BitSet) live.clone();
+        for (int i = 0; i + 3 <= value.length() && !candidates.isEmpty(); i++) {
+            BitSet bits = postings.get(trigram(value, i));
+            if (bits == null) {
+                return List.of();
+            }
+            candidates.and(bits);
+        }
+
+        List<Long> result = new ArrayList<>();
+        for (int o = candidates.nextSetBit(0); o >= 0 && result.size() < limit; o = candidates.nextSetBit(o + 1)) {
+            // для запроса длиннее трех символов триграммы не гарантируют порядок, для короче - не проверялись вовсе
+            if (value.length() == 3 || folded[o].contains(value)) {
+                result.add(ordinals.idAt(o));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Id строк, начинающихся с prefix (без учета регистра), в алфавитном порядке, не больше limit
+     */
+    public List<Long> searchPrefix(String prefix, int limit) {
+        String value = fold(prefix);
+        List<Long> result = new ArrayList<>();
+        for (BitSet bits : sortedNames.tailMap(value, true).values()) {
+            if (result.size() >= limit) {
+                break;
+            }
+            int first = bits.nextSetBit(0);
+            if (!folded[first].startsWith(value)) {
+                break;
+            }
+            for (int o = first; o >= 0 && result.size() < limit; o = bits.nextSetBit(o + 1)) {
+                result.add(ordinals.idAt(o));
+            }
+        }
+        return result;
+    }
+
+    private static String fold(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    private static long trigram(String value, int offset) {
+        return ((long) value.charAt(offset) << 32)
+                | ((long) value.charAt(offset + 1) << 16)
+                | value.charAt(offset + 2);
+    }
+}
@@ -1,16 +1,19 @@
 package space.gavinklfong.demo.streamapi.models;
 
 import jakarta.persistence.*;
+import space.gavinklfong.demo.streamapi.index.EntityChangeListener;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
 
 @Entity
+@EntityListeners(EntityChangeListener.class)
 @Table(name = "customers")
 public class Customer {
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "customers_seq")
+	@SequenceGenerator(name = "customers_seq", sequenceName = "customers_seq", allocationSize = 50)
 	private Long id;
 
 	private String name;
@@ -1,17 +1,20 @@
 package space.gavinklfong.demo.streamapi.models;
 
 import jakarta.persistence.*;
+import space.gavinklfong.demo.streamapi.index.EntityChangeListener;
 import java.time.LocalDate;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
 
 @Entity
+@EntityListeners(EntityChangeListener.class)
 @Table(name = "product_orders")
 public class Order {
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_orders_seq")
+	@SequenceGenerator(name = "product_orders_seq", sequenceName = "product_orders_seq", allocationSize = 50)
 	private Long id;
 
 	@Column(name = "order_date")
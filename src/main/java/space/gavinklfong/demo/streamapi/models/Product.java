@@ -5,13 +5,16 @@ import java.util.Objects;
 import java.util.Set;
 
 import jakarta.persistence.*;
+import space.gavinklfong.demo.streamapi.index.EntityChangeListener;
 
 @Entity
+@EntityListeners(EntityChangeListener.class)
 @Table(name = "products")
 public class Product {
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "products_seq")
+	@SequenceGenerator(name = "products_seq", sequenceName = "products_seq", allocationSize = 50)
 	private Long id;
 
 	private String name;
@@ -0,0 +1,52 @@
+package space.gavinklfong.demo.streamapi.models;
+
+import java.time.Instant;
+
+import jakarta.persistence.*;
+
+/**
+ * Последний готовый результат отчета (в JSON), см. ReportJobService
+ */
+@Entity
+@Table(name = "report_results")
+public class ReportResult {
+
+	@Id
+	@Column(name = "report_type")
+	private String reportType;
+
+	@Lob
+	private String result;
+
+	@Column(name = "completed_at")
+	private Instant completedAt;
+
+	public ReportResult() {
+	}
+
+	public ReportResult(String reportType, String result, Instant completedAt) {
+		this.reportType = reportType;
+		this.result = result;
+		this.completedAt = completedAt;
+	}
+
+	public String getReportType() {
+		return reportType;
+	}
+
+	public String getResult() {
+		return result;
+	}
+
+	public Instant getCompletedAt() {
+		return completedAt;
+	}
+
+	@Override
+	public String toString() {
+		return "ReportResult{" +
+				"reportType='" + reportType + '\'' +
+				", completedAt=" + completedAt +
+				'}';
+	}
+}
@@ -0,0 +1,35 @@
+package space.gavinklfong.demo.streamapi.query;
+
+import java.util.Comparator;
+import java.util.function.Function;
+
+/**
+ * Атрибут сущности: путь в JPQL (null, если атрибут вычисляется только в памяти) и то же значение в Java
+ */
+public record Attribute<T, V extends Comparable<? super V>>(String name, String path, Function<T, V> getter) {
+
+    /**
+     * Атрибут, который нельзя вычислить в базе: запросы с ним выполняются в памяти
+     */
+    public static <T, V extends Comparable<? super V>> Attribute<T, V> computed(String name, Function<T, V> getter) {
+        return new Attribute<>(name, null, getter);
+    }
+
+    public boolean pushable() {
+        return path != null;
+    }
+
+    public Sort<T> asc() {
+        return new Sort<>(this, false);
+    }
+
+    public Sort<T> desc() {
+        return new Sort<>(this, true);
+    }
+
+    // null - в конце в обоих направлениях, как NULLS LAST в ORDER BY
+    Comparator<T> comparator(boolean descending) {
+        Comparator<V> order = descending ? Comparator.reverseOrder() : Comparator.naturalOrder();
+        return Comparator.comparing(getter, Comparator.nullsLast(order));
+    }
+}
@@ -0,0 +1,28 @@
+package space.gavinklfong.demo.streamapi.query;
+
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+record BasicCriterion<T>(String description, Function<QueryParameters, String> jpql, Predicate<T> predicate)
+        implements Criterion<T> {
+
+    @Override
+    public boolean pushable() {
+        return jpql != null;
+    }
+
+    @Override
+    public String toJpql(QueryParameters parameters) {
+        return jpql.apply(parameters);
+    }
+
+    @Override
+    public boolean test(T entity) {
+        return predicate.test(entity);
+    }
+
+    @Override
+    public String describe() {
+        return description;
+    }
+}
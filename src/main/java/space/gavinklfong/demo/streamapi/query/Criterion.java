@@ -0,0 +1,32 @@
+package space.gavinklfong.demo.streamapi.query;
+
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Условие запроса: то же самое условие в JPQL (если его можно проверить в базе) и в Java
+ */
+public interface Criterion<T> {
+
+    boolean pushable();
+
+    /**
+     * Условие для WHERE; значения регистрируются в parameters. Вызывается только для pushable условий
+     */
+    String toJpql(QueryParameters parameters);
+
+    boolean test(T entity);
+
+    String describe();
+
+    static <T> Criterion<T> of(String description, Function<QueryParameters, String> jpql, Predicate<T> predicate) {
+        return new BasicCriterion<>(description, jpql, predicate);
+    }
+
+    /**
+     * Условие, которое проверяется только в памяти
+     */
+    static <T> Criterion<T> matching(String description, Predicate<T> predicate) {
+        return new BasicCriterion<>(description, null, predicate);
+    }
+}
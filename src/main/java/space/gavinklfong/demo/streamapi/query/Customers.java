@@ -0,0 +1,62 @@
+package space.gavinklfong.demo.streamapi.query;
+
+import space.gavinklfong.demo.streamapi.models.Customer;
+
+import java.time.LocalDate;
+import java.util.Locale;
+
+/**
+ * Атрибуты и условия запросов по клиентам
+ */
+public final class Customers {
+    public static final EntityType<Customer> ENTITY = new EntityType<>(Customer.class, "Customer", "c");
+
+    public static final Attribute<Customer, Long> ID = new Attribute<>("id", "c.id", Customer::getId);
+    public static final Attribute<Customer, String> NAME = new Attribute<>("name", "c.name", Customer::getName);
+    public static final Attribute<Customer, Integer> TIER = new Attribute<>("tier", "c.tier", Customer::getTier);
+
+    private Customers() {
+    }
+
+    public static Criterion<Customer> tier(Integer tier) {
+        return Criterion.of("tier = " + tier,
+                parameters -> "c.tier = " + parameters.bind(tier),
+                customer -> tier.equals(customer.getTier()));
+    }
+
+    public static Criterion<Customer> withOrders() {
+        return Criterion.of("has orders",
+                parameters -> "c.orders is not empty",
+                customer -> !customer.getOrders().isEmpty());
+    }
+
+    public static Criterion<Customer> withoutOrders() {
+        return Criterion.of("has no orders",
+                parameters -> "c.orders is empty",
+                customer -> customer.getOrders().isEmpty());
+    }
+
+    /**
+     * Клиенты с заказами в период [from, to] включительно
+     */
+    public static Criterion<Customer> orderedBetween(LocalDate from, LocalDate to) {
+        return Criterion.of("ordered in [" + from + ", " + to + "]",
+                parameters -> "exists (select 1 from c.orders co where co.orderDate between "
+                        + parameters.bind(from) + " and " + parameters.bind(to) + ")",
+                customer -> customer.getOrders().stream()
+                        .anyMatch(order -> !order.getOrderDate().isBefore(from) && !order.getOrderDate().isAfter(to)));
+    }
+
+    /**
+     * Клиенты, заказывавшие товары категории (без учета регистра)
+     */
+    public static Criterion<Customer> orderedCategory(String category) {
+        String folded = category.toLowerCase(Locale.ROOT);
+        return Criterion.of("ordered category " + category,
+                parameters -> "exists (select 1 from c.orders co join co.products cp where lower(cp.category) = "
+                        + parameters.bind(folded) + ")",
+                customer -> customer.getOrders().stream()
+                        .flatMap(order -> order.getProducts().stream())
+                        .anyMatch(product -> category.equalsIgnoreCase(product.getCategory())));
+    }
+}
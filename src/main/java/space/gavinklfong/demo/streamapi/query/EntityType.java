@@ -0,0 +1,12 @@
+package space.gavinklfong.demo.streamapi.query;
+
+/**
+ * Сущность, по которой строится запрос: класс, имя в JPQL, псевдоним, которым пользуются пути атрибутов,
+ * и соединения после FROM, псевдонимы которых тоже доступны путям
+ */
+public record EntityType<T>(Class<T> type, String name, String alias, String joins) {
+
+    public EntityType(Class<T> type, String name, String alias) {
+        this(type, name, alias, "");
+    }
+}
@@ -0,0 +1,90 @@
+package space.gavinklfong.demo.streamapi.query;
+
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.valuation.OrderValuation;
+
+import java.time.LocalDate;
+import java.util.Locale;
+
+/**
+ * Атрибуты и условия запросов по заказам
+ */
+public final class Orders {
+    public static final EntityType<Order> ENTITY = new EntityType<>(Order.class, "Order", "o",
+            // явный LEFT JOIN: неявный путь o.customer.* стал бы inner join и потерял бы заказы без клиента
+            " left join o.customer oc");
+
+    public static final Attribute<Order, Long> ID = new Attribute<>("id", "o.id", Order::getId);
+    public static final Attribute<Order, LocalDate> ORDER_DATE =
+            new Attribute<>("orderDate", "o.orderDate", Order::getOrderDate);
+    public static final Attribute<Order, LocalDate> DELIVERY_DATE =
+            new Attribute<>("deliveryDate", "o.deliveryDate", Order::getDeliveryDate);
+    public static final Attribute<Order, String> STATUS = new Attribute<>("status", "o.status", Order::getStatus);
+    public static final Attribute<Order, Long> CUSTOMER_ID = new Attribute<>("customer", "oc.id",
+            order -> order.getCustomer() != null ? order.getCustomer().getId() : null);
+    public static final Attribute<Order, Integer> CUSTOMER_TIER = new Attribute<>("customerTier", "oc.tier",
+            order -> order.getCustomer() != null ? order.getCustomer().getTier() : null);
+    public static final Attribute<Order, Double> TOTAL = Attribute.computed("total", OrderValuation::total);
+
+    private Orders() {
+    }
+
+    public static Criterion<Order> status(String status) {
+        return Criterion.of("status = " + status,
+                parameters -> "o.status = " + parameters.bind(status),
+                order -> status.equals(order.getStatus()));
+    }
+
+    public static Criterion<Order> orderedOn(LocalDate date) {
+        return Criterion.of("orderDate = " + date,
+                parameters -> "o.orderDate = " + parameters.bind(date),
+                order -> date.equals(order.getOrderDate()));
+    }
+
+    /**
+     * Заказы с датой в [from, to] включительно
+     */
+    public static Criterion<Order> orderedBetween(LocalDate from, LocalDate to) {
+        return Criterion.of("orderDate in [" + from + ", " + to + "]",
+                parameters -> "o.orderDate between " + parameters.bind(from) + " and " + parameters.bind(to),
+                order -> order.getOrderDate() != null
+                        && !order.getOrderDate().isBefore(from) && !order.getOrderDate().isAfter(to));
+    }
+
+    public static Criterion<Order> customer(Long customerId) {
+        return Criterion.of("customer = " + customerId,
+                parameters -> "oc.id = " + parameters.bind(customerId),
+                order -> order.getCustomer() != null && customerId.equals(order.getCustomer().getId()));
+    }
+
+    public static Criterion<Order> customerTier(Integer tier) {
+        return Criterion.of("customerTier = " + tier,
+                parameters -> "oc.tier = " + parameters.bind(tier),
+                order -> order.getCustomer() != null && tier.equals(order.getCustomer().getTier()));
+    }
+
+    /**
+     * Заказы, в которых есть товар категории (без учета регистра)
+     */
+    public static Criterion<Order> category(String category) {
+        String folded = category.toLowerCase(Locale.ROOT);
+        return Criterion.of("category = " + category,
+                parameters -> "exists (select 1 from o.products op where lower(op.category) = "
+                        + parameters.bind(folded) + ")",
+                order -> order.getProducts().stream()
+                        .anyMatch(product -> category.equalsIgnoreCase(product.getCategory())));
+    }
+
+    /**
+     * Заказы с суммой товаров в [min, max]
+     */
+    public static Criterion<Order> totalBetween(double min, double max) {
+        return Criterion.of("total in [" + min + ", " + max + "]",
+                parameters -> "(select coalesce(sum(op.price), 0) from o.products op) between "
+                        + parameters.bind(min) + " and " + parameters.bind(max),
+                order -> {
+                    double total = OrderValuation.total(order);
+                    return total >= min && total <= max;
+                });
+    }
+}
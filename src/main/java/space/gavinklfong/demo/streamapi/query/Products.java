@@ -0,0 +1,54 @@
+package space.gavinklfong.demo.streamapi.query;
+
+import space.gavinklfong.demo.streamapi.models.Product;
+
+import java.time.LocalDate;
+import java.util.Locale;
+
+/**
+ * Атрибуты и условия запросов по товарам
+ */
+public final class Products {
+    public static final EntityType<Product> ENTITY = new EntityType<>(Product.class, "Product", "p");
+
+    public static final Attribute<Product, Long> ID = new Attribute<>("id", "p.id", Product::getId);
+    public static final Attribute<Product, String> NAME = new Attribute<>("name", "p.name", Product::getName);
+    public static final Attribute<Product, String> CATEGORY =
+            new Attribute<>("category", "p.category", Product::getCategory);
+    public static final Attribute<Product, Double> PRICE = new Attribute<>("price", "p.price", Product::getPrice);
+
+    private Products() {
+    }
+
+    /**
+     * Товары категории (без учета регистра)
+     */
+    public static Criterion<Product> category(String category) {
+        String folded = category.toLowerCase(Locale.ROOT);
+        return Criterion.of("category = " + category,
+                parameters -> "lower(p.category) = " + parameters.bind(folded),
+                product -> category.equalsIgnoreCase(product.getCategory()));
+    }
+
+    /**
+     * Товары с ценой в [min, max]
+     */
+    public static Criterion<Product> priceBetween(double min, double max) {
+        return Criterion.of("price in [" + min + ", " + max + "]",
+                parameters -> "p.price between " + parameters.bind(min) + " and " + parameters.bind(max),
+                product -> product.getPrice() != null && product.getPrice() >= min && product.getPrice() <= max);
+    }
+
+    /**
+     * Товары, которые клиент заказывал в период [from, to] включительно
+     */
+    public static Criterion<Product> orderedBy(Long customerId, LocalDate from, LocalDate to) {
+        return Criterion.of("ordered by customer " + customerId + " in [" + from + ", " + to + "]",
+                parameters -> "exists (select 1 from p.orders po where po.customer.id = " + parameters.bind(customerId)
+                        + " and po.orderDate between " + parameters.bind(from) + " and " + parameters.bind(to) + ")",
+                product -> product.getOrders().stream()
+                        .anyMatch(order -> order.getCustomer() != null
+                                && customerId.equals(order.getCustomer().getId())
+                                && !order.getOrderDate().isBefore(from) && !order.getOrderDate().isAfter(to)));
+    }
+}
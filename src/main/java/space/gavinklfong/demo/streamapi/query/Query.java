@@ -0,0 +1,38 @@
+package space.gavinklfong.demo.streamapi.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Неизменяемое описание запроса: условия (через AND), порядок и ограничение числа строк.
+ * Каждый метод возвращает новый запрос.
+ */
+public record Query<T>(EntityType<T> entity, List<Criterion<T>> criteria, List<Sort<T>> sorts, int limit) {
+    public static final int NO_LIMIT = -1;
+
+    public static <T> Query<T> from(EntityType<T> entity) {
+        return new Query<>(entity, List.of(), List.of(), NO_LIMIT);
+    }
+
+    public Query<T> where(Criterion<T> criterion) {
+        List<Criterion<T>> result = new ArrayList<>(criteria);
+        result.add(criterion);
+        return new Query<>(entity, List.copyOf(result), sorts, limit);
+    }
+
+    /**
+     * Добавить сортировку; повторные вызовы сортируют по следующим атрибутам при равенстве предыдущих
+     */
+    public Query<T> orderBy(Sort<T> sort) {
+        List<Sort<T>> result = new ArrayList<>(sorts);
+        result.add(sort);
+        return new Query<>(entity, criteria, List.copyOf(result), limit);
+    }
+
+    public Query<T> limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative: " + limit);
+        }
+        return new Query<>(entity, criteria, sorts, limit);
+    }
+}
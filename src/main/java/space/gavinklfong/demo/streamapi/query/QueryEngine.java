@@ -0,0 +1,116 @@
+package space.gavinklfong.demo.streamapi.query;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Выполнение запросов {@link Query} по плану {@link QueryPlanner}: JPQL-часть через EntityManager,
+ * остальное - над ее результатом в памяти.
+ */
+@Component
+@Transactional(readOnly = true)
+public class QueryEngine {
+    private static final Logger log = LoggerFactory.getLogger(QueryEngine.class);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public <T> List<T> list(Query<T> query) {
+        QueryPlan<T> plan = QueryPlanner.plan(query);
+        return limit(plan, filterAndSort(plan, fetch(plan))).toList();
+    }
+
+    /**
+     * Значения атрибута у найденных сущностей, в порядке запроса
+     */
+    public <T, V extends Comparable<? super V>> List<V> select(Query<T> query, Attribute<T, V> attribute) {
+        return select(query, attribute, false);
+    }
+
+    /**
+     * Различные значения атрибута у найденных сущностей
+     */
+    public <T, V extends Comparable<? super V>> List<V> selectDistinct(Query<T> query, Attribute<T, V> attribute) {
+        return select(query, attribute, true);
+    }
+
+    /**
+     * Количество найденных сущностей по значениям атрибута
+     */
+    public <T, V extends Comparable<? super V>> Map<V, Long> countBy(Query<T> query, Attribute<T, V> attribute) {
+        QueryPlan<T> plan = QueryPlanner.planCount(query, attribute);
+        if (plan.databaseResult()) {
+            Map<V, Long> result = new HashMap<>();
+            this.<Object[]>fetch(plan).forEach(row -> result.put(cast(row[0]), ((Number) row[1]).longValue()));
+            return result;
+        }
+        // группа null есть и в GROUP BY базы; groupingBy null-ключи не принимает
+        return filterAndSort(plan, fetch(plan))
+                .collect(Collectors.toMap(attribute.getter(), entity -> 1L, Long::sum, HashMap::new));
+    }
+
+    /**
+     * План выборки сущностей по запросу, не выполняя его
+     */
+    public <T> QueryPlan<T> explain(Query<T> query) {
+        return QueryPlanner.plan(query);
+    }
+
+    private <T, V extends Comparable<? super V>> List<V> select(Query<T> query, Attribute<T, V> attribute,
+                                                                 boolean distinct) {
+        QueryPlan<T> plan = QueryPlanner.planSelect(query, attribute, distinct);
+        if (plan.databaseResult()) {
+            return fetch(plan);
+        }
+        Stream<V> values = filterAndSort(plan, fetch(plan)).map(attribute.getter());
+        if (distinct) {
+            values = values.distinct();
+        }
+        return limit(plan, values).toList();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> List<R> fetch(QueryPlan<?> plan) {
+        log.debug("Executing {}", plan.explain());
+        jakarta.persistence.Query query = entityManager.createQuery(plan.jpql());
+        plan.parameters().forEach(query::setParameter);
+        if (plan.databaseLimit() != Query.NO_LIMIT) {
+            query.setMaxResults(plan.databaseLimit());
+        }
+        return query.getResultList();
+    }
+
+    private static <T> Stream<T> filterAndSort(QueryPlan<T> plan, List<T> rows) {
+        Stream<T> stream = rows.stream();
+        for (Criterion<T> criterion : plan.memoryFilters()) {
+            stream = stream.filter(criterion::test);
+        }
+        if (!plan.memorySorts().isEmpty()) {
+            stream = stream.sorted(plan.memorySorts().stream()
+                    .map(Sort::comparator)
+                    .reduce(Comparator::thenComparing)
+                    .orElseThrow());
+        }
+        return stream;
+    }
+
+    private static <R> Stream<R> limit(QueryPlan<?> plan, Stream<R> stream) {
+        return plan.memoryLimit() != Query.NO_LIMIT ? stream.limit(plan.memoryLimit()) : stream;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V cast(Object value) {
+        return (V) value;
+    }
+}
@@ -0,0 +1,25 @@
+package space.gavinklfong.demo.streamapi.query;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Именованные параметры JPQL-запроса: p0, p1, ... в порядке регистрации
+ */
+public final class QueryParameters {
+    private final Map<String, Object> values = new LinkedHashMap<>();
+
+    /**
+     * Зарегистрировать значение и получить ссылку на него для текста запроса (":p0")
+     */
+    public String bind(Object value) {
+        String name = "p" + values.size();
+        values.put(name, value);
+        return ":" + name;
+    }
+
+    public Map<String, Object> values() {
+        return Collections.unmodifiableMap(values);
+    }
+}
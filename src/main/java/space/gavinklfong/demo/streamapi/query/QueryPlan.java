@@ -0,0 +1,69 @@
+package space.gavinklfong.demo.streamapi.query;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * План выполнения запроса: JPQL-часть и шаги, которые остались для памяти.
+ *
+ * @param databaseResult строки JPQL-запроса - уже готовый результат (значения или группы), а не сущности
+ * @param memoryStep     проекция или группировка в памяти, null - если ее нет или она выполнена в базе
+ */
+public record QueryPlan<T>(Query<T> query,
+                           String jpql,
+                           Map<String, Object> parameters,
+                           int databaseLimit,
+                           boolean databaseResult,
+                           List<Criterion<T>> memoryFilters,
+                           List<Sort<T>> memorySorts,
+                           int memoryLimit,
+                           String memoryStep) {
+
+    /**
+     * Весь запрос выполняется одним JPQL-запросом
+     */
+    public boolean pushedDown() {
+        return memoryFilters.isEmpty() && memorySorts.isEmpty() && memoryLimit == Query.NO_LIMIT && memoryStep == null;
+    }
+
+    QueryPlan<T> withMemoryLimit(int limit) {
+        return new QueryPlan<>(query, jpql, parameters, databaseLimit, databaseResult,
+                memoryFilters, memorySorts, limit, memoryStep);
+    }
+
+    /**
+     * Описание плана в духе EXPLAIN: одна строка на шаг
+     */
+    public String explain() {
+        StringBuilder result = new StringBuilder()
+                .append(query.entity().name())
+                .append(" query: ")
+                .append(pushedDown() ? "pushdown" : "in-memory")
+                .append("\n  database: ")
+                .append(jpql);
+        if (!parameters.isEmpty()) {
+            result.append(' ').append(parameters);
+        }
+        if (databaseLimit != Query.NO_LIMIT) {
+            result.append(" [max results ").append(databaseLimit).append(']');
+        }
+        if (!memoryFilters.isEmpty()) {
+            result.append("\n  memory filter: ").append(memoryFilters.stream()
+                    .map(Criterion::describe)
+                    .collect(Collectors.joining(" and ")));
+        }
+        if (!memorySorts.isEmpty()) {
+            result.append("\n  memory sort: ").append(memorySorts.stream()
+                    .map(Sort::toString)
+                    .collect(Collectors.joining(", ")));
+        }
+        if (memoryStep != null) {
+            result.append("\n  memory ").append(memoryStep);
+        }
+        if (memoryLimit != Query.NO_LIMIT) {
+            result.append("\n  memory limit: ").append(memoryLimit);
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,107 @@
+package space.gavinklfong.demo.streamapi.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Выбор плана: условия, которые можно проверить в базе, уходят в WHERE одного JPQL-запроса,
+ * остальные проверяются в памяти по уже отфильтрованным строкам.
+ * <p>
+ * Сортировка уходит в ORDER BY, если все ее атрибуты есть в базе; null в обоих планах идут последними
+ * в любом направлении (в JPQL - явный NULLS LAST). Ограничение числа строк -
+ * в setMaxResults, только если ни фильтровать, ни сортировать в памяти не нужно.
+ * Проекция и группировка выполняются в базе только вместе со всеми условиями.
+ */
+public final class QueryPlanner {
+
+    private QueryPlanner() {
+    }
+
+    /**
+     * План выборки сущностей
+     */
+    public static <T> QueryPlan<T> plan(Query<T> query) {
+        return entityPlan(query, query.limit(), null);
+    }
+
+    /**
+     * План выборки значений атрибута (с distinct - без повторов)
+     */
+    public static <T> QueryPlan<T> planSelect(Query<T> query, Attribute<T, ?> attribute, boolean distinct) {
+        Where<T> where = where(query);
+        // для DISTINCT база требует, чтобы столбцы ORDER BY были в списке выборки
+        boolean sortsOnAttribute = query.sorts().stream().allMatch(sort -> sort.attribute().equals(attribute));
+        if (attribute.pushable() && where.memoryFilters().isEmpty() && sortable(query)
+                && (!distinct || sortsOnAttribute)) {
+            String jpql = "select " + (distinct ? "distinct " : "") + attribute.path()
+                    + from(query) + where.clause() + orderBy(query.sorts());
+            return new QueryPlan<>(query, jpql, where.parameters().values(), query.limit(), true,
+                    List.of(), List.of(), Query.NO_LIMIT, null);
+        }
+        String step = (distinct ? "select distinct " : "select ") + attribute.name();
+        // повторы убираются до ограничения числа строк, поэтому с distinct ограничивать выборку сущностей нельзя
+        return distinct
+                ? entityPlan(query, Query.NO_LIMIT, step).withMemoryLimit(query.limit())
+                : entityPlan(query, query.limit(), step);
+    }
+
+    /**
+     * План подсчета строк по значениям атрибута; сортировка и ограничение запроса не учитываются
+     */
+    public static <T> QueryPlan<T> planCount(Query<T> query, Attribute<T, ?> groupBy) {
+        Query<T> unordered = new Query<>(query.entity(), query.criteria(), List.of(), Query.NO_LIMIT);
+        Where<T> where = where(unordered);
+        if (groupBy.pushable() && where.memoryFilters().isEmpty()) {
+            String jpql = "select " + groupBy.path() + ", count(" + query.entity().alias() + ")"
+                    + from(query) + where.clause() + " group by " + groupBy.path();
+            return new QueryPlan<>(unordered, jpql, where.parameters().values(), Query.NO_LIMIT, true,
+                    List.of(), List.of(), Query.NO_LIMIT, null);
+        }
+        return entityPlan(unordered, Query.NO_LIMIT, "group by " + groupBy.name() + ", count");
+    }
+
+    private static <T> QueryPlan<T> entityPlan(Query<T> query, int limit, String memoryStep) {
+        Where<T> where = where(query);
+        boolean sortInDatabase = sortable(query);
+        boolean limitInDatabase = sortInDatabase && where.memoryFilters().isEmpty();
+        String jpql = "select " + query.entity().alias() + from(query) + where.clause()
+                + (sortInDatabase ? orderBy(query.sorts()) : "");
+        return new QueryPlan<>(query, jpql, where.parameters().values(),
+                limitInDatabase ? limit : Query.NO_LIMIT, false,
+                where.memoryFilters(), sortInDatabase ? List.of() : query.sorts(),
+                limitInDatabase ? Query.NO_LIMIT : limit, memoryStep);
+    }
+
+    private static <T> Where<T> where(Query<T> query) {
+        QueryParameters parameters = new QueryParameters();
+        List<String> conditions = new ArrayList<>();
+        List<Criterion<T>> memoryFilters = new ArrayList<>();
+        for (Criterion<T> criterion : query.criteria()) {
+            if (criterion.pushable()) {
+                conditions.add(criterion.toJpql(parameters));
+            } else {
+                memoryFilters.add(criterion);
+            }
+        }
+        String clause = conditions.isEmpty() ? "" : " where " + String.join(" and ", conditions);
+        return new Where<>(clause, parameters, List.copyOf(memoryFilters));
+    }
+
+    private static boolean sortable(Query<?> query) {
+        return query.sorts().stream().allMatch(sort -> sort.attribute().pushable());
+    }
+
+    private static String from(Query<?> query) {
+        return " from " + query.entity().name() + " " + query.entity().alias() + query.entity().joins();
+    }
+
+    private static String orderBy(List<? extends Sort<?>> sorts) {
+        return sorts.isEmpty() ? "" : " order by " + sorts.stream()
+                .map(Sort::toJpql)
+                .collect(Collectors.joining(", "));
+    }
+
+    private record Where<T>(String clause, QueryParameters parameters, List<Criterion<T>> memoryFilters) {
+    }
+}
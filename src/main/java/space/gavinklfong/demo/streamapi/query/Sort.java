@@ -0,0 +1,20 @@
+package space.gavinklfong.demo.streamapi.query;
+
+import java.util.Comparator;
+
+public record Sort<T>(Attribute<T, ?> attribute, boolean descending) {
+
+    Comparator<T> comparator() {
+        return attribute.comparator(descending);
+    }
+
+    // без NULLS LAST порядок null зависел бы от базы (H2 ставит их первыми при ASC)
+    String toJpql() {
+        return attribute.path() + (descending ? " desc" : " asc") + " nulls last";
+    }
+
+    @Override
+    public String toString() {
+        return attribute.name() + (descending ? " desc" : " asc");
+    }
+}
@@ -2,13 +2,30 @@ package space.gavinklfong.demo.streamapi.repos;
 
 import java.util.List;
 
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import space.gavinklfong.demo.streamapi.models.Customer;
 
 @Repository
-public interface CustomerRepo extends CrudRepository<Customer, Long> {
+public interface CustomerRepo extends CrudRepository<Customer, Long>, PagingAndSortingRepository<Customer, Long> {
 
 	List<Customer> findAll();
+
+	List<Customer> findAllById(Iterable<Long> ids);
+
+	@Query("select count(c) from Customer c where exists (select o from Order o where o.customer = c)")
+	long countWithOrders();
+
+	/**
+	 * Relational division: клиенты, купившие не меньше minProducts различных товаров категории
+	 */
+	@Query("select c from Customer c join c.orders o join o.products p"
+			+ " where lower(p.category) = lower(:category)"
+			+ " group by c having count(distinct p.id) >= :minProducts")
+	List<Customer> findByDistinctProductsInCategory(@Param("category") String category,
+													@Param("minProducts") long minProducts);
 }
@@ -1,14 +1,32 @@
 package space.gavinklfong.demo.streamapi.repos;
 
 import java.util.List;
+import java.util.Optional;
 
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.stereotype.Repository;
 
 import space.gavinklfong.demo.streamapi.models.Order;
 
 @Repository
-public interface OrderRepo extends CrudRepository<Order, Long> {
+public interface OrderRepo extends CrudRepository<Order, Long>, PagingAndSortingRepository<Order, Long> {
 
 	List<Order> findAll();
+
+	List<Order> findAllById(Iterable<Long> ids);
+
+	@Query("select min(o.id) from Order o")
+	Optional<Long> findMinId();
+
+	@Query("select max(o.id) from Order o")
+	Optional<Long> findMaxId();
+
+	/**
+	 * Заказы с id в [from, to] вместе с клиентом и товарами - одним запросом
+	 */
+	@EntityGraph(attributePaths = {"customer", "products"})
+	List<Order> findByIdBetween(Long from, Long to);
 }
@@ -3,12 +3,17 @@ package space.gavinklfong.demo.streamapi.repos;
 import java.util.List;
 
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.stereotype.Repository;
 
 import space.gavinklfong.demo.streamapi.models.Product;
 
 @Repository
-public interface ProductRepo extends CrudRepository<Product, Long> {
+public interface ProductRepo extends CrudRepository<Product, Long>, PagingAndSortingRepository<Product, Long> {
 
 	List<Product> findAll();
+
+	List<Product> findAllById(Iterable<Long> ids);
+
+	long countByCategoryIgnoreCase(String category);
 }
@@ -0,0 +1,10 @@
+package space.gavinklfong.demo.streamapi.repos;
+
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+
+import space.gavinklfong.demo.streamapi.models.ReportResult;
+
+@Repository
+public interface ReportResultRepo extends CrudRepository<ReportResult, String> {
+}
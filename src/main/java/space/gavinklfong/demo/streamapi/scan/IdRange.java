@@ -0,0 +1,25 @@
+package space.gavinklfong.demo.streamapi.scan;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Диапазон id [from, to] включительно
+ */
+public record IdRange(long from, long to) {
+
+    /**
+     * Разбить [min, max] на не больше чем count непересекающихся диапазонов примерно равной ширины
+     */
+    public static List<IdRange> split(long min, long max, int count) {
+        long width = Math.max(1, Math.ceilDiv(max - min + 1, Math.max(1, count)));
+        List<IdRange> ranges = new ArrayList<>();
+        for (long from = min; from <= max; from += width) {
+            ranges.add(new IdRange(from, Math.min(max, from + width - 1)));
+            if (from > max - width) {
+                break;
+            }
+        }
+        return ranges;
+    }
+}
@@ -0,0 +1,155 @@
+package space.gavinklfong.demo.streamapi.scan;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.repos.OrderRepo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.stream.Collector;
+
+/**
+ * Параллельный полный проход по заказам: таблица product_orders делится на диапазоны id,
+ * каждый диапазон читается одним запросом (вместе с клиентом и товарами) в своей read-only
+ * транзакции - то есть на своем соединении из пула для чтения.
+ * <p>
+ * Агрегат задается {@link Collector}: каждый поток накапливает свой частичный результат
+ * по взятым из общей очереди диапазонам, частичные результаты объединяются combiner'ом.
+ * Диапазонов больше, чем потоков (scan.partitions-per-thread), чтобы неравномерно заполненные
+ * диапазоны не оставляли потоки без работы. Накопитель не должен хранить сущности для
+ * последующей ленивой загрузки: после диапазона его транзакция закрывается.
+ * <p>
+ * Число потоков (scan.parallelism, 0 - по числу ядер) не больше размера пула для чтения минус один:
+ * вызывающий может сам держать соединение из этого пула (например, внутри read-only транзакции),
+ * и потоки сканера не должны ждать его освобождения. Потоки общие для всех проходов, а соединение
+ * берется только на время диапазона, поэтому одновременные проходы тоже не блокируют друг друга.
+ */
+@Component
+public class PartitionedOrderScanner implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(PartitionedOrderScanner.class);
+
+    private final OrderRepo orderRepo;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxParallelism;
+    private final int partitionsPerThread;
+    private final ExecutorService executor;
+
+    public PartitionedOrderScanner(OrderRepo orderRepo,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${scan.parallelism:0}") int parallelism,
+                                   @Value("${scan.partitions-per-thread:4}") int partitionsPerThread,
+                                   @Value("${app.datasource.read.maximum-pool-size:10}") int readPoolSize) {
+        this.orderRepo = orderRepo;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.maxParallelism = Math.max(1, Math.min(threads, readPoolSize - 1));
+        this.partitionsPerThread = Math.max(1, partitionsPerThread);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(maxParallelism, task -> {
+            Thread thread = new Thread(task, "order-scan-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getMaxParallelism() {
+        return maxParallelism;
+    }
+
+    /**
+     * Свернуть все заказы коллектором, используя все потоки сканера
+     */
+    public <A, R> R scan(Collector<Order, A, R> collector) {
+        return scan(collector, maxParallelism);
+    }
+
+    /**
+     * Свернуть все заказы коллектором, используя не больше parallelism потоков
+     */
+    public <A, R> R scan(Collector<Order, A, R> collector, int parallelism) {
+        return scan(collector, parallelism, ProgressListener.NONE);
+    }
+
+    /**
+     * Свернуть все заказы коллектором, сообщая progress о каждом прочитанном диапазоне
+     * (вызывается из потоков сканера)
+     */
+    public <A, R> R scan(Collector<Order, A, R> collector, int parallelism, ProgressListener progress) {
+        int threads = Math.min(Math.max(1, parallelism), maxParallelism);
+        List<IdRange> partitions = partitions(threads);
+        Queue<IdRange> pending = new ConcurrentLinkedQueue<>(partitions);
+        int workers = Math.min(threads, Math.max(1, partitions.size()));
+        AtomicInteger scanned = new AtomicInteger();
+
+        List<Future<A>> futures = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            futures.add(executor.submit(() -> {
+                A container = collector.supplier().get();
+                IdRange partition;
+                while ((partition = pending.poll()) != null) {
+                    scanPartition(partition, container, collector.accumulator());
+                    progress.progress(scanned.incrementAndGet(), partitions.size());
+                }
+                return container;
+            }));
+        }
+
+        A result = await(futures.get(0));
+        for (Future<A> future : futures.subList(1, futures.size())) {
+            result = collector.combiner().apply(result, await(future));
+        }
+        log.debug("Scanned {} order partitions with {} threads", partitions.size(), workers);
+        return collector.finisher().apply(result);
+    }
+
+    private <A> void scanPartition(IdRange partition, A container, BiConsumer<A, Order> accumulator) {
+        transactionTemplate.executeWithoutResult(status ->
+                orderRepo.findByIdBetween(partition.from(), partition.to())
+                        .forEach(order -> accumulator.accept(container, order)));
+    }
+
+    private List<IdRange> partitions(int parallelism) {
+        Optional<Long> minId = transactionTemplate.execute(status -> orderRepo.findMinId());
+        Optional<Long> maxId = transactionTemplate.execute(status -> orderRepo.findMaxId());
+        if (minId == null || minId.isEmpty() || maxId == null || maxId.isEmpty()) {
+            return List.of();
+        }
+        return IdRange.split(minId.get(), maxId.get(), parallelism * partitionsPerThread);
+    }
+
+    private static <A> A await(Future<A> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Order scan interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Order scan failed", e.getCause());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,12 @@
+package space.gavinklfong.demo.streamapi.scan;
+
+/**
+ * Получатель прогресса долгой операции: выполнено done шагов из total
+ */
+@FunctionalInterface
+public interface ProgressListener {
+    ProgressListener NONE = (done, total) -> {
+    };
+
+    void progress(long done, long total);
+}
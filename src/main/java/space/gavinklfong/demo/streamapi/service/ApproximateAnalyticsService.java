@@ -0,0 +1,120 @@
+package space.gavinklfong.demo.streamapi.service;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.repos.ProductRepo;
+import space.gavinklfong.demo.streamapi.sketch.Hashing;
+import space.gavinklfong.demo.streamapi.sketch.HeavyHitters;
+import space.gavinklfong.demo.streamapi.sketch.HyperLogLog;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Приближенные варианты аналитических запросов для больших выборок: число различных значений
+ * оценивается HyperLogLog, самые частые значения - Count-Min со скетчем кандидатов.
+ * Память фиксирована и не зависит от объема данных, ошибка - в пределах 1%.
+ * <p>
+ * Скетчи заполняются скалярными строками (id, категория), которые читаются курсором JDBC порциями
+ * по FETCH_SIZE строк, - сущности не загружаются и в persistence context не попадают.
+ * <p>
+ * Точные варианты - в {@link BusinessAnalyticsService} и {@link OrderService}.
+ */
+@Service
+@Transactional(readOnly = true)
+public class ApproximateAnalyticsService {
+    private static final int FETCH_SIZE = 1_000;
+
+    private static final String PRODUCTS_BY_TIER_SQL = "SELECT r.product_id FROM order_product_relationship r"
+            + " JOIN product_orders o ON o.id = r.order_id JOIN customers c ON c.id = o.customer_id WHERE c.tier = ?";
+    private static final String PRODUCTS_BY_DATE_SQL = "SELECT r.product_id FROM order_product_relationship r"
+            + " JOIN product_orders o ON o.id = r.order_id WHERE o.order_date = ?";
+    private static final String CUSTOMERS_BY_CATEGORY_SQL = "SELECT o.customer_id FROM product_orders o"
+            + " JOIN order_product_relationship r ON r.order_id = o.id JOIN products p ON p.id = r.product_id"
+            + " WHERE o.customer_id IS NOT NULL AND LOWER(p.category) = LOWER(?)";
+    private static final String CATEGORIES_SQL = "SELECT p.category FROM order_product_relationship r"
+            + " JOIN products p ON p.id = r.product_id WHERE p.category IS NOT NULL";
+    private static final String PRODUCTS_SQL = "SELECT product_id FROM order_product_relationship";
+
+    // кандидатов в топ держим с запасом: оценка у границы топа может колебаться
+    private static final int MIN_CANDIDATES = 64;
+
+    private final ProductRepo productRepo;
+    private final JdbcTemplate jdbcTemplate;
+
+    public ApproximateAnalyticsService(ProductRepo productRepo, DataSource dataSource) {
+        this.productRepo = productRepo;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+    }
+
+    /**
+     * Число различных продуктов, купленных клиентами tier
+     */
+    public long estimateDistinctProductsByCustomerTier(Integer tier) {
+        return distinctCount(PRODUCTS_BY_TIER_SQL, tier);
+    }
+
+    /**
+     * Число различных продуктов, заказанных в определенную дату
+     */
+    public long estimateDistinctProductsByDate(LocalDate date) {
+        return distinctCount(PRODUCTS_BY_DATE_SQL, Date.valueOf(date));
+    }
+
+    /**
+     * Число различных клиентов, купивших хотя бы один продукт категории
+     */
+    public long estimateCustomersWhoBoughtInCategory(String category) {
+        return distinctCount(CUSTOMERS_BY_CATEGORY_SQL, category);
+    }
+
+    /**
+     * Самые популярные категории (число позиций в заказах), по убыванию
+     */
+    public Map<String, Long> getMostPopularCategories(int limit) {
+        HeavyHitters<String> categories = heavyHitters(limit, Hashing::hash);
+        jdbcTemplate.query(CATEGORIES_SQL, rs -> {
+            categories.add(rs.getString(1));
+        });
+        return categories.top(limit);
+    }
+
+    /**
+     * Продукты, которые заказывались чаще всего, по убыванию
+     */
+    public Map<Product, Long> getMostOrderedProducts(int limit) {
+        HeavyHitters<Long> productIds = heavyHitters(limit, Hashing::hash);
+        jdbcTemplate.query(PRODUCTS_SQL, rs -> {
+            productIds.add(rs.getLong(1));
+        });
+        Map<Long, Long> top = productIds.top(limit);
+
+        Map<Long, Product> products = productRepo.findAllById(top.keySet()).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        Map<Product, Long> result = new LinkedHashMap<>();
+        top.forEach((productId, count) -> result.put(products.get(productId), count));
+        return result;
+    }
+
+    // первая колонка запроса - id, каждое значение попадает в скетч
+    private long distinctCount(String sql, Object... args) {
+        HyperLogLog sketch = new HyperLogLog();
+        jdbcTemplate.query(sql, rs -> {
+            sketch.add(Hashing.hash(rs.getLong(1)));
+        }, args);
+        return sketch.estimate();
+    }
+
+    private static <K> HeavyHitters<K> heavyHitters(int limit, ToLongFunction<K> hasher) {
+        return new HeavyHitters<>(Math.max(limit * 4, MIN_CANDIDATES), hasher);
+    }
+}
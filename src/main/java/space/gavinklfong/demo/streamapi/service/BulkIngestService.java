@@ -0,0 +1,74 @@
+package space.gavinklfong.demo.streamapi.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import space.gavinklfong.demo.streamapi.models.Customer;
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.models.Product;
+
+import java.util.Collection;
+import java.util.function.ToIntFunction;
+
+/**
+ * Массовая загрузка клиентов, товаров и заказов (вместе со строками order_product_relationship).
+ * <p>
+ * Сущности сохраняются пакетами по ingest.batch-size: Hibernate отправляет их JDBC batch'ами
+ * (id берутся из sequence с pooled-оптимизатором), после каждого пакета persistence context
+ * сбрасывается (flush + clear), чтобы память не росла вместе с объемом загрузки.
+ * Поэтому ранее загруженные в той же транзакции сущности после вызова становятся detached.
+ */
+@Service
+@Transactional
+public class BulkIngestService {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkIngestService.class);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${ingest.batch-size:500}")
+    private int batchSize;
+
+    public IngestResult ingestCustomers(Collection<Customer> customers) {
+        return persistAll(customers, customer -> 1);
+    }
+
+    public IngestResult ingestProducts(Collection<Product> products) {
+        return persistAll(products, product -> 1);
+    }
+
+    /**
+     * Заказы должны ссылаться на уже сохраненных клиентов и товары
+     */
+    public IngestResult ingestOrders(Collection<Order> orders) {
+        return persistAll(orders, order -> 1 + order.getProducts().size());
+    }
+
+    private <T> IngestResult persistAll(Collection<T> entities, ToIntFunction<T> rowsPerEntity) {
+        long startTime = System.currentTimeMillis();
+        long rows = 0;
+        int pending = 0;
+
+        for (T entity : entities) {
+            entityManager.persist(entity);
+            rows += rowsPerEntity.applyAsInt(entity);
+            if (++pending == batchSize) {
+                entityManager.flush();
+                entityManager.clear();
+                pending = 0;
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        IngestResult result = new IngestResult(rows, System.currentTimeMillis() - startTime);
+        log.info("Ingested {} entities ({} rows) in {} ms, {} rows/s",
+                entities.size(), result.rows(), result.elapsedMillis(), Math.round(result.rowsPerSecond()));
+        return result;
+    }
+}
@@ -5,14 +5,31 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import space.gavinklfong.demo.streamapi.admission.AdmissionController;
+import space.gavinklfong.demo.streamapi.admission.WorkloadClass;
+import space.gavinklfong.demo.streamapi.aggregate.Aggregate;
+import space.gavinklfong.demo.streamapi.aggregate.AggregateResults;
+import space.gavinklfong.demo.streamapi.aggregate.Aggregates;
+import space.gavinklfong.demo.streamapi.coalesce.SingleFlight;
+import space.gavinklfong.demo.streamapi.index.EntityBitmapIndex;
+import space.gavinklfong.demo.streamapi.index.OrderDateIndex;
+import space.gavinklfong.demo.streamapi.index.OrderProductAdjacency;
 import space.gavinklfong.demo.streamapi.models.Customer;
 import space.gavinklfong.demo.streamapi.models.Order;
 import space.gavinklfong.demo.streamapi.models.Product;
 import space.gavinklfong.demo.streamapi.repos.CustomerRepo;
 import space.gavinklfong.demo.streamapi.repos.OrderRepo;
 import space.gavinklfong.demo.streamapi.repos.ProductRepo;
+import space.gavinklfong.demo.streamapi.scan.PartitionedOrderScanner;
+import space.gavinklfong.demo.streamapi.scan.ProgressListener;
+import space.gavinklfong.demo.streamapi.shard.ShardTotals;
+import space.gavinklfong.demo.streamapi.shard.ShardedReadReplica;
+import space.gavinklfong.demo.streamapi.snapshot.AnalyticsSnapshot;
+import space.gavinklfong.demo.streamapi.snapshot.SnapshotStore;
+import space.gavinklfong.demo.streamapi.valuation.OrderValuation;
 
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -24,6 +41,14 @@ public class BusinessAnalyticsService {
     private final CustomerRepo customerRepo;
     private final OrderRepo orderRepo;
     private final ProductRepo productRepo;
+    private final EntityBitmapIndex bitmapIndex;
+    private final OrderDateIndex orderDateIndex;
+    private final OrderProductAdjacency adjacency;
+    private final PartitionedOrderScanner orderScanner;
+    private final SnapshotStore snapshotStore;
+    private final ShardedReadReplica shardedReplica;
+    private final SingleFlight singleFlight;
+    private final AdmissionController admissionController;
 
     private static final Logger log = LoggerFactory.getLogger(BusinessAnalyticsService.class);
 
@@ -31,10 +56,7 @@ public class BusinessAnalyticsService {
      * Упражнение 1: Получить список заказов с продуктами категории "Books"
      */
     public List<Order> getOrdersWithProductCategory(String category) {
-        return orderRepo.findAll().stream()
-                .filter(order -> order.getProducts().stream()
-                        .anyMatch(product -> category.equalsIgnoreCase(product.getCategory())))
-                .toList();
+        return orderRepo.findAllById(bitmapIndex.query(index -> index.orderIds(index.ordersWithCategory(category))));
     }
 
     /**
@@ -77,108 +99,168 @@ public class BusinessAnalyticsService {
      * Упражнение 5: Получить самую дорогую покупку
      */
     public Optional<Order> getMostExpensiveOrder() {
-        return orderRepo.findAll().stream()
-                .max(Comparator.comparingDouble(order ->
-                                order.getProducts().stream()
-                                        .mapToDouble(Product::getPrice)
-                                        .sum()
-                        )
-                );
+        OptionalLong orderId = adjacency.mostExpensiveOrderId();
+        return orderId.isPresent() ? orderRepo.findById(orderId.getAsLong()) : Optional.empty();
     }
 
     /**
-     * Получить выручку по дням
+     * Получить выручку по дням (при шардировании - сумма по всем шардам).
+     * Одновременные вызовы получают один общий неизменяемый результат, см. {@link SingleFlight}
      */
     public Map<LocalDate, Double> getRevenue() {
-        return orderRepo.findAll().stream()
-                .collect(Collectors.groupingBy(
-                        Order::getOrderDate,
-                        Collectors.summingDouble(order -> order.getProducts().stream()
-                                .mapToDouble(Product::getPrice)
-                                .sum())
-                ));
+        return singleFlight.execute("BusinessAnalyticsService.getRevenue", () -> Collections.unmodifiableMap(
+                shardedReplica.isEnabled() ? shardedReplica.revenueByDay() : orderDateIndex.revenueByDay()));
     }
 
     /**
-     * Получить топ-5 самых популярных категорий
+     * Получить топ-5 самых популярных категорий.
+     * Одновременные вызовы с тем же limit получают один общий неизменяемый результат
      */
     public Map<String, Long> getMostPopularCategories(int limit) {
-        return orderRepo.findAll().stream()
-                .flatMap(order -> order.getProducts().stream())
-                .collect(Collectors.groupingBy(
-                        Product::getCategory,
-                        Collectors.counting()
-                ))
-                .entrySet().stream()
-                .sorted((e1, e2) -> Long.compare(e2.getValue(), e1.getValue()))
-                .limit(limit)
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        Map.Entry::getValue,
-                        (e1, e2) -> e1,
-                        LinkedHashMap::new
-                ));
+        return singleFlight.execute("BusinessAnalyticsService.getMostPopularCategories", () -> {
+            Map<String, Long> orderLines = shardedReplica.isEnabled()
+                    ? shardedReplica.orderLinesByCategory()
+                    : snapshotStore.current()
+                            .map(AnalyticsSnapshot::orderLinesByCategory)
+                            .orElseGet(adjacency::orderLinesByCategory);
+            return Collections.unmodifiableMap(orderLines.entrySet().stream()
+                    .sorted((e1, e2) -> Long.compare(e2.getValue(), e1.getValue()))
+                    .limit(limit)
+                    .collect(Collectors.toMap(
+                            Map.Entry::getKey,
+                            Map.Entry::getValue,
+                            (e1, e2) -> e1,
+                            LinkedHashMap::new
+                    )));
+        }, limit);
     }
 
     /**
-     * Получить клиентов, которые купили все продукты категории
+     * Получить клиентов, которые купили хотя бы один продукт категории
      */
     public List<Customer> getCustomersWhoBoughtAnyProductInCategory(String category) {
-        List<Product> categoryProducts = productRepo.findAll().stream()
-                .filter(product -> category.equalsIgnoreCase(product.getCategory()))
-                .toList();
+        return getCustomersWhoBoughtAtLeastProductsInCategory(category, 1);
+    }
 
-        return customerRepo.findAll().stream()
-                .filter(customer -> customer.getOrders() != null)
-                .filter(customer -> {
-                    Set<Product> boughtProducts = customer.getOrders().stream()
-                            .flatMap(order -> order.getProducts().stream())
-                            .filter(product -> category.equalsIgnoreCase(product.getCategory()))
-                            .collect(Collectors.toSet());
-                    return boughtProducts.containsAll(categoryProducts);
-                })
-                .toList();
+    /**
+     * Получить клиентов, которые купили все продукты категории
+     */
+    public List<Customer> getCustomersWhoBoughtAllProductsInCategory(String category) {
+        long categorySize = productRepo.countByCategoryIgnoreCase(category);
+        if (categorySize == 0) {
+            return customerRepo.findAll();
+        }
+        return getCustomersWhoBoughtAtLeastProductsInCategory(category, categorySize);
+    }
+
+    /**
+     * Получить клиентов, которые купили не меньше minProducts различных продуктов категории.
+     * Считается одним запросом (group by клиенту + having), без обхода заказов каждого клиента.
+     * Тяжелая аналитика: выполняется в пределах лимита {@link AdmissionController}
+     */
+    public List<Customer> getCustomersWhoBoughtAtLeastProductsInCategory(String category, long minProducts) {
+        return admissionController.call(WorkloadClass.ANALYTICS, () -> {
+            if (minProducts <= 0) {
+                return customerRepo.findAll();
+            }
+            return customerRepo.findByDistinctProductsInCategory(category, minProducts);
+        });
+    }
+
+    /**
+     * Получить клиентов по составному условию, например
+     * "клиенты tier 2, заказавшие Books в феврале 2021 со статусом DELIVERED".
+     * Параметры со значением null не ограничивают выборку.
+     */
+    public List<Customer> getCustomersByOrderCriteria(Integer tier, String category, YearMonth month, String status) {
+        List<Long> customerIds = bitmapIndex.query(index -> {
+            BitSet orders = index.allOrders();
+            if (category != null) {
+                orders.and(index.ordersWithCategory(category));
+            }
+            if (month != null) {
+                orders.and(index.ordersInMonth(month));
+            }
+            if (status != null) {
+                orders.and(index.ordersWithStatus(status));
+            }
+
+            BitSet customers = index.customersOf(orders);
+            if (tier != null) {
+                customers.and(index.customersWithTier(tier));
+            }
+            return index.customerIds(customers);
+        });
+        return customerRepo.findAllById(customerIds);
     }
 
     /**
      * Получить отчет по продажам
      */
     public Map<String, Object> getSalesReport() {
-        Map<String, Object> report = new HashMap<>();
+        return getSalesReport(ProgressListener.NONE);
+    }
 
-        // Общая статистика
-        report.put("totalOrders", orderRepo.count());
-        report.put("totalCustomers", customerRepo.count());
-        report.put("totalProducts", productRepo.count());
+    /**
+     * Получить отчет по продажам, сообщая о прочитанных диапазонах заказов при полном проходе
+     */
+    public Map<String, Object> getSalesReport(ProgressListener progress) {
+        return getSalesSummary(progress).toMap();
+    }
 
-        // Выручка
-        double totalRevenue = orderRepo.findAll().stream()
-                .flatMap(order -> order.getProducts().stream())
-                .mapToDouble(Product::getPrice)
-                .sum();
-        report.put("totalRevenue", totalRevenue);
-
-        // Средний чек
-        double averageOrderValue = orderRepo.findAll().stream()
-                .mapToDouble(order -> order.getProducts().stream()
-                        .mapToDouble(Product::getPrice)
-                        .sum())
-                .average()
-                .orElse(0.0);
-        report.put("averageOrderValue", averageOrderValue);
-
-        // Статистика по статусам заказов
-        Map<String, Long> ordersByStatus = orderRepo.findAll().stream()
-                .collect(Collectors.groupingBy(
-                        Order::getStatus,
-                        Collectors.counting()
-                ));
-        report.put("ordersByStatus", ordersByStatus);
-
-        // Топ категорий
-        report.put("mostPopularCategories", getMostPopularCategories(5));
-
-        return report;
+    /**
+     * Отчет по продажам в виде {@link SalesSummary}
+     */
+    public SalesSummary getSalesSummary() {
+        return getSalesSummary(ProgressListener.NONE);
+    }
+
+    /**
+     * Отчет по продажам в виде {@link SalesSummary}, с progress при полном проходе.
+     * Тяжелая аналитика: выполняется в пределах лимита {@link AdmissionController}
+     */
+    public SalesSummary getSalesSummary(ProgressListener progress) {
+        return admissionController.call(WorkloadClass.ANALYTICS, () -> shardedReplica.isEnabled()
+                ? getShardedSalesSummary()
+                : getUnshardedSalesSummary(progress));
+    }
+
+    // отчет по основной БД
+    private SalesSummary getUnshardedSalesSummary(ProgressListener progress) {
+        // Выручка, средний чек и статусы заказов - из снапшота или за один параллельный проход по заказам
+        Aggregates<Order> aggregates = Aggregates.over(Order.class);
+        // каждый заказ проходится один раз, запоминать суммы незачем
+        Aggregate<DoubleSummaryStatistics> orderTotals = aggregates.summarizingDouble(OrderValuation::compute);
+        Aggregate<Map<String, Long>> ordersByStatus = aggregates.countBy(Order::getStatus);
+        Map.Entry<DoubleSummaryStatistics, Map<String, Long>> totals = snapshotStore.current()
+                .map(snapshot -> Map.entry(snapshot.orderTotals(), snapshot.ordersByStatus()))
+                .orElseGet(() -> {
+                    AggregateResults results = orderScanner.scan(aggregates.collector(),
+                            orderScanner.getMaxParallelism(), progress);
+                    return Map.entry(results.get(orderTotals), results.get(ordersByStatus));
+                });
+
+        return new SalesSummary(
+                orderRepo.count(),
+                customerRepo.count(),
+                productRepo.count(),
+                totals.getKey().getSum(),
+                totals.getKey().getAverage(),
+                totals.getValue(),
+                getMostPopularCategories(5));
+    }
+
+    // тот же отчет по частичным итогам шардов
+    private SalesSummary getShardedSalesSummary() {
+        ShardTotals totals = shardedReplica.totals();
+        return new SalesSummary(
+                totals.orders(),
+                totals.customers(),
+                totals.products(),
+                totals.revenue(),
+                totals.averageOrderValue(),
+                totals.ordersByStatus(),
+                getMostPopularCategories(5));
     }
 
 
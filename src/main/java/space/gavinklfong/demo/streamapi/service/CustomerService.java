@@ -5,12 +5,25 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import space.gavinklfong.demo.streamapi.admission.AdmissionController;
+import space.gavinklfong.demo.streamapi.admission.WorkloadClass;
+import space.gavinklfong.demo.streamapi.aggregate.Aggregate;
+import space.gavinklfong.demo.streamapi.aggregate.AggregateResults;
+import space.gavinklfong.demo.streamapi.aggregate.Aggregates;
+import space.gavinklfong.demo.streamapi.index.CohortIndex;
+import space.gavinklfong.demo.streamapi.index.CohortRetention;
+import space.gavinklfong.demo.streamapi.index.CustomerProfile;
+import space.gavinklfong.demo.streamapi.index.CustomerProfileIndex;
+import space.gavinklfong.demo.streamapi.index.EntityBitmapIndex;
+import space.gavinklfong.demo.streamapi.index.NameSearchIndex;
 import space.gavinklfong.demo.streamapi.models.Customer;
-import space.gavinklfong.demo.streamapi.models.Order;
-import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.query.Customers;
+import space.gavinklfong.demo.streamapi.query.Query;
+import space.gavinklfong.demo.streamapi.query.QueryEngine;
 import space.gavinklfong.demo.streamapi.repos.CustomerRepo;
 
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -20,77 +33,84 @@ import java.util.stream.Collectors;
 @Transactional(readOnly = true)
 public class CustomerService {
     private final CustomerRepo customerRepo;
+    private final EntityBitmapIndex bitmapIndex;
+    private final NameSearchIndex nameSearchIndex;
+    private final CustomerProfileIndex profileIndex;
+    private final CohortIndex cohortIndex;
+    private final QueryEngine queryEngine;
+    private final AdmissionController admissionController;
     private static final Logger log = LoggerFactory.getLogger(CustomerService.class);
 
     /**
      * Получить клиентов определенного tier
      */
     public List<Customer> getCustomersByTier(Integer tier) {
-        return customerRepo.findAll().stream()
-                .filter(c -> tier.equals(c.getTier()))
-                .collect(Collectors.toList());
+        return customerRepo.findAllById(bitmapIndex.query(index -> index.customerIds(index.customersWithTier(tier))));
     }
 
     /**
      * Получить клиентов по имени (поиск)
      */
     public List<Customer> getCustomerByName(String name) {
-        return customerRepo.findAll().stream()
-                .filter(c -> c.getName().toLowerCase().contains(name))
-                .collect(Collectors.toList());
+        return getCustomerByName(name, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Получить клиентов по имени (поиск без учета регистра), не больше limit результатов
+     */
+    public List<Customer> getCustomerByName(String name, int limit) {
+        return customerRepo.findAllById(nameSearchIndex.searchCustomers(name, limit));
+    }
+
+    /**
+     * Получить клиентов по началу имени, не больше limit результатов
+     */
+    public List<Customer> getCustomersByNamePrefix(String prefix, int limit) {
+        return customerRepo.findAllById(nameSearchIndex.searchCustomersByPrefix(prefix, limit));
     }
 
     /**
      * Получить клиентов с заказами
      */
     public List<Customer> getCustomersWithOrders() {
-        return customerRepo.findAll().stream()
-                .filter(c -> c.getOrders() != null && !c.getOrders().isEmpty())
-                .collect(Collectors.toList());
+        return queryEngine.list(Query.from(Customers.ENTITY)
+                .where(Customers.withOrders()));
     }
 
     /**
      * Получить клиентов без заказов
      */
     public List<Customer> getCustomersWithoutOrders() {
-        return customerRepo.findAll().stream()
-                .filter(c -> c.getOrders() == null || c.getOrders().isEmpty())
-                .collect(Collectors.toList());
+        return queryEngine.list(Query.from(Customers.ENTITY)
+                .where(Customers.withoutOrders()));
     }
 
     /**
      * Получить клиента с наибольшим количеством заказов
      */
     public Optional<Customer> getCustomerWithMostOrders() {
-        return customerRepo.findAll().stream()
-                .filter(c -> c.getOrders() != null)
-                .max(Comparator.comparingInt(c -> c.getOrders().size()));
+        return profileIndex.topByOrderCount(1).stream()
+                .findFirst()
+                .flatMap(profile -> customerRepo.findById(profile.customerId()));
     }
 
     /**
-     * Получить клиентов, которые заказывали продукты определенной категории
+     * Получить клиентов, которые заказывали продукты определенной категории (без учета регистра)
      */
     public List<Customer> getCustomersWhoOrderedCategory(String category) {
-        return customerRepo.findAll().stream()
-                .filter(c -> c.getOrders() != null)
-                .filter(c -> c.getOrders().stream()
-                        .anyMatch(o -> o.getProducts().stream()
-                                .anyMatch(p -> category.equals(p.getCategory()))))
-                .collect(Collectors.toList());
+        return queryEngine.list(Query.from(Customers.ENTITY)
+                .where(Customers.orderedCategory(category)));
     }
 
     /**
      * Получить общую сумму покупок для каждого клиента
      */
     public Map<Customer, Double> getCustomerTotalSpent() {
-        return customerRepo.findAll().stream()
-                .filter(c -> c.getOrders() != null && !c.getOrders().isEmpty())
+        Map<Long, Double> totalByCustomerId = profileIndex.totalSpentByCustomer();
+        return customerRepo.findAllById(totalByCustomerId.keySet()).stream()
                 .collect(Collectors.toMap(
                         Function.identity(),
-                        customer -> customer.getOrders().stream()
-                                .flatMap(order -> order.getProducts().stream())
-                                .mapToDouble(Product::getPrice)
-                                .sum())
+                        customer -> totalByCustomerId.get(customer.getId()))
                 );
     }
 
@@ -98,67 +118,83 @@ public class CustomerService {
      * Получить клиента с наибольшей общей суммой покупок
      */
     public Optional<Customer> getTopSpendingCustomer() {
-        return customerRepo.findAll().stream()
-                .filter(c -> c.getOrders() != null && !c.getOrders().isEmpty())
-                .max(Comparator.comparingDouble(
-                        c -> c.getOrders().stream()
-                                .flatMap(order -> order.getProducts().stream())
-                                .mapToDouble(Product::getPrice)
-                                .sum())
-                );
+        return profileIndex.topBySpend(1).stream()
+                .findFirst()
+                .flatMap(profile -> customerRepo.findById(profile.customerId()));
     }
 
     /**
      * Получить статистику по клиентам
      */
     public Map<String, Object> getCustomerStatistics() {
-        List<Customer> customers = customerRepo.findAll();
-
-        Map<String, Object> stats = new HashMap<>();
-        stats.put("totalCustomers", customers.size());
-        stats.put("customersWithOrders", getCustomersWithOrders().size());
-        stats.put("customersWithoutOrders", getCustomersWithoutOrders().size());
-
-        // Распределение по tier
-        Map<Integer, Long> tierDistribution = customers.stream()
-                .collect(Collectors.groupingBy(Customer::getTier, Collectors.counting()));
-        stats.put("tierDistribution", tierDistribution);
+        return getCustomerSummary().toMap();
+    }
 
-        return stats;
+    /**
+     * Статистика по клиентам в виде {@link CustomerSummary}.
+     * Тяжелая аналитика: выполняется в пределах лимита {@link AdmissionController}
+     */
+    public CustomerSummary getCustomerSummary() {
+        return admissionController.call(WorkloadClass.ANALYTICS, () -> {
+            List<Customer> customers = customerRepo.findAll();
+
+            // клиенты с заказами - запросом в той же транзакции, что и общее число, без загрузки их списков
+            long customersWithOrders = customerRepo.countWithOrders();
+
+            // число клиентов и распределение по tier - за один проход
+            Aggregates<Customer> aggregates = Aggregates.over(Customer.class);
+            Aggregate<Long> totalCustomers = aggregates.count();
+            Aggregate<Map<Integer, Long>> tierDistribution = aggregates.countBy(Customer::getTier);
+            AggregateResults results = customers.stream().collect(aggregates.collector());
+
+            long total = results.get(totalCustomers);
+            return new CustomerSummary(total, customersWithOrders, total - customersWithOrders,
+                    results.get(tierDistribution));
+        });
     }
 
     /**
      * Получить клиентов, которые делали заказы в определенный период
      */
     public List<Customer> getCustomersWithOrdersBetween(LocalDate startDate, LocalDate endDate) {
-        return customerRepo.findAll().stream()
-                .filter(customer -> customer.getOrders() != null && !customer.getOrders().isEmpty())
-                .filter(customer -> customer.getOrders().stream()
-                        .anyMatch(
-                                order -> !order.getOrderDate().isAfter(endDate) &&
-                                        !order.getOrderDate().isBefore(startDate)
-                        ))
-                .collect(Collectors.toList());
+        return queryEngine.list(Query.from(Customers.ENTITY)
+                .where(Customers.orderedBetween(startDate, endDate)));
     }
 
     /**
      * Получить последних активных клиентов
      */
     public List<Customer> getRecentlyActiveCustomers(int limit) {
-        return customerRepo.findAll().stream()
-                .filter(customer -> customer.getOrders() != null && !customer.getOrders().isEmpty())
-                .sorted((c1, c2) -> {
-                    LocalDate lastOrder1 = c1.getOrders().stream()
-                            .map(Order::getOrderDate)
-                            .max(LocalDate::compareTo)
-                            .orElse(LocalDate.MIN);
-                    LocalDate lastOrder2 = c2.getOrders().stream()
-                            .map(Order::getOrderDate)
-                            .max(LocalDate::compareTo)
-                            .orElse(LocalDate.MIN);
-                    return lastOrder2.compareTo(lastOrder1);
-                })
-                .limit(limit)
+        return inProfileOrder(profileIndex.mostRecentlyActive(limit));
+    }
+
+    /**
+     * Когорты клиентов по месяцу первого заказа: сколько из них заказывали в каждом следующем месяце
+     * и сумма их покупок
+     */
+    public List<CohortRetention> getCohortRetention() {
+        return cohortIndex.cohorts();
+    }
+
+    /**
+     * Когорты клиентов с первым заказом в месяцах [from, to]
+     */
+    public List<CohortRetention> getCohortRetention(YearMonth from, YearMonth to) {
+        return cohortIndex.cohorts().stream()
+                .filter(cohort -> !cohort.cohort().isBefore(from) && !cohort.cohort().isAfter(to))
+                .toList();
+    }
+
+    // клиенты в порядке рейтинга
+    private List<Customer> inProfileOrder(List<CustomerProfile> profiles) {
+        Map<Long, Customer> customers = customerRepo.findAllById(profiles.stream()
+                        .map(CustomerProfile::customerId)
+                        .toList())
+                .stream()
+                .collect(Collectors.toMap(Customer::getId, Function.identity()));
+        return profiles.stream()
+                .map(profile -> customers.get(profile.customerId()))
+                .filter(Objects::nonNull)
                 .collect(Collectors.toList());
     }
 }
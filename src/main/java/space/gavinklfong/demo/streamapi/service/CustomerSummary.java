@@ -0,0 +1,27 @@
+package space.gavinklfong.demo.streamapi.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Статистика по клиентам.
+ *
+ * @param tierDistribution число клиентов по tier
+ */
+public record CustomerSummary(long totalCustomers,
+                              long customersWithOrders,
+                              long customersWithoutOrders,
+                              Map<Integer, Long> tierDistribution) {
+
+    /**
+     * Статистика в виде map, как ее отдает {@link CustomerService#getCustomerStatistics()}: счетчики клиентов - Integer
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("totalCustomers", Math.toIntExact(totalCustomers));
+        stats.put("customersWithOrders", Math.toIntExact(customersWithOrders));
+        stats.put("customersWithoutOrders", Math.toIntExact(customersWithoutOrders));
+        stats.put("tierDistribution", tierDistribution);
+        return stats;
+    }
+}
@@ -0,0 +1,11 @@
+package space.gavinklfong.demo.streamapi.service;
+
+/**
+ * Итог массовой загрузки: число записанных строк (включая связи заказ-товар) и время
+ */
+public record IngestResult(long rows, long elapsedMillis) {
+
+    public double rowsPerSecond() {
+        return elapsedMillis > 0 ? rows * 1000.0 / elapsedMillis : rows;
+    }
+}
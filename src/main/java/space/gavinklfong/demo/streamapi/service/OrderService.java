@@ -5,14 +5,29 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import space.gavinklfong.demo.streamapi.admission.AdmissionController;
+import space.gavinklfong.demo.streamapi.admission.WorkloadClass;
+import space.gavinklfong.demo.streamapi.index.EntityBitmapIndex;
+import space.gavinklfong.demo.streamapi.index.LeadTimeIndex;
+import space.gavinklfong.demo.streamapi.index.LeadTimePercentiles;
+import space.gavinklfong.demo.streamapi.index.OrderDateIndex;
+import space.gavinklfong.demo.streamapi.index.OrderProductAdjacency;
+import space.gavinklfong.demo.streamapi.index.RevenueRollup;
+import space.gavinklfong.demo.streamapi.index.TimeBucket;
 import space.gavinklfong.demo.streamapi.models.Customer;
 import space.gavinklfong.demo.streamapi.models.Order;
 import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.query.Orders;
+import space.gavinklfong.demo.streamapi.query.Products;
+import space.gavinklfong.demo.streamapi.query.Query;
+import space.gavinklfong.demo.streamapi.query.QueryEngine;
 import space.gavinklfong.demo.streamapi.repos.OrderRepo;
+import space.gavinklfong.demo.streamapi.shard.ShardedReadReplica;
+import space.gavinklfong.demo.streamapi.valuation.OrderValuation;
 
 import java.time.LocalDate;
 import java.time.YearMonth;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
@@ -23,26 +38,29 @@ import java.util.stream.Collectors;
 @Transactional(readOnly = true)
 public class OrderService {
     private final OrderRepo orderRepo;
+    private final EntityBitmapIndex bitmapIndex;
+    private final OrderDateIndex orderDateIndex;
+    private final OrderProductAdjacency adjacency;
+    private final LeadTimeIndex leadTimeIndex;
+    private final QueryEngine queryEngine;
+    private final ShardedReadReplica shardedReplica;
+    private final AdmissionController admissionController;
     private static final Logger log = LoggerFactory.getLogger(OrderService.class);
 
     /**
      * Упражнение 4: Получить список заказов с продуктами по категории
      */
     public List<Order> getOrdersByCategory(String category) {
-        return orderRepo.findAll().stream()
-                .filter(order -> order.getProducts() != null && !order.getProducts().isEmpty())
-                .filter(order -> order.getProducts().stream()
-                        .anyMatch(product -> category.equalsIgnoreCase(product.getCategory())))
-                .toList();
+        return queryEngine.list(Query.from(Orders.ENTITY)
+                .where(Orders.category(category)));
     }
 
     /**
      * Получить заказы за определенную дату
      */
     public List<Order> getOrdersByDate(LocalDate date) {
-        return orderRepo.findAll().stream()
-                .filter(order -> date.equals(order.getOrderDate()))
-                .toList();
+        return queryEngine.list(Query.from(Orders.ENTITY)
+                .where(Orders.orderedOn(date)));
     }
 
     /**
@@ -63,39 +81,37 @@ public class OrderService {
      * Get the most recent placed order with limit
      */
     public List<Order> getRecentOrders(int limit) {
-        return orderRepo.findAll().stream()
-//                .sorted((o1, o2) -> o2.getOrderDate().compareTo(o1.getOrderDate()))
-                .sorted(Comparator.comparing(Order::getOrderDate).reversed())
-                .limit(limit)
-                .toList();
+        return queryEngine.list(Query.from(Orders.ENTITY)
+                .orderBy(Orders.ORDER_DATE.desc())
+                .limit(limit));
     }
 
     /**
-     * Получить заказы за период
+     * Получить заказы за период, по возрастанию даты
      */
     public List<Order> getOrdersByPeriod(LocalDate start, LocalDate end) {
-        return orderRepo.findAll().stream()
-                .filter(order -> !order.getOrderDate().isAfter(end))
-                .filter(order -> !order.getOrderDate().isBefore(start))
-                .toList();
+        return inIdOrder(orderDateIndex.orderIdsBetween(start, end));
     }
 
     /**
      * Получить заказы по статусу
      */
     public List<Order> getOrdersByState(String status) {
-        return orderRepo.findAll().stream()
-                .filter(order -> status.equalsIgnoreCase(order.getStatus()))
-                .toList();
+        return orderRepo.findAllById(bitmapIndex.query(index -> index.orderIds(index.ordersWithStatus(status))));
     }
 
     /**
-     * Получить заказы конкретного клиента
+     * Получить заказы конкретного клиента (при шардировании - из шарда клиента).
+     * Точечный запрос: идет впереди аналитики, см. {@link AdmissionController}
      */
     public List<Order> getOrdersByCustomer(Long customerId) {
-        return orderRepo.findAll().stream()
-                .filter(order -> customerId.equals(order.getCustomer().getId()))
-                .toList();
+        return admissionController.call(WorkloadClass.LOOKUP, () -> {
+            if (shardedReplica.isEnabled()) {
+                return shardedReplica.ordersByCustomer(customerId);
+            }
+            return queryEngine.list(Query.from(Orders.ENTITY)
+                    .where(Orders.customer(customerId)));
+        });
     }
 
     /**
@@ -103,13 +119,11 @@ public class OrderService {
      * between 01-Feb-2021 and 01-Apr-2021
      */
     public List<Product> getProductsByCustomerBetweenDates(Long customerId, LocalDate start, LocalDate end) {
-        return orderRepo.findAll().stream()
-                .filter(order -> customerId.equals(order.getCustomer().getId()))
-                .filter(order -> !order.getOrderDate().isBefore(start))
-                .filter(order -> !order.getOrderDate().isAfter(end))
-                .flatMap(order -> order.getProducts().stream())
-                .distinct()
-                .collect(Collectors.toList());
+        if (shardedReplica.isEnabled()) {
+            return shardedReplica.productsByCustomerBetween(customerId, start, end);
+        }
+        return queryEngine.list(Query.from(Products.ENTITY)
+                .where(Products.orderedBy(customerId, start, end)));
     }
 
     /**
@@ -129,9 +143,7 @@ public class OrderService {
         return orderRepo.findAll().stream()
                 .collect(Collectors.toMap(
                         Function.identity(),
-                        order -> order.getProducts().stream()
-                                .mapToDouble(Product::getPrice)
-                                .sum()
+                        OrderValuation::total
                 ));
     }
 
@@ -139,36 +151,29 @@ public class OrderService {
      * Получить заказы с максимальной стоимостью
      */
     public List<Order> getMostExpensiveOrders(int limit) {
-        return orderRepo.findAll().stream()
-                .sorted((o1, o2) -> {
-                    double total1 = o1.getProducts().stream()
-                            .mapToDouble(Product::getPrice)
-                            .sum();
-                    double total2 = o2.getProducts().stream()
-                            .mapToDouble(Product::getPrice)
-                            .sum();
-                    return Double.compare(total2, total1);
-                })
-                .limit(limit)
-                .toList();
+        return getOrdersByTotal(true, limit);
     }
 
     /**
      * Получить заказы с минимальной стоимостью
      */
     public List<Order> getCheapestOrders(int limit) {
-        return orderRepo.findAll().stream()
-                .sorted((o1, o2) -> {
-                    double total1 = o1.getProducts().stream()
-                            .mapToDouble(Product::getPrice)
-                            .sum();
-                    double total2 = o2.getProducts().stream()
-                            .mapToDouble(Product::getPrice)
-                            .sum();
-
-                    return Double.compare(total1, total2);
-                })
-                .limit(limit)
+        return getOrdersByTotal(false, limit);
+    }
+
+    // первые limit заказов в порядке сумм, при равенстве - по id
+    private List<Order> getOrdersByTotal(boolean mostExpensive, int limit) {
+        return inIdOrder(Arrays.stream(adjacency.orderIdsByTotal(mostExpensive, limit))
+                .boxed()
+                .toList());
+    }
+
+    // findAllById возвращает строки в порядке БД, а порядок задает индекс
+    private List<Order> inIdOrder(List<Long> orderIds) {
+        Map<Long, Order> orders = orderRepo.findAllById(orderIds).stream()
+                .collect(Collectors.toMap(Order::getId, Function.identity()));
+        return orderIds.stream()
+                .map(orders::get)
                 .toList();
     }
 
@@ -176,12 +181,7 @@ public class OrderService {
      * Получить среднюю стоимость заказа
      */
     public Double getAverageOrderPrice() {
-        return orderRepo.findAll().stream()
-                .mapToDouble(order -> order.getProducts().stream()
-                        .mapToDouble(Product::getPrice)
-                        .sum())
-                .average()
-                .orElse(0);
+        return adjacency.orderTotals().getAverage();
     }
 
     /**
@@ -190,9 +190,7 @@ public class OrderService {
     public Double getAverageOrderPriceOnDate(LocalDate date) {
         return orderRepo.findAll().stream()
                 .filter(order -> date.isEqual(order.getOrderDate()))
-                .mapToDouble(order -> order.getProducts().stream()
-                        .mapToDouble(Product::getPrice)
-                        .sum())
+                .mapToDouble(OrderValuation::total)
                 .average()
                 .orElse(0);
     }
@@ -217,27 +215,28 @@ public class OrderService {
      * Получить даты с наибольшим количеством заказов
      */
     public Map<LocalDate, Long> getOrdersByDate() {
-        return orderRepo.findAll().stream()
-                .collect(Collectors.groupingBy(
-                        Order::getOrderDate,
-                        Collectors.counting()
-                ));
+        return orderDateIndex.countByDay();
     }
 
     /**
      * Calculate total lump sum of all orders placed in Feb 2021
      */
     public Double getSumByMonth(YearMonth yearMonth) {
-        LocalDate start = yearMonth.atDay(1);
-        LocalDate end = yearMonth.atEndOfMonth();
+        return orderDateIndex.revenueBetween(yearMonth.atDay(1), yearMonth.atEndOfMonth());
+    }
 
-        return orderRepo.findAll().stream()
-                .filter(order ->
-                        !order.getOrderDate().isBefore(start) &&
-                                !order.getOrderDate().isAfter(end))
-                .flatMap(order -> order.getProducts().stream())
-                .mapToDouble(Product::getPrice)
-                .sum();
+    /**
+     * Получить выручку за период (включительно)
+     */
+    public Double getRevenueBetween(LocalDate start, LocalDate end) {
+        return orderDateIndex.revenueBetween(start, end);
+    }
+
+    /**
+     * Получить выручку и количество заказов за период с разбивкой по дням/неделям/месяцам/кварталам
+     */
+    public List<RevenueRollup> getRevenueRollup(LocalDate start, LocalDate end, TimeBucket bucket) {
+        return orderDateIndex.rollup(start, end, bucket);
     }
 
     /**
@@ -250,4 +249,39 @@ public class OrderService {
                         order -> order.getProducts().size()
                 ));
     }
+
+    /**
+     * Перцентили срока доставки (p50/p90/p99, в днях) по всем заказам
+     */
+    public LeadTimePercentiles getDeliveryLeadTime() {
+        return leadTimeIndex.overall();
+    }
+
+    /**
+     * Перцентили срока доставки по категориям товаров заказа
+     */
+    public Map<String, LeadTimePercentiles> getDeliveryLeadTimeByCategory() {
+        return leadTimeIndex.byCategory();
+    }
+
+    /**
+     * Перцентили срока доставки по tier клиента
+     */
+    public Map<Integer, LeadTimePercentiles> getDeliveryLeadTimeByCustomerTier() {
+        return leadTimeIndex.byCustomerTier();
+    }
+
+    /**
+     * Перцентили срока доставки по статусу заказа
+     */
+    public Map<String, LeadTimePercentiles> getDeliveryLeadTimeByStatus() {
+        return leadTimeIndex.byStatus();
+    }
+
+    /**
+     * Перцентили срока доставки по месяцу заказа
+     */
+    public Map<YearMonth, LeadTimePercentiles> getDeliveryLeadTimeByMonth() {
+        return leadTimeIndex.byMonth();
+    }
 }
@@ -5,10 +5,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import space.gavinklfong.demo.streamapi.coalesce.SingleFlight;
+import space.gavinklfong.demo.streamapi.index.CoPurchase;
+import space.gavinklfong.demo.streamapi.index.CoPurchaseIndex;
+import space.gavinklfong.demo.streamapi.index.NameSearchIndex;
+import space.gavinklfong.demo.streamapi.index.ProductPriceIndex;
 import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.query.Products;
+import space.gavinklfong.demo.streamapi.query.Query;
+import space.gavinklfong.demo.streamapi.query.QueryEngine;
 import space.gavinklfong.demo.streamapi.repos.ProductRepo;
 
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -16,33 +25,33 @@ import java.util.stream.Collectors;
 @Transactional(readOnly = true)
 public class ProductService {
     private final ProductRepo productRepo;
+    private final ProductPriceIndex priceIndex;
+    private final NameSearchIndex nameSearchIndex;
+    private final CoPurchaseIndex coPurchaseIndex;
+    private final QueryEngine queryEngine;
+    private final SingleFlight singleFlight;
     private static final Logger log = LoggerFactory.getLogger(ProductService.class);
 
     /**
-     * Упражнение 1: Получить список товаров категории "Books" с ценой > 100
+     * Упражнение 1: Получить список товаров категории "Books" с ценой > 100, по возрастанию цены
      */
     public List<Product> getProductsByCategoryWithPriceLimit(String category, Double priceLimit) {
-        return productRepo.findAll().stream()
-                .filter(product -> category.equalsIgnoreCase(product.getCategory()))
-                .filter(product -> product.getPrice() > priceLimit)
-                .toList();
+        return findAllInOrder(priceIndex.idsAbove(category, priceLimit));
     }
 
     /**
      * Упражнение 2: Получить список товаров по категории
      */
     public List<Product> getProductsByCategory(String category) {
-        return productRepo.findAll().stream()
-                .filter(product -> category.equalsIgnoreCase(product.getCategory()))
-                .toList();
+        return queryEngine.list(Query.from(Products.ENTITY)
+                .where(Products.category(category)));
     }
 
     /**
      * Obtain a list of product with category and then apply 10% discount
      */
     public List<Product> getProductsByCategoryWithDiscount(String category, Double discount) {
-        return productRepo.findAll().stream()
-                .filter(product -> category.equalsIgnoreCase(product.getCategory()))
+        return getProductsByCategory(category).stream()
                 .map(product -> new Product(
                         product.getId(),
                         product.getName(),
@@ -55,59 +64,49 @@ public class ProductService {
      * Получить самый дешевый товар категории "Books"
      */
     public Optional<Product> getCheapestProductByCategory(String category) {
-        return productRepo.findAll().stream()
-                .filter(product -> category.equalsIgnoreCase(product.getCategory()))
-                .min(Comparator.comparingDouble(Product::getPrice));
+        return priceIndex.cheapestId(category).flatMap(productRepo::findById);
     }
 
     /**
      * Get the most expensive product by category
      */
     public Optional<Product> getMostExpensiveProductByCategory(String category) {
-        return productRepo.findAll().stream()
-                .filter(product -> category.equalsIgnoreCase(product.getCategory()))
-                .max(Comparator.comparingDouble(Product::getPrice));
+        return priceIndex.mostExpensiveId(category).flatMap(productRepo::findById);
     }
 
     /**
-     * Get map of the most expensive product by category
+     * Get map of the most expensive product by category.
+     * Concurrent callers share the product ids, see {@link SingleFlight}; entities are loaded by each caller
      */
     public Map<String, Optional<Product>> getMostExpensiveProductsByCategories() {
-        return productRepo.findAll().stream()
-                .collect(Collectors.groupingBy(
-                        Product::getCategory,
-                        Collectors.maxBy(Comparator.comparing(Product::getPrice))
-                ));
+        // сущности привязаны к контексту персистентности вызова, поэтому общими бывают только id
+        Map<String, Long> mostExpensiveIds = singleFlight.execute(
+                "ProductService.getMostExpensiveProductsByCategories",
+                () -> Collections.unmodifiableMap(priceIndex.mostExpensiveIdByCategory()));
+        Map<Long, Product> products = productRepo.findAllById(mostExpensiveIds.values()).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+
+        Map<String, Optional<Product>> result = new HashMap<>();
+        mostExpensiveIds.forEach((category, id) -> result.put(category, Optional.ofNullable(products.get(id))));
+        return result;
     }
 
     /**
      * Получить 3 последних добавленных товара
      */
     public List<Product> getRecentProducts(int size) {
-        return productRepo.findAll().stream()
-                .sorted(Comparator.comparingLong(Product::getId).reversed())
-//                .sorted((p1, p2) -> p2.getId().compareTo(p1.getId()))
-                .limit(size)
-                .toList();
+        return queryEngine.list(Query.from(Products.ENTITY)
+                .orderBy(Products.ID.desc())
+                .limit(size));
     }
 
-//    Если метод findAll() возвращает много данных, можно оптимизировать:
-//    public List<Product> getRecentProducts(int size) {
-//        return productRepo.findAll(Sort.by(Sort.Direction.DESC, "id"))
-//                .stream()
-//                .limit(size)
-//                .toList();
-//    }
-//    Это позволит выполнить сортировку на уровне базы данных,
-//    что будет эффективнее при большом количестве записей (если используется Spring Data JPA).
-
     /**
      * Получить общую стоимость товаров категории "Books" на складе
      */
     public Double getSumByCategory(String category) {
-        return productRepo.findAll().stream()
-                .filter(product -> category.equalsIgnoreCase(product.getCategory()))
-                .mapToDouble(Product::getPrice)
+        return queryEngine.select(Query.from(Products.ENTITY).where(Products.category(category)), Products.PRICE)
+                .stream()
+                .mapToDouble(Double::doubleValue)
                 .sum();
     }
 
@@ -125,9 +124,10 @@ public class ProductService {
      * Obtain a collection of statistic figures (i.e. sum, average, max, min, count) for all products of category
      */
     public Map<String, Double> getPriceStatsInCategory(String category) {
-        DoubleSummaryStatistics stat = productRepo.findAll().stream()
-                .filter(product -> category.equalsIgnoreCase(product.getCategory()))
-                .mapToDouble(Product::getPrice)
+        DoubleSummaryStatistics stat = queryEngine.select(Query.from(Products.ENTITY)
+                        .where(Products.category(category)), Products.PRICE)
+                .stream()
+                .mapToDouble(Double::doubleValue)
                 .summaryStatistics();
         return Map.of(
                 "sum", stat.getSum(),
@@ -154,35 +154,101 @@ public class ProductService {
      * Поиск товаров по названию (частичное совпадение)
      */
     public List<Product> searchProductsByName(String name) {
-        return productRepo.findAll().stream()
-                .filter(product -> product.getName().toLowerCase().contains(name.toLowerCase()))
-                .toList();
+        return searchProductsByName(name, Integer.MAX_VALUE);
     }
 
     /**
-     * Получить товары в ценовом диапазоне
+     * Поиск товаров по названию (частичное совпадение), не больше limit результатов
+     */
+    public List<Product> searchProductsByName(String name, int limit) {
+        return findAllInOrder(nameSearchIndex.searchProducts(name, limit));
+    }
+
+    /**
+     * Поиск товаров по началу названия, не больше limit результатов
+     */
+    public List<Product> searchProductsByNamePrefix(String prefix, int limit) {
+        return findAllInOrder(nameSearchIndex.searchProductsByPrefix(prefix, limit));
+    }
+
+    /**
+     * Получить товары в ценовом диапазоне, по возрастанию цены
      */
     public List<Product> getProductsInPriceRange(double minPrice, double maxPrice) {
-        return productRepo.findAll().stream()
-                .filter(product -> product.getPrice() <= maxPrice && product.getPrice() >= minPrice)
-                .toList();
+        return findAllInOrder(priceIndex.idsBetween(minPrice, maxPrice));
     }
 
     /**
      * Получить список всех категорий
      */
     public List<String> getProductsCategories() {
-        return productRepo.findAll().stream()
-                .map(Product::getCategory)
-                .distinct().toList();
+        return queryEngine.selectDistinct(Query.from(Products.ENTITY), Products.CATEGORY);
     }
 
     /**
      * Получить количество товаров в каждой категории
      */
     public Map<String, Long> countProductsByCategory() {
-        return productRepo.findAll().stream()
-                .collect(Collectors.groupingBy(Product::getCategory, Collectors.counting()));
+        return queryEngine.countBy(Query.from(Products.ENTITY), Products.CATEGORY);
     }
 
+    /**
+     * Товары, которые чаще всего покупают вместе с данным, по убыванию числа общих заказов
+     */
+    public List<CoPurchase<Product>> getFrequentlyBoughtTogether(Long productId, int limit) {
+        List<CoPurchase<Long>> companions = coPurchaseIndex.topCompanions(productId, limit);
+        Map<Long, Product> products = productRepo.findAllById(companions.stream().map(CoPurchase::item).toList())
+                .stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        return companions.stream()
+                .filter(companion -> products.containsKey(companion.item()))
+                .map(companion -> companion.withItem(products.get(companion.item())))
+                .toList();
+    }
+
+    /**
+     * Support, confidence и lift совместной покупки двух товаров
+     */
+    public Optional<CoPurchase<Product>> getCoPurchase(Long productId, Long otherProductId) {
+        return coPurchaseIndex.productPair(productId, otherProductId)
+                .flatMap(pair -> productRepo.findById(pair.item()).map(pair::withItem));
+    }
+
+    /**
+     * Доля заказов, в которых есть товар
+     */
+    public double getPurchaseSupport(Long productId) {
+        return coPurchaseIndex.productSupport(productId);
+    }
+
+    /**
+     * Категории, которые чаще всего покупают вместе с данной, по убыванию числа общих заказов
+     */
+    public List<CoPurchase<String>> getCategoriesBoughtTogether(String category, int limit) {
+        return coPurchaseIndex.topCategoryCompanions(category, limit);
+    }
+
+    /**
+     * Support, confidence и lift совместной покупки товаров двух категорий
+     */
+    public Optional<CoPurchase<String>> getCategoryCoPurchase(String category, String otherCategory) {
+        return coPurchaseIndex.categoryPair(category, otherCategory);
+    }
+
+    /**
+     * Доля заказов, в которых есть товары категории
+     */
+    public double getCategoryPurchaseSupport(String category) {
+        return coPurchaseIndex.categorySupport(category);
+    }
+
+    // findAllById возвращает строки в произвольном порядке, а индексы отдают id уже упорядоченными
+    private List<Product> findAllInOrder(List<Long> ids) {
+        Map<Long, Product> products = productRepo.findAllById(ids).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        return ids.stream()
+                .map(products::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
 }
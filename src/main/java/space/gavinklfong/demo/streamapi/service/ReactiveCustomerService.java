@@ -0,0 +1,67 @@
+package space.gavinklfong.demo.streamapi.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import space.gavinklfong.demo.streamapi.models.Customer;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Неблокирующие варианты запросов {@link CustomerService}: клиенты отдаются потоком по мере чтения
+ */
+@Service
+@RequiredArgsConstructor
+public class ReactiveCustomerService {
+    private final ReactiveQueryExecutor queryExecutor;
+
+    /**
+     * Получить всех клиентов
+     */
+    public Flux<Customer> getCustomers() {
+        return queryExecutor.stream("select c from Customer c order by c.id", Customer.class, Map.of());
+    }
+
+    /**
+     * Получить клиентов определенного tier
+     */
+    public Flux<Customer> getCustomersByTier(Integer tier) {
+        return queryExecutor.stream(
+                "select c from Customer c where c.tier = :tier order by c.id",
+                Customer.class, Map.of("tier", tier));
+    }
+
+    /**
+     * Получить клиентов по имени (поиск подстроки без учета регистра, % и _ в имени - обычные символы)
+     */
+    public Flux<Customer> getCustomerByName(String name) {
+        return queryExecutor.stream(
+                "select c from Customer c where lower(c.name) like lower(concat('%', :name, '%')) escape '\\'"
+                        + " order by c.id",
+                Customer.class, Map.of("name", escapeLike(name)));
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * Получить клиентов, которые делали заказы в определенный период
+     */
+    public Flux<Customer> getCustomersWithOrdersBetween(LocalDate startDate, LocalDate endDate) {
+        return queryExecutor.stream(
+                "select distinct c from Customer c join c.orders o where o.orderDate between :start and :end",
+                Customer.class, Map.of("start", startDate, "end", endDate));
+    }
+
+    /**
+     * Получить распределение клиентов по tier
+     */
+    public Mono<Map<Integer, Long>> getTierDistribution() {
+        return getCustomers()
+                .collect(Collectors.groupingBy(Customer::getTier, Collectors.counting()));
+    }
+}
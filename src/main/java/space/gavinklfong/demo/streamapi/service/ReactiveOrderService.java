@@ -0,0 +1,64 @@
+package space.gavinklfong.demo.streamapi.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.valuation.OrderValuation;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Map;
+
+/**
+ * Неблокирующие варианты запросов {@link OrderService}: заказы отдаются потоком по мере чтения
+ */
+@Service
+@RequiredArgsConstructor
+public class ReactiveOrderService {
+    private final ReactiveQueryExecutor queryExecutor;
+
+    /**
+     * Получить все заказы
+     */
+    public Flux<Order> getOrders() {
+        return queryExecutor.stream("select o from Order o order by o.id", Order.class, Map.of());
+    }
+
+    /**
+     * Получить заказы по статусу
+     */
+    public Flux<Order> getOrdersByState(String status) {
+        return queryExecutor.stream(
+                "select o from Order o where lower(o.status) = lower(:status) order by o.id",
+                Order.class, Map.of("status", status));
+    }
+
+    /**
+     * Получить заказы конкретного клиента
+     */
+    public Flux<Order> getOrdersByCustomer(Long customerId) {
+        return queryExecutor.stream(
+                "select o from Order o where o.customer.id = :customerId order by o.id",
+                Order.class, Map.of("customerId", customerId));
+    }
+
+    /**
+     * Получить заказы за период
+     */
+    public Flux<Order> getOrdersByPeriod(LocalDate start, LocalDate end) {
+        return queryExecutor.stream(
+                "select o from Order o where o.orderDate between :start and :end order by o.orderDate, o.id",
+                Order.class, Map.of("start", start, "end", end));
+    }
+
+    /**
+     * Получить суммарную стоимость заказов за месяц
+     */
+    public Mono<Double> getSumByMonth(YearMonth yearMonth) {
+        return getOrdersByPeriod(yearMonth.atDay(1), yearMonth.atEndOfMonth())
+                .map(OrderValuation::compute)
+                .reduce(0.0, Double::sum);
+    }
+}
@@ -0,0 +1,178 @@
+package space.gavinklfong.demo.streamapi.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.TypedQuery;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Выполняет JPQL-запросы как {@link Flux}: строки отдаются по мере чтения курсора
+ * и только в объеме запрошенного подписчиком (backpressure), без сборки полного списка.
+ * <p>
+ * Каждая подписка читает в своей read-only транзакции Spring - то есть на соединении из пула для чтения.
+ * Транзакция привязана к потоку, поэтому чтение целиком идет одной задачей на bounded-elastic:
+ * пока подписчик не запросил следующие строки, задача ждет, не отдавая поток другим подпискам.
+ * После отмены подписки задача закрывает курсор и транзакцию.
+ * <p>
+ * Каждые {@value #CLEAR_EVERY} строк persistence context очищается, чтобы память не росла с размером
+ * результата. Ленивые связи элемента гарантированно доступны, пока подписчик обрабатывает его в onNext;
+ * элементы, накопленные ниже по потоку, после очистки становятся detached.
+ * <p>
+ * Открытая подписка держит поток и соединение из пула для чтения, поэтому их число ограничено
+ * reactive.max-open-cursors: сверх лимита подписка ждет освобождения курсора не дольше
+ * reactive.cursor-wait-millis (не занимая соединения) и затем завершается ошибкой. Подписчик, который
+ * не запрашивает строки дольше reactive.demand-timeout-millis, получает ошибку, а курсор закрывается -
+ * иначе брошенная, но не отмененная подписка держала бы соединение вечно.
+ */
+@Component
+public class ReactiveQueryExecutor {
+    private static final String HINT_FETCH_SIZE = "org.hibernate.fetchSize";
+    private static final int FETCH_SIZE = 256;
+    private static final int CLEAR_EVERY = FETCH_SIZE;
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxOpenCursors;
+    private final Semaphore cursorPermits;
+    private final long cursorWaitMillis;
+    private final long demandTimeoutMillis;
+
+    public ReactiveQueryExecutor(EntityManagerFactory entityManagerFactory,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${reactive.max-open-cursors:8}") int maxOpenCursors,
+                                 @Value("${reactive.cursor-wait-millis:1000}") long cursorWaitMillis,
+                                 @Value("${reactive.demand-timeout-millis:30000}") long demandTimeoutMillis) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.maxOpenCursors = Math.max(1, maxOpenCursors);
+        this.cursorPermits = new Semaphore(this.maxOpenCursors);
+        this.cursorWaitMillis = Math.max(0, cursorWaitMillis);
+        this.demandTimeoutMillis = Math.max(1, demandTimeoutMillis);
+    }
+
+    public <T> Flux<T> stream(String jpql, Class<T> type, Map<String, Object> parameters) {
+        return Flux.create(sink -> {
+            Demand demand = new Demand();
+            sink.onRequest(demand::add);
+            sink.onCancel(demand::cancel);
+            // задача не отменяется через Disposable: прерывание потока посреди чтения H2 закрывает файл БД,
+            // отмененная подписка завершает чтение сама при следующем ожидании запроса
+            Schedulers.boundedElastic().schedule(() -> {
+                if (!acquireCursor()) {
+                    sink.error(new IllegalStateException("No free cursor within " + cursorWaitMillis
+                            + " ms, limit is " + maxOpenCursors));
+                    return;
+                }
+                RuntimeException failure = null;
+                try {
+                    transactionTemplate.executeWithoutResult(status -> read(jpql, type, parameters, sink, demand));
+                } catch (RuntimeException e) {
+                    failure = e;
+                } finally {
+                    // курсор закрыт до сигнала: получив его, подписчик может сразу подписаться снова
+                    cursorPermits.release();
+                }
+                if (failure != null) {
+                    sink.error(failure);
+                } else {
+                    sink.complete();
+                }
+            });
+        });
+    }
+
+    private boolean acquireCursor() {
+        try {
+            return cursorPermits.tryAcquire(cursorWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Число подписок, которые сейчас держат курсор
+     */
+    public int openCursors() {
+        return maxOpenCursors - cursorPermits.availablePermits();
+    }
+
+    private <T> void read(String jpql, Class<T> type, Map<String, Object> parameters,
+                          FluxSink<T> sink, Demand demand) {
+        EntityManager entityManager = EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory);
+        TypedQuery<T> query = entityManager.createQuery(jpql, type)
+                .setHint(HINT_FETCH_SIZE, FETCH_SIZE);
+        parameters.forEach(query::setParameter);
+
+        try (Stream<T> rows = query.getResultStream()) {
+            Iterator<T> iterator = rows.iterator();
+            int emitted = 0;
+            while (demand.await(demandTimeoutMillis) && iterator.hasNext()) {
+                sink.next(iterator.next());
+                if (++emitted % CLEAR_EVERY == 0) {
+                    entityManager.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Запрошенное подписчиком число строк
+     */
+    private static class Demand {
+        private long requested;
+        private boolean cancelled;
+
+        synchronized void add(long count) {
+            requested = requested + count < 0 ? Long.MAX_VALUE : requested + count;
+            notifyAll();
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            notifyAll();
+        }
+
+        /**
+         * Дождаться запроса следующей строки; false - подписка отменена.
+         * Если запроса нет дольше timeoutMillis - IllegalStateException
+         */
+        synchronized boolean await(long timeoutMillis) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            try {
+                while (requested == 0 && !cancelled) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw new IllegalStateException("Subscriber requested no rows for " + timeoutMillis
+                                + " ms, cursor closed");
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            if (cancelled) {
+                return false;
+            }
+            if (requested != Long.MAX_VALUE) {
+                requested--;
+            }
+            return true;
+        }
+    }
+}
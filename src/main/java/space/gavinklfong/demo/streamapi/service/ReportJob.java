@@ -0,0 +1,31 @@
+package space.gavinklfong.demo.streamapi.service;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Состояние фонового отчета на момент запроса.
+ *
+ * @param progress доля выполненной работы в [0, 1]; отчеты без полного прохода по заказам сразу переходят из 0 в 1
+ * @param result   отчет, разобранный из сохраненного JSON (ключи вложенных map - строки), пока не DONE - null
+ * @param cached   результат взят из report_results без пересчета
+ */
+public record ReportJob(UUID id,
+                        ReportType type,
+                        Status status,
+                        double progress,
+                        Instant submittedAt,
+                        Instant completedAt,
+                        Map<String, Object> result,
+                        String error,
+                        boolean cached) {
+
+    public enum Status {
+        PENDING, RUNNING, DONE, FAILED
+    }
+
+    public boolean finished() {
+        return status == Status.DONE || status == Status.FAILED;
+    }
+}
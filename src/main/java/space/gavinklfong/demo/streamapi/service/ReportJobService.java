@@ -0,0 +1,246 @@
+package space.gavinklfong.demo.streamapi.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import space.gavinklfong.demo.streamapi.admission.AdmissionController;
+import space.gavinklfong.demo.streamapi.admission.AdmissionRejectedException;
+import space.gavinklfong.demo.streamapi.models.ReportResult;
+import space.gavinklfong.demo.streamapi.repos.ReportResultRepo;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Фоновый расчет тяжелых отчетов: submit возвращает задачу с id сразу, результат забирается
+ * через {@link #getJob} или {@link #await}.
+ * <p>
+ * Задачи выполняются пулом из report.workers потоков с очередью на report.queue-capacity задач,
+ * при переполненной очереди submit отклоняется. Пока отчет того же типа ждет в очереди или считается,
+ * повторный submit возвращает ту же задачу. Готовый результат сохраняется в report_results
+ * и report.ttl-seconds отдается без пересчета; столько же в памяти хранятся завершенные задачи.
+ * <p>
+ * Отчеты проходят через {@link AdmissionController} как аналитика. Фоновой задаче некуда спешить, поэтому
+ * отказ в допуске не завершает ее ошибкой: она повторяет попытку через report.admission-retry-millis.
+ * Прогресс сообщает только отчет по продажам при полном проходе по заказам, остальные переходят из 0 в 1.
+ */
+@Service
+public class ReportJobService implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(ReportJobService.class);
+
+    private static final TypeReference<Map<String, Object>> REPORT = new TypeReference<>() {
+    };
+
+    private final BusinessAnalyticsService businessAnalyticsService;
+    private final CustomerService customerService;
+    private final ReportResultRepo reportResultRepo;
+    private final ObjectMapper objectMapper;
+    private final Duration ttl;
+    private final int queueCapacity;
+    private final long admissionRetryMillis;
+    private final ThreadPoolExecutor executor;
+
+    private final Map<UUID, Job> jobs = new ConcurrentHashMap<>();
+    private final Map<ReportType, Job> activeJobs = new ConcurrentHashMap<>();
+
+    public ReportJobService(BusinessAnalyticsService businessAnalyticsService,
+                            CustomerService customerService,
+                            ReportResultRepo reportResultRepo,
+                            ObjectMapper objectMapper,
+                            @Value("${report.workers:2}") int workers,
+                            @Value("${report.queue-capacity:16}") int queueCapacity,
+                            @Value("${report.ttl-seconds:600}") long ttlSeconds,
+                            @Value("${report.admission-retry-millis:1000}") long admissionRetryMillis) {
+        this.businessAnalyticsService = businessAnalyticsService;
+        this.customerService = customerService;
+        this.reportResultRepo = reportResultRepo;
+        this.objectMapper = objectMapper;
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.queueCapacity = queueCapacity;
+        this.admissionRetryMillis = Math.max(1, admissionRetryMillis);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), task -> {
+            Thread thread = new Thread(task, "report-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Поставить отчет в очередь. Если такой отчет уже ждет или считается - вернуть его задачу,
+     * если есть свежий сохраненный результат - сразу завершенную задачу с ним
+     *
+     * @throws IllegalStateException если очередь заполнена
+     */
+    public ReportJob submit(ReportType type) {
+        evictExpired();
+        Job active = activeJobs.get(type);
+        if (active != null) {
+            return active.snapshot();
+        }
+
+        // чтение из базы - вне блокировки, чтобы submit других отчетов его не ждал
+        Optional<ReportResult> stored = reportResultRepo.findById(type.name())
+                .filter(result -> result.getCompletedAt().isAfter(Instant.now().minus(ttl)));
+        if (stored.isPresent()) {
+            Job job = new Job(type);
+            job.complete(parse(stored.get().getResult()), stored.get().getCompletedAt(), true);
+            jobs.put(job.id, job);
+            return job.snapshot();
+        }
+        return start(type);
+    }
+
+    // отчет того же типа мог быть поставлен в очередь, пока читался сохраненный результат
+    private synchronized ReportJob start(ReportType type) {
+        Job active = activeJobs.get(type);
+        if (active != null) {
+            return active.snapshot();
+        }
+
+        // регистрируется до запуска: быстрая задача может завершиться раньше, чем execute вернет управление
+        Job job = new Job(type);
+        jobs.put(job.id, job);
+        activeJobs.put(type, job);
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            activeJobs.remove(type, job);
+            throw new IllegalStateException("Report queue is full: " + queueCapacity + " jobs pending", e);
+        }
+        return job.snapshot();
+    }
+
+    public Optional<ReportJob> getJob(UUID jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(Job::snapshot);
+    }
+
+    /**
+     * Дождаться завершения задачи не дольше timeout и вернуть ее состояние
+     */
+    public Optional<ReportJob> await(UUID jobId, Duration timeout) {
+        Job job = jobs.get(jobId);
+        if (job == null) {
+            return Optional.empty();
+        }
+        try {
+            job.finished.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for report job " + jobId, e);
+        }
+        return Optional.of(job.snapshot());
+    }
+
+    private void run(Job job) {
+        long startTime = System.currentTimeMillis();
+        try {
+            Map<String, Object> report = compute(job);
+            String json = objectMapper.writeValueAsString(report);
+            Instant completedAt = Instant.now();
+            reportResultRepo.save(new ReportResult(job.type.name(), json, completedAt));
+            job.complete(parse(json), completedAt, false);
+            log.info("Report {} {} completed in {} ms", job.type, job.id, System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            log.warn("Report {} {} failed", job.type, job.id, e);
+            job.fail(e);
+        } finally {
+            activeJobs.remove(job.type, job);
+        }
+    }
+
+    // пока контроль допуска отказывает, задача ждет в статусе PENDING и повторяет попытку
+    private Map<String, Object> compute(Job job) throws InterruptedException {
+        while (true) {
+            job.status = ReportJob.Status.RUNNING;
+            try {
+                return switch (job.type) {
+                    case SALES -> businessAnalyticsService.getSalesReport(job::progress);
+                    case CUSTOMER_STATISTICS -> customerService.getCustomerStatistics();
+                };
+            } catch (AdmissionRejectedException e) {
+                job.status = ReportJob.Status.PENDING;
+                log.debug("Report {} {} not admitted, retrying in {} ms", job.type, job.id, admissionRetryMillis);
+                Thread.sleep(admissionRetryMillis);
+            }
+        }
+    }
+
+    private void evictExpired() {
+        Instant expired = Instant.now().minus(ttl);
+        jobs.values().removeIf(job -> job.completedAt != null && job.completedAt.isBefore(expired));
+    }
+
+    private Map<String, Object> parse(String json) {
+        try {
+            return objectMapper.readValue(json, REPORT);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Stored report is not valid JSON", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private static final class Job {
+        private final UUID id = UUID.randomUUID();
+        private final ReportType type;
+        private final Instant submittedAt = Instant.now();
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        private volatile ReportJob.Status status = ReportJob.Status.PENDING;
+        private volatile double progress;
+        private volatile Instant completedAt;
+        private volatile Map<String, Object> result;
+        private volatile String error;
+        private volatile boolean cached;
+
+        Job(ReportType type) {
+            this.type = type;
+        }
+
+        void progress(long done, long total) {
+            progress = total > 0 ? Math.min(1.0, (double) done / total) : 0;
+        }
+
+        void complete(Map<String, Object> result, Instant completedAt, boolean cached) {
+            this.result = result;
+            this.cached = cached;
+            this.progress = 1.0;
+            this.completedAt = completedAt;
+            this.status = ReportJob.Status.DONE;
+            finished.countDown();
+        }
+
+        void fail(Exception e) {
+            this.error = e.getMessage();
+            this.completedAt = Instant.now();
+            this.status = ReportJob.Status.FAILED;
+            finished.countDown();
+        }
+
+        ReportJob snapshot() {
+            return new ReportJob(id, type, status, progress, submittedAt, completedAt, result, error, cached);
+        }
+    }
+}
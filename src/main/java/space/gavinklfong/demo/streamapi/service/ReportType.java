@@ -0,0 +1,15 @@
+package space.gavinklfong.demo.streamapi.service;
+
+/**
+ * Отчеты, которые можно посчитать в фоне через {@link ReportJobService}
+ */
+public enum ReportType {
+    /**
+     * {@link BusinessAnalyticsService#getSalesReport()}
+     */
+    SALES,
+    /**
+     * {@link CustomerService#getCustomerStatistics()}
+     */
+    CUSTOMER_STATISTICS
+}
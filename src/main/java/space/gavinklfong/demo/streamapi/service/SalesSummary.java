@@ -0,0 +1,33 @@
+package space.gavinklfong.demo.streamapi.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Отчет по продажам.
+ *
+ * @param mostPopularCategories топ категорий по числу позиций в заказах, по убыванию
+ */
+public record SalesSummary(long totalOrders,
+                           long totalCustomers,
+                           long totalProducts,
+                           double totalRevenue,
+                           double averageOrderValue,
+                           Map<String, Long> ordersByStatus,
+                           Map<String, Long> mostPopularCategories) {
+
+    /**
+     * Отчет в виде map, как его отдает {@link BusinessAnalyticsService#getSalesReport()}
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> report = new HashMap<>();
+        report.put("totalOrders", totalOrders);
+        report.put("totalCustomers", totalCustomers);
+        report.put("totalProducts", totalProducts);
+        report.put("totalRevenue", totalRevenue);
+        report.put("averageOrderValue", averageOrderValue);
+        report.put("ordersByStatus", ordersByStatus);
+        report.put("mostPopularCategories", mostPopularCategories);
+        return report;
+    }
+}
@@ -0,0 +1,23 @@
+package space.gavinklfong.demo.streamapi.shard;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Итоги по заказам одного или нескольких шардов; {@link #merge} складывает итоги разных шардов.
+ * Товары есть в каждом шарде, поэтому их число не складывается
+ */
+public record ShardTotals(long orders, long customers, long products, double revenue,
+                          Map<String, Long> ordersByStatus) {
+
+    public double averageOrderValue() {
+        return orders > 0 ? revenue / orders : 0;
+    }
+
+    public ShardTotals merge(ShardTotals other) {
+        Map<String, Long> byStatus = new HashMap<>(ordersByStatus);
+        other.ordersByStatus.forEach((status, count) -> byStatus.merge(status, count, Long::sum));
+        return new ShardTotals(orders + other.orders, customers + other.customers,
+                Math.max(products, other.products), revenue + other.revenue, byStatus);
+    }
+}
@@ -0,0 +1,524 @@
+package space.gavinklfong.demo.streamapi.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import space.gavinklfong.demo.streamapi.index.IncrementalIndex;
+import space.gavinklfong.demo.streamapi.models.Customer;
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.sketch.Hashing;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Реплика заказов и клиентов для чтения, разложенная по нескольким БД (шардам) по customer_id; товары -
+ * справочные данные, их копия есть в каждом шарде. Шарды задаются в app.sharding.urls, пустой список
+ * выключает реплику.
+ * <p>
+ * Запись не шардируется: она идет в основную БД через JPA, и ее объем реплика не уменьшает. По шардам
+ * разносится чтение: запросы по одному клиенту уходят в его шард, глобальная аналитика - во все шарды
+ * параллельно (scatter-gather), частичные агрегаты складываются. Сущности в результатах собраны из строк
+ * шарда и не управляются JPA.
+ * <p>
+ * Реплика хранится в собственных таблицах шарда с суффиксом набора (_a или _b), таблицы schema.sql она
+ * не трогает. Полная загрузка (при первом обращении, в том числе после рестарта) заполняет свободный набор,
+ * затем текущим становится он, а прежний удаляется. Изменения по событиям сущностей применяются к текущему
+ * набору под блокировкой записи, а запросы идут под блокировкой чтения: они не видят ни набор посреди
+ * загрузки, ни заказ, уже удаленный из прежнего шарда и еще не вставленный в новый.
+ */
+@Component
+public class ShardedReadReplica extends IncrementalIndex implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(ShardedReadReplica.class);
+
+    private static final TableSet FIRST = new TableSet("_a");
+    private static final TableSet SECOND = new TableSet("_b");
+
+    // в запросах к реплике "$" заменяется суффиксом набора таблиц
+    private static final List<String> CREATE_TABLES = List.of(
+            "CREATE TABLE customers$ (id BIGINT PRIMARY KEY, name VARCHAR(255), tier INTEGER)",
+            "CREATE TABLE products$ (id BIGINT PRIMARY KEY, name VARCHAR(255), category VARCHAR(255), price DOUBLE)",
+            "CREATE TABLE product_orders$ (id BIGINT PRIMARY KEY, order_date DATE, delivery_date DATE, "
+                    + "status VARCHAR(50), customer_id BIGINT)",
+            "CREATE INDEX product_orders$_customer ON product_orders$ (customer_id)",
+            "CREATE TABLE order_product_relationship$ (order_id BIGINT NOT NULL, product_id BIGINT NOT NULL, "
+                    + "PRIMARY KEY (order_id, product_id))");
+    private static final List<String> DROP_TABLES = List.of(
+            "DROP TABLE IF EXISTS order_product_relationship$",
+            "DROP TABLE IF EXISTS product_orders$",
+            "DROP TABLE IF EXISTS products$",
+            "DROP TABLE IF EXISTS customers$");
+
+    private static final String SELECT_CUSTOMERS = "SELECT id, name, tier FROM customers";
+    private static final String SELECT_PRODUCTS = "SELECT id, name, category, price FROM products";
+    private static final String SELECT_ORDERS =
+            "SELECT id, order_date, delivery_date, status, customer_id FROM product_orders";
+    private static final String SELECT_LINKS = "SELECT order_id, product_id FROM order_product_relationship";
+
+    private static final String INSERT_CUSTOMER = "INSERT INTO customers$ (id, name, tier) VALUES (?, ?, ?)";
+    private static final String INSERT_PRODUCT =
+            "INSERT INTO products$ (id, name, category, price) VALUES (?, ?, ?, ?)";
+    private static final String INSERT_ORDER = "INSERT INTO product_orders$ "
+            + "(id, order_date, delivery_date, status, customer_id) VALUES (?, ?, ?, ?, ?)";
+    private static final String INSERT_LINK =
+            "INSERT INTO order_product_relationship$ (order_id, product_id) VALUES (?, ?)";
+    private static final String MERGE_CUSTOMER = "MERGE INTO customers$ (id, name, tier) KEY (id) VALUES (?, ?, ?)";
+    private static final String MERGE_PRODUCT =
+            "MERGE INTO products$ (id, name, category, price) KEY (id) VALUES (?, ?, ?, ?)";
+
+    private static final RowMapper<Object[]> ROW = (rs, rowNum) -> row(rs);
+    private static final RowMapper<Product> PRODUCT = (rs, rowNum) ->
+            new Product(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getObject(4, Double.class));
+
+    private final JdbcTemplate source;
+    private final List<Shard> shards = new ArrayList<>();
+    private final ExecutorService executor;
+
+    // текущий набор таблиц реплики; null - реплика еще не загружена
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private TableSet tables;
+
+    @Autowired
+    public ShardedReadReplica(DataSource dataSource,
+                             DataSourceProperties properties,
+                             @Value("${app.sharding.urls:}") String[] urls,
+                             @Value("${app.sharding.pool-size:4}") int poolSize) {
+        this(dataSource, shardDataSources(properties, urls, poolSize));
+    }
+
+    /**
+     * @param dataSource основная БД, из которой заполняются шарды
+     * @param shards     БД шардов; закрываются вместе с репликой
+     */
+    public ShardedReadReplica(DataSource dataSource, List<DataSource> shards) {
+        this.source = new JdbcTemplate(dataSource);
+        for (int i = 0; i < shards.size(); i++) {
+            this.shards.add(new Shard(i, shards.get(i), new JdbcTemplate(shards.get(i))));
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, shards.size()), task -> {
+            Thread thread = new Thread(task, "shard-query-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public boolean isEnabled() {
+        return !shards.isEmpty();
+    }
+
+    public int shardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Номер шарда клиента; заказы без клиента лежат в шарде 0
+     */
+    public int shardOf(Long customerId) {
+        return customerId == null ? 0 : (int) Math.floorMod(Hashing.hash(customerId), (long) shards.size());
+    }
+
+    @Override
+    public void orderChanged(Long orderId) {
+        if (isEnabled()) {
+            super.orderChanged(orderId);
+        }
+    }
+
+    @Override
+    public void customerChanged(Long customerId) {
+        if (isEnabled()) {
+            super.customerChanged(customerId);
+        }
+    }
+
+    @Override
+    public void productChanged(Long productId) {
+        if (isEnabled()) {
+            super.productChanged(productId);
+        }
+    }
+
+    /**
+     * Заказы клиента (вместе с товарами) по возрастанию id - из одного шарда
+     */
+    public List<Order> ordersByCustomer(Long customerId) {
+        return read(tables -> {
+            JdbcTemplate shard = shardFor(customerId);
+            List<Customer> customer = shard.query(tables.sql("SELECT id, name, tier FROM customers$ WHERE id = ?"),
+                    (rs, rowNum) -> new Customer(rs.getLong(1), rs.getString(2), rs.getObject(3, Integer.class)),
+                    customerId);
+            if (customer.isEmpty()) {
+                return List.of();
+            }
+
+            Map<Long, Order> orders = new LinkedHashMap<>();
+            shard.query(tables.sql("SELECT id, order_date, delivery_date, status FROM product_orders$ "
+                            + "WHERE customer_id = ? ORDER BY id"),
+                    (RowCallbackHandler) rs -> orders.put(rs.getLong(1), new Order(rs.getLong(1),
+                            rs.getObject(2, LocalDate.class), rs.getObject(3, LocalDate.class), rs.getString(4),
+                            customer.get(0))),
+                    customerId);
+            Map<Long, Product> products = new HashMap<>();
+            shard.query(tables.sql("SELECT r.order_id, p.id, p.name, p.category, p.price FROM product_orders$ o "
+                            + "JOIN order_product_relationship$ r ON r.order_id = o.id "
+                            + "JOIN products$ p ON p.id = r.product_id WHERE o.customer_id = ?"),
+                    (RowCallbackHandler) rs -> {
+                        Product product = products.get(rs.getLong(2));
+                        if (product == null) {
+                            product = new Product(rs.getLong(2), rs.getString(3), rs.getString(4),
+                                    rs.getObject(5, Double.class));
+                            products.put(product.getId(), product);
+                        }
+                        orders.get(rs.getLong(1)).getProducts().add(product);
+                    },
+                    customerId);
+            return new ArrayList<>(orders.values());
+        });
+    }
+
+    /**
+     * Товары из заказов клиента с датой в [from, to] включительно, без повторов, по возрастанию id -
+     * из одного шарда
+     */
+    public List<Product> productsByCustomerBetween(Long customerId, LocalDate from, LocalDate to) {
+        return read(tables -> shardFor(customerId).query(tables.sql(
+                        "SELECT DISTINCT p.id, p.name, p.category, p.price FROM product_orders$ o "
+                                + "JOIN order_product_relationship$ r ON r.order_id = o.id "
+                                + "JOIN products$ p ON p.id = r.product_id "
+                                + "WHERE o.customer_id = ? AND o.order_date BETWEEN ? AND ? ORDER BY p.id"),
+                PRODUCT, customerId, from, to));
+    }
+
+    /**
+     * Выручка по дням, в которые были заказы, по возрастанию даты - сумма частичных итогов шардов
+     */
+    public Map<LocalDate, Double> revenueByDay() {
+        Map<LocalDate, Double> revenue = read(tables -> scatter(shard -> {
+            Map<LocalDate, Double> partial = new TreeMap<>();
+            shard.jdbcTemplate().query(tables.sql("SELECT o.order_date, COALESCE(SUM(p.price), 0) "
+                            + "FROM product_orders$ o "
+                            + "LEFT JOIN order_product_relationship$ r ON r.order_id = o.id "
+                            + "LEFT JOIN products$ p ON p.id = r.product_id "
+                            + "WHERE o.order_date IS NOT NULL GROUP BY o.order_date"),
+                    (RowCallbackHandler) rs -> partial.put(rs.getObject(1, LocalDate.class), rs.getDouble(2)));
+            return partial;
+        }, (left, right) -> {
+            right.forEach((day, sum) -> left.merge(day, sum, Double::sum));
+            return left;
+        }));
+        return new LinkedHashMap<>(revenue);
+    }
+
+    /**
+     * Число строк заказов (заказ, товар) по категориям товаров - сумма частичных итогов шардов
+     */
+    public Map<String, Long> orderLinesByCategory() {
+        return read(tables -> scatter(shard -> {
+            Map<String, Long> partial = new HashMap<>();
+            shard.jdbcTemplate().query(tables.sql("SELECT p.category, COUNT(*) FROM order_product_relationship$ r "
+                            + "JOIN products$ p ON p.id = r.product_id "
+                            + "WHERE p.category IS NOT NULL GROUP BY p.category"),
+                    (RowCallbackHandler) rs -> partial.put(rs.getString(1), rs.getLong(2)));
+            return partial;
+        }, (left, right) -> {
+            right.forEach((category, count) -> left.merge(category, count, Long::sum));
+            return left;
+        }));
+    }
+
+    /**
+     * Число заказов, клиентов и товаров, выручка и заказы по статусам по всем шардам
+     */
+    public ShardTotals totals() {
+        return read(tables -> scatter(shard -> {
+            JdbcTemplate jdbcTemplate = shard.jdbcTemplate();
+            Map<String, Long> byStatus = new HashMap<>();
+            jdbcTemplate.query(tables.sql("SELECT status, COUNT(*) FROM product_orders$ "
+                            + "WHERE status IS NOT NULL GROUP BY status"),
+                    (RowCallbackHandler) rs -> byStatus.put(rs.getString(1), rs.getLong(2)));
+            Double revenue = jdbcTemplate.queryForObject(tables.sql("SELECT COALESCE(SUM(p.price), 0) "
+                    + "FROM order_product_relationship$ r JOIN products$ p ON p.id = r.product_id"), Double.class);
+            return new ShardTotals(count(jdbcTemplate, tables.sql("product_orders$")),
+                    count(jdbcTemplate, tables.sql("customers$")), count(jdbcTemplate, tables.sql("products$")),
+                    revenue != null ? revenue : 0, byStatus);
+        }, ShardTotals::merge));
+    }
+
+    /**
+     * Число заказов в каждом шарде, по номеру шарда
+     */
+    public List<Long> orderCountsByShard() {
+        return read(tables -> scatter(shard -> List.of(count(shard.jdbcTemplate(), tables.sql("product_orders$"))),
+                (left, right) -> {
+                    List<Long> counts = new ArrayList<>(left);
+                    counts.addAll(right);
+                    return counts;
+                }));
+    }
+
+    @Override
+    protected void rebuild() {
+        if (!isEnabled()) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        List<Object[]> products = source.query(SELECT_PRODUCTS, ROW);
+        List<List<Object[]>> customers = routed(SELECT_CUSTOMERS, 0, 3);
+        List<List<Object[]>> orders = routed(SELECT_ORDERS, 4, 5);
+        List<List<Object[]>> links = routed("SELECT r.order_id, r.product_id, o.customer_id "
+                + "FROM order_product_relationship r JOIN product_orders o ON o.id = r.order_id", 2, 2);
+
+        // свободный набор; его таблицы могли остаться от прерванной загрузки или прошлого запуска
+        TableSet next = tables == SECOND ? FIRST : SECOND;
+        forEachShard(shard -> {
+            execute(shard, next, DROP_TABLES);
+            execute(shard, next, CREATE_TABLES);
+            shard.jdbcTemplate().batchUpdate(next.sql(INSERT_PRODUCT), products);
+            shard.jdbcTemplate().batchUpdate(next.sql(INSERT_CUSTOMER), customers.get(shard.index()));
+            shard.jdbcTemplate().batchUpdate(next.sql(INSERT_ORDER), orders.get(shard.index()));
+            shard.jdbcTemplate().batchUpdate(next.sql(INSERT_LINK), links.get(shard.index()));
+        });
+        write(current -> tables = next);
+        // запросы, начатые до переключения, завершились раньше, чем оно получило блокировку записи
+        forEachShard(shard -> execute(shard, next == FIRST ? SECOND : FIRST, DROP_TABLES));
+        log.info("Shards loaded: {} products, {} orders into {} shards in {} ms", products.size(),
+                orders.stream().mapToInt(List::size).sum(), shards.size(), System.currentTimeMillis() - startTime);
+    }
+
+    @Override
+    protected void applyProductChanges(Set<Long> productIds) {
+        Map<Long, List<Object[]>> products = new HashMap<>();
+        productIds.forEach(productId ->
+                products.put(productId, source.query(SELECT_PRODUCTS + " WHERE id = ?", ROW, productId)));
+        write(tables -> forEachShard(shard -> products.forEach((productId, product) -> {
+            if (product.isEmpty()) {
+                shard.jdbcTemplate().update(tables.sql("DELETE FROM order_product_relationship$ WHERE product_id = ?"),
+                        productId);
+                shard.jdbcTemplate().update(tables.sql("DELETE FROM products$ WHERE id = ?"), productId);
+            } else {
+                shard.jdbcTemplate().update(tables.sql(MERGE_PRODUCT), product.get(0));
+            }
+        })));
+    }
+
+    @Override
+    protected void applyCustomerChanges(Set<Long> customerIds) {
+        Map<Long, List<Object[]>> customers = new HashMap<>();
+        customerIds.forEach(customerId ->
+                customers.put(customerId, source.query(SELECT_CUSTOMERS + " WHERE id = ?", ROW, customerId)));
+        write(tables -> customers.forEach((customerId, customer) -> {
+            JdbcTemplate shard = shardFor(customerId);
+            if (customer.isEmpty()) {
+                shard.update(tables.sql("DELETE FROM order_product_relationship$ WHERE order_id IN "
+                        + "(SELECT id FROM product_orders$ WHERE customer_id = ?)"), customerId);
+                shard.update(tables.sql("DELETE FROM product_orders$ WHERE customer_id = ?"), customerId);
+                shard.update(tables.sql("DELETE FROM customers$ WHERE id = ?"), customerId);
+            } else {
+                shard.update(tables.sql(MERGE_CUSTOMER), customer.get(0));
+            }
+        }));
+    }
+
+    @Override
+    protected void applyOrderChanges(Set<Long> orderIds) {
+        List<List<Object[]>> orders = perShard();
+        List<List<Object[]>> links = perShard();
+        for (Long orderId : orderIds) {
+            List<Object[]> order = source.query(SELECT_ORDERS + " WHERE id = ?", ROW, orderId);
+            if (!order.isEmpty()) {
+                int shard = shardOf(customerId(order.get(0)[4]));
+                orders.get(shard).add(order.get(0));
+                links.get(shard).addAll(source.query(SELECT_LINKS + " WHERE order_id = ?", ROW, orderId));
+            }
+        }
+
+        // клиент заказа мог смениться, поэтому прежняя версия удаляется из всех шардов
+        List<Object[]> ids = orderIds.stream()
+                .map(orderId -> new Object[]{orderId})
+                .toList();
+        write(tables -> forEachShard(shard -> {
+            JdbcTemplate jdbcTemplate = shard.jdbcTemplate();
+            jdbcTemplate.batchUpdate(tables.sql("DELETE FROM order_product_relationship$ WHERE order_id = ?"), ids);
+            jdbcTemplate.batchUpdate(tables.sql("DELETE FROM product_orders$ WHERE id = ?"), ids);
+            jdbcTemplate.batchUpdate(tables.sql(INSERT_ORDER), orders.get(shard.index()));
+            jdbcTemplate.batchUpdate(tables.sql(INSERT_LINK), links.get(shard.index()));
+        }));
+    }
+
+    private JdbcTemplate shardFor(Long customerId) {
+        return shards.get(shardOf(customerId)).jdbcTemplate();
+    }
+
+    private void requireEnabled() {
+        if (!isEnabled()) {
+            throw new IllegalStateException("Sharding is disabled: app.sharding.urls is empty");
+        }
+        ensureCurrent();
+    }
+
+    private <R> R read(Function<TableSet, R> query) {
+        requireEnabled();
+        lock.readLock().lock();
+        try {
+            return query.apply(tables);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void write(Consumer<TableSet> changes) {
+        lock.writeLock().lock();
+        try {
+            changes.accept(tables);
+        } catch (RuntimeException e) {
+            // часть шардов могла уже измениться: при следующем обращении реплика загрузится заново
+            invalidate();
+            throw e;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void execute(Shard shard, TableSet tables, List<String> statements) {
+        statements.forEach(statement -> shard.jdbcTemplate().execute(tables.sql(statement)));
+    }
+
+    // строки основной БД по шардам клиента из колонки routeColumn, без колонок после columns
+    private List<List<Object[]>> routed(String sql, int routeColumn, int columns) {
+        List<List<Object[]>> result = perShard();
+        source.query(sql, (RowCallbackHandler) rs -> {
+            Object[] row = row(rs);
+            result.get(shardOf(customerId(row[routeColumn]))).add(Arrays.copyOf(row, columns));
+        });
+        return result;
+    }
+
+    private List<List<Object[]>> perShard() {
+        List<List<Object[]>> result = new ArrayList<>();
+        shards.forEach(shard -> result.add(new ArrayList<>()));
+        return result;
+    }
+
+    private void forEachShard(Consumer<Shard> action) {
+        scatter(shard -> {
+            action.accept(shard);
+            return null;
+        }, (left, right) -> null);
+    }
+
+    private <R> R scatter(Function<Shard, R> query, BinaryOperator<R> merge) {
+        List<Future<R>> futures = shards.stream()
+                .map(shard -> executor.submit(() -> query.apply(shard)))
+                .toList();
+        R result = await(futures.get(0));
+        for (Future<R> future : futures.subList(1, futures.size())) {
+            result = merge.apply(result, await(future));
+        }
+        return result;
+    }
+
+    private static <R> R await(Future<R> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Shard query interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Shard query failed", e.getCause());
+        }
+    }
+
+    private static long count(JdbcTemplate jdbcTemplate, String table) {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+        return count != null ? count : 0;
+    }
+
+    private static Long customerId(Object value) {
+        return value != null ? ((Number) value).longValue() : null;
+    }
+
+    private static Object[] row(ResultSet rs) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        Object[] row = new Object[metaData.getColumnCount()];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = rs.getObject(i + 1);
+        }
+        return row;
+    }
+
+    private static List<DataSource> shardDataSources(DataSourceProperties properties, String[] urls, int poolSize) {
+        List<DataSource> dataSources = new ArrayList<>();
+        for (int i = 0; i < urls.length; i++) {
+            HikariDataSource dataSource = properties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .url(urls[i].trim())
+                    .build();
+            dataSource.setPoolName("shard-" + i + "-pool");
+            dataSource.setMaximumPoolSize(poolSize);
+            dataSources.add(dataSource);
+        }
+        return dataSources;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+        for (Shard shard : shards) {
+            if (shard.dataSource() instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    log.warn("Failed to close shard {}", shard.index(), e);
+                }
+            }
+        }
+    }
+
+    private record Shard(int index, DataSource dataSource, JdbcTemplate jdbcTemplate) {
+    }
+
+    /**
+     * Набор таблиц реплики
+     */
+    private record TableSet(String suffix) {
+
+        String sql(String template) {
+            return template.replace("$", suffix);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package space.gavinklfong.demo.streamapi.sketch;
+
+/**
+ * Оценка частот (Count-Min) в фиксированной памяти: depth x width счетчиков.
+ * <p>
+ * Оценка никогда не меньше настоящей частоты и с вероятностью 1 - e^-depth превышает ее
+ * не больше чем на e / width от общего числа добавлений. Скетчи одного размера объединяются
+ * сложением счетчиков ({@link #merge}).
+ */
+public class CountMinSketch {
+    public static final int DEFAULT_DEPTH = 5;
+    public static final int DEFAULT_WIDTH = 1 << 14;
+
+    private final int depth;
+    private final int width;
+    private final long[] counters;
+    private long totalCount;
+
+    public CountMinSketch() {
+        this(DEFAULT_DEPTH, DEFAULT_WIDTH);
+    }
+
+    public CountMinSketch(int depth, int width) {
+        if (depth < 1 || width < 1 || Integer.bitCount(width) != 1) {
+            throw new IllegalArgumentException("depth must be positive and width a power of two: " + depth + "x" + width);
+        }
+        this.depth = depth;
+        this.width = width;
+        this.counters = new long[depth * width];
+    }
+
+    /**
+     * Добавить count вхождений значения по его 64-битному хэшу (см. {@link Hashing})
+     */
+    public void add(long hash, long count) {
+        for (int row = 0; row < depth; row++) {
+            counters[cell(row, hash)] += count;
+        }
+        totalCount += count;
+    }
+
+    public long estimate(long hash) {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counters[cell(row, hash)]);
+        }
+        return min;
+    }
+
+    public long totalCount() {
+        return totalCount;
+    }
+
+    public CountMinSketch merge(CountMinSketch other) {
+        if (other.depth != depth || other.width != width) {
+            throw new IllegalArgumentException("cannot merge sketches " + depth + "x" + width
+                    + " and " + other.depth + "x" + other.width);
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] += other.counters[i];
+        }
+        totalCount += other.totalCount;
+        return this;
+    }
+
+    // строки независимы за счет двойного хэширования: h1 + row * h2
+    private int cell(int row, long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return row * width + ((h1 + row * h2) & (width - 1));
+    }
+}
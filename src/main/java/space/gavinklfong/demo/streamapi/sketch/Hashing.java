@@ -0,0 +1,34 @@
+package space.gavinklfong.demo.streamapi.sketch;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 64-битные хэши для скетчей. Id и строки перемешиваются финализатором MurmurHash3,
+ * чтобы последовательные id равномерно расходились по регистрам и счетчикам.
+ */
+public final class Hashing {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private Hashing() {
+    }
+
+    public static long hash(long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public static long hash(String value) {
+        long h = FNV_OFFSET;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= FNV_PRIME;
+        }
+        return hash(h);
+    }
+}
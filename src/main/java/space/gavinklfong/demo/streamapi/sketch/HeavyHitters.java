@@ -0,0 +1,86 @@
+package space.gavinklfong.demo.streamapi.sketch;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.ToLongFunction;
+
+/**
+ * Самые частые значения потока: частоты оцениваются {@link CountMinSketch}, а кандидаты в топ
+ * хранятся в min-куче ограниченного размера. Память не зависит от числа различных значений.
+ * <p>
+ * Объединение ({@link #merge}) складывает скетчи и заново отбирает кандидатов из обеих куч
+ * по объединенным оценкам.
+ */
+public class HeavyHitters<K> {
+    private final int capacity;
+    private final ToLongFunction<K> hasher;
+    private final CountMinSketch sketch;
+    private final Map<K, Long> estimates = new HashMap<>();
+    private final PriorityQueue<K> heap = new PriorityQueue<>(Comparator.comparingLong(estimates::get));
+
+    public HeavyHitters(int capacity, ToLongFunction<K> hasher) {
+        this(capacity, hasher, new CountMinSketch());
+    }
+
+    public HeavyHitters(int capacity, ToLongFunction<K> hasher, CountMinSketch sketch) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.hasher = hasher;
+        this.sketch = sketch;
+    }
+
+    public void add(K key) {
+        long hash = hasher.applyAsLong(key);
+        sketch.add(hash, 1);
+        offer(key, sketch.estimate(hash));
+    }
+
+    public HeavyHitters<K> merge(HeavyHitters<K> other) {
+        sketch.merge(other.sketch);
+        List<K> candidates = new ArrayList<>(estimates.keySet());
+        candidates.addAll(other.estimates.keySet());
+        estimates.clear();
+        heap.clear();
+        for (K key : candidates) {
+            offer(key, sketch.estimate(hasher.applyAsLong(key)));
+        }
+        return this;
+    }
+
+    /**
+     * limit самых частых значений с оценками частоты, по убыванию
+     */
+    public Map<K, Long> top(int limit) {
+        Map<K, Long> result = new LinkedHashMap<>();
+        estimates.entrySet().stream()
+                .sorted(Map.Entry.<K, Long>comparingByValue().reversed())
+                .limit(limit)
+                .forEach(entry -> result.put(entry.getKey(), entry.getValue()));
+        return result;
+    }
+
+    public long totalCount() {
+        return sketch.totalCount();
+    }
+
+    private void offer(K key, long estimate) {
+        if (estimates.containsKey(key)) {
+            // приоритет в куче меняется только через удаление и повторную вставку
+            heap.remove(key);
+        } else if (estimates.size() >= capacity) {
+            if (estimate <= estimates.get(heap.peek())) {
+                return;
+            }
+            estimates.remove(heap.poll());
+        }
+        estimates.put(key, estimate);
+        heap.add(key);
+    }
+}
@@ -0,0 +1,107 @@
+package space.gavinklfong.demo.streamapi.sketch;
+
+/**
+ * Оценка числа различных значений (HyperLogLog) в фиксированной памяти: 2^precision байт.
+ * <p>
+ * Стандартная ошибка - 1.04 / sqrt(2^precision), для точности по умолчанию (16) около 0.4%.
+ * Скетчи с одинаковой точностью объединяются ({@link #merge}), поэтому их можно считать
+ * по частям данных независимо.
+ */
+public class HyperLogLog {
+    public static final int DEFAULT_PRECISION = 16;
+
+    private static final double ALPHA_INF = 1 / (2 * Math.log(2));
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("precision must be between 4 and 18: " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Добавить значение по его 64-битному хэшу (см. {@link Hashing})
+     */
+    public void add(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // сигнальный бит ограничивает ранг, если оставшиеся биты хэша нулевые
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    public HyperLogLog merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("cannot merge sketches with precision " + precision + " and " + other.precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Оценка без поправочных таблиц и порогов переключения на linear counting
+     * (O. Ertl, "New cardinality estimation algorithms for HyperLogLog sketches", 2017):
+     * несмещенная во всем диапазоне мощностей.
+     */
+    public long estimate() {
+        int m = registers.length;
+        int q = 64 - precision;
+        int[] histogram = new int[q + 2];
+        for (byte register : registers) {
+            histogram[register]++;
+        }
+
+        double z = m * tau(1 - (double) histogram[q + 1] / m);
+        for (int k = q; k >= 1; k--) {
+            z = 0.5 * (z + histogram[k]);
+        }
+        z += m * sigma((double) histogram[0] / m);
+        return Math.round(ALPHA_INF * m * m / z);
+    }
+
+    private static double sigma(double x) {
+        if (x == 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double y = 1;
+        double z = x;
+        double previous;
+        do {
+            x *= x;
+            previous = z;
+            z += x * y;
+            y += y;
+        } while (z != previous);
+        return z;
+    }
+
+    private static double tau(double x) {
+        if (x == 0 || x == 1) {
+            return 0;
+        }
+        double y = 1;
+        double z = 1 - x;
+        double previous;
+        do {
+            x = Math.sqrt(x);
+            previous = z;
+            y *= 0.5;
+            z -= (1 - x) * (1 - x) * y;
+        } while (z != previous);
+        return z / 3;
+    }
+}
@@ -0,0 +1,117 @@
+package space.gavinklfong.demo.streamapi.sketch;
+
+import java.util.Arrays;
+
+/**
+ * Гистограмма неотрицательных целых значений в логарифмически-линейных корзинах (как в HdrHistogram)
+ * для оценки перцентилей.
+ * <p>
+ * Значения меньше 2^precisionBits хранятся точно, большие - с относительной погрешностью
+ * не больше 2^(1 - precisionBits). Массив счетчиков растет только до корзины максимального значения,
+ * поэтому память не зависит от числа значений. Гистограммы одной точности объединяются
+ * сложением счетчиков ({@link #merge}), а значение можно убрать, добавив его с count = -1.
+ */
+public class QuantileHistogram {
+    public static final int DEFAULT_PRECISION_BITS = 7;
+
+    private final int precisionBits;
+    private final int halfBucket;
+    private long[] counts = new long[0];
+    private long totalCount;
+
+    public QuantileHistogram() {
+        this(DEFAULT_PRECISION_BITS);
+    }
+
+    public QuantileHistogram(int precisionBits) {
+        if (precisionBits < 1 || precisionBits > 16) {
+            throw new IllegalArgumentException("precision bits must be in [1, 16]: " + precisionBits);
+        }
+        this.precisionBits = precisionBits;
+        this.halfBucket = 1 << (precisionBits - 1);
+    }
+
+    public void add(long value) {
+        add(value, 1);
+    }
+
+    /**
+     * Добавить count вхождений значения (отрицательный count убирает ранее добавленные)
+     */
+    public void add(long value, long count) {
+        if (value < 0) {
+            throw new IllegalArgumentException("value must not be negative: " + value);
+        }
+        int index = indexOf(value);
+        if (index >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(index + 1, counts.length * 2));
+        }
+        counts[index] += count;
+        totalCount += count;
+    }
+
+    public long totalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Значение, не больше которого q-я доля добавленных значений (q в [0, 1]);
+     * для неточных корзин - верхняя граница корзины. Для пустой гистограммы - 0
+     */
+    public long quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("quantile must be in [0, 1]: " + q);
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * totalCount));
+        long seen = 0;
+        for (int index = 0; index < counts.length; index++) {
+            seen += counts[index];
+            if (seen >= rank) {
+                return highestValueAt(index);
+            }
+        }
+        return 0;
+    }
+
+    public long max() {
+        for (int index = counts.length - 1; index >= 0; index--) {
+            if (counts[index] > 0) {
+                return highestValueAt(index);
+            }
+        }
+        return 0;
+    }
+
+    public QuantileHistogram merge(QuantileHistogram other) {
+        if (other.precisionBits != precisionBits) {
+            throw new IllegalArgumentException("cannot merge histograms with precision "
+                    + precisionBits + " and " + other.precisionBits);
+        }
+        if (other.counts.length > counts.length) {
+            counts = Arrays.copyOf(counts, other.counts.length);
+        }
+        for (int index = 0; index < other.counts.length; index++) {
+            counts[index] += other.counts[index];
+        }
+        totalCount += other.totalCount;
+        return this;
+    }
+
+    // первые 2 * halfBucket значений - по одному в корзине, дальше каждая октава делится на halfBucket корзин
+    private int indexOf(long value) {
+        if (value < 2L * halfBucket) {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - precisionBits;
+        return shift * halfBucket + (int) (value >>> shift);
+    }
+
+    private long highestValueAt(int index) {
+        if (index < 2 * halfBucket) {
+            return index;
+        }
+        int shift = index / halfBucket - 1;
+        long lowest = (long) (index % halfBucket + halfBucket) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
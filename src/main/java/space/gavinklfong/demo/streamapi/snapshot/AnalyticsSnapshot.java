@@ -0,0 +1,286 @@
+package space.gavinklfong.demo.streamapi.snapshot;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.DoubleSummaryStatistics;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+import static space.gavinklfong.demo.streamapi.snapshot.SnapshotFormat.*;
+
+/**
+ * Снапшот клиентов, товаров, заказов и их связей, отображенный в память из файла
+ * (см. {@link SnapshotFormat}).
+ * <p>
+ * Открытие не зависит от объема данных, кроме проверки контрольной суммы: колонки читаются
+ * прямо из отображения по смещениям, без загрузки в heap. Строки адресуются номерами
+ * (0..count-1) в порядке возрастания id. Экземпляр неизменяем и безопасен для чтения из
+ * нескольких потоков.
+ */
+public class AnalyticsSnapshot {
+    private final MappedByteBuffer buffer;
+    private final SnapshotFingerprint fingerprint;
+
+    private final int stringCount;
+    private final int stringOffsets;
+    private final int stringBytes;
+
+    private final int customerCount;
+    private final int customerIds;
+    private final int customerTiers;
+    private final int customerNames;
+
+    private final int productCount;
+    private final int productIds;
+    private final int productPrices;
+    private final int productNames;
+    private final int productCategories;
+
+    private final int orderCount;
+    private final int orderIds;
+    private final int orderCustomers;
+    private final int orderDates;
+    private final int orderDeliveryDates;
+    private final int orderStatuses;
+    private final int orderLinkStarts;
+
+    private final int linkCount;
+    private final int linkProducts;
+
+    private AnalyticsSnapshot(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        this.fingerprint = new SnapshotFingerprint(buffer.getInt(SCHEMA_VERSION_OFFSET),
+                buffer.getLong(FINGERPRINT_OFFSET), buffer.getLong(FINGERPRINT_OFFSET + 8),
+                buffer.getLong(FINGERPRINT_OFFSET + 16), buffer.getLong(FINGERPRINT_OFFSET + 24),
+                buffer.getLong(FINGERPRINT_OFFSET + 32), buffer.getLong(FINGERPRINT_OFFSET + 40),
+                buffer.getLong(FINGERPRINT_OFFSET + 48), buffer.getLong(FINGERPRINT_OFFSET + 56));
+
+        int offset = HEADER_SIZE;
+        stringCount = buffer.getInt(offset);
+        stringOffsets = offset + 4;
+        stringBytes = stringOffsets + 4 * (stringCount + 1);
+        offset = stringBytes + buffer.getInt(stringOffsets + 4 * stringCount);
+
+        customerCount = buffer.getInt(offset);
+        customerIds = offset + 4;
+        customerTiers = customerIds + 8 * customerCount;
+        customerNames = customerTiers + 4 * customerCount;
+        offset = customerNames + 4 * customerCount;
+
+        productCount = buffer.getInt(offset);
+        productIds = offset + 4;
+        productPrices = productIds + 8 * productCount;
+        productNames = productPrices + 8 * productCount;
+        productCategories = productNames + 4 * productCount;
+        offset = productCategories + 4 * productCount;
+
+        orderCount = buffer.getInt(offset);
+        orderIds = offset + 4;
+        orderCustomers = orderIds + 8 * orderCount;
+        orderDates = orderCustomers + 4 * orderCount;
+        orderDeliveryDates = orderDates + 4 * orderCount;
+        orderStatuses = orderDeliveryDates + 4 * orderCount;
+        orderLinkStarts = orderStatuses + 4 * orderCount;
+        offset = orderLinkStarts + 4 * (orderCount + 1);
+
+        linkCount = buffer.getInt(offset);
+        linkProducts = offset + 4;
+    }
+
+    /**
+     * Отобразить файл снапшота, проверив заголовок и контрольную сумму
+     *
+     * @throws IllegalStateException если файл не является корректным снапшотом текущего формата
+     */
+    public static AnalyticsSnapshot open(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalStateException("unexpected snapshot size " + channel.size());
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt(MAGIC_OFFSET) != MAGIC || buffer.getInt(VERSION_OFFSET) != VERSION) {
+            throw new IllegalStateException("not a snapshot of format version " + VERSION);
+        }
+        long bodyLength = buffer.getLong(BODY_LENGTH_OFFSET);
+        if (bodyLength != buffer.capacity() - HEADER_SIZE) {
+            throw new IllegalStateException("truncated snapshot: " + buffer.capacity() + " bytes");
+        }
+        CRC32C checksum = new CRC32C();
+        checksum.update(buffer.slice(HEADER_SIZE, (int) bodyLength));
+        if (checksum.getValue() != buffer.getLong(CHECKSUM_OFFSET)) {
+            throw new IllegalStateException("snapshot checksum mismatch");
+        }
+        return new AnalyticsSnapshot(buffer);
+    }
+
+    public SnapshotFingerprint fingerprint() {
+        return fingerprint;
+    }
+
+    public int customerCount() {
+        return customerCount;
+    }
+
+    public long customerId(int customer) {
+        return buffer.getLong(customerIds + 8 * customer);
+    }
+
+    public Integer customerTier(int customer) {
+        int tier = buffer.getInt(customerTiers + 4 * customer);
+        return tier != NO_INT ? tier : null;
+    }
+
+    public String customerName(int customer) {
+        return string(buffer.getInt(customerNames + 4 * customer));
+    }
+
+    public int productCount() {
+        return productCount;
+    }
+
+    public long productId(int product) {
+        return buffer.getLong(productIds + 8 * product);
+    }
+
+    public double productPrice(int product) {
+        return buffer.getDouble(productPrices + 8 * product);
+    }
+
+    public String productName(int product) {
+        return string(buffer.getInt(productNames + 4 * product));
+    }
+
+    public String productCategory(int product) {
+        return string(buffer.getInt(productCategories + 4 * product));
+    }
+
+    public int orderCount() {
+        return orderCount;
+    }
+
+    public long orderId(int order) {
+        return buffer.getLong(orderIds + 8 * order);
+    }
+
+    /**
+     * Номер клиента заказа или -1
+     */
+    public int orderCustomer(int order) {
+        return buffer.getInt(orderCustomers + 4 * order);
+    }
+
+    public LocalDate orderDate(int order) {
+        return date(buffer.getInt(orderDates + 4 * order));
+    }
+
+    public LocalDate orderDeliveryDate(int order) {
+        return date(buffer.getInt(orderDeliveryDates + 4 * order));
+    }
+
+    public String orderStatus(int order) {
+        return string(buffer.getInt(orderStatuses + 4 * order));
+    }
+
+    /**
+     * Номера связей заказа: [orderLinkStart(order), orderLinkStart(order + 1))
+     */
+    public int orderLinkStart(int order) {
+        return buffer.getInt(orderLinkStarts + 4 * order);
+    }
+
+    public int linkCount() {
+        return linkCount;
+    }
+
+    /**
+     * Номер товара связи
+     */
+    public int linkProduct(int link) {
+        return buffer.getInt(linkProducts + 4 * link);
+    }
+
+    /**
+     * Сумма цен товаров заказа
+     */
+    public double orderTotal(int order) {
+        double total = 0;
+        for (int link = orderLinkStart(order), end = orderLinkStart(order + 1); link < end; link++) {
+            total += productPrice(linkProduct(link));
+        }
+        return total;
+    }
+
+    /**
+     * Статистика сумм всех заказов
+     */
+    public DoubleSummaryStatistics orderTotals() {
+        DoubleSummaryStatistics statistics = new DoubleSummaryStatistics();
+        for (int order = 0; order < orderCount; order++) {
+            statistics.accept(orderTotal(order));
+        }
+        return statistics;
+    }
+
+    /**
+     * Количество заказов по статусу
+     */
+    public Map<String, Long> ordersByStatus() {
+        long[] counts = new long[stringCount];
+        for (int order = 0; order < orderCount; order++) {
+            int status = buffer.getInt(orderStatuses + 4 * order);
+            if (status >= 0) {
+                counts[status]++;
+            }
+        }
+        return byString(counts);
+    }
+
+    /**
+     * Количество позиций заказов по категории товара
+     */
+    public Map<String, Long> orderLinesByCategory() {
+        long[] counts = new long[stringCount];
+        for (int link = 0; link < linkCount; link++) {
+            int category = buffer.getInt(productCategories + 4 * linkProduct(link));
+            if (category >= 0) {
+                counts[category]++;
+            }
+        }
+        return byString(counts);
+    }
+
+    // счетчики по номерам строк словаря -> по самим строкам
+    private Map<String, Long> byString(long[] counts) {
+        Map<String, Long> result = new HashMap<>();
+        for (int ref = 0; ref < counts.length; ref++) {
+            if (counts[ref] > 0) {
+                result.put(string(ref), counts[ref]);
+            }
+        }
+        return result;
+    }
+
+    private String string(int ref) {
+        if (ref < 0) {
+            return null;
+        }
+        int start = buffer.getInt(stringOffsets + 4 * ref);
+        int end = buffer.getInt(stringOffsets + 4 * (ref + 1));
+        byte[] bytes = new byte[end - start];
+        buffer.get(stringBytes + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static LocalDate date(int epochDay) {
+        return epochDay != NO_INT ? LocalDate.ofEpochDay(epochDay) : null;
+    }
+}
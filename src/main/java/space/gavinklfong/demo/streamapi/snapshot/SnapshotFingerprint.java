@@ -0,0 +1,12 @@
+package space.gavinklfong.demo.streamapi.snapshot;
+
+/**
+ * Отпечаток данных, по которому снапшот сверяется с БД: версия схемы, количество строк,
+ * максимальные id таблиц и контрольная сумма содержимого попавших в снапшот колонок
+ */
+public record SnapshotFingerprint(int schemaVersion,
+                                  long customers, long maxCustomerId,
+                                  long products, long maxProductId,
+                                  long orders, long maxOrderId,
+                                  long links, long checksum) {
+}
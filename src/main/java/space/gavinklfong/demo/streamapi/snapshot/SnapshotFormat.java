@@ -0,0 +1,36 @@
+package space.gavinklfong.demo.streamapi.snapshot;
+
+/**
+ * Формат файла снапшота.
+ * <p>
+ * Заголовок фиксированного размера: magic, версия формата, {@link SnapshotFingerprint},
+ * длина и CRC32C тела. Тело - секции подряд, каждая начинается с числа элементов (int),
+ * за которым идут колонки фиксированной ширины:
+ * <ul>
+ *     <li>словарь строк: смещения int[n + 1], затем байты UTF-8;</li>
+ *     <li>клиенты: id long[n], tier int[n], имя int[n] (номер строки словаря);</li>
+ *     <li>товары: id long[n], цена double[n], имя int[n], категория int[n];</li>
+ *     <li>заказы: id long[n], клиент int[n] (номер клиента), дата заказа int[n] и доставки int[n]
+ *     (epoch day), статус int[n], начало товаров заказа int[n + 1] (номер связи);</li>
+ *     <li>связи заказ-товар: номер товара int[n], сгруппированы по заказам.</li>
+ * </ul>
+ * Строки в каждой секции отсортированы по id. Отсутствующие значения: строка и ссылка - -1,
+ * дата и tier - {@link #NO_INT}, цена - NaN.
+ */
+final class SnapshotFormat {
+    static final int MAGIC = 0x534E4150;
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 128;
+
+    static final int NO_INT = Integer.MIN_VALUE;
+
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int SCHEMA_VERSION_OFFSET = 8;
+    static final int FINGERPRINT_OFFSET = 16;
+    static final int BODY_LENGTH_OFFSET = 80;
+    static final int CHECKSUM_OFFSET = 88;
+
+    private SnapshotFormat() {
+    }
+}
@@ -0,0 +1,165 @@
+package space.gavinklfong.demo.streamapi.snapshot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import space.gavinklfong.demo.streamapi.index.EntityChangeHandler;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Снапшот аналитических данных в файле app.snapshot.path для быстрого повторного старта.
+ * <p>
+ * При старте (до ApplicationRunner'ов) файл отображается в память и сверяется с БД по
+ * {@link SnapshotFingerprint}; если файла нет, он поврежден или устарел - перестраивается из БД.
+ * Любое изменение сущностей делает снапшот устаревшим: {@link #current()} перестает его
+ * отдавать, вызывающий код читает БД, а файл перезаписывается при остановке приложения
+ * или явным {@link #refresh()}. Таблицы и отпечаток для файла читаются в одной read-only транзакции
+ * REPEATABLE READ, поэтому снапшот соответствует одному состоянию БД.
+ * <p>
+ * Отпечаток включает сумму хешей строк, поэтому замечает и правки в обход приложения;
+ * цена этого - полный просмотр таблиц базой при старте (но без загрузки строк в приложение).
+ */
+@Component
+public class SnapshotStore implements EntityChangeHandler {
+    private static final Logger log = LoggerFactory.getLogger(SnapshotStore.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Path path;
+    private final int schemaVersion;
+
+    private volatile AnalyticsSnapshot snapshot;
+    private volatile boolean stale;
+    private volatile boolean opened;
+
+    public SnapshotStore(DataSource dataSource,
+                         @Value("${app.snapshot.enabled:true}") boolean enabled,
+                         @Value("${app.snapshot.path:./data/analytics.snapshot}") Path path,
+                         @Value("${app.init.schema-version:1}") int schemaVersion) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.transactionTemplate.setReadOnly(true);
+        this.transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.enabled = enabled;
+        this.path = path;
+        this.schemaVersion = schemaVersion;
+    }
+
+    /**
+     * Актуальный снапшот, если он есть
+     */
+    public Optional<AnalyticsSnapshot> current() {
+        return stale ? Optional.empty() : Optional.ofNullable(snapshot);
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public synchronized void open() {
+        if (!enabled) {
+            return;
+        }
+        opened = true;
+        long startTime = System.currentTimeMillis();
+        if (Files.exists(path)) {
+            try {
+                AnalyticsSnapshot candidate = AnalyticsSnapshot.open(path);
+                if (candidate.fingerprint().equals(fingerprint())) {
+                    snapshot = candidate;
+                    stale = false;
+                    log.info(String.format("snapshot %1$s opened - %2$d orders in %3$d ms",
+                            path, candidate.orderCount(), (System.currentTimeMillis() - startTime)));
+                    return;
+                }
+                log.info("Snapshot {} is out of date, rebuilding", path);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Snapshot {} cannot be used, rebuilding: {}", path, e.getMessage());
+            }
+        }
+        rebuild();
+    }
+
+    /**
+     * Перестроить снапшот из БД
+     */
+    public synchronized void refresh() {
+        if (enabled) {
+            rebuild();
+        }
+    }
+
+    @EventListener(ContextClosedEvent.class)
+    public synchronized void saveIfStale() {
+        if (opened && stale) {
+            rebuild();
+        }
+    }
+
+    @Override
+    public void orderChanged(Long orderId) {
+        stale = true;
+    }
+
+    @Override
+    public void customerChanged(Long customerId) {
+        stale = true;
+    }
+
+    @Override
+    public void productChanged(Long productId) {
+        stale = true;
+    }
+
+    private void rebuild() {
+        long startTime = System.currentTimeMillis();
+        // изменения во время записи снова пометят снапшот устаревшим
+        stale = false;
+        try {
+            SnapshotWriter writer = new SnapshotWriter(jdbcTemplate);
+            SnapshotFingerprint fingerprint = transactionTemplate.execute(status -> {
+                writer.read();
+                return fingerprint();
+            });
+            writer.write(path, fingerprint);
+            snapshot = AnalyticsSnapshot.open(path);
+            log.info(String.format("snapshot %1$s written - %2$d orders, %3$d bytes in %4$d ms",
+                    path, snapshot.orderCount(), Files.size(path), (System.currentTimeMillis() - startTime)));
+        } catch (IOException | RuntimeException e) {
+            snapshot = null;
+            log.warn("Snapshot {} could not be written, queries fall back to the database", path, e);
+        }
+    }
+
+    private SnapshotFingerprint fingerprint() {
+        return jdbcTemplate.queryForObject("SELECT"
+                        + " (SELECT COUNT(*) FROM customers), (SELECT COALESCE(MAX(id), 0) FROM customers),"
+                        + " (SELECT COUNT(*) FROM products), (SELECT COALESCE(MAX(id), 0) FROM products),"
+                        + " (SELECT COUNT(*) FROM product_orders), (SELECT COALESCE(MAX(id), 0) FROM product_orders),"
+                        + " (SELECT COUNT(*) FROM order_product_relationship),"
+                        + " (SELECT " + rowHashes("id, name, tier") + " FROM customers)"
+                        + " + (SELECT " + rowHashes("id, name, category, price") + " FROM products)"
+                        + " + (SELECT " + rowHashes("id, customer_id, order_date, delivery_date, status")
+                        + " FROM product_orders)"
+                        + " + (SELECT " + rowHashes("order_id, product_id") + " FROM order_product_relationship)",
+                (rs, rowNum) -> new SnapshotFingerprint(schemaVersion,
+                        rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4),
+                        rs.getLong(5), rs.getLong(6), rs.getLong(7), rs.getLong(8)));
+    }
+
+    // сумма хешей строк таблицы по колонкам снапшота: не зависит от порядка строк, NULL хешируется как ''
+    private static String rowHashes(String columns) {
+        return "COALESCE(SUM(ORA_HASH(CONCAT(" + columns.replace(", ", ", '|', ") + "))), 0)";
+    }
+}
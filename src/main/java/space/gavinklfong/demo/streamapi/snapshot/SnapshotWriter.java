@@ -0,0 +1,273 @@
+package space.gavinklfong.demo.streamapi.snapshot;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+import static space.gavinklfong.demo.streamapi.snapshot.SnapshotFormat.*;
+
+/**
+ * Записывает снапшот (см. {@link SnapshotFormat}) по таблицам БД.
+ * <p>
+ * {@link #read()} читает таблицы напрямую через JDBC в примитивные массивы - вызывающий код выполняет его
+ * в одной транзакции с подсчетом отпечатка. {@link #write} пишет файл через отображение во временный файл
+ * рядом с целевым и затем атомарно переименовывает его. Ссылка на отсутствующего клиента, заказ или товар -
+ * ошибка чтения, такой снапшот не пишется.
+ */
+class SnapshotWriter {
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Map<String, Integer> stringRefs = new HashMap<>();
+    private final List<byte[]> strings = new ArrayList<>();
+    private int stringBytes;
+
+    private final Rows customers = new Rows();
+    private final Rows products = new Rows();
+    private final Rows orders = new Rows();
+    private final IntColumn links = new IntColumn();
+    private long[] customerIds;
+    private long[] productIds;
+    private long[] orderIds;
+    private int[] linkStart;
+
+    SnapshotWriter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    void read() {
+        jdbcTemplate.query("SELECT id, name, tier FROM customers ORDER BY id", (ResultSet rs) -> {
+            customers.add(rs.getLong(1));
+            customers.ints(0).add(intOrNone(rs, 3));
+            customers.ints(1).add(ref(rs.getString(2)));
+        });
+
+        jdbcTemplate.query("SELECT id, name, category, price FROM products ORDER BY id", (ResultSet rs) -> {
+            products.add(rs.getLong(1));
+            double price = rs.getDouble(4);
+            products.doubles.add(rs.wasNull() ? Double.NaN : price);
+            products.ints(0).add(ref(rs.getString(2)));
+            products.ints(1).add(ref(rs.getString(3)));
+        });
+
+        customerIds = customers.ids.toArray();
+        jdbcTemplate.query("SELECT id, customer_id, order_date, delivery_date, status FROM product_orders ORDER BY id",
+                (ResultSet rs) -> {
+                    long id = rs.getLong(1);
+                    orders.add(id);
+                    long customerId = rs.getLong(2);
+                    boolean noCustomer = rs.wasNull();
+                    int customer = noCustomer ? -1 : indexOf(customerIds, customerId);
+                    if (customer < 0 && !noCustomer) {
+                        throw new IllegalStateException("order " + id + " references missing customer " + customerId);
+                    }
+                    orders.ints(0).add(customer);
+                    orders.ints(1).add(epochDay(rs.getDate(3)));
+                    orders.ints(2).add(epochDay(rs.getDate(4)));
+                    orders.ints(3).add(ref(rs.getString(5)));
+                });
+
+        productIds = products.ids.toArray();
+        orderIds = orders.ids.toArray();
+        linkStart = new int[orderIds.length + 1];
+        jdbcTemplate.query("SELECT order_id, product_id FROM order_product_relationship ORDER BY order_id, product_id",
+                (ResultSet rs) -> {
+                    long orderId = rs.getLong(1);
+                    long productId = rs.getLong(2);
+                    int order = indexOf(orderIds, orderId);
+                    int product = indexOf(productIds, productId);
+                    if (order < 0 || product < 0) {
+                        throw new IllegalStateException("link " + orderId + "-" + productId
+                                + " references missing order or product");
+                    }
+                    linkStart[order + 1]++;
+                    links.add(product);
+                });
+        for (int i = 0; i < orderIds.length; i++) {
+            linkStart[i + 1] += linkStart[i];
+        }
+    }
+
+    void write(Path path, SnapshotFingerprint fingerprint) throws IOException {
+
+        long bodyLength = (4L + 4L * (strings.size() + 1) + stringBytes)
+                + (4L + customerIds.length * (8L + 4 + 4))
+                + (4L + productIds.length * (8L + 8 + 4 + 4))
+                + (4L + orderIds.length * (8L + 4 + 4 + 4 + 4) + 4L * (orderIds.length + 1))
+                + (4L + 4L * links.size);
+        if (HEADER_SIZE + bodyLength > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot of " + bodyLength + " bytes exceeds a single mapping");
+        }
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + bodyLength);
+
+            buffer.position(HEADER_SIZE);
+            writeStrings(buffer);
+            buffer.putInt(customerIds.length);
+            putLongs(buffer, customerIds);
+            putInts(buffer, customers.ints(0));
+            putInts(buffer, customers.ints(1));
+            buffer.putInt(productIds.length);
+            putLongs(buffer, productIds);
+            for (int i = 0; i < products.doubles.size; i++) {
+                buffer.putDouble(products.doubles.values[i]);
+            }
+            putInts(buffer, products.ints(0));
+            putInts(buffer, products.ints(1));
+            buffer.putInt(orderIds.length);
+            putLongs(buffer, orderIds);
+            for (int column = 0; column < 4; column++) {
+                putInts(buffer, orders.ints(column));
+            }
+            for (int start : linkStart) {
+                buffer.putInt(start);
+            }
+            buffer.putInt(links.size);
+            putInts(buffer, links);
+
+            CRC32C checksum = new CRC32C();
+            checksum.update(buffer.slice(HEADER_SIZE, (int) bodyLength));
+
+            buffer.putInt(MAGIC_OFFSET, MAGIC);
+            buffer.putInt(VERSION_OFFSET, VERSION);
+            buffer.putInt(SCHEMA_VERSION_OFFSET, fingerprint.schemaVersion());
+            long[] fingerprintValues = {fingerprint.customers(), fingerprint.maxCustomerId(),
+                    fingerprint.products(), fingerprint.maxProductId(),
+                    fingerprint.orders(), fingerprint.maxOrderId(), fingerprint.links(), fingerprint.checksum()};
+            for (int i = 0; i < fingerprintValues.length; i++) {
+                buffer.putLong(FINGERPRINT_OFFSET + 8 * i, fingerprintValues[i]);
+            }
+            buffer.putLong(BODY_LENGTH_OFFSET, bodyLength);
+            buffer.putLong(CHECKSUM_OFFSET, checksum.getValue());
+            buffer.force();
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private int ref(String value) {
+        if (value == null) {
+            return -1;
+        }
+        return stringRefs.computeIfAbsent(value, key -> {
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            strings.add(bytes);
+            stringBytes += bytes.length;
+            return strings.size() - 1;
+        });
+    }
+
+    private void writeStrings(ByteBuffer buffer) {
+        buffer.putInt(strings.size());
+        int offset = 0;
+        buffer.putInt(offset);
+        for (byte[] bytes : strings) {
+            offset += bytes.length;
+            buffer.putInt(offset);
+        }
+        strings.forEach(buffer::put);
+    }
+
+    private static void putLongs(ByteBuffer buffer, long[] values) {
+        for (long value : values) {
+            buffer.putLong(value);
+        }
+    }
+
+    private static void putInts(ByteBuffer buffer, IntColumn column) {
+        for (int i = 0; i < column.size; i++) {
+            buffer.putInt(column.values[i]);
+        }
+    }
+
+    private static int indexOf(long[] sortedIds, long id) {
+        int index = Arrays.binarySearch(sortedIds, id);
+        return index >= 0 ? index : -1;
+    }
+
+    private static int intOrNone(ResultSet rs, int column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? NO_INT : value;
+    }
+
+    private static int epochDay(Date date) {
+        return date != null ? Math.toIntExact(date.toLocalDate().toEpochDay()) : NO_INT;
+    }
+
+    // строки одной таблицы: id и произвольное число int-колонок
+    private static final class Rows {
+        private final LongColumn ids = new LongColumn();
+        private final DoubleColumn doubles = new DoubleColumn();
+        private final List<IntColumn> ints = new ArrayList<>();
+
+        void add(long id) {
+            ids.add(id);
+        }
+
+        IntColumn ints(int column) {
+            while (ints.size() <= column) {
+                ints.add(new IntColumn());
+            }
+            return ints.get(column);
+        }
+    }
+
+    private static final class IntColumn {
+        private int[] values = new int[64];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    private static final class LongColumn {
+        private long[] values = new long[64];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    private static final class DoubleColumn {
+        private double[] values = new double[64];
+        private int size;
+
+        void add(double value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package space.gavinklfong.demo.streamapi.valuation;
+
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.sketch.Hashing;
+
+/**
+ * Суммы заказов по id в открытой адресации: два параллельных массива без боксинга.
+ * Id 0 не хранится (пустая ячейка)
+ */
+final class OrderTotalsMemo {
+    private static final long EMPTY = 0;
+
+    private long[] orderIds = new long[64];
+    private double[] totals = new double[64];
+    private int size;
+
+    double total(long orderId, Order order) {
+        int slot = slot(orderIds, orderId);
+        if (orderIds[slot] == orderId) {
+            return totals[slot];
+        }
+        double total = OrderValuation.compute(order);
+        if ((size + 1) * 2 > orderIds.length) {
+            resize();
+            slot = slot(orderIds, orderId);
+        }
+        orderIds[slot] = orderId;
+        totals[slot] = total;
+        size++;
+        return total;
+    }
+
+    // ячейка с orderId или пустая, где ему место
+    private static int slot(long[] table, long orderId) {
+        int mask = table.length - 1;
+        int slot = (int) Hashing.hash(orderId) & mask;
+        while (table[slot] != EMPTY && table[slot] != orderId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        long[] resizedIds = new long[orderIds.length * 2];
+        double[] resizedTotals = new double[orderIds.length * 2];
+        for (int i = 0; i < orderIds.length; i++) {
+            if (orderIds[i] != EMPTY) {
+                int slot = slot(resizedIds, orderIds[i]);
+                resizedIds[slot] = orderIds[i];
+                resizedTotals[slot] = totals[i];
+            }
+        }
+        orderIds = resizedIds;
+        totals = resizedTotals;
+    }
+}
@@ -0,0 +1,64 @@
+package space.gavinklfong.demo.streamapi.valuation;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.models.Product;
+
+/**
+ * Стоимость заказа - сумма цен его товаров - в одном месте для сервисов и запросов.
+ * <p>
+ * {@link #compute} - цикл по товарам заказа, без стрима: ни конвейера на каждый заказ,
+ * ни общего для всех вызывающих мегаморфного mapToDouble, getPrice вызывается напрямую.
+ * Товары без цены не учитываются, как sum(price) в SQL.
+ * <p>
+ * {@link #total} запоминает сумму по id заказа до конца текущей read-only транзакции, и сортировки
+ * и повторные проходы по тем же заказам считают ее один раз. В транзакции на запись товары заказа
+ * могут меняться, поэтому там и вне транзакции сумма каждый раз считается заново.
+ * Статистика и рейтинг сумм сразу всех заказов - {@link space.gavinklfong.demo.streamapi.index.OrderProductAdjacency},
+ * по колонкам цен без загрузки сущностей.
+ */
+public final class OrderValuation {
+    private static final Object MEMO = new Object();
+
+    private OrderValuation() {
+    }
+
+    /**
+     * Сумма цен товаров заказа
+     */
+    public static double compute(Order order) {
+        double total = 0;
+        for (Product product : order.getProducts()) {
+            Double price = product.getPrice();
+            if (price != null) {
+                total += price;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Сумма цен товаров заказа, запомненная в текущей read-only транзакции
+     */
+    public static double total(Order order) {
+        Long orderId = order.getId();
+        if (orderId == null || orderId == 0
+                || !TransactionSynchronizationManager.isSynchronizationActive()
+                || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return compute(order);
+        }
+        OrderTotalsMemo memo = (OrderTotalsMemo) TransactionSynchronizationManager.getResource(MEMO);
+        if (memo == null) {
+            memo = new OrderTotalsMemo();
+            TransactionSynchronizationManager.bindResource(MEMO, memo);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(MEMO);
+                }
+            });
+        }
+        return memo.total(orderId, order);
+    }
+}
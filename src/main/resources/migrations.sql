@@ -0,0 +1,10 @@
+-- Изменения схемы без смены app.init.schema-version, см. DatabaseInitializer. Выполняются при каждом старте
+-- поверх существующей БД, поэтому только идемпотентные (CREATE ... IF NOT EXISTS). Удаление таблиц - в schema.sql
+
+-- Последние готовые результаты фоновых отчетов, см. ReportJobService
+CREATE TABLE IF NOT EXISTS report_results
+(
+    report_type  VARCHAR(50) PRIMARY KEY,
+    result       CLOB,
+    completed_at TIMESTAMP WITH TIME ZONE
+);
@@ -1,20 +1,32 @@
 -- Удаление таблиц в правильном порядке (с учетом зависимостей внешних ключей)
+DROP TABLE IF EXISTS schema_version;
+DROP TABLE IF EXISTS report_results;
 DROP TABLE IF EXISTS order_product_relationship;
 DROP TABLE IF EXISTS product_orders;
 DROP TABLE IF EXISTS products;
 DROP TABLE IF EXISTS customers;
+DROP SEQUENCE IF EXISTS customers_seq;
+DROP SEQUENCE IF EXISTS products_seq;
+DROP SEQUENCE IF EXISTS product_orders_seq;
+
+-- Последовательности для id: шаг совпадает с allocationSize в моделях (pooled-lo optimizer),
+-- в отличие от IDENTITY это позволяет Hibernate пакетировать вставки.
+-- После загрузки seed DatabaseInitializer переводит их на max(id) + 1
+CREATE SEQUENCE IF NOT EXISTS customers_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS products_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS product_orders_seq START WITH 1 INCREMENT BY 50;
 
 -- Создание таблиц с именами, которые используются в data.sql и моделях
 CREATE TABLE IF NOT EXISTS customers
 (
-    id   BIGINT AUTO_INCREMENT PRIMARY KEY,
+    id   BIGINT PRIMARY KEY,
     name VARCHAR(255),
     tier INTEGER
 );
 
 CREATE TABLE IF NOT EXISTS products
 (
-    id       BIGINT AUTO_INCREMENT PRIMARY KEY,
+    id       BIGINT PRIMARY KEY,
     name     VARCHAR(255),
     category VARCHAR(255),
     price    DOUBLE
@@ -22,7 +34,7 @@ CREATE TABLE IF NOT EXISTS products
 
 CREATE TABLE IF NOT EXISTS product_orders
 (
-    id            BIGINT AUTO_INCREMENT PRIMARY KEY,
+    id            BIGINT PRIMARY KEY,
     order_date    DATE,
     delivery_date DATE,
     status        VARCHAR(50),
@@ -49,3 +61,8 @@ ALTER TABLE order_product_relationship
     ADD CONSTRAINT fk_order_product_product
         FOREIGN KEY (product_id) REFERENCES products (id);
 
+-- Версия схемы и начальных данных, см. DatabaseInitializer
+CREATE TABLE IF NOT EXISTS schema_version
+(
+    version INTEGER NOT NULL
+);
@@ -0,0 +1,130 @@
+package space.gavinklfong.demo.streamapi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.DoubleSummaryStatistics;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import space.gavinklfong.demo.streamapi.index.OrderProductAdjacency;
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.repos.OrderRepo;
+import space.gavinklfong.demo.streamapi.service.BulkIngestService;
+
+@DataJpaTest
+@Import({OrderProductAdjacency.class, BulkIngestService.class})
+public class AdjacencyMemoryBenchmarkTest {
+
+	private static final Logger log = LoggerFactory.getLogger(AdjacencyMemoryBenchmarkTest.class);
+
+	private static final int CUSTOMERS = 1_000;
+	private static final int PRODUCTS = 2_000;
+	private static final int ORDERS = 30_000;
+	private static final int PRODUCTS_PER_ORDER = 5;
+
+	@Autowired
+	private OrderProductAdjacency adjacency;
+
+	@Autowired
+	private BulkIngestService bulkIngestService;
+
+	@Autowired
+	private OrderRepo orderRepo;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	@Test
+	@DisplayName("Order totals from the off-heap adjacency match the entity graph and allocate less heap")
+	public void offHeapAdjacencyVersusEntityGraph() {
+		new SyntheticOrders()
+				.customers(CUSTOMERS)
+				.products(PRODUCTS)
+				.orders(ORDERS)
+				.productsPerOrder(PRODUCTS_PER_ORDER)
+				.ingest(bulkIngestService);
+
+		Measurement<Map<Long, Double>> entityGraph = measure(() -> orderRepo.findAll().stream()
+				.collect(Collectors.toMap(Order::getId, order -> order.getProducts().stream()
+						.mapToDouble(Product::getPrice)
+						.sum())));
+		entityManager.clear();
+
+		Measurement<DoubleSummaryStatistics> offHeap = measure(() -> {
+			adjacency.invalidate();
+			return adjacency.orderTotals();
+		});
+
+		log.info(String.format("entity graph - %1$d ms, allocated %2$d KB, gc %3$d ms in %4$d collections",
+				entityGraph.millis, entityGraph.allocatedBytes / 1024, entityGraph.gcMillis, entityGraph.gcCount));
+		log.info(String.format("off-heap adjacency - %1$d ms, allocated %2$d KB, direct +%3$d KB (%4$d KB used by links), gc %5$d ms in %6$d collections",
+				offHeap.millis, offHeap.allocatedBytes / 1024, offHeap.directBytes / 1024, adjacency.offHeapBytes() / 1024,
+				offHeap.gcMillis, offHeap.gcCount));
+
+		assertEquals(ORDERS, offHeap.result.getCount());
+		entityGraph.result.forEach((orderId, total) ->
+				assertEquals(total, adjacency.orderTotal(orderId), 1e-9, "order " + orderId));
+		// сущности, их коллекции и запросы ленивых товаров против строк JDBC и примитивных колонок
+		assertTrue(offHeap.allocatedBytes < entityGraph.allocatedBytes,
+				"adjacency allocated " + offHeap.allocatedBytes + " bytes, entity graph " + entityGraph.allocatedBytes);
+	}
+
+	// выделенное в heap считается по текущему потоку: H2 встроена и выполняет запросы в нем же
+	private static <T> Measurement<T> measure(Supplier<T> action) {
+		System.gc();
+		long allocatedBefore = allocated();
+		long directBefore = directUsed();
+		long gcTimeBefore = gcTime();
+		long gcCountBefore = gcCount();
+
+		long startTime = System.currentTimeMillis();
+		T result = action.get();
+		long endTime = System.currentTimeMillis();
+		long allocatedBytes = allocated() - allocatedBefore;
+
+		return new Measurement<>(result, endTime - startTime, allocatedBytes,
+				directUsed() - directBefore, gcTime() - gcTimeBefore, gcCount() - gcCountBefore);
+	}
+
+	private static long allocated() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+	}
+
+	private static long directUsed() {
+		return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+				.filter(pool -> "direct".equals(pool.getName()))
+				.mapToLong(BufferPoolMXBean::getMemoryUsed)
+				.sum();
+	}
+
+	private static long gcTime() {
+		return ManagementFactory.getGarbageCollectorMXBeans().stream()
+				.mapToLong(GarbageCollectorMXBean::getCollectionTime)
+				.sum();
+	}
+
+	private static long gcCount() {
+		return ManagementFactory.getGarbageCollectorMXBeans().stream()
+				.mapToLong(GarbageCollectorMXBean::getCollectionCount)
+				.sum();
+	}
+
+	private record Measurement<T>(T result, long millis, long allocatedBytes, long directBytes, long gcMillis,
+			long gcCount) {
+	}
+}
@@ -0,0 +1,228 @@
+package space.gavinklfong.demo.streamapi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import space.gavinklfong.demo.streamapi.admission.AdmissionController;
+import space.gavinklfong.demo.streamapi.admission.AdmissionRejectedException;
+import space.gavinklfong.demo.streamapi.admission.AdmissionStats;
+import space.gavinklfong.demo.streamapi.admission.WorkloadClass;
+
+// "соединения" - справедливый семафор: без контроля допуска точечные запросы ждут в общей очереди с аналитикой
+public class AdmissionControllerTest {
+
+	private static final Logger log = LoggerFactory.getLogger(AdmissionControllerTest.class);
+
+	private static final int CONNECTIONS = 4;
+	private static final int ANALYTICS_THREADS = 8;
+	private static final int LOOKUP_THREADS = 2;
+	private static final long ANALYTICS_MILLIS = 20;
+	private static final long LOOKUP_MILLIS = 1;
+	private static final int WARM_UP_LOOKUPS = 100;
+	private static final int MEASURED_LOOKUPS = 200;
+
+	@Test
+	@DisplayName("Waiting lookups are admitted before waiting analytics, a full queue rejects new calls")
+	public void priorityAndRejection() throws Exception {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		AdmissionController controller = new AdmissionController(registry, 1, 1, 1, 1, 2, 5_000, 2.0);
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			CountDownLatch hold = new CountDownLatch(1);
+			// вложенный вызов в том же потоке идет по уже полученному допуску
+			Future<Integer> holder = executor.submit(() -> controller.call(WorkloadClass.ANALYTICS, () -> {
+				awaitLatch(hold);
+				return controller.call(WorkloadClass.ANALYTICS, () -> 1);
+			}));
+			awaitCondition(() -> stats(controller, WorkloadClass.ANALYTICS).inFlight() == 1);
+
+			List<String> order = Collections.synchronizedList(new ArrayList<>());
+			Future<Boolean> analytics = executor.submit(() -> controller.call(WorkloadClass.ANALYTICS,
+					() -> order.add("analytics")));
+			awaitCondition(() -> stats(controller, WorkloadClass.ANALYTICS).waiting() == 1);
+			Future<Boolean> lookup = executor.submit(() -> controller.call(WorkloadClass.LOOKUP,
+					() -> order.add("lookup")));
+			awaitCondition(() -> stats(controller, WorkloadClass.LOOKUP).waiting() == 1);
+
+			assertThrows(AdmissionRejectedException.class, () -> controller.call(WorkloadClass.LOOKUP, () -> 1));
+
+			hold.countDown();
+			assertEquals(1, (int) holder.get());
+			analytics.get();
+			lookup.get();
+			assertEquals(List.of("lookup", "analytics"), order);
+
+			AdmissionStats lookupStats = stats(controller, WorkloadClass.LOOKUP);
+			assertEquals(1, lookupStats.admitted());
+			assertEquals(1, lookupStats.queued());
+			assertEquals(1, lookupStats.rejected());
+			assertEquals(2, stats(controller, WorkloadClass.ANALYTICS).admitted());
+			assertEquals(1.0, registry.find("admission.rejected").tag("workload", "lookup").functionCounter().count(),
+					0.0);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	@DisplayName("A call that waits longer than max-wait-millis is rejected")
+	public void waitTimeout() throws Exception {
+		AdmissionController controller = new AdmissionController(new SimpleMeterRegistry(), 4, 4, 1, 1, 8, 100, 2.0);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			CountDownLatch hold = new CountDownLatch(1);
+			Future<Boolean> holder = executor.submit(() -> controller.call(WorkloadClass.ANALYTICS,
+					() -> awaitLatch(hold)));
+			awaitCondition(() -> stats(controller, WorkloadClass.ANALYTICS).inFlight() == 1);
+
+			long startTime = System.currentTimeMillis();
+			assertThrows(AdmissionRejectedException.class, () -> controller.call(WorkloadClass.ANALYTICS, () -> 1));
+			long endTime = System.currentTimeMillis();
+			log.info(String.format("analytics call rejected after %1$d ms", (endTime - startTime)));
+			assertTrue(endTime - startTime >= 100);
+
+			// точечные запросы не зависят от лимита аналитики
+			assertEquals(1, (int) controller.call(WorkloadClass.LOOKUP, () -> 1));
+			hold.countDown();
+			holder.get();
+			assertEquals(0, stats(controller, WorkloadClass.ANALYTICS).waiting());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	@DisplayName("Under mixed load the adaptive analytics limit keeps lookup p99 low")
+	public void mixedLoad() throws Exception {
+		List<Long> unprotected = runMixedLoad(null);
+
+		AdmissionController controller = new AdmissionController(new SimpleMeterRegistry(), 16, 16, 1, CONNECTIONS,
+				64, 10_000, 2.0);
+		List<Long> admitted = runMixedLoad(controller);
+
+		long unprotectedP99 = percentile(unprotected, 99);
+		long admittedP99 = percentile(admitted, 99);
+		AdmissionStats analytics = stats(controller, WorkloadClass.ANALYTICS);
+		log.info(String.format("lookup latency without admission control - p50 %1$.1f ms, p99 %2$.1f ms",
+				millis(percentile(unprotected, 50)), millis(unprotectedP99)));
+		log.info(String.format("lookup latency with admission control - p50 %1$.1f ms, p99 %2$.1f ms, "
+						+ "analytics limit %3$d, analytics queued %4$d",
+				millis(percentile(admitted, 50)), millis(admittedP99), analytics.limit(), analytics.queued()));
+
+		assertTrue(analytics.limit() < CONNECTIONS, "analytics limit must shrink when lookups slow down");
+		assertTrue(admittedP99 < unprotectedP99);
+	}
+
+	// latency lookup-вызовов после прогрева под нагрузкой, в наносекундах
+	private List<Long> runMixedLoad(AdmissionController controller) throws InterruptedException, ExecutionException {
+		Semaphore connections = new Semaphore(CONNECTIONS, true);
+		AtomicBoolean running = new AtomicBoolean(true);
+		ExecutorService executor = Executors.newFixedThreadPool(ANALYTICS_THREADS + LOOKUP_THREADS);
+		try {
+			// сначала без аналитики - базовая задержка
+			lookups(controller, connections, WARM_UP_LOOKUPS);
+			for (int i = 0; i < ANALYTICS_THREADS; i++) {
+				executor.submit(() -> {
+					while (running.get()) {
+						call(controller, WorkloadClass.ANALYTICS, () -> useConnection(connections, ANALYTICS_MILLIS));
+					}
+				});
+			}
+			lookups(controller, connections, WARM_UP_LOOKUPS);
+
+			List<Future<List<Long>>> measured = new ArrayList<>();
+			for (int i = 0; i < LOOKUP_THREADS; i++) {
+				measured.add(executor.submit(() -> lookups(controller, connections, MEASURED_LOOKUPS)));
+			}
+			List<Long> latencies = new ArrayList<>();
+			for (Future<List<Long>> future : measured) {
+				latencies.addAll(future.get());
+			}
+			return latencies;
+		} finally {
+			running.set(false);
+			executor.shutdown();
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+	}
+
+	private static List<Long> lookups(AdmissionController controller, Semaphore connections, int count) {
+		List<Long> latencies = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			long startTime = System.nanoTime();
+			call(controller, WorkloadClass.LOOKUP, () -> useConnection(connections, LOOKUP_MILLIS));
+			latencies.add(System.nanoTime() - startTime);
+		}
+		return latencies;
+	}
+
+	private static <T> T call(AdmissionController controller, WorkloadClass workloadClass, Supplier<T> call) {
+		return controller == null ? call.get() : controller.call(workloadClass, call);
+	}
+
+	private static boolean useConnection(Semaphore connections, long millis) {
+		connections.acquireUninterruptibly();
+		try {
+			Thread.sleep(millis);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			connections.release();
+		}
+	}
+
+	private static long percentile(List<Long> values, int percentile) {
+		List<Long> sorted = new ArrayList<>(values);
+		Collections.sort(sorted);
+		return sorted.get(Math.min(sorted.size() - 1, sorted.size() * percentile / 100));
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1_000_000.0;
+	}
+
+	private static AdmissionStats stats(AdmissionController controller, WorkloadClass workloadClass) {
+		return controller.stats().get(workloadClass);
+	}
+
+	private static boolean awaitLatch(CountDownLatch latch) {
+		try {
+			return latch.await(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "condition not reached");
+			Thread.sleep(1);
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package space.gavinklfong.demo.streamapi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.DoubleSummaryStatistics;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import space.gavinklfong.demo.streamapi.aggregate.Aggregate;
+import space.gavinklfong.demo.streamapi.aggregate.AggregateResults;
+import space.gavinklfong.demo.streamapi.aggregate.Aggregates;
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.models.Product;
+
+// заказы в памяти, без БД: сравниваются только проходы по списку
+@Tag("benchmark")
+public class AggregatesBenchmarkTest {
+
+	private static final Logger log = LoggerFactory.getLogger(AggregatesBenchmarkTest.class);
+
+	private static final int CUSTOMERS = 5_000;
+	private static final int PRODUCTS = 500;
+	private static final int ORDERS = 200_000;
+	private static final int PRODUCTS_PER_ORDER = 3;
+	private static final int ROUNDS = 5;
+	private static final int TOP = 5;
+	private static final String[] STATUSES = {"NEW", "PENDING", "DELIVERED"};
+
+	@Test
+	@DisplayName("One pass of Aggregates matches separate stream passes with fewer allocations")
+	public void singlePassAggregates() {
+		List<Order> orders = orders();
+
+		Map<String, Object> multiPass = null;
+		long startTime = System.currentTimeMillis();
+		long allocated = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			long before = allocatedBytes();
+			multiPass = multiPass(orders);
+			allocated = allocatedBytes() - before;
+		}
+		long endTime = System.currentTimeMillis();
+		long multiPassBytes = allocated;
+		log.info(String.format("separate passes - %1$d ms per round, %2$d KB allocated",
+				(endTime - startTime) / ROUNDS, multiPassBytes / 1024));
+
+		Map<String, Object> singlePass = null;
+		startTime = System.currentTimeMillis();
+		for (int round = 0; round < ROUNDS; round++) {
+			long before = allocatedBytes();
+			singlePass = singlePass(orders, false);
+			allocated = allocatedBytes() - before;
+		}
+		endTime = System.currentTimeMillis();
+		long singlePassBytes = allocated;
+		log.info(String.format("single pass - %1$d ms per round, %2$d KB allocated",
+				(endTime - startTime) / ROUNDS, singlePassBytes / 1024));
+
+		startTime = System.currentTimeMillis();
+		Map<String, Object> parallel = singlePass(orders, true);
+		endTime = System.currentTimeMillis();
+		log.info(String.format("single pass, parallel stream - %1$d ms", (endTime - startTime)));
+
+		assertSameStatistics(multiPass, singlePass);
+		assertSameStatistics(multiPass, parallel);
+		assertTrue(singlePassBytes < multiPassBytes, "single pass must allocate less");
+	}
+
+	// каждая статистика - отдельным проходом, сумма заказа пересчитывается в каждом
+	private static Map<String, Object> multiPass(List<Order> orders) {
+		double revenue = orders.stream().mapToDouble(AggregatesBenchmarkTest::total).sum();
+		double average = orders.stream().mapToDouble(AggregatesBenchmarkTest::total).average().orElse(0);
+		double min = orders.stream().mapToDouble(AggregatesBenchmarkTest::total).min().orElse(0);
+		double max = orders.stream().mapToDouble(AggregatesBenchmarkTest::total).max().orElse(0);
+		Map<String, Long> byStatus = orders.stream()
+				.collect(Collectors.groupingBy(Order::getStatus, Collectors.counting()));
+		List<Long> topProducts = orders.stream()
+				.flatMap(order -> order.getProducts().stream())
+				.collect(Collectors.groupingBy(Function.identity(), Collectors.counting()))
+				.values().stream()
+				.sorted(Comparator.reverseOrder())
+				.limit(TOP)
+				.toList();
+		long customers = orders.stream().map(order -> order.getCustomer().getId()).distinct().count();
+		List<Double> topOrders = orders.stream()
+				.map(AggregatesBenchmarkTest::total)
+				.sorted(Comparator.reverseOrder())
+				.limit(TOP)
+				.toList();
+		return Map.of("revenue", revenue, "average", average, "min", min, "max", max, "byStatus", byStatus,
+				"topProducts", topProducts, "customers", customers, "topOrders", topOrders);
+	}
+
+	private static Map<String, Object> singlePass(List<Order> orders, boolean parallel) {
+		Aggregates<Order> aggregates = Aggregates.over(Order.class);
+		Aggregate<DoubleSummaryStatistics> totals = aggregates.summarizingDouble(AggregatesBenchmarkTest::total);
+		Aggregate<Map<String, Long>> byStatus = aggregates.countBy(Order::getStatus);
+		Aggregate<Map<Product, Long>> topProducts = aggregates.mostFrequentOfEach(Order::getProducts, TOP);
+		Aggregate<Long> customers = aggregates.distinctCount(order -> order.getCustomer().getId());
+		Aggregate<List<Order>> topOrders = aggregates.top(TOP,
+				Comparator.comparingDouble(AggregatesBenchmarkTest::total));
+
+		AggregateResults results = (parallel ? orders.parallelStream() : orders.stream())
+				.collect(aggregates.collector());
+		DoubleSummaryStatistics stats = results.get(totals);
+		return Map.of("revenue", stats.getSum(), "average", stats.getAverage(), "min", stats.getMin(),
+				"max", stats.getMax(), "byStatus", results.get(byStatus),
+				"topProducts", new ArrayList<>(results.get(topProducts).values()),
+				"customers", results.get(customers),
+				"topOrders", results.get(topOrders).stream().map(AggregatesBenchmarkTest::total).toList());
+	}
+
+	private static void assertSameStatistics(Map<String, Object> expected, Map<String, Object> actual) {
+		for (String sum : List.of("revenue", "average", "min", "max")) {
+			assertEquals((Double) expected.get(sum), (Double) actual.get(sum), 1e-6, sum);
+		}
+		for (String value : List.of("byStatus", "topProducts", "customers", "topOrders")) {
+			assertEquals(expected.get(value), actual.get(value), value);
+		}
+	}
+
+	private static double total(Order order) {
+		return order.getProducts().stream().mapToDouble(Product::getPrice).sum();
+	}
+
+	private static long allocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+	}
+
+	private static List<Order> orders() {
+		return new SyntheticOrders()
+				.customers(CUSTOMERS)
+				.products(PRODUCTS)
+				.categories(20)
+				.orders(ORDERS)
+				.productsPerOrder(PRODUCTS_PER_ORDER)
+				.statuses(STATUSES)
+				.withIds()
+				.build()
+				.orders();
+	}
+}
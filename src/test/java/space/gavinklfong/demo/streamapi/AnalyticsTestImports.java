@@ -0,0 +1,37 @@
+package space.gavinklfong.demo.streamapi;
+
+import org.springframework.context.annotation.Import;
+
+import space.gavinklfong.demo.streamapi.admission.AdmissionController;
+import space.gavinklfong.demo.streamapi.coalesce.SingleFlight;
+import space.gavinklfong.demo.streamapi.index.CohortIndex;
+import space.gavinklfong.demo.streamapi.index.CustomerProfileIndex;
+import space.gavinklfong.demo.streamapi.index.EntityBitmapIndex;
+import space.gavinklfong.demo.streamapi.index.LeadTimeIndex;
+import space.gavinklfong.demo.streamapi.index.NameSearchIndex;
+import space.gavinklfong.demo.streamapi.index.OrderDateIndex;
+import space.gavinklfong.demo.streamapi.index.OrderProductAdjacency;
+import space.gavinklfong.demo.streamapi.query.QueryEngine;
+import space.gavinklfong.demo.streamapi.scan.PartitionedOrderScanner;
+import space.gavinklfong.demo.streamapi.service.ApproximateAnalyticsService;
+import space.gavinklfong.demo.streamapi.service.BulkIngestService;
+import space.gavinklfong.demo.streamapi.service.BusinessAnalyticsService;
+import space.gavinklfong.demo.streamapi.service.CustomerService;
+import space.gavinklfong.demo.streamapi.service.OrderService;
+import space.gavinklfong.demo.streamapi.shard.ShardedReadReplica;
+import space.gavinklfong.demo.streamapi.snapshot.SnapshotStore;
+
+/**
+ * Сервисы аналитики со всеми индексами, от которых они зависят, для {@code @DataJpaTest}.
+ * <p>
+ * Тест подключает их одним {@code @Import(AnalyticsTestImports.class)} и добавляет только свои классы.
+ * Класс намеренно не помечен {@code @Configuration}: иначе его подхватило бы сканирование компонентов
+ * приложения в тестах, которые поднимают его целиком.
+ */
+@Import({BusinessAnalyticsService.class, ApproximateAnalyticsService.class, OrderService.class,
+		CustomerService.class, EntityBitmapIndex.class, OrderDateIndex.class, OrderProductAdjacency.class,
+		LeadTimeIndex.class, CohortIndex.class, NameSearchIndex.class, CustomerProfileIndex.class,
+		PartitionedOrderScanner.class, SnapshotStore.class, ShardedReadReplica.class, QueryEngine.class,
+		BulkIngestService.class, SingleFlight.class, AdmissionController.class})
+public class AnalyticsTestImports {
+}
@@ -0,0 +1,158 @@
+package space.gavinklfong.demo.streamapi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import space.gavinklfong.demo.streamapi.index.IncrementalIndex;
+import space.gavinklfong.demo.streamapi.service.ApproximateAnalyticsService;
+import space.gavinklfong.demo.streamapi.service.BulkIngestService;
+import space.gavinklfong.demo.streamapi.service.BusinessAnalyticsService;
+import space.gavinklfong.demo.streamapi.service.OrderService;
+import space.gavinklfong.demo.streamapi.sketch.Hashing;
+import space.gavinklfong.demo.streamapi.sketch.HyperLogLog;
+
+@DataJpaTest
+@Import(AnalyticsTestImports.class)
+public class ApproximateAnalyticsTest {
+
+	private static final Logger log = LoggerFactory.getLogger(ApproximateAnalyticsTest.class);
+
+	private static final double TOLERANCE = 0.01;
+
+	private static final int CUSTOMERS = 2_000;
+	private static final int PRODUCTS = 3_000;
+	private static final int CATEGORIES = 30;
+	private static final int ORDERS = 10_000;
+	private static final int PRODUCTS_PER_ORDER = 3;
+
+	@Autowired
+	private ApproximateAnalyticsService approximateAnalyticsService;
+
+	@Autowired
+	private BusinessAnalyticsService businessAnalyticsService;
+
+	@Autowired
+	private OrderService orderService;
+
+	@Autowired
+	private BulkIngestService bulkIngestService;
+
+	@Autowired
+	private List<IncrementalIndex> indexes;
+
+	@BeforeEach
+	public void ingestSkewedOrders() {
+		// категории и товары с меньшим номером встречаются чаще - у топа есть явные лидеры
+		new SyntheticOrders()
+				.customers(CUSTOMERS)
+				.products(PRODUCTS)
+				.categories(CATEGORIES)
+				.orders(ORDERS)
+				.productsPerOrder(PRODUCTS_PER_ORDER)
+				.days(30)
+				.firstTier(1)
+				.skewed()
+				.ingest(bulkIngestService);
+		// данные каждого теста откатываются, а индексы узнают только о закоммиченных изменениях
+		indexes.forEach(IncrementalIndex::invalidate);
+	}
+
+	@Test
+	@DisplayName("HyperLogLog merged from partitions estimates a million distinct ids within 1%")
+	public void hyperLogLogMergedFromPartitions() {
+		int distinct = 1_000_000;
+		HyperLogLog left = new HyperLogLog();
+		HyperLogLog right = new HyperLogLog();
+		for (long id = 0; id < distinct; id++) {
+			// половина id попадает в оба скетча - дубликаты не должны учитываться
+			(id % 2 == 0 ? left : right).add(Hashing.hash(id));
+			if (id % 4 == 0) {
+				right.add(Hashing.hash(id));
+			}
+		}
+
+		long estimate = left.merge(right).estimate();
+
+		log.info(String.format("hyperloglog - exact: %1$d, estimate: %2$d", distinct, estimate));
+		assertWithinTolerance(distinct, estimate);
+	}
+
+	@Test
+	@DisplayName("Approximate distinct products by customer tier and by date match the exact methods within 1%")
+	public void distinctProducts() {
+		for (int tier = 1; tier <= 3; tier++) {
+			long exact = businessAnalyticsService.getProductsByCustomerTier(tier).size();
+			long estimate = approximateAnalyticsService.estimateDistinctProductsByCustomerTier(tier);
+			log.info(String.format("distinct products of tier %1$d - exact: %2$d, estimate: %3$d", tier, exact, estimate));
+			assertWithinTolerance(exact, estimate);
+		}
+
+		LocalDate date = SyntheticOrders.FIRST_DAY.plusDays(10);
+		long exact = businessAnalyticsService.getProductsByDate(date).size();
+		long estimate = approximateAnalyticsService.estimateDistinctProductsByDate(date);
+		log.info(String.format("distinct products on %1$s - exact: %2$d, estimate: %3$d", date, exact, estimate));
+		assertWithinTolerance(exact, estimate);
+	}
+
+	@Test
+	@DisplayName("Approximate distinct customers who bought in a category match the exact method within 1%")
+	public void distinctCustomers() {
+		long exact = businessAnalyticsService.getCustomersWhoBoughtAnyProductInCategory("Category 0").size();
+		long estimate = approximateAnalyticsService.estimateCustomersWhoBoughtInCategory("Category 0");
+
+		log.info(String.format("distinct customers - exact: %1$d, estimate: %2$d", exact, estimate));
+		assertWithinTolerance(exact, estimate);
+	}
+
+	@Test
+	@DisplayName("Approximate most popular categories and most ordered products are within 1% of all order lines")
+	public void heavyHitters() {
+		long orderLines = (long) ORDERS * PRODUCTS_PER_ORDER;
+
+		assertTopWithinTolerance(
+				businessAnalyticsService.getMostPopularCategories(Integer.MAX_VALUE),
+				approximateAnalyticsService.getMostPopularCategories(5),
+				5, orderLines);
+		assertTopWithinTolerance(
+				orderService.getMostOrderedProducts(Integer.MAX_VALUE),
+				approximateAnalyticsService.getMostOrderedProducts(10),
+				10, orderLines);
+	}
+
+	// в топе приближенного метода - не больше limit значений, их оценки отличаются от точных частот
+	// не больше допуска, и ни одно значение не вытесняет заметно более частое
+	private <K> void assertTopWithinTolerance(Map<K, Long> exact, Map<K, Long> approximate, int limit, long total) {
+		long maxError = Math.round(total * TOLERANCE);
+		long exactThreshold = exact.values().stream()
+				.sorted((a, b) -> Long.compare(b, a))
+				.skip(limit - 1)
+				.findFirst()
+				.orElse(0L);
+
+		assertEquals(limit, approximate.size());
+		approximate.forEach((key, estimate) -> {
+			long count = exact.getOrDefault(key, 0L);
+			log.info(String.format("heavy hitter %1$s - exact: %2$d, estimate: %3$d", key, count, estimate));
+			assertTrue(Math.abs(estimate - count) <= maxError, key + ": exact " + count + ", estimate " + estimate);
+			assertTrue(count >= exactThreshold - maxError, key + " is not a heavy hitter: " + count);
+		});
+	}
+
+	private static void assertWithinTolerance(long exact, long estimate) {
+		assertTrue(Math.abs(estimate - exact) <= Math.max(1, exact * TOLERANCE),
+				"exact " + exact + ", estimate " + estimate);
+	}
+}
@@ -0,0 +1,58 @@
+package space.gavinklfong.demo.streamapi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import space.gavinklfong.demo.streamapi.repos.OrderRepo;
+import space.gavinklfong.demo.streamapi.service.BulkIngestService;
+import space.gavinklfong.demo.streamapi.service.IngestResult;
+
+@DataJpaTest
+@Import(BulkIngestService.class)
+public class BulkIngestBenchmarkTest {
+
+	private static final Logger log = LoggerFactory.getLogger(BulkIngestBenchmarkTest.class);
+
+	private static final int CUSTOMERS = 1_000;
+	private static final int PRODUCTS = 500;
+	private static final int ORDERS = 20_000;
+	private static final int PRODUCTS_PER_ORDER = 3;
+
+	@Autowired
+	private BulkIngestService bulkIngestService;
+
+	@Autowired
+	private OrderRepo orderRepo;
+
+	@Test
+	@DisplayName("Bulk ingest customers, products and orders with JDBC batching and report rows per second")
+	public void ingestThroughput() {
+		long ordersBefore = orderRepo.count();
+		SyntheticOrders.Data data = new SyntheticOrders()
+				.customers(CUSTOMERS)
+				.products(PRODUCTS)
+				.orders(ORDERS)
+				.productsPerOrder(PRODUCTS_PER_ORDER)
+				.build();
+
+		long startTime = System.currentTimeMillis();
+		IngestResult customerResult = bulkIngestService.ingestCustomers(data.customers());
+		IngestResult productResult = bulkIngestService.ingestProducts(data.products());
+		IngestResult orderResult = bulkIngestService.ingestOrders(data.orders());
+		long endTime = System.currentTimeMillis();
+
+		long rows = customerResult.rows() + productResult.rows() + orderResult.rows();
+		log.info(String.format("bulk ingest - %1$d rows in %2$d ms, %3$.0f rows/s",
+				rows, (endTime - startTime), rows * 1000.0 / Math.max(1, endTime - startTime)));
+
+		assertEquals(CUSTOMERS + PRODUCTS + ORDERS * (1L + PRODUCTS_PER_ORDER), rows);
+		assertEquals(ordersBefore + ORDERS, orderRepo.count());
+	}
+}
@@ -0,0 +1,118 @@
+package space.gavinklfong.demo.streamapi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import space.gavinklfong.demo.streamapi.index.CoPurchase;
+import space.gavinklfong.demo.streamapi.index.CoPurchaseIndex;
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.repos.OrderRepo;
+import space.gavinklfong.demo.streamapi.service.BulkIngestService;
+
+@Tag("benchmark")
+@DataJpaTest
+@Import({CoPurchaseIndex.class, BulkIngestService.class})
+public class CoPurchaseBenchmarkTest {
+
+	private static final Logger log = LoggerFactory.getLogger(CoPurchaseBenchmarkTest.class);
+
+	private static final int CUSTOMERS = 1_000;
+	private static final int PRODUCTS = 1_000;
+	private static final int ORDERS = 20_000;
+	private static final int PRODUCTS_PER_ORDER = 4;
+	private static final int LOOKUPS = 10_000;
+	private static final int TOP = 10;
+
+	@Autowired
+	private CoPurchaseIndex coPurchaseIndex;
+
+	@Autowired
+	private BulkIngestService bulkIngestService;
+
+	@Autowired
+	private OrderRepo orderRepo;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	@Test
+	@DisplayName("Top companions from the co-purchase matrix match pair counts over the entity graph and follow new orders")
+	public void topCompanions() {
+		// каждый пятый заказ содержит пару первых двух товаров, остальные товары - случайные
+		List<Product> products = new SyntheticOrders()
+				.customers(CUSTOMERS)
+				.products(PRODUCTS)
+				.orders(ORDERS)
+				.productsPerOrder(PRODUCTS_PER_ORDER)
+				.bundleEvery(5)
+				.ingest(bulkIngestService)
+				.products();
+		Product bundleHead = products.get(0);
+		Product bundleTail = products.get(1);
+
+		long startTime = System.currentTimeMillis();
+		Map<Long, Long> expected = new HashMap<>();
+		orderRepo.findAll().stream()
+				.map(Order::getProducts)
+				.filter(basket -> basket.stream().anyMatch(product -> product.getId().equals(bundleHead.getId())))
+				.forEach(basket -> basket.stream()
+						.filter(product -> !product.getId().equals(bundleHead.getId()))
+						.forEach(product -> expected.merge(product.getId(), 1L, Long::sum)));
+		long endTime = System.currentTimeMillis();
+		log.info(String.format("entity graph pair counts - %1$d ms", (endTime - startTime)));
+
+		startTime = System.currentTimeMillis();
+		coPurchaseIndex.invalidate();
+		int baskets = coPurchaseIndex.basketCount();
+		endTime = System.currentTimeMillis();
+		log.info(String.format("co-purchase build - %1$d baskets in %2$d ms", baskets, (endTime - startTime)));
+
+		long startNanos = System.nanoTime();
+		for (int i = 0; i < LOOKUPS; i++) {
+			coPurchaseIndex.topCompanions(products.get(i % PRODUCTS).getId(), TOP);
+		}
+		long endNanos = System.nanoTime();
+		log.info(String.format("co-purchase top %1$d lookup - %2$.1f us on average",
+				TOP, (endNanos - startNanos) / 1000.0 / LOOKUPS));
+
+		List<CoPurchase<Long>> companions = coPurchaseIndex.topCompanions(bundleHead.getId(), TOP);
+		List<Long> expectedCounts = expected.values().stream()
+				.sorted(Comparator.reverseOrder())
+				.limit(TOP)
+				.toList();
+		assertEquals(expectedCounts, companions.stream().map(CoPurchase::together).toList());
+		companions.forEach(companion ->
+				assertEquals((long) expected.get(companion.item()), companion.together(), "product " + companion.item()));
+		assertEquals(bundleTail.getId(), companions.get(0).item());
+		assertTrue(companions.get(0).lift() > 1.0);
+
+		long together = companions.get(0).together();
+		Order order = new Order(null, LocalDate.of(2022, 1, 1), LocalDate.of(2022, 1, 3), "NEW", null);
+		order.getProducts().add(bundleHead);
+		order.getProducts().add(bundleTail);
+		entityManager.persistAndFlush(order);
+		// тестовая транзакция откатывается, поэтому уведомление, которое пришло бы после коммита, отправляется вручную
+		coPurchaseIndex.orderChanged(order.getId());
+
+		assertEquals(baskets + 1, coPurchaseIndex.basketCount());
+		assertEquals(together + 1,
+				coPurchaseIndex.productPair(bundleHead.getId(), bundleTail.getId()).orElseThrow().together());
+	}
+}
@@ -0,0 +1,96 @@
+package space.gavinklfong.demo.streamapi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import space.gavinklfong.demo.streamapi.index.CoPurchase;
+import space.gavinklfong.demo.streamapi.index.CoPurchaseIndex;
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.repos.OrderRepo;
+import space.gavinklfong.demo.streamapi.repos.ProductRepo;
+
+// индекс узнает об изменениях только после коммита, поэтому данные коммитятся и удаляются после каждого теста
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(CoPurchaseIndex.class)
+public class CoPurchaseIndexTest {
+
+	private static final LocalDate DAY = LocalDate.of(2021, 3, 15);
+
+	@Autowired
+	private CoPurchaseIndex coPurchaseIndex;
+
+	@Autowired
+	private ProductRepo productRepo;
+
+	@Autowired
+	private OrderRepo orderRepo;
+
+	@AfterEach
+	public void deleteAll() {
+		orderRepo.deleteAll();
+		productRepo.deleteAll();
+		coPurchaseIndex.invalidate();
+	}
+
+	@Test
+	@DisplayName("Recategorized products and new orders update category pairs the same way a rebuild does")
+	public void categoryChanges() {
+		Product book = productRepo.save(new Product(null, "book", "Books", 10.0));
+		Product pen = productRepo.save(new Product(null, "pen", "Office", 2.0));
+		Product toy = productRepo.save(new Product(null, "toy", "Toys", 20.0));
+		orderRepo.save(order(book, pen));
+		orderRepo.save(order(book, toy));
+		orderRepo.save(order(pen));
+		assertEquals(1L, together("Books", "Office"));
+		assertEquals(1L, together("Books", "Toys"));
+
+		pen.setCategory("toys");
+		productRepo.save(pen);
+		assertEquals(0L, together("Books", "Office"));
+		assertEquals(2L, together("Books", "Toys"));
+		assertEquals(1.0, coPurchaseIndex.categorySupport("Toys"), 1e-9);
+		assertEquals(0.0, coPurchaseIndex.categorySupport("Office"), 1e-9);
+
+		Product lamp = productRepo.save(new Product(null, "lamp", "Home", 30.0));
+		orderRepo.save(order(lamp, book));
+		assertEquals(1L, together("HOME", "books"));
+		assertEquals(List.of("toys", "home"), companions("Books"));
+
+		coPurchaseIndex.invalidate();
+		assertEquals(0L, together("Books", "Office"));
+		assertEquals(2L, together("Books", "Toys"));
+		assertEquals(1L, together("Home", "Books"));
+		assertEquals(List.of("toys", "home"), companions("Books"));
+	}
+
+	private long together(String category, String otherCategory) {
+		return coPurchaseIndex.categoryPair(category, otherCategory).map(CoPurchase::together).orElse(0L);
+	}
+
+	// категории без учета регистра: после перестройки имя берется у первого товара категории
+	private List<String> companions(String category) {
+		return coPurchaseIndex.topCategoryCompanions(category, 5).stream()
+				.map(companion -> companion.item().toLowerCase(Locale.ROOT))
+				.toList();
+	}
+
+	private static Order order(Product... products) {
+		Order order = new Order(null, DAY, DAY.plusDays(3), "NEW", null);
+		order.getProducts().addAll(List.of(products));
+		return order;
+	}
+}
@@ -0,0 +1,151 @@
+package space.gavinklfong.demo.streamapi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import space.gavinklfong.demo.streamapi.index.CohortIndex;
+import space.gavinklfong.demo.streamapi.index.CohortRetention;
+import space.gavinklfong.demo.streamapi.index.IncrementalIndex;
+import space.gavinklfong.demo.streamapi.index.OrderProductAdjacency;
+import space.gavinklfong.demo.streamapi.models.Customer;
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.repos.CustomerRepo;
+import space.gavinklfong.demo.streamapi.service.BulkIngestService;
+
+@DataJpaTest
+@Import({CohortIndex.class, OrderProductAdjacency.class, BulkIngestService.class})
+public class CohortRetentionTest {
+
+	private static final Logger log = LoggerFactory.getLogger(CohortRetentionTest.class);
+
+	private static final int CUSTOMERS = 2_000;
+	private static final int PRODUCTS = 200;
+	private static final int ORDERS = 30_000;
+	private static final int PRODUCTS_PER_ORDER = 2;
+
+	@Autowired
+	private CohortIndex cohortIndex;
+
+	@Autowired
+	private OrderProductAdjacency adjacency;
+
+	@Autowired
+	private BulkIngestService bulkIngestService;
+
+	@Autowired
+	private CustomerRepo customerRepo;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	@Test
+	@DisplayName("Cohorts from the single-pass month masks match walking customer orders and follow order changes")
+	public void cohortRetention() {
+		SyntheticOrders.Data data = new SyntheticOrders()
+				.customers(CUSTOMERS)
+				.products(PRODUCTS)
+				.orders(ORDERS)
+				.productsPerOrder(PRODUCTS_PER_ORDER)
+				.days(730)
+				.ingest(bulkIngestService);
+
+		long startTime = System.currentTimeMillis();
+		Map<YearMonth, Map<Integer, Integer>> expectedActive = new HashMap<>();
+		Map<YearMonth, Double> expectedRevenue = new HashMap<>();
+		customerRepo.findAll().stream()
+				.filter(customer -> !customer.getOrders().isEmpty())
+				.forEach(customer -> {
+					TreeSet<YearMonth> months = customer.getOrders().stream()
+							.map(order -> YearMonth.from(order.getOrderDate()))
+							.collect(Collectors.toCollection(TreeSet::new));
+					YearMonth cohort = months.first();
+					months.forEach(month -> expectedActive.computeIfAbsent(cohort, key -> new HashMap<>())
+							.merge((int) cohort.until(month, ChronoUnit.MONTHS), 1, Integer::sum));
+					expectedRevenue.merge(cohort, customer.getOrders().stream()
+							.flatMap(order -> order.getProducts().stream())
+							.mapToDouble(Product::getPrice)
+							.sum(), Double::sum);
+				});
+		long endTime = System.currentTimeMillis();
+		log.info(String.format("customer orders walk - %1$d ms", (endTime - startTime)));
+		entityManager.clear();
+
+		startTime = System.currentTimeMillis();
+		cohortIndex.invalidate();
+		List<CohortRetention> cohorts = cohortIndex.cohorts();
+		endTime = System.currentTimeMillis();
+		log.info(String.format("cohort index - %1$d cohorts in %2$d ms", cohorts.size(), (endTime - startTime)));
+
+		Map<YearMonth, CohortRetention> byMonth = cohorts.stream()
+				.collect(Collectors.toMap(CohortRetention::cohort, Function.identity()));
+		assertEquals(expectedActive.keySet(), byMonth.keySet());
+		expectedActive.forEach((month, active) -> {
+			CohortRetention cohort = byMonth.get(month);
+			for (int k = 0; k < cohort.activeCustomers().size(); k++) {
+				assertEquals(active.getOrDefault(k, 0), cohort.activeCustomers().get(k), month + " +" + k);
+			}
+			assertEquals(expectedRevenue.get(month), cohort.revenue(), 1e-6, month.toString());
+		});
+
+		YearMonth currentMonth = YearMonth.now();
+		int currentCohort = byMonth.containsKey(currentMonth) ? byMonth.get(currentMonth).customers() : 0;
+		Customer newcomer = entityManager.persist(new Customer(null, "newcomer", 1));
+		Order order = entityManager.persistAndFlush(new Order(null, LocalDate.now(), LocalDate.now(), "NEW", newcomer));
+		// тестовая транзакция откатывается, поэтому уведомление, которое пришло бы после коммита, отправляется вручную
+		cohortIndex.customerChanged(newcomer.getId());
+		cohortIndex.orderChanged(order.getId());
+
+		CohortRetention current = cohortIndex.cohorts().stream()
+				.filter(cohort -> cohort.cohort().equals(currentMonth))
+				.findFirst()
+				.orElseThrow();
+		assertEquals(currentCohort + 1, current.customers());
+
+		// перенесенный и удаленный заказы и новая цена товара применяются дельтами и дают то же, что перестройка
+		Order moved = entityManager.find(Order.class, data.orders().get(0).getId());
+		moved.setOrderDate(moved.getOrderDate().plusMonths(5));
+		moved.setCustomer(newcomer);
+		Order deleted = entityManager.find(Order.class, data.orders().get(1).getId());
+		entityManager.remove(deleted);
+		Product repriced = entityManager.find(Product.class, data.products().get(0).getId());
+		repriced.setPrice(repriced.getPrice() + 100);
+		entityManager.flush();
+		for (IncrementalIndex index : List.of(adjacency, cohortIndex)) {
+			index.orderChanged(moved.getId());
+			index.orderChanged(deleted.getId());
+			index.productChanged(repriced.getId());
+		}
+
+		List<CohortRetention> patched = cohortIndex.cohorts();
+		cohortIndex.invalidate();
+		List<CohortRetention> rebuilt = cohortIndex.cohorts();
+		assertEquals(rebuilt.size(), patched.size());
+		for (int i = 0; i < rebuilt.size(); i++) {
+			CohortRetention expected = rebuilt.get(i);
+			CohortRetention actual = patched.get(i);
+			assertEquals(expected.cohort(), actual.cohort());
+			assertEquals(expected.customers(), actual.customers());
+			assertEquals(expected.activeCustomers(), actual.activeCustomers());
+			assertEquals(expected.revenue(), actual.revenue(), 1e-6);
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package space.gavinklfong.demo.streamapi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import space.gavinklfong.demo.streamapi.index.CustomerProfile;
+import space.gavinklfong.demo.streamapi.index.CustomerProfileIndex;
+import space.gavinklfong.demo.streamapi.index.IncrementalIndex;
+import space.gavinklfong.demo.streamapi.models.Customer;
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.repos.CustomerRepo;
+import space.gavinklfong.demo.streamapi.repos.OrderRepo;
+import space.gavinklfong.demo.streamapi.repos.ProductRepo;
+import space.gavinklfong.demo.streamapi.service.CustomerService;
+
+// индексы узнают об изменениях только после коммита, поэтому данные коммитятся и удаляются после каждого теста
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(AnalyticsTestImports.class)
+public class CustomerProfileIndexTest {
+
+	private static final LocalDate JANUARY = LocalDate.of(2021, 1, 10);
+	private static final LocalDate FEBRUARY = LocalDate.of(2021, 2, 10);
+	private static final LocalDate MARCH = LocalDate.of(2021, 3, 10);
+
+	@Autowired
+	private CustomerProfileIndex profileIndex;
+
+	@Autowired
+	private CustomerService customerService;
+
+	@Autowired
+	private CustomerRepo customerRepo;
+
+	@Autowired
+	private ProductRepo productRepo;
+
+	@Autowired
+	private OrderRepo orderRepo;
+
+	@Autowired
+	private List<IncrementalIndex> indexes;
+
+	@AfterEach
+	public void deleteAll() {
+		orderRepo.deleteAll();
+		customerRepo.deleteAll();
+		productRepo.deleteAll();
+		indexes.forEach(IncrementalIndex::invalidate);
+	}
+
+	@Test
+	@DisplayName("Rankings by order count, spend and last order match the customers' orders")
+	public void rankings() {
+		Customer frequent = customerRepo.save(new Customer(null, "frequent", 1));
+		Customer bigSpender = customerRepo.save(new Customer(null, "big spender", 2));
+		Customer idle = customerRepo.save(new Customer(null, "idle", 3));
+		Product cheap = productRepo.save(new Product(null, "cheap", "Books", 10.0));
+		Product expensive = productRepo.save(new Product(null, "expensive", "Toys", 500.0));
+		orderRepo.save(order(frequent, JANUARY, cheap));
+		orderRepo.save(order(frequent, FEBRUARY, cheap, expensive));
+		orderRepo.save(order(bigSpender, MARCH, expensive, cheap));
+		orderRepo.save(order(bigSpender, JANUARY, expensive));
+
+		assertEquals(Optional.of(new CustomerProfile(frequent.getId(), 2, 520.0, JANUARY, FEBRUARY)),
+				profileIndex.profileOf(frequent.getId()));
+		assertEquals(Optional.of(new CustomerProfile(bigSpender.getId(), 2, 1010.0, JANUARY, MARCH)),
+				profileIndex.profileOf(bigSpender.getId()));
+		assertTrue(profileIndex.profileOf(idle.getId()).isEmpty());
+
+		// равное число заказов - выше клиент с меньшим id
+		assertEquals(List.of(frequent.getId(), bigSpender.getId()), customerIds(profileIndex.topByOrderCount(5)));
+		assertEquals(List.of(bigSpender.getId(), frequent.getId()), customerIds(profileIndex.topBySpend(5)));
+		assertEquals(List.of(bigSpender.getId()), customerIds(profileIndex.mostRecentlyActive(1)));
+
+		assertEquals(Optional.of(bigSpender.getId()), customerService.getTopSpendingCustomer().map(Customer::getId));
+		assertEquals(Optional.of(frequent.getId()), customerService.getCustomerWithMostOrders().map(Customer::getId));
+		assertEquals(List.of(bigSpender.getId(), frequent.getId()),
+				customerService.getRecentlyActiveCustomers(5).stream().map(Customer::getId).toList());
+		assertEquals(Map.of(frequent.getId(), 520.0, bigSpender.getId(), 1010.0),
+				profileIndex.totalSpentByCustomer());
+	}
+
+	@Test
+	@DisplayName("Moved and deleted orders and repriced products update only the affected profiles")
+	public void incrementalChanges() {
+		Customer first = customerRepo.save(new Customer(null, "first", 1));
+		Customer second = customerRepo.save(new Customer(null, "second", 1));
+		Product book = productRepo.save(new Product(null, "book", "Books", 10.0));
+		Order january = orderRepo.save(order(first, JANUARY, book));
+		Order march = orderRepo.save(order(first, MARCH, book));
+		orderRepo.save(order(second, FEBRUARY, book));
+		assertEquals(List.of(first.getId(), second.getId()), customerIds(profileIndex.topByOrderCount(5)));
+
+		orderRepo.deleteById(march.getId());
+		assertEquals(Optional.of(new CustomerProfile(first.getId(), 1, 10.0, JANUARY, JANUARY)),
+				profileIndex.profileOf(first.getId()));
+		assertEquals(List.of(second.getId(), first.getId()), customerIds(profileIndex.mostRecentlyActive(5)));
+
+		january.setCustomer(second);
+		orderRepo.save(january);
+		assertTrue(profileIndex.profileOf(first.getId()).isEmpty());
+		assertEquals(Optional.of(new CustomerProfile(second.getId(), 2, 20.0, JANUARY, FEBRUARY)),
+				profileIndex.profileOf(second.getId()));
+
+		book.setPrice(25.0);
+		productRepo.save(book);
+		assertEquals(List.of(second.getId()), customerIds(profileIndex.topBySpend(5)));
+		assertEquals(50.0, profileIndex.profileOf(second.getId()).orElseThrow().totalSpent(), 1e-9);
+	}
+
+	private static List<Long> customerIds(List<CustomerProfile> profiles) {
+		return profiles.stream().map(CustomerProfile::customerId).toList();
+	}
+
+	private static Order order(Customer customer, LocalDate orderDate, Product... products) {
+		Order order = new Order(null, orderDate, orderDate.plusDays(3), "NEW", customer);
+		order.getProducts().addAll(List.of(products));
+		return order;
+	}
+}
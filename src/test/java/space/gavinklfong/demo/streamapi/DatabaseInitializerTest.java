@@ -0,0 +1,23 @@
+package space.gavinklfong.demo.streamapi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class DatabaseInitializerTest {
+
+	@Test
+	@DisplayName("Seed lines keep quoted commas and quotes, empty values and trailing empty columns")
+	public void parseCsvLine() {
+		assertEquals(List.of("1", "omnis quod", "Games", "184.83"),
+				DatabaseInitializer.parseCsvLine("1,omnis quod,Games,184.83"));
+		assertEquals(List.of("2", "Toys, Games", "say \"hi\"", "12.66"),
+				DatabaseInitializer.parseCsvLine("2,\"Toys, Games\",\"say \"\"hi\"\"\",12.66"));
+		assertEquals(List.of("3", "", "", ""), DatabaseInitializer.parseCsvLine("3,,,"));
+		assertThrows(IllegalStateException.class, () -> DatabaseInitializer.parseCsvLine("4,\"open"));
+	}
+}
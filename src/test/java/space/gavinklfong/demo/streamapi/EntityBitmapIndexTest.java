@@ -0,0 +1,157 @@
+package space.gavinklfong.demo.streamapi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import space.gavinklfong.demo.streamapi.index.EntityBitmapIndex;
+import space.gavinklfong.demo.streamapi.models.Customer;
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.repos.CustomerRepo;
+import space.gavinklfong.demo.streamapi.repos.OrderRepo;
+import space.gavinklfong.demo.streamapi.repos.ProductRepo;
+
+// индекс узнает об изменениях только после коммита, поэтому данные коммитятся и удаляются после каждого теста
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(EntityBitmapIndex.class)
+public class EntityBitmapIndexTest {
+
+	private static final LocalDate ORDER_DATE = LocalDate.of(2021, 2, 10);
+
+	@Autowired
+	private EntityBitmapIndex bitmapIndex;
+
+	@Autowired
+	private CustomerRepo customerRepo;
+
+	@Autowired
+	private ProductRepo productRepo;
+
+	@Autowired
+	private OrderRepo orderRepo;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@AfterEach
+	public void deleteAll() {
+		orderRepo.deleteAll();
+		customerRepo.deleteAll();
+		productRepo.deleteAll();
+		bitmapIndex.invalidate();
+	}
+
+	@Test
+	@DisplayName("Committed inserts and updates reach the built index without a rebuild")
+	public void incrementalUpdate() {
+		Customer first = customerRepo.save(new Customer(null, "first", 1));
+		Customer second = customerRepo.save(new Customer(null, "second", 2));
+		Product book = productRepo.save(new Product(null, "book", "Books", 10.0));
+		Order order = orderRepo.save(order(first, "NEW", book));
+
+		assertEquals(List.of(order.getId()), statusOrderIds("new"));
+
+		order.setStatus("DELIVERED");
+		orderRepo.save(order);
+		Order other = orderRepo.save(order(second, "NEW", book));
+
+		assertEquals(List.of(other.getId()), statusOrderIds("NEW"));
+		assertEquals(List.of(order.getId()), statusOrderIds("delivered"));
+		assertEquals(List.of(first.getId(), second.getId()), bitmapIndex.query(index ->
+				index.customerIds(index.customersOf(index.ordersWithCategory("books")))));
+		assertEquals(List.of(other.getId()), bitmapIndex.query(index -> {
+			BitSet orders = index.ordersInMonth(YearMonth.from(ORDER_DATE));
+			orders.and(index.ordersOf(index.customersWithTier(2)));
+			return index.orderIds(orders);
+		}));
+	}
+
+	@Test
+	@DisplayName("Rolled back changes never reach the index")
+	public void rollback() {
+		Customer customer = customerRepo.save(new Customer(null, "customer", 1));
+		Product book = productRepo.save(new Product(null, "book", "Books", 10.0));
+		Order order = orderRepo.save(order(customer, "NEW", book));
+		assertEquals(List.of(order.getId()), statusOrderIds("NEW"));
+
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			orderRepo.save(order(customer, "NEW", book));
+			order.setStatus("CANCELLED");
+			orderRepo.save(order);
+			status.setRollbackOnly();
+		});
+
+		assertEquals(List.of(order.getId()), statusOrderIds("NEW"));
+		assertTrue(statusOrderIds("CANCELLED").isEmpty());
+	}
+
+	@Test
+	@DisplayName("Deleted orders and customers leave the index")
+	public void delete() {
+		Customer kept = customerRepo.save(new Customer(null, "kept", 1));
+		Customer removed = customerRepo.save(new Customer(null, "removed", 1));
+		Product book = productRepo.save(new Product(null, "book", "Books", 10.0));
+		Order keptOrder = orderRepo.save(order(kept, "NEW", book));
+		Order removedOrder = orderRepo.save(order(removed, "NEW", book));
+		assertEquals(List.of(kept.getId(), removed.getId()), tierCustomerIds(1));
+
+		orderRepo.deleteById(removedOrder.getId());
+		customerRepo.deleteById(removed.getId());
+
+		assertEquals(List.of(keptOrder.getId()), statusOrderIds("NEW"));
+		assertEquals(List.of(kept.getId()), tierCustomerIds(1));
+		assertEquals(List.of(kept.getId()), bitmapIndex.query(index ->
+				index.customerIds(index.customersOf(index.allOrders()))));
+	}
+
+	@Test
+	@DisplayName("Ids resolve against the numbering of the rebuilt index, and a view cannot outlive its query")
+	public void rebuild() {
+		Customer first = customerRepo.save(new Customer(null, "first", 1));
+		assertEquals(List.of(first.getId()), tierCustomerIds(1));
+
+		customerRepo.deleteById(first.getId());
+		Customer second = customerRepo.save(new Customer(null, "second", 2));
+		Customer third = customerRepo.save(new Customer(null, "third", 1));
+		bitmapIndex.invalidate();
+
+		// после перестройки ordinal 0 принадлежит уже другому клиенту
+		assertEquals(List.of(third.getId()), tierCustomerIds(1));
+		assertEquals(List.of(second.getId()), tierCustomerIds(2));
+
+		EntityBitmapIndex.View leaked = bitmapIndex.query(index -> index);
+		assertThrows(IllegalStateException.class, leaked::allCustomers);
+	}
+
+	private List<Long> statusOrderIds(String status) {
+		return bitmapIndex.query(index -> index.orderIds(index.ordersWithStatus(status)));
+	}
+
+	private List<Long> tierCustomerIds(int tier) {
+		return bitmapIndex.query(index -> index.customerIds(index.customersWithTier(tier)));
+	}
+
+	private static Order order(Customer customer, String status, Product product) {
+		Order order = new Order(null, ORDER_DATE, ORDER_DATE.plusDays(3), status, customer);
+		order.getProducts().add(product);
+		return order;
+	}
+}
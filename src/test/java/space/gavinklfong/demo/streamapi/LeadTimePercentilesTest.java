@@ -0,0 +1,165 @@
+package space.gavinklfong.demo.streamapi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import space.gavinklfong.demo.streamapi.index.LeadTimeIndex;
+import space.gavinklfong.demo.streamapi.index.LeadTimePercentiles;
+import space.gavinklfong.demo.streamapi.models.Customer;
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.repos.CustomerRepo;
+import space.gavinklfong.demo.streamapi.repos.OrderRepo;
+import space.gavinklfong.demo.streamapi.repos.ProductRepo;
+import space.gavinklfong.demo.streamapi.scan.PartitionedOrderScanner;
+import space.gavinklfong.demo.streamapi.service.BulkIngestService;
+
+// индекс перестраивается сканером в его собственных транзакциях, поэтому данные коммитятся и удаляются после
+// каждого теста
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({LeadTimeIndex.class, PartitionedOrderScanner.class, BulkIngestService.class})
+public class LeadTimePercentilesTest {
+
+	private static final Logger log = LoggerFactory.getLogger(LeadTimePercentilesTest.class);
+
+	private static final int CUSTOMERS = 1_000;
+	private static final int PRODUCTS = 200;
+	private static final int ORDERS = 50_000;
+	private static final int PRODUCTS_PER_ORDER = 2;
+	private static final String[] STATUSES = {"NEW", "PENDING", "DELIVERED"};
+
+	@Autowired
+	private LeadTimeIndex leadTimeIndex;
+
+	@Autowired
+	private BulkIngestService bulkIngestService;
+
+	@Autowired
+	private OrderRepo orderRepo;
+
+	@Autowired
+	private CustomerRepo customerRepo;
+
+	@Autowired
+	private ProductRepo productRepo;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@AfterEach
+	public void deleteAll() {
+		SyntheticOrders.deleteAll(jdbcTemplate);
+		leadTimeIndex.invalidate();
+	}
+
+	@Test
+	@DisplayName("Lead time percentiles from merged histograms match sorted lead times by tier and status and follow new orders")
+	public void leadTimePercentiles() {
+		// срок доставки зависит от tier клиента, с длинным хвостом у каждого двадцатого заказа
+		List<Order> orders = new SyntheticOrders()
+				.customers(CUSTOMERS)
+				.products(PRODUCTS)
+				.orders(ORDERS)
+				.productsPerOrder(PRODUCTS_PER_ORDER)
+				.statuses(STATUSES)
+				.leadTime((random, customer, orderIndex) ->
+						1 + customer.getTier() * 2 + random.nextInt(5) + (orderIndex % 20 == 0 ? random.nextInt(40) : 0))
+				.ingest(bulkIngestService)
+				.orders();
+
+		long startTime = System.currentTimeMillis();
+		leadTimeIndex.invalidate();
+		LeadTimePercentiles overall = leadTimeIndex.overall();
+		long endTime = System.currentTimeMillis();
+		log.info(String.format("lead time index - %1$d orders in %2$d ms, p50 %3$d, p90 %4$d, p99 %5$d days",
+				overall.orders(), (endTime - startTime), overall.p50(), overall.p90(), overall.p99()));
+
+		// сроки меньше 128 дней гистограмма хранит точно
+		assertEquals(exact(orders), overall);
+		Map<Integer, List<Order>> byTier = orders.stream()
+				.collect(Collectors.groupingBy(order -> order.getCustomer().getTier()));
+		assertEquals(byTier.keySet(), leadTimeIndex.byCustomerTier().keySet());
+		byTier.forEach((tier, tierOrders) ->
+				assertEquals(exact(tierOrders), leadTimeIndex.byCustomerTier().get(tier), "tier " + tier));
+		Map<String, List<Order>> byStatus = orders.stream()
+				.collect(Collectors.groupingBy(Order::getStatus));
+		byStatus.forEach((status, statusOrders) ->
+				assertEquals(exact(statusOrders), leadTimeIndex.byStatus().get(status), status));
+
+		Order late = orders.get(0);
+		orderRepo.save(new Order(null, late.getOrderDate(), late.getOrderDate().plusDays(1_000), "NEW",
+				late.getCustomer()));
+		LeadTimePercentiles updated = leadTimeIndex.overall();
+		assertEquals(ORDERS + 1, updated.orders());
+		assertEquals(1_000, updated.max(), 1_000 / 64.0);
+	}
+
+	@Test
+	@DisplayName("Edited and deleted orders and renamed categories update the histograms the same way a rebuild does")
+	public void incrementalChanges() {
+		LocalDate day = LocalDate.of(2021, 3, 15);
+		Customer customer = customerRepo.save(new Customer(null, "customer", 1));
+		Product book = productRepo.save(new Product(null, "book", "Books", 10.0));
+		Product pen = productRepo.save(new Product(null, "pen", "Office", 2.0));
+		Order first = orderRepo.save(order(customer, day, 3, book, pen));
+		Order second = orderRepo.save(order(customer, day.plusMonths(1), 5, book));
+		assertEquals(2, leadTimeIndex.byCategory().get("Books").orders());
+		assertEquals(5, leadTimeIndex.overall().max());
+
+		first.setStatus("DELIVERED");
+		first.setDeliveryDate(day.plusDays(10));
+		orderRepo.save(first);
+		assertEquals(1, leadTimeIndex.byStatus().get("NEW").orders());
+		assertEquals(10, leadTimeIndex.byStatus().get("DELIVERED").max());
+		assertEquals(10, leadTimeIndex.overall().max());
+
+		book.setCategory("BOOKS");
+		productRepo.save(book);
+		assertEquals(List.of("BOOKS", "Office"), leadTimeIndex.byCategory().keySet().stream().sorted().toList());
+
+		orderRepo.deleteById(second.getId());
+		assertEquals(1, leadTimeIndex.overall().orders());
+		assertEquals(1, leadTimeIndex.byMonth().size());
+
+		List<Object> patched = List.of(leadTimeIndex.overall(), leadTimeIndex.byCategory(),
+				leadTimeIndex.byCustomerTier(), leadTimeIndex.byStatus(), leadTimeIndex.byMonth());
+		leadTimeIndex.invalidate();
+		assertEquals(List.of(leadTimeIndex.overall(), leadTimeIndex.byCategory(),
+				leadTimeIndex.byCustomerTier(), leadTimeIndex.byStatus(), leadTimeIndex.byMonth()), patched);
+	}
+
+	private static Order order(Customer customer, LocalDate orderDate, int leadDays, Product... products) {
+		Order order = new Order(null, orderDate, orderDate.plusDays(leadDays), "NEW", customer);
+		order.getProducts().addAll(List.of(products));
+		return order;
+	}
+
+	private static LeadTimePercentiles exact(List<Order> orders) {
+		long[] days = orders.stream()
+				.mapToLong(order -> ChronoUnit.DAYS.between(order.getOrderDate(), order.getDeliveryDate()))
+				.sorted()
+				.toArray();
+		Function<Double, Long> percentile = q -> days[(int) Math.ceil(q * days.length) - 1];
+		return new LeadTimePercentiles(days.length, percentile.apply(0.5), percentile.apply(0.9),
+				percentile.apply(0.99), days[days.length - 1]);
+	}
+}
@@ -0,0 +1,114 @@
+package space.gavinklfong.demo.streamapi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import space.gavinklfong.demo.streamapi.index.IncrementalIndex;
+import space.gavinklfong.demo.streamapi.index.OrderDateIndex;
+import space.gavinklfong.demo.streamapi.index.TimeBucket;
+import space.gavinklfong.demo.streamapi.models.Customer;
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.repos.CustomerRepo;
+import space.gavinklfong.demo.streamapi.repos.OrderRepo;
+import space.gavinklfong.demo.streamapi.repos.ProductRepo;
+import space.gavinklfong.demo.streamapi.service.OrderService;
+
+// индекс узнает об изменениях только после коммита, поэтому данные коммитятся и удаляются после каждого теста
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(AnalyticsTestImports.class)
+public class OrderDateIndexTest {
+
+	private static final LocalDate DAY = LocalDate.of(2021, 3, 15);
+
+	@Autowired
+	private OrderDateIndex orderDateIndex;
+
+	@Autowired
+	private OrderService orderService;
+
+	@Autowired
+	private List<IncrementalIndex> indexes;
+
+	@Autowired
+	private CustomerRepo customerRepo;
+
+	@Autowired
+	private ProductRepo productRepo;
+
+	@Autowired
+	private OrderRepo orderRepo;
+
+	@AfterEach
+	public void deleteAll() {
+		orderRepo.deleteAll();
+		customerRepo.deleteAll();
+		productRepo.deleteAll();
+		indexes.forEach(IncrementalIndex::invalidate);
+	}
+
+	@Test
+	@DisplayName("A period that ends before it starts is empty instead of failing")
+	public void emptyPeriod() {
+		Customer customer = customerRepo.save(new Customer(null, "customer", 1));
+		Product product = productRepo.save(new Product(null, "product", "Books", 10.0));
+		orderRepo.save(order(customer, DAY, product));
+
+		assertEquals(1L, orderDateIndex.countBetween(DAY, DAY));
+		assertTrue(orderDateIndex.orderIdsBetween(DAY.plusDays(1), DAY.minusDays(1)).isEmpty());
+		assertEquals(0L, orderDateIndex.countBetween(DAY.plusDays(1), DAY.minusDays(1)));
+		assertEquals(0.0, orderDateIndex.revenueBetween(DAY.plusDays(1), DAY.minusDays(1)), 0.0);
+		assertTrue(orderDateIndex.rollup(DAY.plusDays(1), DAY.minusDays(1), TimeBucket.MONTH).isEmpty());
+	}
+
+	@Test
+	@DisplayName("Day revenue stays exact after a large order is added and removed again")
+	public void revenueAfterRemoval() {
+		Customer customer = customerRepo.save(new Customer(null, "customer", 1));
+		Product cheap = productRepo.save(new Product(null, "cheap", "Books", 1.0));
+		Product expensive = productRepo.save(new Product(null, "expensive", "Books", 1e17));
+		Order kept = orderRepo.save(order(customer, DAY, cheap));
+		assertEquals(1.0, orderDateIndex.revenueBetween(DAY, DAY), 0.0);
+
+		Order removed = orderRepo.save(order(customer, DAY, expensive));
+		assertEquals(1e17, orderDateIndex.revenueBetween(DAY, DAY), 0.0);
+
+		// вычитание дало бы (1e17 + 1.0) - 1e17 = 0.0
+		orderRepo.deleteById(removed.getId());
+		assertEquals(1.0, orderDateIndex.revenueBetween(DAY, DAY), 0.0);
+		assertEquals(List.of(kept.getId()), orderDateIndex.orderIdsBetween(DAY, DAY));
+	}
+
+	@Test
+	@DisplayName("Orders of a period are returned by ascending date, not in the order the database loads them")
+	public void ordersByPeriod() {
+		Customer customer = customerRepo.save(new Customer(null, "customer", 1));
+		Product product = productRepo.save(new Product(null, "product", "Books", 10.0));
+		// id растут, даты убывают
+		Order latest = orderRepo.save(order(customer, DAY.plusDays(2), product));
+		Order middle = orderRepo.save(order(customer, DAY.plusDays(1), product));
+		Order earliest = orderRepo.save(order(customer, DAY, product));
+
+		assertEquals(List.of(earliest.getId(), middle.getId(), latest.getId()),
+				orderService.getOrdersByPeriod(DAY, DAY.plusDays(2)).stream().map(Order::getId).toList());
+	}
+
+	private static Order order(Customer customer, LocalDate orderDate, Product product) {
+		Order order = new Order(null, orderDate, orderDate.plusDays(3), "NEW", customer);
+		order.getProducts().add(product);
+		return order;
+	}
+}
@@ -0,0 +1,146 @@
+package space.gavinklfong.demo.streamapi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import space.gavinklfong.demo.streamapi.index.OrderProductAdjacency;
+import space.gavinklfong.demo.streamapi.models.Customer;
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.repos.CustomerRepo;
+import space.gavinklfong.demo.streamapi.repos.OrderRepo;
+import space.gavinklfong.demo.streamapi.repos.ProductRepo;
+
+// индекс узнает об изменениях только после коммита, поэтому данные коммитятся и удаляются после каждого теста
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(OrderProductAdjacency.class)
+public class OrderProductAdjacencyTest {
+
+	private static final LocalDate DAY = LocalDate.of(2021, 3, 15);
+
+	@Autowired
+	private OrderProductAdjacency adjacency;
+
+	@Autowired
+	private CustomerRepo customerRepo;
+
+	@Autowired
+	private ProductRepo productRepo;
+
+	@Autowired
+	private OrderRepo orderRepo;
+
+	@AfterEach
+	public void deleteAll() {
+		orderRepo.deleteAll();
+		customerRepo.deleteAll();
+		productRepo.deleteAll();
+		adjacency.invalidate();
+	}
+
+	@Test
+	@DisplayName("Added, deleted and repriced rows are patched in place and match a full rebuild")
+	public void incrementalChanges() {
+		Customer alice = customerRepo.save(new Customer(null, "alice", 1));
+		Customer bob = customerRepo.save(new Customer(null, "bob", 2));
+		Product book = productRepo.save(new Product(null, "book", "Books", 10.0));
+		Product toy = productRepo.save(new Product(null, "toy", "Toys", 20.0));
+		Order first = orderRepo.save(order(alice, book, toy));
+		Order second = orderRepo.save(order(bob, toy));
+		assertEquals(30.0, adjacency.orderTotal(first.getId()), 1e-9);
+
+		// новые товар и заказ, новая цена
+		Product game = productRepo.save(new Product(null, "game", "Toys", 50.0));
+		Order third = orderRepo.save(order(alice, game, book));
+		book.setPrice(15.0);
+		productRepo.save(book);
+		assertEquals(65.0, adjacency.orderTotal(third.getId()), 1e-9);
+		assertEquals(List.of(book.getId(), game.getId()), ids(adjacency.productsOf(third.getId())));
+		assertEquals(List.of(first.getId(), third.getId()), ids(adjacency.ordersOf(book.getId())));
+		assertEquals(List.of(third.getId(), first.getId(), second.getId()), ids(adjacency.orderIdsByTotal(true, 5)));
+		assertEquals(List.of(second.getId(), first.getId()), ids(adjacency.orderIdsByTotal(false, 2)));
+		assertMatchesRebuild(List.of(first, second, third), List.of(book, toy, game));
+
+		// удаленный заказ, новая категория, товар без заказов добавлен и удален
+		orderRepo.deleteById(first.getId());
+		toy.setCategory("Games");
+		productRepo.save(toy);
+		Product unsold = productRepo.save(new Product(null, "unsold", "Books", 1.0));
+		assertEquals(List.of(), ids(adjacency.ordersOf(unsold.getId())));
+		productRepo.deleteById(unsold.getId());
+
+		assertEquals(Map.of("Books", 1L, "Toys", 1L, "Games", 1L), adjacency.orderLinesByCategory());
+		assertEquals(List.of(third.getId(), second.getId()), ids(adjacency.orderIdsByTotal(true, 5)));
+		assertEquals(List.of(second.getId()), ids(adjacency.ordersOf(toy.getId())));
+		assertEquals(List.of(), ids(adjacency.productsOf(first.getId())));
+		assertEquals(42.5, adjacency.orderTotals().getAverage(), 1e-9);
+		assertMatchesRebuild(List.of(first, second, third), List.of(book, toy, game, unsold));
+	}
+
+	@Test
+	@DisplayName("Products added to and removed from an existing order reach the index")
+	public void orderProductsChanged() {
+		Customer alice = customerRepo.save(new Customer(null, "alice", 1));
+		Product book = productRepo.save(new Product(null, "book", "Books", 10.0));
+		Product toy = productRepo.save(new Product(null, "toy", "Toys", 20.0));
+		Order order = orderRepo.save(order(alice, book));
+		assertEquals(10.0, adjacency.orderTotal(order.getId()), 1e-9);
+
+		// меняется только order_product_relationship, сама строка заказа - нет
+		order.getProducts().add(toy);
+		order = orderRepo.save(order);
+		assertEquals(30.0, adjacency.orderTotal(order.getId()), 1e-9);
+		assertEquals(List.of(order.getId()), ids(adjacency.ordersOf(toy.getId())));
+
+		order.getProducts().remove(book);
+		order = orderRepo.save(order);
+		assertEquals(20.0, adjacency.orderTotal(order.getId()), 1e-9);
+		assertEquals(List.of(), ids(adjacency.ordersOf(book.getId())));
+		assertEquals(Map.of("Toys", 1L), adjacency.orderLinesByCategory());
+		assertMatchesRebuild(List.of(order), List.of(book, toy));
+	}
+
+	// состояние после изменений совпадает с перечитанным с нуля
+	private void assertMatchesRebuild(List<Order> orders, List<Product> products) {
+		State patched = state(orders, products);
+		adjacency.invalidate();
+		assertEquals(state(orders, products), patched);
+	}
+
+	private State state(List<Order> orders, List<Product> products) {
+		return new State(
+				orders.stream().map(order -> ids(adjacency.productsOf(order.getId()))).toList(),
+				orders.stream().map(order -> adjacency.orderTotal(order.getId())).toList(),
+				products.stream().map(product -> ids(adjacency.ordersOf(product.getId()))).toList(),
+				adjacency.orderLinesByCategory(),
+				ids(adjacency.orderIdsByTotal(true, orders.size())));
+	}
+
+	private static List<Long> ids(long[] ids) {
+		return Arrays.stream(ids).boxed().toList();
+	}
+
+	private static Order order(Customer customer, Product... products) {
+		Order order = new Order(null, DAY, DAY.plusDays(3), "NEW", customer);
+		order.getProducts().addAll(List.of(products));
+		return order;
+	}
+
+	private record State(List<List<Long>> productsByOrder, List<Double> totals, List<List<Long>> ordersByProduct,
+			Map<String, Long> linesByCategory, List<Long> byTotal) {
+	}
+}
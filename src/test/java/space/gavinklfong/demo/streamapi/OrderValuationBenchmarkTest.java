@@ -0,0 +1,128 @@
+package space.gavinklfong.demo.streamapi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.valuation.OrderValuation;
+
+// заказы в памяти, без БД; read-only транзакция для запоминания сумм имитируется синхронизацией Spring
+@Tag("benchmark")
+public class OrderValuationBenchmarkTest {
+
+	private static final Logger log = LoggerFactory.getLogger(OrderValuationBenchmarkTest.class);
+
+	private static final int CUSTOMERS = 1_000;
+	private static final int PRODUCTS = 500;
+	private static final int ORDERS = 200_000;
+	private static final int PRODUCTS_PER_ORDER = 3;
+	private static final int ROUNDS = 10;
+
+	@Test
+	@DisplayName("Loop kernel matches the stream pipeline, allocations of both are logged")
+	public void orderTotals() {
+		List<Order> orders = orders();
+
+		double streamSum = 0;
+		long streamBytes = 0;
+		long startTime = System.currentTimeMillis();
+		for (int round = 0; round < ROUNDS; round++) {
+			long before = allocatedBytes();
+			streamSum = sum(orders, OrderValuationBenchmarkTest::streamTotal);
+			streamBytes = allocatedBytes() - before;
+		}
+		long endTime = System.currentTimeMillis();
+		log.info(String.format("stream pipeline - %1$d ms per round, %2$d KB allocated",
+				(endTime - startTime) / ROUNDS, streamBytes / 1024));
+
+		double kernelSum = 0;
+		long kernelBytes = 0;
+		startTime = System.currentTimeMillis();
+		for (int round = 0; round < ROUNDS; round++) {
+			long before = allocatedBytes();
+			kernelSum = sum(orders, OrderValuation::compute);
+			kernelBytes = allocatedBytes() - before;
+		}
+		endTime = System.currentTimeMillis();
+		log.info(String.format("loop kernel - %1$d ms per round, %2$d KB allocated",
+				(endTime - startTime) / ROUNDS, kernelBytes / 1024));
+
+		assertEquals(streamSum, kernelSum, 1e-6);
+		for (Order order : orders.subList(0, 1_000)) {
+			assertEquals(streamTotal(order), OrderValuation.compute(order), 1e-9);
+		}
+		// объем аллокаций зависит от JIT (escape analysis), поэтому он только логируется
+	}
+
+	@Test
+	@DisplayName("Sorting by total values each order once inside a read-only transaction")
+	public void memoizedSort() {
+		List<Order> orders = orders();
+		Comparator<Order> byId = Comparator.comparing(Order::getId);
+
+		long startTime = System.currentTimeMillis();
+		List<Order> streamSorted = new ArrayList<>(orders);
+		streamSorted.sort(Comparator.comparingDouble(OrderValuationBenchmarkTest::streamTotal).thenComparing(byId));
+		long endTime = System.currentTimeMillis();
+		log.info(String.format("sort by stream total - %1$d ms", (endTime - startTime)));
+
+		List<Order> memoSorted = new ArrayList<>(orders);
+		TransactionSynchronizationManager.initSynchronization();
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+		try {
+			startTime = System.currentTimeMillis();
+			memoSorted.sort(Comparator.comparingDouble(OrderValuation::total).thenComparing(byId));
+			endTime = System.currentTimeMillis();
+			log.info(String.format("sort by memoized total - %1$d ms", (endTime - startTime)));
+		} finally {
+			TransactionSynchronizationManager.getSynchronizations().forEach(synchronization ->
+					synchronization.afterCompletion(0));
+			TransactionSynchronizationManager.clear();
+		}
+
+		assertEquals(streamSorted, memoSorted);
+	}
+
+	private static double sum(List<Order> orders, ToDoubleFunction<Order> total) {
+		double sum = 0;
+		for (Order order : orders) {
+			sum += total.applyAsDouble(order);
+		}
+		return sum;
+	}
+
+	private static double streamTotal(Order order) {
+		return order.getProducts().stream()
+				.mapToDouble(Product::getPrice)
+				.sum();
+	}
+
+	private static long allocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+	}
+
+	private static List<Order> orders() {
+		return new SyntheticOrders()
+				.customers(CUSTOMERS)
+				.products(PRODUCTS)
+				.categories(20)
+				.orders(ORDERS)
+				.productsPerOrder(PRODUCTS_PER_ORDER)
+				.withIds()
+				.build()
+				.orders();
+	}
+}
@@ -0,0 +1,88 @@
+package space.gavinklfong.demo.streamapi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.DoubleSummaryStatistics;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.scan.PartitionedOrderScanner;
+import space.gavinklfong.demo.streamapi.service.BulkIngestService;
+
+// потоки сканера читают в своих транзакциях, поэтому данные должны быть закоммичены и удаляются после теста
+@DataJpaTest(properties = {"scan.parallelism=64", "app.datasource.read.maximum-pool-size=5"})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({PartitionedOrderScanner.class, BulkIngestService.class})
+public class PartitionedScanBenchmarkTest {
+
+	private static final Logger log = LoggerFactory.getLogger(PartitionedScanBenchmarkTest.class);
+
+	private static final int CUSTOMERS = 1_000;
+	private static final int PRODUCTS = 500;
+	private static final int ORDERS = 20_000;
+	private static final int PRODUCTS_PER_ORDER = 3;
+
+	@Autowired
+	private PartitionedOrderScanner orderScanner;
+
+	@Autowired
+	private BulkIngestService bulkIngestService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@AfterEach
+	public void deleteAll() {
+		SyntheticOrders.deleteAll(jdbcTemplate);
+	}
+
+	@Test
+	@DisplayName("Scanner threads leave one read pool connection to the caller")
+	public void parallelismBelowReadPool() {
+		assertEquals(4, orderScanner.getMaxParallelism());
+	}
+
+	@Test
+	@DisplayName("Partitioned scan gives the same aggregates with any parallelism and reports orders per second")
+	public void scanThroughput() {
+		new SyntheticOrders()
+				.customers(CUSTOMERS)
+				.products(PRODUCTS)
+				.orders(ORDERS)
+				.productsPerOrder(PRODUCTS_PER_ORDER)
+				.ingest(bulkIngestService);
+
+		DoubleSummaryStatistics baseline = null;
+		for (int parallelism = 1; parallelism <= orderScanner.getMaxParallelism(); parallelism *= 2) {
+			long startTime = System.currentTimeMillis();
+			DoubleSummaryStatistics totals = orderScanner.scan(Collectors.summarizingDouble(order ->
+					order.getProducts().stream()
+							.mapToDouble(Product::getPrice)
+							.sum()), parallelism);
+			long endTime = System.currentTimeMillis();
+
+			log.info(String.format("partitioned scan - %1$d threads: %2$d orders in %3$d ms, %4$.0f orders/s",
+					parallelism, totals.getCount(), (endTime - startTime),
+					totals.getCount() * 1000.0 / Math.max(1, endTime - startTime)));
+
+			if (baseline == null) {
+				baseline = totals;
+			}
+			assertEquals(baseline.getCount(), totals.getCount());
+			assertEquals(baseline.getSum(), totals.getSum(), 1e-6 * baseline.getSum());
+		}
+		assertEquals(ORDERS, baseline.getCount());
+	}
+}
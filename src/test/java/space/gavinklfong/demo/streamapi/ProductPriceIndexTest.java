@@ -0,0 +1,99 @@
+package space.gavinklfong.demo.streamapi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import space.gavinklfong.demo.streamapi.coalesce.SingleFlight;
+import space.gavinklfong.demo.streamapi.index.CoPurchaseIndex;
+import space.gavinklfong.demo.streamapi.index.NameSearchIndex;
+import space.gavinklfong.demo.streamapi.index.ProductPriceIndex;
+import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.query.QueryEngine;
+import space.gavinklfong.demo.streamapi.repos.ProductRepo;
+import space.gavinklfong.demo.streamapi.service.ProductService;
+
+// индекс узнает об изменениях только после коммита, поэтому данные коммитятся и удаляются после каждого теста
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({ProductService.class, ProductPriceIndex.class, NameSearchIndex.class, CoPurchaseIndex.class,
+		QueryEngine.class, SingleFlight.class})
+public class ProductPriceIndexTest {
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private ProductPriceIndex priceIndex;
+
+	@Autowired
+	private ProductRepo productRepo;
+
+	@AfterEach
+	public void deleteAll() {
+		productRepo.deleteAll();
+		priceIndex.invalidate();
+	}
+
+	@Test
+	@DisplayName("Price range and price limit lookups return products by ascending price, not by id")
+	public void priceOrder() {
+		// id растут, цены убывают - порядок по id не совпадает с порядком по цене
+		List<Product> products = List.of(
+				productRepo.save(new Product(null, "fourth", "Books", 50.0)),
+				productRepo.save(new Product(null, "third", "Books", 40.0)),
+				productRepo.save(new Product(null, "second", "Books", 30.0)),
+				productRepo.save(new Product(null, "first", "Books", 20.0)));
+		List<Long> byPrice = products.reversed().stream().map(Product::getId).toList();
+
+		assertEquals(byPrice, productService.getProductsInPriceRange(0, 100).stream().map(Product::getId).toList());
+		assertEquals(byPrice.subList(1, 4), productService.getProductsByCategoryWithPriceLimit("books", 20.0).stream()
+				.map(Product::getId)
+				.toList());
+	}
+
+	@Test
+	@DisplayName("Category names follow renames and removals instead of keeping the first spelling")
+	public void categorySpelling() {
+		Product renamed = productRepo.save(new Product(null, "renamed", "Books", 50.0));
+		Product kept = productRepo.save(new Product(null, "kept", "Books", 40.0));
+		assertEquals(Map.of("Books", renamed.getId()), priceIndex.mostExpensiveIdByCategory());
+
+		renamed.setCategory("BOOKS");
+		productRepo.save(renamed);
+		assertEquals(Map.of("BOOKS", renamed.getId()), priceIndex.mostExpensiveIdByCategory());
+
+		productRepo.deleteById(renamed.getId());
+		assertEquals(Map.of("Books", kept.getId()), priceIndex.mostExpensiveIdByCategory());
+	}
+
+	@Test
+	@DisplayName("Most expensive products per category merge spellings of a category and keep products without one")
+	public void mostExpensiveByCategory() {
+		productRepo.save(new Product(null, "cheap", "Books", 30.0));
+		Product expensive = productRepo.save(new Product(null, "expensive", "BOOKS", 50.0));
+		Product uncategorized = productRepo.save(new Product(null, "uncategorized", null, 10.0));
+		Product removed = productRepo.save(new Product(null, "removed", null, 5.0));
+
+		Map<String, Optional<Product>> expected = new HashMap<>();
+		expected.put("BOOKS", Optional.of(expensive));
+		expected.put(null, Optional.of(uncategorized));
+		assertEquals(expected, productService.getMostExpensiveProductsByCategories());
+
+		// товар без категории удаляется, категория остается
+		productRepo.deleteById(removed.getId());
+		assertEquals(expected, productService.getMostExpensiveProductsByCategories());
+	}
+}
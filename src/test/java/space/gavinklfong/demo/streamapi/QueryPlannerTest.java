@@ -0,0 +1,191 @@
+package space.gavinklfong.demo.streamapi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.query.Criterion;
+import space.gavinklfong.demo.streamapi.query.Orders;
+import space.gavinklfong.demo.streamapi.query.Products;
+import space.gavinklfong.demo.streamapi.query.Query;
+import space.gavinklfong.demo.streamapi.query.QueryEngine;
+import space.gavinklfong.demo.streamapi.query.QueryPlan;
+import space.gavinklfong.demo.streamapi.repos.OrderRepo;
+import space.gavinklfong.demo.streamapi.service.BulkIngestService;
+
+@DataJpaTest
+@Import({QueryEngine.class, BulkIngestService.class})
+public class QueryPlannerTest {
+
+	private static final Logger log = LoggerFactory.getLogger(QueryPlannerTest.class);
+
+	private static final int CUSTOMERS = 500;
+	private static final int PRODUCTS = 500;
+	private static final int ORDERS = 10_000;
+	private static final int PRODUCTS_PER_ORDER = 2;
+	private static final String[] STATUSES = {"NEW", "PENDING", "DELIVERED"};
+
+	@Autowired
+	private QueryEngine queryEngine;
+
+	@Autowired
+	private BulkIngestService bulkIngestService;
+
+	@Autowired
+	private OrderRepo orderRepo;
+
+	@Test
+	@DisplayName("Pushed down order queries return the same orders as their in-memory plans")
+	public void pushdownMatchesInMemory() {
+		ingestOrders();
+
+		Criterion<Order> category = Orders.category("category 3");
+		Criterion<Order> period = Orders.orderedBetween(LocalDate.of(2021, 3, 1), LocalDate.of(2021, 5, 31));
+		Criterion<Order> total = Orders.totalBetween(500, 1_200);
+		Query<Order> pushdown = Query.from(Orders.ENTITY)
+				.where(category)
+				.where(period)
+				.where(Orders.customerTier(2))
+				.where(total)
+				.orderBy(Orders.ORDER_DATE.desc())
+				.orderBy(Orders.ID.asc())
+				.limit(50);
+		Query<Order> inMemory = Query.from(Orders.ENTITY)
+				.where(Criterion.matching(category.describe(), category::test))
+				.where(Criterion.matching(period.describe(), period::test))
+				.where(Criterion.matching("customerTier = 2", order -> order.getCustomer().getTier() == 2))
+				.where(Criterion.matching(total.describe(), total::test))
+				.orderBy(Orders.ORDER_DATE.desc())
+				.orderBy(Orders.ID.asc())
+				.limit(50);
+
+		QueryPlan<Order> pushdownPlan = queryEngine.explain(pushdown);
+		QueryPlan<Order> inMemoryPlan = queryEngine.explain(inMemory);
+		log.info(pushdownPlan.explain());
+		log.info(inMemoryPlan.explain());
+		assertTrue(pushdownPlan.pushedDown());
+		assertTrue(pushdownPlan.explain().startsWith("Order query: pushdown"));
+		assertFalse(inMemoryPlan.pushedDown());
+		assertTrue(inMemoryPlan.explain().contains("memory limit: 50"));
+
+		List<Order> expected = timed("in-memory", () -> queryEngine.list(inMemory));
+		List<Order> actual = timed("pushdown", () -> queryEngine.list(pushdown));
+		assertFalse(expected.isEmpty());
+		assertEquals(expected.stream().map(Order::getId).toList(), actual.stream().map(Order::getId).toList());
+	}
+
+	@Test
+	@DisplayName("Computed sort attributes keep the filter in the database and sort in memory")
+	public void computedSortFallsBack() {
+		ingestOrders();
+
+		Query<Order> query = Query.from(Orders.ENTITY)
+				.where(Orders.status("NEW"))
+				.orderBy(Orders.TOTAL.desc())
+				.orderBy(Orders.ID.asc())
+				.limit(10);
+		QueryPlan<Order> plan = queryEngine.explain(query);
+		log.info(plan.explain());
+		assertFalse(plan.pushedDown());
+		assertTrue(plan.jpql().contains("o.status = "));
+		assertTrue(plan.explain().contains("memory sort: "));
+
+		List<Order> top = queryEngine.list(query);
+		assertEquals(10, top.size());
+		List<Order> expected = queryEngine.list(Query.from(Orders.ENTITY).where(Orders.status("NEW"))).stream()
+				.sorted(Comparator.comparing(Orders.TOTAL.getter()).reversed().thenComparing(Orders.ID.getter()))
+				.limit(10)
+				.toList();
+		assertEquals(expected.stream().map(Order::getId).toList(), top.stream().map(Order::getId).toList());
+	}
+
+	@Test
+	@DisplayName("Projections and group-by run as one statement and match the entity results")
+	public void projectionsAndGroupBy() {
+		ingestOrders();
+
+		Query<Product> cheap = Query.from(Products.ENTITY).where(Products.priceBetween(1, 100));
+		assertTrue(queryEngine.explain(cheap).pushedDown());
+		List<Double> prices = queryEngine.select(cheap, Products.PRICE);
+		assertEquals(queryEngine.list(cheap).stream().map(Product::getPrice).sorted().toList(),
+				prices.stream().sorted().toList());
+
+		Map<String, Long> counts = timed("count by category", () ->
+				queryEngine.countBy(Query.from(Products.ENTITY), Products.CATEGORY));
+		assertEquals(10, counts.size());
+		counts.forEach((category, count) -> assertEquals(PRODUCTS / 10, (long) count, category));
+		assertEquals(counts.keySet().stream().sorted().toList(),
+				queryEngine.selectDistinct(Query.from(Products.ENTITY).orderBy(Products.CATEGORY.asc()),
+						Products.CATEGORY));
+	}
+
+	@Test
+	@DisplayName("Orders without customer or delivery date sort and group the same in the database and in memory")
+	public void nullValues() {
+		ingestOrders();
+		LocalDate day = LocalDate.of(2021, 4, 1);
+		List<Long> withoutCustomer = List.of(
+				orderRepo.save(new Order(null, day, null, "NEW", null)).getId(),
+				orderRepo.save(new Order(null, day, day.plusDays(2), "NEW", null)).getId());
+
+		Criterion<Order> status = Orders.status("NEW");
+		Query<Order> pushdown = Query.from(Orders.ENTITY)
+				.where(status)
+				.orderBy(Orders.CUSTOMER_TIER.desc())
+				.orderBy(Orders.DELIVERY_DATE.asc())
+				.orderBy(Orders.ID.asc());
+		Query<Order> inMemory = Query.from(Orders.ENTITY)
+				.where(Criterion.matching(status.describe(), status::test))
+				.orderBy(Orders.CUSTOMER_TIER.desc())
+				.orderBy(Orders.DELIVERY_DATE.asc())
+				.orderBy(Orders.ID.asc());
+		assertTrue(queryEngine.explain(pushdown).pushedDown());
+		assertFalse(queryEngine.explain(inMemory).pushedDown());
+
+		// null идут последними в обоих направлениях, заказы без клиента не теряются
+		List<Long> expected = queryEngine.list(inMemory).stream().map(Order::getId).toList();
+		List<Long> actual = queryEngine.list(pushdown).stream().map(Order::getId).toList();
+		assertEquals(expected, actual);
+		assertEquals(List.of(withoutCustomer.get(1), withoutCustomer.get(0)),
+				actual.subList(actual.size() - 2, actual.size()));
+
+		Map<Integer, Long> tiers = queryEngine.countBy(pushdown, Orders.CUSTOMER_TIER);
+		assertEquals(queryEngine.countBy(inMemory, Orders.CUSTOMER_TIER), tiers);
+		assertEquals(2L, (long) tiers.get(null));
+	}
+
+	private static <R> R timed(String label, Supplier<R> query) {
+		long startTime = System.currentTimeMillis();
+		R result = query.get();
+		long endTime = System.currentTimeMillis();
+		log.info(String.format("%1$s - %2$d ms", label, (endTime - startTime)));
+		return result;
+	}
+
+	private void ingestOrders() {
+		new SyntheticOrders()
+				.customers(CUSTOMERS)
+				.products(PRODUCTS)
+				.orders(ORDERS)
+				.productsPerOrder(PRODUCTS_PER_ORDER)
+				.firstTier(1)
+				.statuses(STATUSES)
+				.ingest(bulkIngestService);
+	}
+}
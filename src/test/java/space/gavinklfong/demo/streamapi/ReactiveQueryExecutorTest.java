@@ -0,0 +1,209 @@
+package space.gavinklfong.demo.streamapi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+
+import space.gavinklfong.demo.streamapi.models.Customer;
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.repos.CustomerRepo;
+import space.gavinklfong.demo.streamapi.service.BulkIngestService;
+import space.gavinklfong.demo.streamapi.service.ReactiveCustomerService;
+import space.gavinklfong.demo.streamapi.service.ReactiveOrderService;
+import space.gavinklfong.demo.streamapi.service.ReactiveQueryExecutor;
+
+// подписки читают в своих транзакциях на других потоках, поэтому данные должны быть закоммичены
+@DataJpaTest(properties = {"reactive.max-open-cursors=2", "reactive.cursor-wait-millis=200",
+		"reactive.demand-timeout-millis=3000"})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({ReactiveQueryExecutor.class, ReactiveOrderService.class, ReactiveCustomerService.class,
+		BulkIngestService.class})
+public class ReactiveQueryExecutorTest {
+
+	private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+	@Autowired
+	private ReactiveQueryExecutor queryExecutor;
+
+	@Autowired
+	private ReactiveOrderService reactiveOrderService;
+
+	@Autowired
+	private ReactiveCustomerService reactiveCustomerService;
+
+	@Autowired
+	private CustomerRepo customerRepo;
+
+	@Autowired
+	private BulkIngestService bulkIngestService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@AfterEach
+	public void deleteAll() {
+		SyntheticOrders.deleteAll(jdbcTemplate);
+	}
+
+	@Test
+	@DisplayName("Orders stream in id order inside a read-only transaction, with lazy products across context clears")
+	public void readOnlyStream() {
+		List<Order> orders = new SyntheticOrders()
+				.customers(100)
+				.products(50)
+				.orders(1_000)
+				.productsPerOrder(2)
+				.days(60)
+				.ingest(bulkIngestService)
+				.orders();
+
+		List<Long> ids = new ArrayList<>();
+		Boolean readOnly = reactiveOrderService.getOrders()
+				.doOnNext(order -> ids.add(order.getId()))
+				.map(order -> TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+						&& order.getProducts().size() == 2)
+				.reduce(true, Boolean::logicalAnd)
+				.block(TIMEOUT);
+
+		assertTrue(readOnly);
+		assertEquals(orders.stream().map(Order::getId).sorted().toList(), ids);
+
+		YearMonth month = YearMonth.from(SyntheticOrders.FIRST_DAY);
+		double expected = orders.stream()
+				.filter(order -> YearMonth.from(order.getOrderDate()).equals(month))
+				.flatMap(order -> order.getProducts().stream())
+				.mapToDouble(Product::getPrice)
+				.sum();
+		assertEquals(expected, reactiveOrderService.getSumByMonth(month).block(TIMEOUT), 1e-6);
+	}
+
+	@Test
+	@DisplayName("Cancelled subscriptions stop reading and close their transactions and connections")
+	public void cancellation() {
+		List<Order> orders = new SyntheticOrders()
+				.customers(10)
+				.products(10)
+				.orders(500)
+				.productsPerOrder(1)
+				.ingest(bulkIngestService)
+				.orders();
+		List<Long> firstIds = orders.stream().map(Order::getId).sorted().limit(5).toList();
+		long sessions = sessions();
+
+		for (int i = 0; i < 20; i++) {
+			assertEquals(firstIds, reactiveOrderService.getOrders()
+					.take(5)
+					.map(Order::getId)
+					.collectList()
+					.block(TIMEOUT));
+		}
+
+		// отмененные чтения закрывают свои транзакции и отдают соединения
+		long deadline = System.currentTimeMillis() + TIMEOUT.toMillis();
+		while (sessions() > sessions && System.currentTimeMillis() < deadline) {
+			Thread.onSpinWait();
+		}
+		assertEquals(sessions, sessions());
+	}
+
+	@Test
+	@DisplayName("Subscriptions that stop requesting rows fail after the demand timeout, open cursors are capped")
+	public void stalledSubscriptions() throws Exception {
+		new SyntheticOrders()
+				.customers(10)
+				.products(10)
+				.orders(100)
+				.productsPerOrder(1)
+				.ingest(bulkIngestService);
+		// курсоры предыдущих тестов закрываются асинхронно
+		awaitOpenCursors(0);
+
+		CompletableFuture<Throwable> first = stall(reactiveOrderService.getOrders());
+		CompletableFuture<Throwable> second = stall(reactiveOrderService.getOrders());
+		awaitOpenCursors(2);
+
+		// сверх лимита подписка ждет свободного курсора недолго, без соединения, и получает ошибку
+		assertThrows(IllegalStateException.class, () -> reactiveOrderService.getOrders().blockFirst(TIMEOUT));
+		assertFalse(first.isDone());
+
+		assertTrue(first.get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS) instanceof IllegalStateException);
+		assertTrue(second.get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS) instanceof IllegalStateException);
+		assertEquals(0, queryExecutor.openCursors());
+		assertEquals(100, reactiveOrderService.getOrders().count().block(TIMEOUT));
+	}
+
+	@Test
+	@DisplayName("% and _ in a searched customer name match only themselves")
+	public void likeEscaping() {
+		Customer percent = customerRepo.save(new Customer(null, "100% Cotton", 1));
+		customerRepo.save(new Customer(null, "1000 Cotton", 1));
+		Customer underscore = customerRepo.save(new Customer(null, "a_b", 1));
+		customerRepo.save(new Customer(null, "axb", 1));
+
+		assertEquals(List.of(percent.getId()), ids(reactiveCustomerService.getCustomerByName("100%")));
+		assertEquals(List.of(underscore.getId()), ids(reactiveCustomerService.getCustomerByName("A_B")));
+	}
+
+	// курсор занимается и освобождается на потоке подписки
+	private void awaitOpenCursors(int expected) {
+		long deadline = System.currentTimeMillis() + TIMEOUT.toMillis();
+		while (queryExecutor.openCursors() != expected && System.currentTimeMillis() < deadline) {
+			Thread.onSpinWait();
+		}
+		assertEquals(expected, queryExecutor.openCursors());
+	}
+
+	private List<Long> ids(Flux<Customer> customers) {
+		return customers.map(Customer::getId).collectList().block(TIMEOUT);
+	}
+
+	// подписка запрашивает одну строку и больше ничего; результат - ошибка, которой она завершилась
+	private static <T> CompletableFuture<Throwable> stall(Flux<T> flux) {
+		CompletableFuture<Throwable> result = new CompletableFuture<>();
+		flux.subscribe(new BaseSubscriber<T>() {
+			@Override
+			protected void hookOnSubscribe(Subscription subscription) {
+				request(1);
+			}
+
+			@Override
+			protected void hookOnError(Throwable throwable) {
+				result.complete(throwable);
+			}
+
+			@Override
+			protected void hookOnComplete() {
+				result.complete(null);
+			}
+		});
+		return result;
+	}
+
+	private long sessions() {
+		return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.SESSIONS", Long.class);
+	}
+}
@@ -0,0 +1,98 @@
+package space.gavinklfong.demo.streamapi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import space.gavinklfong.demo.streamapi.config.DataSourceConfig;
+import space.gavinklfong.demo.streamapi.models.Customer;
+import space.gavinklfong.demo.streamapi.repos.CustomerRepo;
+
+// встроенная БД @DataJpaTest заменила бы маршрутизирующий DataSource, поэтому пулы настоящие
+@DataJpaTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:routing;DB_CLOSE_DELAY=-1",
+		"app.datasource.write.maximum-pool-size=2",
+		"app.datasource.read.maximum-pool-size=3"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(DataSourceConfig.class)
+public class ReadWriteRoutingTest {
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	@Qualifier("writeDataSource")
+	private HikariDataSource writePool;
+
+	@Autowired
+	@Qualifier("readDataSource")
+	private HikariDataSource readPool;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private CustomerRepo customerRepo;
+
+	@AfterEach
+	public void deleteAll() {
+		customerRepo.deleteAll();
+	}
+
+	@Test
+	@DisplayName("Pools are sized independently and sit behind a lazy connection proxy")
+	public void pools() {
+		assertTrue(dataSource instanceof LazyConnectionDataSourceProxy);
+		assertEquals("write-pool", writePool.getPoolName());
+		assertEquals(2, writePool.getMaximumPoolSize());
+		assertEquals("read-pool", readPool.getPoolName());
+		assertEquals(3, readPool.getMaximumPoolSize());
+	}
+
+	@Test
+	@DisplayName("Read-only transactions take connections from the read pool, read-write ones from the write pool")
+	public void routing() {
+		TransactionTemplate readWrite = new TransactionTemplate(transactionManager);
+		assertEquals("write-pool", readWrite.execute(status -> {
+			customerRepo.save(new Customer(null, "writer", 1));
+			return poolInUse();
+		}));
+
+		TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+		readOnly.setReadOnly(true);
+		assertEquals("read-pool", readOnly.execute(status -> {
+			assertEquals(1L, customerRepo.count());
+			return poolInUse();
+		}));
+	}
+
+	// соединение транзакции - единственное занятое в пулах этого контекста
+	private String poolInUse() {
+		int write = activeConnections(writePool);
+		int read = activeConnections(readPool);
+		assertEquals(1, write + read, "exactly one connection must be in use");
+		return write == 1 ? writePool.getPoolName() : readPool.getPoolName();
+	}
+
+	private static int activeConnections(HikariDataSource pool) {
+		return pool.getHikariPoolMXBean() != null ? pool.getHikariPoolMXBean().getActiveConnections() : 0;
+	}
+}
@@ -0,0 +1,118 @@
+package space.gavinklfong.demo.streamapi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import space.gavinklfong.demo.streamapi.index.IncrementalIndex;
+import space.gavinklfong.demo.streamapi.service.BulkIngestService;
+import space.gavinklfong.demo.streamapi.service.BusinessAnalyticsService;
+import space.gavinklfong.demo.streamapi.service.ReportJob;
+import space.gavinklfong.demo.streamapi.service.ReportJobService;
+import space.gavinklfong.demo.streamapi.service.ReportType;
+
+// отчеты считаются в потоках пула, поэтому данные должны быть закоммичены
+@DataJpaTest(properties = "report.workers=1")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({AnalyticsTestImports.class, ReportJobService.class})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+public class ReportJobServiceTest {
+
+	private static final Logger log = LoggerFactory.getLogger(ReportJobServiceTest.class);
+
+	private static final Duration TIMEOUT = Duration.ofMinutes(1);
+
+	private static final int CUSTOMERS = 1_000;
+	private static final int PRODUCTS = 200;
+	private static final int ORDERS = 30_000;
+	private static final int PRODUCTS_PER_ORDER = 2;
+	private static final String[] STATUSES = {"NEW", "PENDING", "DELIVERED"};
+
+	@Autowired
+	private ReportJobService reportJobService;
+
+	@Autowired
+	private BusinessAnalyticsService businessAnalyticsService;
+
+	@Autowired
+	private BulkIngestService bulkIngestService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private List<IncrementalIndex> indexes;
+
+	@AfterEach
+	public void deleteAll() {
+		SyntheticOrders.deleteAll(jdbcTemplate);
+		jdbcTemplate.update("DELETE FROM report_results");
+		indexes.forEach(IncrementalIndex::invalidate);
+	}
+
+	@Test
+	@DisplayName("Report jobs run in the background, share identical pending jobs and serve repeats from stored results")
+	public void reportJobs() {
+		new SyntheticOrders()
+				.customers(CUSTOMERS)
+				.products(PRODUCTS)
+				.orders(ORDERS)
+				.productsPerOrder(PRODUCTS_PER_ORDER)
+				.statuses(STATUSES)
+				.ingest(bulkIngestService);
+
+		// единственный поток занят статистикой клиентов, отчет по продажам ждет в очереди
+		ReportJob statistics = reportJobService.submit(ReportType.CUSTOMER_STATISTICS);
+		ReportJob sales = reportJobService.submit(ReportType.SALES);
+		ReportJob duplicate = reportJobService.submit(ReportType.SALES);
+		assertEquals(sales.id(), duplicate.id());
+		assertFalse(sales.finished());
+
+		long startTime = System.currentTimeMillis();
+		double lastProgress = 0;
+		ReportJob current = sales;
+		while (!current.finished() && System.currentTimeMillis() - startTime < TIMEOUT.toMillis()) {
+			current = reportJobService.await(sales.id(), Duration.ofMillis(5)).orElseThrow();
+			assertTrue(current.progress() >= lastProgress, "progress must not go back");
+			lastProgress = current.progress();
+		}
+		long endTime = System.currentTimeMillis();
+		log.info(String.format("sales report job - %1$d ms", (endTime - startTime)));
+
+		assertEquals(ReportJob.Status.DONE, current.status());
+		assertEquals(1.0, current.progress());
+		assertFalse(current.cached());
+		Map<String, Object> expected = businessAnalyticsService.getSalesReport();
+		assertEquals(ORDERS, ((Number) current.result().get("totalOrders")).longValue());
+		assertEquals((Double) expected.get("totalRevenue"), ((Number) current.result().get("totalRevenue")).doubleValue(),
+				1e-6);
+		assertEquals(ReportJob.Status.DONE, reportJobService.await(statistics.id(), TIMEOUT).orElseThrow().status());
+
+		startTime = System.currentTimeMillis();
+		ReportJob repeat = reportJobService.submit(ReportType.SALES);
+		endTime = System.currentTimeMillis();
+		log.info(String.format("repeated sales report - %1$d ms", (endTime - startTime)));
+
+		assertTrue(repeat.cached());
+		assertEquals(ReportJob.Status.DONE, repeat.status());
+		assertEquals(current.result(), repeat.result());
+	}
+}
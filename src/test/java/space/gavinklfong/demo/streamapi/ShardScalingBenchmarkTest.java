@@ -0,0 +1,201 @@
+package space.gavinklfong.demo.streamapi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.shard.ShardTotals;
+import space.gavinklfong.demo.streamapi.shard.ShardedReadReplica;
+
+// основная БД и шарды - отдельные in-memory H2 в одном процессе
+@Tag("benchmark")
+public class ShardScalingBenchmarkTest {
+
+	private static final Logger log = LoggerFactory.getLogger(ShardScalingBenchmarkTest.class);
+
+	private static final int CUSTOMERS = 5_000;
+	private static final int PRODUCTS = 500;
+	private static final int CATEGORIES = 20;
+	private static final int ORDERS = 100_000;
+	private static final int PRODUCTS_PER_ORDER = 2;
+	private static final int ROUNDS = 5;
+	private static final int CUSTOMER_LOOKUPS = 1_000;
+	private static final String[] STATUSES = {"NEW", "PENDING", "DELIVERED"};
+
+	private SyntheticOrders.Data data;
+
+	@Test
+	@DisplayName("Scatter-gather over 1, 2 and 4 shards matches the unsharded data and follows order changes")
+	public void shardScaling() {
+		HikariDataSource primary = dataSource("jdbc:h2:mem:shard-primary;DB_CLOSE_DELAY=-1");
+		try {
+			populate(primary);
+			for (int shardCount : new int[]{1, 2, 4}) {
+				benchmark(primary, shardCount);
+			}
+		} finally {
+			primary.close();
+		}
+	}
+
+	private void benchmark(DataSource primary, int shardCount) {
+		List<DataSource> shards = new ArrayList<>();
+		for (int i = 0; i < shardCount; i++) {
+			shards.add(dataSource("jdbc:h2:mem:shard-" + shardCount + "-" + i + ";DB_CLOSE_DELAY=-1"));
+		}
+		ShardedReadReplica replica = new ShardedReadReplica(primary, shards);
+		try {
+			long startTime = System.currentTimeMillis();
+			List<Long> orderCounts = replica.orderCountsByShard();
+			long endTime = System.currentTimeMillis();
+			log.info(String.format("%1$d shards - loaded in %2$d ms, orders per shard %3$s",
+					shardCount, (endTime - startTime), orderCounts));
+			assertEquals(ORDERS, orderCounts.stream().mapToLong(Long::longValue).sum());
+
+			Map<LocalDate, Double> revenue = null;
+			Map<String, Long> categories = null;
+			ShardTotals totals = null;
+			startTime = System.currentTimeMillis();
+			for (int round = 0; round < ROUNDS; round++) {
+				revenue = replica.revenueByDay();
+				categories = replica.orderLinesByCategory();
+				totals = replica.totals();
+			}
+			endTime = System.currentTimeMillis();
+			log.info(String.format("%1$d shards - scatter-gather analytics: %2$d ms per round",
+					shardCount, (endTime - startTime) / ROUNDS));
+
+			assertEquals(expectedRevenueByDay(), revenue);
+			assertEquals(expectedOrderLinesByCategory(), categories);
+			assertEquals(ORDERS, totals.orders());
+			assertEquals(CUSTOMERS, totals.customers());
+			assertEquals(PRODUCTS, totals.products());
+			assertEquals(expectedRevenueByDay().values().stream().mapToDouble(Double::doubleValue).sum(),
+					totals.revenue(), 1e-6);
+
+			startTime = System.currentTimeMillis();
+			for (long customerId = 1; customerId <= CUSTOMER_LOOKUPS; customerId++) {
+				replica.ordersByCustomer(customerId);
+			}
+			endTime = System.currentTimeMillis();
+			log.info(String.format("%1$d shards - %2$d single-shard customer lookups in %3$d ms",
+					shardCount, CUSTOMER_LOOKUPS, (endTime - startTime)));
+
+			assertEquals(expectedOrderIds(7L), replica.ordersByCustomer(7L).stream().map(Order::getId).toList());
+			LocalDate from = SyntheticOrders.FIRST_DAY.plusDays(30);
+			LocalDate to = SyntheticOrders.FIRST_DAY.plusDays(120);
+			assertEquals(expectedProductIds(7L, from, to),
+					replica.productsByCustomerBetween(7L, from, to).stream().map(Product::getId).toList());
+
+			if (shardCount > 1) {
+				moveOrder(primary, replica);
+			}
+
+			// повторная загрузка заполняет второй набор таблиц и переключается на него
+			replica.invalidate();
+			assertEquals(orderCounts, replica.orderCountsByShard());
+			assertEquals(expectedOrderIds(7L), replica.ordersByCustomer(7L).stream().map(Order::getId).toList());
+		} finally {
+			replica.destroy();
+		}
+	}
+
+	// заказ переходит к клиенту из другого шарда - после события он читается из нового шарда
+	private void moveOrder(DataSource primary, ShardedReadReplica replica) {
+		long orderId = 1;
+		long from = data.orders().get(0).getCustomer().getId();
+		long to = from % CUSTOMERS + 1;
+		while (replica.shardOf(to) == replica.shardOf(from)) {
+			to = to % CUSTOMERS + 1;
+		}
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(primary);
+		jdbcTemplate.update("UPDATE product_orders SET customer_id = ? WHERE id = ?", to, orderId);
+		replica.orderChanged(orderId);
+
+		assertFalse(replica.ordersByCustomer(from).stream().anyMatch(order -> order.getId() == orderId));
+		assertTrue(replica.ordersByCustomer(to).stream().anyMatch(order -> order.getId() == orderId));
+		assertEquals(ORDERS, replica.totals().orders());
+
+		jdbcTemplate.update("UPDATE product_orders SET customer_id = ? WHERE id = ?", from, orderId);
+	}
+
+	private Map<LocalDate, Double> expectedRevenueByDay() {
+		Map<LocalDate, Double> revenue = new TreeMap<>();
+		data.orders().forEach(order -> revenue.merge(order.getOrderDate(), order.getProducts().stream()
+				.mapToDouble(Product::getPrice)
+				.sum(), Double::sum));
+		return revenue;
+	}
+
+	private Map<String, Long> expectedOrderLinesByCategory() {
+		return data.orders().stream()
+				.flatMap(order -> order.getProducts().stream())
+				.collect(Collectors.groupingBy(Product::getCategory, Collectors.counting()));
+	}
+
+	private List<Long> expectedOrderIds(long customerId) {
+		return data.orders().stream()
+				.filter(order -> order.getCustomer().getId() == customerId)
+				.map(Order::getId)
+				.toList();
+	}
+
+	private List<Long> expectedProductIds(long customerId, LocalDate from, LocalDate to) {
+		return data.orders().stream()
+				.filter(order -> order.getCustomer().getId() == customerId)
+				.filter(order -> !order.getOrderDate().isBefore(from) && !order.getOrderDate().isAfter(to))
+				.flatMap(order -> order.getProducts().stream())
+				.map(Product::getId)
+				.distinct()
+				.sorted()
+				.toList();
+	}
+
+	private void populate(DataSource primary) {
+		new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(primary);
+
+		long startTime = System.currentTimeMillis();
+		data = new SyntheticOrders()
+				.customers(CUSTOMERS)
+				.products(PRODUCTS)
+				.categories(CATEGORIES)
+				.orders(ORDERS)
+				.productsPerOrder(PRODUCTS_PER_ORDER)
+				.statuses(STATUSES)
+				.insert(new JdbcTemplate(primary));
+		long endTime = System.currentTimeMillis();
+		log.info(String.format("primary database - %1$d orders in %2$d ms", ORDERS, (endTime - startTime)));
+	}
+
+	private static HikariDataSource dataSource(String url) {
+		return DataSourceBuilder.create()
+				.type(HikariDataSource.class)
+				.url(url)
+				.username("sa")
+				.password("")
+				.build();
+	}
+}
@@ -0,0 +1,188 @@
+package space.gavinklfong.demo.streamapi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import space.gavinklfong.demo.streamapi.coalesce.CoalescingStats;
+import space.gavinklfong.demo.streamapi.coalesce.SingleFlight;
+
+public class SingleFlightTest {
+
+	private static final Logger log = LoggerFactory.getLogger(SingleFlightTest.class);
+
+	private static final int CALLERS = 32;
+	private static final long COMPUTATION_MILLIS = 200;
+
+	@Test
+	@DisplayName("Concurrent calls with equal arguments share one computation, nothing is kept afterwards")
+	public void coalesceConcurrentCalls() throws Exception {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		SingleFlight singleFlight = new SingleFlight(registry, 0);
+		AtomicInteger executions = new AtomicInteger();
+
+		long startTime = System.currentTimeMillis();
+		List<Object> results = callConcurrently(() -> singleFlight.execute("slow", () -> {
+			executions.incrementAndGet();
+			sleep(COMPUTATION_MILLIS);
+			return new ArrayList<>(List.of("result"));
+		}, 5));
+		long endTime = System.currentTimeMillis();
+
+		CoalescingStats stats = singleFlight.stats().get("slow");
+		log.info(String.format("%1$d concurrent callers - %2$d computations in %3$d ms, coalescing ratio %4$.2f",
+				CALLERS, executions.get(), (endTime - startTime), stats.coalescingRatio()));
+
+		assertTrue(executions.get() < CALLERS, "concurrent callers must share computations");
+		assertEquals(CALLERS, stats.calls());
+		assertEquals(executions.get(), stats.executions());
+		assertEquals(CALLERS, registry.find("coalesce.calls").tag("operation", "slow").functionCounter().count(), 0.0);
+		results.forEach(result -> assertEquals(List.of("result"), result));
+
+		// без retain-millis завершенный результат не переиспользуется
+		Object first = singleFlight.execute("fast", ArrayList::new, 1);
+		Object second = singleFlight.execute("fast", ArrayList::new, 1);
+		assertTrue(first != second);
+		assertEquals(2, singleFlight.stats().get("fast").executions());
+	}
+
+	@Test
+	@DisplayName("Different arguments are computed separately, failures reach every waiting caller")
+	public void argumentsAndFailures() throws Exception {
+		SingleFlight singleFlight = new SingleFlight(new SimpleMeterRegistry(), 0);
+		AtomicInteger executions = new AtomicInteger();
+
+		callConcurrently(() -> singleFlight.execute("byLimit", () -> {
+			executions.incrementAndGet();
+			sleep(COMPUTATION_MILLIS);
+			return 1;
+		}, 3));
+		int sameArgument = executions.get();
+		List<Object> limits = new ArrayList<>();
+		AtomicInteger limit = new AtomicInteger();
+		callConcurrently(() -> {
+			int value = limit.incrementAndGet();
+			return singleFlight.execute("byLimit", () -> value, value);
+		}).forEach(limits::add);
+		assertEquals(CALLERS, singleFlight.stats().get("byLimit").executions() - sameArgument);
+		assertEquals(CALLERS, limits.stream().distinct().count());
+
+		List<Object> failures = callConcurrently(() -> {
+			try {
+				return singleFlight.execute("failing", () -> {
+					sleep(COMPUTATION_MILLIS);
+					throw new IllegalStateException("boom");
+				});
+			} catch (IllegalStateException e) {
+				return e.getMessage();
+			}
+		});
+		failures.forEach(failure -> assertEquals("boom", failure));
+		assertThrows(IllegalStateException.class, () -> singleFlight.execute("failing", () -> {
+			throw new IllegalStateException("again");
+		}));
+	}
+
+	@Test
+	@DisplayName("With retain-millis a finished result is served to matching calls until it expires")
+	public void retainFinishedResult() {
+		SingleFlight singleFlight = new SingleFlight(new SimpleMeterRegistry(), COMPUTATION_MILLIS);
+
+		Object first = singleFlight.execute("retained", ArrayList::new);
+		assertSame(first, singleFlight.execute("retained", ArrayList::new));
+		sleep(COMPUTATION_MILLIS * 2);
+		assertTrue(first != singleFlight.execute("retained", ArrayList::new));
+		assertEquals(2, singleFlight.stats().get("retained").executions());
+	}
+
+	@Test
+	@DisplayName("A call inside a write transaction computes its own result instead of joining a flight")
+	public void writeTransactionNotCoalesced() throws Exception {
+		SingleFlight singleFlight = new SingleFlight(new SimpleMeterRegistry(), 0);
+		CountDownLatch leaderStarted = new CountDownLatch(1);
+		CountDownLatch releaseLeader = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Object> leader = executor.submit(() -> singleFlight.execute("shared", () -> {
+				leaderStarted.countDown();
+				await(releaseLeader);
+				return "committed";
+			}));
+			leaderStarted.await();
+
+			// транзакция на запись видит свои изменения, поэтому не ждет чужое вычисление
+			TransactionSynchronizationManager.setActualTransactionActive(true);
+			TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+			try {
+				assertEquals("uncommitted", singleFlight.execute("shared", () -> "uncommitted"));
+			} finally {
+				TransactionSynchronizationManager.clear();
+			}
+
+			releaseLeader.countDown();
+			assertEquals("committed", leader.get());
+			assertEquals(2, singleFlight.stats().get("shared").executions());
+		} finally {
+			releaseLeader.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	private static List<Object> callConcurrently(Callable<Object> call)
+			throws InterruptedException, ExecutionException {
+		ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<Object>> futures = new ArrayList<>();
+			for (int i = 0; i < CALLERS; i++) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					return call.call();
+				}));
+			}
+			start.countDown();
+			List<Object> results = new ArrayList<>();
+			for (Future<Object> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
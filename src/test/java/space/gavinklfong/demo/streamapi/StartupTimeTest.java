@@ -0,0 +1,77 @@
+package space.gavinklfong.demo.streamapi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import space.gavinklfong.demo.streamapi.repos.CustomerRepo;
+import space.gavinklfong.demo.streamapi.repos.OrderRepo;
+import space.gavinklfong.demo.streamapi.snapshot.SnapshotStore;
+
+public class StartupTimeTest {
+
+	private static final Logger log = LoggerFactory.getLogger(StartupTimeTest.class);
+
+	// с запасом для медленных CI-машин; на рабочей машине старт занимает единицы секунд
+	private static final long STARTUP_BUDGET_MS = 15_000;
+
+	private static final Path SNAPSHOT = Path.of("target", "startup-test.snapshot");
+
+	@Test
+	@DisplayName("Application starts within the time budget, seeding an empty database, skipping the seed on restart "
+			+ "and rebuilding a snapshot edited behind its back")
+	public void startupWithinBudget() throws IOException {
+		Files.deleteIfExists(SNAPSHOT);
+		String url = "jdbc:h2:mem:startup-test;DB_CLOSE_DELAY=-1";
+
+		long coldStart = start(url, context -> {
+			// лишняя строка версии переживет только старт, который пропустил пересоздание БД
+			context.getBean(JdbcTemplate.class).update("INSERT INTO schema_version (version) VALUES (0)");
+		});
+		long warmStart = start(url, context -> {
+			JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+			assertEquals(2L, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM schema_version", Long.class).longValue());
+			// правка в обход приложения не помечает снапшот устаревшим - ее должен заметить отпечаток
+			jdbcTemplate.update("UPDATE products SET price = price + 1 WHERE id = (SELECT MIN(id) FROM products)");
+		});
+		start(url, context -> assertEquals(context.getBean(JdbcTemplate.class)
+						.queryForObject("SELECT price FROM products ORDER BY id LIMIT 1", Double.class).doubleValue(),
+				context.getBean(SnapshotStore.class).current().orElseThrow().productPrice(0), 1e-9));
+
+		log.info(String.format("startup - cold: %1$d ms, warm: %2$d ms", coldStart, warmStart));
+		assertTrue(coldStart < STARTUP_BUDGET_MS, "cold start took " + coldStart + " ms");
+		assertTrue(warmStart < STARTUP_BUDGET_MS, "warm start took " + warmStart + " ms");
+	}
+
+	private long start(String url, Consumer<ConfigurableApplicationContext> check) {
+		long startTime = System.currentTimeMillis();
+		try (ConfigurableApplicationContext context = new SpringApplicationBuilder(DemoApplication.class)
+				// аргументами, а не default properties - иначе их перекроет тестовый application.properties
+				.run("--server.port=0",
+						"--spring.datasource.url=" + url,
+						"--spring.jpa.hibernate.ddl-auto=none",
+						"--app.init.mode=version",
+						"--app.snapshot.enabled=true",
+						"--app.snapshot.path=" + SNAPSHOT)) {
+			long elapsed = System.currentTimeMillis() - startTime;
+			assertEquals(50L, context.getBean(OrderRepo.class).count());
+			assertEquals(10L, context.getBean(CustomerRepo.class).count());
+			// первый старт пишет снапшот, повторный - открывает его
+			assertEquals(50, context.getBean(SnapshotStore.class).current().orElseThrow().orderCount());
+			check.accept(context);
+			return elapsed;
+		}
+	}
+}
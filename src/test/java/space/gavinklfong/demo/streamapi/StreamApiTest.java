@@ -19,6 +19,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
 
 //import lombok.extern.slf4j.Slf4j;
 import space.gavinklfong.demo.streamapi.models.Customer;
@@ -29,6 +30,7 @@ import space.gavinklfong.demo.streamapi.repos.OrderRepo;
 import space.gavinklfong.demo.streamapi.repos.ProductRepo;
 
 @DataJpaTest
+@Import(DatabaseInitializer.class)
 public class StreamApiTest {
 
 	private static final Logger log = LoggerFactory.getLogger(StreamApiTest.class);
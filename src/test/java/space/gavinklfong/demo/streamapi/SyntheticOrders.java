@@ -0,0 +1,219 @@
+package space.gavinklfong.demo.streamapi;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import space.gavinklfong.demo.streamapi.models.Customer;
+import space.gavinklfong.demo.streamapi.models.Order;
+import space.gavinklfong.demo.streamapi.models.Product;
+import space.gavinklfong.demo.streamapi.service.BulkIngestService;
+
+/**
+ * Синтетические клиенты, товары и заказы для тестов и бенчмарков.
+ * <p>
+ * При одних и тех же параметрах данные одинаковы (seed 42). По умолчанию: tier клиентов 0, 1, 2 по кругу,
+ * товары в 10 категориях с ценой от 1 до 1000, заказы 2021 года со статусом NEW и доставкой через 3 дня,
+ * клиент и товары заказа выбираются равномерно.
+ */
+public class SyntheticOrders {
+
+	public static final LocalDate FIRST_DAY = LocalDate.of(2021, 1, 1);
+
+	/**
+	 * Срок доставки заказа в днях
+	 */
+	@FunctionalInterface
+	public interface LeadTime {
+		int days(Random random, Customer customer, int orderIndex);
+	}
+
+	private int customers = 1_000;
+	private int products = 500;
+	private int categories = 10;
+	private int orders = 20_000;
+	private int productsPerOrder = 3;
+	private int days = 365;
+	private int firstTier = 0;
+	private String[] statuses = {"NEW"};
+	private boolean skewed;
+	private int bundleEvery;
+	private LeadTime leadTime = (random, customer, orderIndex) -> 3;
+	private boolean assignIds;
+
+	public SyntheticOrders customers(int customers) {
+		this.customers = customers;
+		return this;
+	}
+
+	public SyntheticOrders products(int products) {
+		this.products = products;
+		return this;
+	}
+
+	public SyntheticOrders categories(int categories) {
+		this.categories = categories;
+		return this;
+	}
+
+	public SyntheticOrders orders(int orders) {
+		this.orders = orders;
+		return this;
+	}
+
+	public SyntheticOrders productsPerOrder(int productsPerOrder) {
+		this.productsPerOrder = productsPerOrder;
+		return this;
+	}
+
+	/**
+	 * Заказы распределены по days дням начиная с {@link #FIRST_DAY}
+	 */
+	public SyntheticOrders days(int days) {
+		this.days = days;
+		return this;
+	}
+
+	/**
+	 * Tier клиентов - firstTier, firstTier + 1, firstTier + 2 по кругу
+	 */
+	public SyntheticOrders firstTier(int firstTier) {
+		this.firstTier = firstTier;
+		return this;
+	}
+
+	/**
+	 * Статусы заказов по кругу
+	 */
+	public SyntheticOrders statuses(String... statuses) {
+		this.statuses = statuses;
+		return this;
+	}
+
+	/**
+	 * Категории и товары с меньшим номером встречаются чаще - у топа есть явные лидеры
+	 */
+	public SyntheticOrders skewed() {
+		this.skewed = true;
+		return this;
+	}
+
+	/**
+	 * Каждый every-й заказ содержит пару первых двух товаров
+	 */
+	public SyntheticOrders bundleEvery(int every) {
+		this.bundleEvery = every;
+		return this;
+	}
+
+	public SyntheticOrders leadTime(LeadTime leadTime) {
+		this.leadTime = leadTime;
+		return this;
+	}
+
+	/**
+	 * Назначить id 1..n самим, а не брать их из sequence при сохранении
+	 */
+	public SyntheticOrders withIds() {
+		this.assignIds = true;
+		return this;
+	}
+
+	public Data build() {
+		Random random = new Random(42);
+
+		List<Customer> customerList = new ArrayList<>();
+		for (int i = 0; i < customers; i++) {
+			customerList.add(new Customer(id(i), "customer " + i, firstTier + i % 3));
+		}
+		List<Product> productList = new ArrayList<>();
+		for (int i = 0; i < products; i++) {
+			int category = skewed ? skewed(random, categories) : i % categories;
+			productList.add(new Product(id(i), "product " + i, "Category " + category, 1.0 + random.nextInt(1000)));
+		}
+		List<Order> orderList = new ArrayList<>();
+		for (int i = 0; i < orders; i++) {
+			LocalDate orderDate = FIRST_DAY.plusDays(random.nextInt(days));
+			Customer customer = customerList.get(random.nextInt(customers));
+			Order order = new Order(id(i), orderDate, orderDate.plusDays(leadTime.days(random, customer, i)),
+					statuses[i % statuses.length], customer);
+			if (bundleEvery > 0 && i % bundleEvery == 0) {
+				order.getProducts().add(productList.get(0));
+				order.getProducts().add(productList.get(1));
+			}
+			while (order.getProducts().size() < productsPerOrder) {
+				order.getProducts().add(productList.get(skewed ? skewed(random, products) : random.nextInt(products)));
+			}
+			orderList.add(order);
+		}
+		return new Data(customerList, productList, orderList);
+	}
+
+	/**
+	 * Сохранить через {@link BulkIngestService}: id берутся из sequence
+	 */
+	public Data ingest(BulkIngestService bulkIngestService) {
+		Data data = build();
+		bulkIngestService.ingestCustomers(data.customers());
+		bulkIngestService.ingestProducts(data.products());
+		bulkIngestService.ingestOrders(data.orders());
+		return data;
+	}
+
+	/**
+	 * Вставить JDBC batch'ами в БД со схемой schema.sql, с id 1..n
+	 */
+	public Data insert(JdbcTemplate jdbcTemplate) {
+		assignIds = true;
+		Data data = build();
+		jdbcTemplate.batchUpdate("INSERT INTO customers (id, name, tier) VALUES (?, ?, ?)",
+				data.customers().stream()
+						.map(customer -> new Object[]{customer.getId(), customer.getName(), customer.getTier()})
+						.toList());
+		jdbcTemplate.batchUpdate("INSERT INTO products (id, name, category, price) VALUES (?, ?, ?, ?)",
+				data.products().stream()
+						.map(product -> new Object[]{product.getId(), product.getName(), product.getCategory(),
+								product.getPrice()})
+						.toList());
+		jdbcTemplate.batchUpdate("INSERT INTO product_orders (id, order_date, delivery_date, status, customer_id) "
+						+ "VALUES (?, ?, ?, ?, ?)",
+				data.orders().stream()
+						.map(order -> new Object[]{order.getId(), order.getOrderDate(), order.getDeliveryDate(),
+								order.getStatus(), order.getCustomer().getId()})
+						.toList());
+		jdbcTemplate.batchUpdate("INSERT INTO order_product_relationship (order_id, product_id) VALUES (?, ?)",
+				data.orders().stream()
+						.flatMap(order -> order.getProducts().stream()
+								.map(product -> new Object[]{order.getId(), product.getId()}))
+						.toList());
+		return data;
+	}
+
+	/**
+	 * Удалить все заказы, товары и клиентов - после тестов, которые коммитят данные
+	 */
+	public static void deleteAll(JdbcTemplate jdbcTemplate) {
+		jdbcTemplate.update("DELETE FROM order_product_relationship");
+		jdbcTemplate.update("DELETE FROM product_orders");
+		jdbcTemplate.update("DELETE FROM products");
+		jdbcTemplate.update("DELETE FROM customers");
+	}
+
+	private Long id(int index) {
+		return assignIds ? index + 1L : null;
+	}
+
+	private static int skewed(Random random, int bound) {
+		return random.nextInt(random.nextInt(bound) + 1);
+	}
+
+	public record Data(List<Customer> customers, List<Product> products, List<Order> orders) {
+
+		public long orderLines() {
+			return orders.stream().mapToLong(order -> order.getProducts().size()).sum();
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package space.gavinklfong.demo.streamapi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import space.gavinklfong.demo.streamapi.index.TrigramIndex;
+
+public class TrigramIndexTest {
+
+	private TrigramIndex index;
+
+	@BeforeEach
+	public void index() {
+		index = new TrigramIndex();
+		index.put(1, "Apple Pie");
+		index.put(2, "Banana");
+		index.put(3, "Cab");
+		index.put(4, "abcxbcd");
+	}
+
+	@Test
+	@DisplayName("Queries shorter than a trigram are checked against every name")
+	public void shortQueries() {
+		assertEquals(List.of(3L, 4L), index.search("ab", 10));
+		assertEquals(List.of(2L), index.search("na", 10));
+		assertEquals(List.of(1L, 2L, 3L), index.search("a", 10).subList(0, 3));
+		assertEquals(List.of(1L, 2L, 3L, 4L), index.search("", 10));
+		assertEquals(List.of(1L), index.search("e", 1));
+	}
+
+	@Test
+	@DisplayName("Queries and names are compared without case, and matching trigrams alone are not a match")
+	public void caseFolding() {
+		assertEquals(List.of(1L), index.search("APPLE", 10));
+		assertEquals(List.of(2L), index.search("nAnA", 10));
+		assertEquals(List.of(1L), index.search("le pi", 10));
+		assertEquals(List.of(2L), index.searchPrefix("BA", 10));
+		assertEquals(List.of(4L, 1L), index.searchPrefix("A", 10));
+		// abc и bcd есть в "abcxbcd", но подстроки "abcd" нет
+		assertEquals(List.of(), index.search("abcd", 10));
+	}
+
+	@Test
+	@DisplayName("Renamed and removed names leave the substring and prefix results")
+	public void updatesAndRemovals() {
+		index.put(1, "Cherry");
+		index.remove(2);
+		index.remove(42);
+
+		assertEquals(List.of(), index.search("apple", 10));
+		assertEquals(List.of(1L), index.search("herr", 10));
+		assertEquals(List.of(), index.search("banana", 10));
+		assertEquals(List.of(), index.searchPrefix("ban", 10));
+		assertEquals(List.of(3L, 1L), index.searchPrefix("c", 10));
+
+		index.put(2, "Banana split");
+		assertEquals(List.of(2L), index.search("split", 10));
+
+		index.clear();
+		assertEquals(List.of(), index.search("a", 10));
+		assertEquals(List.of(), index.searchPrefix("", 10));
+	}
+}